@@ -0,0 +1,127 @@
+package com.datastax.samples.benchmarks;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.datastax.oss.driver.api.core.CqlSession;
+import com.datastax.oss.driver.api.core.cql.BatchStatement;
+import com.datastax.oss.driver.api.core.cql.BatchableStatement;
+import com.datastax.oss.driver.api.core.cql.DefaultBatchType;
+import com.datastax.oss.driver.api.core.cql.PreparedStatement;
+import com.datastax.samples.benchmarks.stub.StubCqlServer;
+import com.datastax.samples.bulk.StatementBatcher;
+
+/**
+ * Write 'rows' users (one partition each) per operation, as CRUD_02 does, with driver 4.x.
+ *
+ * - 'LOGGED': a single LOGGED batch, the current sample
+ * - 'PARTITION', 'REPLICA_SET', 'NONE': {@link StatementBatcher} strategies, UNLOGGED batches
+ *   per partition or per replica set, or individual asynchronous inserts
+ *
+ * <pre>
+ * java -jar target/benchmarks.jar BatchWriteBenchmark -p rows=50,500
+ * java -jar target/benchmarks.jar BatchWriteBenchmark -p backend=stub -p stubLatencyMicros=200
+ * </pre>
+ *
+ * The difference shows on a multi-node cluster: with one node (or the stub) all partitions
+ * have the same replica and only the request count and batchlog cost change.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 10)
+@Threads(8)
+@Fork(1)
+public class BatchWriteBenchmark {
+
+    @Param({"LOGGED", "PARTITION", "REPLICA_SET", "NONE"})
+    public String strategy;
+
+    /** Users (partitions) written per operation. */
+    @Param({"50"})
+    public int rows;
+
+    /** Maximum size of the UNLOGGED batches. */
+    @Param({"5120"})
+    public int maxBatchBytes;
+
+    /** 'cassandra' uses {@link BenchmarkSchema#CONTACT_POINT}, 'stub' starts a {@link StubCqlServer}. */
+    @Param({"cassandra"})
+    public String backend;
+
+    /** Simulated server latency when backend is 'stub'. */
+    @Param({"0"})
+    public int stubLatencyMicros;
+
+    private Driver4xOperations operations;
+
+    private StubCqlServer stub;
+
+    private CqlSession session;
+
+    private PreparedStatement stmtUpsertUser;
+
+    private StatementBatcher batcher;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        String contactPoint = BenchmarkSchema.CONTACT_POINT;
+        if ("stub".equals(backend)) {
+            stub = new StubCqlServer()
+                    .withLatency(Duration.ofNanos(stubLatencyMicros * 1000L))
+                    .start();
+            contactPoint = stub.getContactPoint();
+        }
+        operations = new Driver4xOperations();
+        operations.init(contactPoint);
+        session = operations.getSession();
+        stmtUpsertUser = session.prepare(BenchmarkSchema.UPSERT_USER);
+        if (!"LOGGED".equals(strategy)) {
+            batcher = new StatementBatcher(session)
+                    .withStrategy(StatementBatcher.Strategy.valueOf(strategy))
+                    .withMaxBatchBytes(maxBatchBytes);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        operations.close();
+        if (stub != null) {
+            stub.close();
+        }
+    }
+
+    @Benchmark
+    public void writeUsers() {
+        List<BatchableStatement<?>> inserts = new ArrayList<>(rows);
+        for (int i = 0; i < rows; i++) {
+            int user = ThreadLocalRandom.current().nextInt();
+            inserts.add(stmtUpsertUser.bind("user_" + user + "@sample.com", "firstname_" + user, "lastname_" + user));
+        }
+        if (batcher == null) {
+            session.execute(BatchStatement.newInstance(DefaultBatchType.LOGGED, inserts));
+        } else {
+            batcher.execute(inserts);
+        }
+    }
+
+}
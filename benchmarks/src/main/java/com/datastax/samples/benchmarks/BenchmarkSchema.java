@@ -0,0 +1,85 @@
+package com.datastax.samples.benchmarks;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Killrvideo schema and queries shared by both drivers.
+ *
+ * Queries are plain CQL strings so that 3.x and 4.x send exactly the same requests
+ * to the cluster: only the driver overhead differs between measurements.
+ */
+public interface BenchmarkSchema {
+
+    String KEYSPACE_NAME = "killrvideo";
+
+    /** Contact point, override with -Dbench.contactPoint=host:port */
+    String CONTACT_POINT = System.getProperty("bench.contactPoint", "127.0.0.1:9042");
+
+    /** Local datacenter, override with -Dbench.localDc=dc */
+    String LOCAL_DATACENTER = System.getProperty("bench.localDc", "datacenter1");
+
+    String UDT_VIDEO_FORMAT_NAME   = "video_format";
+    String UDT_VIDEO_FORMAT_WIDTH  = "width";
+    String UDT_VIDEO_FORMAT_HEIGHT = "height";
+
+    String CREATE_KEYSPACE = ""
+            + "CREATE KEYSPACE IF NOT EXISTS " + KEYSPACE_NAME + " "
+            + "WITH REPLICATION = { 'class' : 'SimpleStrategy', 'replication_factor' : 1 } "
+            + "AND DURABLE_WRITES = true";
+
+    List<String> CREATE_SCHEMA = Arrays.asList(
+            "CREATE TABLE IF NOT EXISTS " + KEYSPACE_NAME + ".users ("
+            + "email text, firstname text, lastname text, "
+            + "PRIMARY KEY (email))",
+            "CREATE TYPE IF NOT EXISTS " + KEYSPACE_NAME + ".video_format ("
+            + "width int, height int)",
+            "CREATE TABLE IF NOT EXISTS " + KEYSPACE_NAME + ".videos ("
+            + "videoid uuid, title text, upload timestamp, email text, url text, "
+            + "tags set<text>, frames list<int>, formats map<text,frozen<video_format>>, "
+            + "PRIMARY KEY (videoid))",
+            "CREATE TABLE IF NOT EXISTS " + KEYSPACE_NAME + ".videos_views ("
+            + "videoid uuid, views counter, "
+            + "PRIMARY KEY (videoid))",
+            "CREATE TABLE IF NOT EXISTS " + KEYSPACE_NAME + ".videos_views_sharded ("
+            + "videoid uuid, shard int, views counter, "
+            + "PRIMARY KEY ((videoid, shard)))",
+            "CREATE TABLE IF NOT EXISTS " + KEYSPACE_NAME + ".videos_views_shards ("
+            + "videoid uuid, shards int, "
+            + "PRIMARY KEY (videoid, shards)) WITH CLUSTERING ORDER BY (shards DESC)",
+            "CREATE TABLE IF NOT EXISTS " + KEYSPACE_NAME + ".comments_by_video ("
+            + "videoid uuid, commentid timeuuid, userid uuid, comment text, "
+            + "PRIMARY KEY (videoid, commentid)) WITH CLUSTERING ORDER BY (commentid DESC)",
+            "CREATE TABLE IF NOT EXISTS " + KEYSPACE_NAME + ".comments_by_user ("
+            + "userid uuid, commentid timeuuid, videoid uuid, comment text, "
+            + "PRIMARY KEY (userid, commentid)) WITH CLUSTERING ORDER BY (commentid DESC)",
+            "CREATE TABLE IF NOT EXISTS " + KEYSPACE_NAME + ".files ("
+            + "filename text, upload timestamp, extension text static, binary blob, "
+            + "PRIMARY KEY ((filename), upload)) WITH CLUSTERING ORDER BY (upload DESC)");
+
+    String UPSERT_USER = "INSERT INTO " + KEYSPACE_NAME + ".users "
+            + "(email, firstname, lastname) VALUES (?, ?, ?)";
+
+    String FIND_USER = "SELECT * FROM " + KEYSPACE_NAME + ".users WHERE email = ?";
+
+    String SCAN_USERS = "SELECT * FROM " + KEYSPACE_NAME + ".users";
+
+    String INSERT_COMMENT_BY_VIDEO = "INSERT INTO " + KEYSPACE_NAME + ".comments_by_video "
+            + "(videoid, userid, commentid, comment) VALUES (?, ?, ?, ?)";
+
+    String INSERT_COMMENT_BY_USER = "INSERT INTO " + KEYSPACE_NAME + ".comments_by_user "
+            + "(userid, videoid, commentid, comment) VALUES (?, ?, ?, ?)";
+
+    String UPSERT_VIDEO = "INSERT INTO " + KEYSPACE_NAME + ".videos "
+            + "(videoid, title, upload, email, url, tags, frames, formats) "
+            + "VALUES (?, ?, ?, ?, ?, ?, ?, ?)";
+
+    String INCREMENT_VIEWS = "UPDATE " + KEYSPACE_NAME + ".videos_views "
+            + "SET views = views + ? WHERE videoid = ?";
+
+    String INSERT_FILE = "INSERT INTO " + KEYSPACE_NAME + ".files "
+            + "(filename, upload, extension, binary) VALUES (?, ?, ?, ?)";
+
+    String READ_FILE = "SELECT binary FROM " + KEYSPACE_NAME + ".files WHERE filename = ? LIMIT 1";
+
+}
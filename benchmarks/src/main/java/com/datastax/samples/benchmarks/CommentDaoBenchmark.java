@@ -0,0 +1,176 @@
+package com.datastax.samples.benchmarks;
+
+import java.net.InetSocketAddress;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.datastax.oss.driver.api.core.CqlSession;
+import com.datastax.samples.benchmarks.stub.StubCqlServer;
+import com.datastax.samples.objectmapping.Comment;
+import com.datastax.samples.objectmapping.CommentDao;
+import com.datastax.samples.objectmapping.CommentDaoMapper;
+import com.datastax.samples.objectmapping.CommentDaoQueryProvider;
+import com.datastax.samples.write.DenormalizedWriter;
+import com.datastax.samples.write.FailureJournal;
+
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+/**
+ * 'requests' users post a comment at the same time, each request writes the comment then
+ * reads the comments of the video, with the {@link CommentDao} of CRUD_07.
+ *
+ * - 'BLOCKING': upsert() then retrieveVideoComments(), each request on a thread of a pool
+ *   of 'workers' threads
+ * - 'ASYNC': upsertAsync() then retrieveVideoCommentsAsync(), chained without waiting
+ * - 'REACTIVE': upsertAsync() then retrieveVideoCommentsReactive(), merged in a Flux
+ *
+ * An operation is the whole wave of requests: with few workers (an event loop per core)
+ * the blocking requests wait for each other, the asynchronous ones are all in flight.
+ *
+ * <pre>
+ * java -jar target/benchmarks.jar CommentDaoBenchmark -p requests=16,256
+ * java -jar target/benchmarks.jar CommentDaoBenchmark -p backend=stub -p stubLatencyMicros=500
+ * </pre>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 10)
+@Threads(1)
+@Fork(1)
+public class CommentDaoBenchmark {
+
+    @Param({"BLOCKING", "ASYNC", "REACTIVE"})
+    public String api;
+
+    /** Concurrent requests per operation. */
+    @Param({"64"})
+    public int requests;
+
+    /** Threads running the blocking requests. */
+    @Param({"4"})
+    public int workers;
+
+    /** 'cassandra' uses {@link BenchmarkSchema#CONTACT_POINT}, 'stub' starts a {@link StubCqlServer}. */
+    @Param({"cassandra"})
+    public String backend;
+
+    /** Simulated server latency when backend is 'stub'. */
+    @Param({"0"})
+    public int stubLatencyMicros;
+
+    private Driver4xOperations operations;
+
+    private StubCqlServer stub;
+
+    private CqlSession session;
+
+    private DenormalizedWriter writer;
+
+    private CommentDao dao;
+
+    private ExecutorService workerPool;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        String contactPoint = BenchmarkSchema.CONTACT_POINT;
+        if ("stub".equals(backend)) {
+            stub = new StubCqlServer()
+                    .withLatency(Duration.ofNanos(stubLatencyMicros * 1000L))
+                    .start();
+            contactPoint = stub.getContactPoint();
+        }
+        // Creates the schema
+        operations = new Driver4xOperations();
+        operations.init(contactPoint);
+        // The query provider does not prefix its tables: session bound to the keyspace
+        String[] hostAndPort = contactPoint.split(":");
+        session = CqlSession.builder()
+                .addContactPoint(new InetSocketAddress(hostAndPort[0], Integer.parseInt(hostAndPort[1])))
+                .withLocalDatacenter(BenchmarkSchema.LOCAL_DATACENTER)
+                .withKeyspace(BenchmarkSchema.KEYSPACE_NAME)
+                .build();
+        writer = new DenormalizedWriter(session).withJournal(new FailureJournal(
+                Paths.get(System.getProperty("java.io.tmpdir"), "killrvideo-benchmark-comments.journal")));
+        dao = CommentDaoMapper.builder(session)
+                .withDefaultKeyspace(BenchmarkSchema.KEYSPACE_NAME)
+                .withCustomState(CommentDaoQueryProvider.COMMENT_WRITER, writer)
+                .build().commentDao();
+        workerPool = Executors.newFixedThreadPool(workers);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        workerPool.shutdownNow();
+        writer.close();
+        session.close();
+        operations.close();
+        if (stub != null) {
+            stub.close();
+        }
+    }
+
+    @Benchmark
+    public long postComments() {
+        switch (api) {
+            case "BLOCKING":
+                CompletableFuture<?>[] blocking = new CompletableFuture<?>[requests];
+                for (int i = 0; i < requests; i++) {
+                    Comment comment = newComment();
+                    blocking[i] = CompletableFuture.supplyAsync(() -> {
+                        dao.upsert(comment);
+                        return dao.retrieveVideoComments(comment.getVideoid()).all().size();
+                    }, workerPool);
+                }
+                return CompletableFuture.allOf(blocking).thenApply(v -> (long) blocking.length).join();
+            case "ASYNC":
+                CompletableFuture<?>[] async = new CompletableFuture<?>[requests];
+                for (int i = 0; i < requests; i++) {
+                    Comment comment = newComment();
+                    async[i] = dao.upsertAsync(comment)
+                            .thenCompose(v -> dao.retrieveVideoCommentsAsync(comment.getVideoid()))
+                            .thenApply(rs -> rs.remaining())
+                            .toCompletableFuture();
+                }
+                return CompletableFuture.allOf(async).thenApply(v -> (long) async.length).join();
+            default:
+                return Flux.range(0, requests)
+                        .map(i -> newComment())
+                        .flatMap(comment -> Mono.fromCompletionStage(() -> dao.upsertAsync(comment))
+                                .thenMany(Flux.from(dao.retrieveVideoCommentsReactive(comment.getVideoid())))
+                                .count(), requests)
+                        .count()
+                        .block();
+        }
+    }
+
+    private static Comment newComment() {
+        UUID userid  = new UUID(0, ThreadLocalRandom.current().nextInt(10_000));
+        UUID videoid = new UUID(1, ThreadLocalRandom.current().nextInt(1_000));
+        return new Comment(userid, videoid, "comment");
+    }
+
+}
@@ -0,0 +1,117 @@
+package com.datastax.samples.benchmarks;
+
+import java.time.Duration;
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.datastax.oss.driver.api.core.CqlSession;
+import com.datastax.oss.driver.api.core.cql.PreparedStatement;
+import com.datastax.oss.driver.api.core.uuid.Uuids;
+import com.datastax.samples.benchmarks.stub.StubCqlServer;
+import com.datastax.samples.write.DenormalizedWriter;
+
+/**
+ * Write a comment to 'comments_by_video' and 'comments_by_user', as CRUD_03 does, with the
+ * strategies of {@link DenormalizedWriter}.
+ *
+ * - 'LOGGED_BATCH': one LOGGED batch, the current sample
+ * - 'FAN_OUT': both inserts sent at the same time, idempotent, failed ones retried
+ *
+ * <pre>
+ * java -jar target/benchmarks.jar CommentWriteBenchmark
+ * java -jar target/benchmarks.jar CommentWriteBenchmark -p backend=stub -p stubLatencyMicros=500 -p stubBatchlogMicros=1000
+ * </pre>
+ *
+ * With the stub, a LOGGED batch costs 'stubLatencyMicros' + 'stubBatchlogMicros' and each
+ * insert 'stubLatencyMicros': only a real cluster measures the batchlog and the load of the
+ * coordinator.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 10)
+@Threads(16)
+@Fork(1)
+public class CommentWriteBenchmark {
+
+    @Param({"LOGGED_BATCH", "FAN_OUT"})
+    public String strategy;
+
+    /** 'cassandra' uses {@link BenchmarkSchema#CONTACT_POINT}, 'stub' starts a {@link StubCqlServer}. */
+    @Param({"cassandra"})
+    public String backend;
+
+    /** Simulated server latency when backend is 'stub'. */
+    @Param({"0"})
+    public int stubLatencyMicros;
+
+    /** Simulated batchlog cost of a LOGGED batch when backend is 'stub'. */
+    @Param({"0"})
+    public int stubBatchlogMicros;
+
+    private Driver4xOperations operations;
+
+    private StubCqlServer stub;
+
+    private PreparedStatement stmtInsertCommentByVideo;
+
+    private PreparedStatement stmtInsertCommentByUser;
+
+    private DenormalizedWriter writer;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        String contactPoint = BenchmarkSchema.CONTACT_POINT;
+        if ("stub".equals(backend)) {
+            stub = new StubCqlServer()
+                    .withLatency(Duration.ofNanos(stubLatencyMicros * 1000L))
+                    .withBatchlogLatency(Duration.ofNanos(stubBatchlogMicros * 1000L))
+                    .start();
+            contactPoint = stub.getContactPoint();
+        }
+        operations = new Driver4xOperations();
+        operations.init(contactPoint);
+        CqlSession session = operations.getSession();
+        stmtInsertCommentByVideo = session.prepare(BenchmarkSchema.INSERT_COMMENT_BY_VIDEO);
+        stmtInsertCommentByUser  = session.prepare(BenchmarkSchema.INSERT_COMMENT_BY_USER);
+        writer = new DenormalizedWriter(session)
+                .withStrategy(DenormalizedWriter.Strategy.valueOf(strategy));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        writer.close();
+        operations.close();
+        if (stub != null) {
+            stub.close();
+        }
+    }
+
+    @Benchmark
+    public void writeComment() {
+        UUID userid    = new UUID(0, ThreadLocalRandom.current().nextInt(10_000));
+        UUID videoid   = new UUID(1, ThreadLocalRandom.current().nextInt(1_000));
+        UUID commentid = Uuids.timeBased();
+        writer.execute(
+                stmtInsertCommentByVideo.bind(videoid, userid, commentid, "comment"),
+                stmtInsertCommentByUser.bind(userid, videoid, commentid, "comment"));
+    }
+
+}
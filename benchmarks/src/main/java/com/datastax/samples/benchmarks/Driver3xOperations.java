@@ -0,0 +1,145 @@
+package com.datastax.samples.benchmarks;
+
+import java.nio.ByteBuffer;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+
+import com.datastax.driver.core.BatchStatement;
+import com.datastax.driver.core.Cluster;
+import com.datastax.driver.core.PreparedStatement;
+import com.datastax.driver.core.ResultSet;
+import com.datastax.driver.core.Row;
+import com.datastax.driver.core.Session;
+import com.datastax.driver.core.SimpleStatement;
+import com.datastax.driver.core.UDTValue;
+import com.datastax.driver.core.UserType;
+import com.datastax.driver.core.policies.DCAwareRoundRobinPolicy;
+import com.datastax.driver.core.policies.TokenAwarePolicy;
+
+/**
+ * Killrvideo operations with driver 3.x.
+ */
+public class Driver3xOperations implements KillrvideoOperations, BenchmarkSchema {
+
+    private Cluster cluster;
+
+    private Session session;
+
+    private UserType videoFormatUdt;
+
+    private PreparedStatement stmtUpsertUser;
+    private PreparedStatement stmtFindUser;
+    private PreparedStatement stmtInsertCommentByVideo;
+    private PreparedStatement stmtInsertCommentByUser;
+    private PreparedStatement stmtUpsertVideo;
+    private PreparedStatement stmtIncrementViews;
+    private PreparedStatement stmtInsertFile;
+    private PreparedStatement stmtReadFile;
+
+    /** {@inheritDoc} */
+    @Override
+    public void init(String contactPoint) {
+        String[] hostAndPort = contactPoint.split(":");
+        // Same load balancing as the 4.x default policy
+        cluster = Cluster.builder()
+                .addContactPoint(hostAndPort[0])
+                .withPort(Integer.parseInt(hostAndPort[1]))
+                .withLoadBalancingPolicy(new TokenAwarePolicy(DCAwareRoundRobinPolicy.builder()
+                        .withLocalDc(LOCAL_DATACENTER).build()))
+                .build();
+        session = cluster.connect();
+        session.execute(CREATE_KEYSPACE);
+        CREATE_SCHEMA.forEach(session::execute);
+        videoFormatUdt = cluster.getMetadata()
+                .getKeyspace(KEYSPACE_NAME)
+                .getUserType(UDT_VIDEO_FORMAT_NAME);
+        stmtUpsertUser           = session.prepare(UPSERT_USER);
+        stmtFindUser             = session.prepare(FIND_USER);
+        stmtInsertCommentByVideo = session.prepare(INSERT_COMMENT_BY_VIDEO);
+        stmtInsertCommentByUser  = session.prepare(INSERT_COMMENT_BY_USER);
+        stmtUpsertVideo          = session.prepare(UPSERT_VIDEO);
+        stmtIncrementViews       = session.prepare(INCREMENT_VIEWS);
+        stmtInsertFile           = session.prepare(INSERT_FILE);
+        stmtReadFile             = session.prepare(READ_FILE);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void upsertUser(String email, String firstname, String lastname) {
+        session.execute(stmtUpsertUser.bind(email, firstname, lastname));
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public boolean findUser(String email) {
+        return session.execute(stmtFindUser.bind(email)).one() != null;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public int scanUsers(int pageSize, int maxRows) {
+        ResultSet rs = session.execute(new SimpleStatement(SCAN_USERS).setFetchSize(pageSize));
+        int count = 0;
+        for (Row row : rs) {
+            row.getString(0);
+            if (++count >= maxRows) break;
+        }
+        return count;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void insertComment(UUID userid, UUID videoid, UUID commentid, String comment) {
+        BatchStatement batch = new BatchStatement(BatchStatement.Type.LOGGED);
+        batch.add(stmtInsertCommentByVideo.bind(videoid, userid, commentid, comment));
+        batch.add(stmtInsertCommentByUser.bind(userid, videoid, commentid, comment));
+        session.execute(batch);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void upsertVideo(UUID videoid, String title, Set<String> tags, List<Integer> frames,
+            String format, int width, int height) {
+        UDTValue formatValue = videoFormatUdt.newValue()
+                .setInt(UDT_VIDEO_FORMAT_WIDTH, width)
+                .setInt(UDT_VIDEO_FORMAT_HEIGHT, height);
+        session.execute(stmtUpsertVideo.bind(videoid, title, new Date(), "bench@sample.com",
+                "https://killrvideo.com/" + videoid, tags, frames,
+                Collections.singletonMap(format, formatValue)));
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void incrementViews(UUID videoid, long delta) {
+        session.execute(stmtIncrementViews.bind(delta, videoid));
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public int blobRoundTrip(String filename, ByteBuffer content) {
+        session.execute(stmtInsertFile.bind(filename, new Date(), "bin", content.duplicate()));
+        Row row = session.execute(stmtReadFile.bind(filename)).one();
+        return row == null ? 0 : row.getBytes(0).remaining();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void close() {
+        if (session != null) session.close();
+        if (cluster != null) cluster.close();
+    }
+
+    /**
+     * Access the session (used by benchmarks needing more than the shared operations).
+     *
+     * @return
+     *      current session
+     */
+    public Session getSession() {
+        return session;
+    }
+
+}
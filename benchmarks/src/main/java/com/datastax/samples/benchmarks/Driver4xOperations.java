@@ -0,0 +1,138 @@
+package com.datastax.samples.benchmarks;
+
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.time.Instant;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+
+import com.datastax.oss.driver.api.core.CqlSession;
+import com.datastax.oss.driver.api.core.cql.BatchStatement;
+import com.datastax.oss.driver.api.core.cql.DefaultBatchType;
+import com.datastax.oss.driver.api.core.cql.PreparedStatement;
+import com.datastax.oss.driver.api.core.cql.ResultSet;
+import com.datastax.oss.driver.api.core.cql.Row;
+import com.datastax.oss.driver.api.core.cql.SimpleStatement;
+import com.datastax.oss.driver.api.core.data.UdtValue;
+import com.datastax.oss.driver.api.core.type.UserDefinedType;
+
+/**
+ * Killrvideo operations with driver 4.x.
+ */
+public class Driver4xOperations implements KillrvideoOperations, BenchmarkSchema {
+
+    private CqlSession session;
+
+    private UserDefinedType videoFormatUdt;
+
+    private PreparedStatement stmtUpsertUser;
+    private PreparedStatement stmtFindUser;
+    private PreparedStatement stmtInsertCommentByVideo;
+    private PreparedStatement stmtInsertCommentByUser;
+    private PreparedStatement stmtUpsertVideo;
+    private PreparedStatement stmtIncrementViews;
+    private PreparedStatement stmtInsertFile;
+    private PreparedStatement stmtReadFile;
+
+    /** {@inheritDoc} */
+    @Override
+    public void init(String contactPoint) {
+        String[] hostAndPort = contactPoint.split(":");
+        session = CqlSession.builder()
+                .addContactPoint(new InetSocketAddress(hostAndPort[0], Integer.parseInt(hostAndPort[1])))
+                .withLocalDatacenter(LOCAL_DATACENTER)
+                .build();
+        session.execute(CREATE_KEYSPACE);
+        CREATE_SCHEMA.forEach(session::execute);
+        videoFormatUdt = session.getMetadata()
+                .getKeyspace(KEYSPACE_NAME)
+                .flatMap(ks -> ks.getUserDefinedType(UDT_VIDEO_FORMAT_NAME))
+                .orElseThrow(() -> new IllegalStateException("Type '" + UDT_VIDEO_FORMAT_NAME + "' not found"));
+        stmtUpsertUser           = session.prepare(UPSERT_USER);
+        stmtFindUser             = session.prepare(FIND_USER);
+        stmtInsertCommentByVideo = session.prepare(INSERT_COMMENT_BY_VIDEO);
+        stmtInsertCommentByUser  = session.prepare(INSERT_COMMENT_BY_USER);
+        stmtUpsertVideo          = session.prepare(UPSERT_VIDEO);
+        stmtIncrementViews       = session.prepare(INCREMENT_VIEWS);
+        stmtInsertFile           = session.prepare(INSERT_FILE);
+        stmtReadFile             = session.prepare(READ_FILE);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void upsertUser(String email, String firstname, String lastname) {
+        session.execute(stmtUpsertUser.bind(email, firstname, lastname));
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public boolean findUser(String email) {
+        return session.execute(stmtFindUser.bind(email)).one() != null;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public int scanUsers(int pageSize, int maxRows) {
+        ResultSet rs = session.execute(SimpleStatement.newInstance(SCAN_USERS).setPageSize(pageSize));
+        int count = 0;
+        for (Row row : rs) {
+            row.getString(0);
+            if (++count >= maxRows) break;
+        }
+        return count;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void insertComment(UUID userid, UUID videoid, UUID commentid, String comment) {
+        session.execute(BatchStatement.builder(DefaultBatchType.LOGGED)
+                .addStatement(stmtInsertCommentByVideo.bind(videoid, userid, commentid, comment))
+                .addStatement(stmtInsertCommentByUser.bind(userid, videoid, commentid, comment))
+                .build());
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void upsertVideo(UUID videoid, String title, Set<String> tags, List<Integer> frames,
+            String format, int width, int height) {
+        UdtValue formatValue = videoFormatUdt.newValue()
+                .setInt(UDT_VIDEO_FORMAT_WIDTH, width)
+                .setInt(UDT_VIDEO_FORMAT_HEIGHT, height);
+        session.execute(stmtUpsertVideo.bind(videoid, title, Instant.now(), "bench@sample.com",
+                "https://killrvideo.com/" + videoid, tags, frames,
+                Collections.singletonMap(format, formatValue)));
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void incrementViews(UUID videoid, long delta) {
+        session.execute(stmtIncrementViews.bind(delta, videoid));
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public int blobRoundTrip(String filename, ByteBuffer content) {
+        session.execute(stmtInsertFile.bind(filename, Instant.now(), "bin", content.duplicate()));
+        Row row = session.execute(stmtReadFile.bind(filename)).one();
+        return row == null ? 0 : row.getByteBuffer(0).remaining();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void close() {
+        if (session != null) session.close();
+    }
+
+    /**
+     * Access the session (used by benchmarks needing more than the shared operations).
+     *
+     * @return
+     *      current session
+     */
+    public CqlSession getSession() {
+        return session;
+    }
+
+}
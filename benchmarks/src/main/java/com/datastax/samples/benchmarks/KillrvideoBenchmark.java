@@ -0,0 +1,168 @@
+package com.datastax.samples.benchmarks;
+
+import java.nio.ByteBuffer;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.datastax.oss.driver.api.core.uuid.Uuids;
+import com.datastax.samples.benchmarks.stub.StubCqlServer;
+
+/**
+ * Same killrvideo operations executed with driver 3.x and driver 4.x.
+ *
+ * Throughput and SampleTime (latency percentiles) modes are both collected, add
+ * '-prof gc' (or use {@link BenchmarkRunner}) to get the allocation rate.
+ *
+ * <pre>
+ * java -jar target/benchmarks.jar KillrvideoBenchmark -prof gc
+ * java -jar target/benchmarks.jar KillrvideoBenchmark.findUser -p driver=4x
+ * </pre>
+ *
+ * With '-p backend=stub' requests are answered by an in-JVM {@link StubCqlServer}: no Cassandra
+ * needed and no server noise, only the driver overhead is measured.
+ *
+ * <pre>
+ * java -jar target/benchmarks.jar KillrvideoBenchmark -p backend=stub -p stubLatencyMicros=0
+ * </pre>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 10)
+@Threads(8)
+@Fork(1)
+public class KillrvideoBenchmark {
+
+    /** Number of users inserted before the trial, read by findUser and scanUsers. */
+    private static final int USER_COUNT = 1000;
+
+    /** Videos reused by counter benchmark (same partitions updated). */
+    private static final int VIDEO_COUNT = 100;
+
+    @Param({"3x", "4x"})
+    public String driver;
+
+    @Param({"100"})
+    public int pageSize;
+
+    @Param({"1024"})
+    public int blobSize;
+
+    /** 'cassandra' uses {@link BenchmarkSchema#CONTACT_POINT}, 'stub' starts a {@link StubCqlServer}. */
+    @Param({"cassandra"})
+    public String backend;
+
+    /** Simulated server latency when backend is 'stub'. */
+    @Param({"0"})
+    public int stubLatencyMicros;
+
+    private KillrvideoOperations operations;
+
+    private StubCqlServer stub;
+
+    private UUID[] videoIds;
+
+    private ByteBuffer blob;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        String contactPoint = BenchmarkSchema.CONTACT_POINT;
+        if ("stub".equals(backend)) {
+            stub = new StubCqlServer()
+                    .withLatency(Duration.ofNanos(stubLatencyMicros * 1000L))
+                    .withResultSize(USER_COUNT)
+                    .withBlobSize(blobSize)
+                    .start();
+            contactPoint = stub.getContactPoint();
+        }
+        operations = "3x".equals(driver) ? new Driver3xOperations() : new Driver4xOperations();
+        operations.init(contactPoint);
+        for (int i = 0; i < USER_COUNT; i++) {
+            operations.upsertUser(email(i), "firstname_" + i, "lastname_" + i);
+        }
+        videoIds = new UUID[VIDEO_COUNT];
+        for (int i = 0; i < VIDEO_COUNT; i++) {
+            videoIds[i] = UUID.randomUUID();
+        }
+        byte[] content = new byte[blobSize];
+        ThreadLocalRandom.current().nextBytes(content);
+        blob = ByteBuffer.wrap(content);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        operations.close();
+        if (stub != null) {
+            stub.close();
+        }
+    }
+
+    @Benchmark
+    public void upsertUser() {
+        int i = ThreadLocalRandom.current().nextInt(USER_COUNT);
+        operations.upsertUser(email(i), "firstname_" + i, "lastname_" + i);
+    }
+
+    @Benchmark
+    public boolean findUser() {
+        return operations.findUser(email(ThreadLocalRandom.current().nextInt(USER_COUNT)));
+    }
+
+    @Benchmark
+    public int scanUsers() {
+        return operations.scanUsers(pageSize, USER_COUNT);
+    }
+
+    @Benchmark
+    public void insertCommentLoggedBatch() {
+        operations.insertComment(UUID.randomUUID(), randomVideo(), Uuids.timeBased(), "Benchmark comment");
+    }
+
+    @Benchmark
+    public void upsertVideoCollectionsAndUdt() {
+        Set<String> tags = new HashSet<>(Arrays.asList("cassandra", "driver", "benchmark"));
+        List<Integer> frames = Arrays.asList(1, 2, 3, 4, 5);
+        operations.upsertVideo(randomVideo(), "Benchmark video", tags, frames, "mp4", 1920, 1080);
+    }
+
+    @Benchmark
+    public void incrementViews() {
+        operations.incrementViews(randomVideo(), 1);
+    }
+
+    @Benchmark
+    public int blobRoundTrip() {
+        return operations.blobRoundTrip("file_" + ThreadLocalRandom.current().nextInt(USER_COUNT), blob);
+    }
+
+    private UUID randomVideo() {
+        return videoIds[ThreadLocalRandom.current().nextInt(VIDEO_COUNT)];
+    }
+
+    private static String email(int i) {
+        return "user_" + i + "@sample.com";
+    }
+
+}
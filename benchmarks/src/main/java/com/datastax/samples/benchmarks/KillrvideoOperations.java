@@ -0,0 +1,47 @@
+package com.datastax.samples.benchmarks;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * Killrvideo operations, implemented once per driver version with the same CQL.
+ */
+public interface KillrvideoOperations extends AutoCloseable {
+
+    /**
+     * Connect, create keyspace, type and tables if needed and prepare statements.
+     *
+     * @param contactPoint
+     *      contact point as host:port
+     */
+    void init(String contactPoint);
+
+    /** INSERT INTO users. */
+    void upsertUser(String email, String firstname, String lastname);
+
+    /** SELECT * FROM users WHERE email=?, returns true if found. */
+    boolean findUser(String email);
+
+    /** SELECT * FROM users with paging, returns the number of rows read. */
+    int scanUsers(int pageSize, int maxRows);
+
+    /** LOGGED batch writing in comments_by_video and comments_by_user. */
+    void insertComment(UUID userid, UUID videoid, UUID commentid, String comment);
+
+    /** INSERT INTO videos with set, list and map of UDT. */
+    void upsertVideo(UUID videoid, String title, Set<String> tags, List<Integer> frames,
+            String format, int width, int height);
+
+    /** UPDATE videos_views SET views = views + ?. */
+    void incrementViews(UUID videoid, long delta);
+
+    /** INSERT then read a blob in files, returns the size read. */
+    int blobRoundTrip(String filename, ByteBuffer content);
+
+    /** {@inheritDoc} */
+    @Override
+    void close();
+
+}
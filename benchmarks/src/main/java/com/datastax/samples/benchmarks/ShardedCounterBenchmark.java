@@ -0,0 +1,114 @@
+package com.datastax.samples.benchmarks;
+
+import java.time.Duration;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.datastax.samples.benchmarks.stub.StubCqlServer;
+import com.datastax.samples.counter.ShardedCounter;
+
+/**
+ * Views of a single hot video incremented by 32 threads, with the views spread over
+ * 'shards' partitions by {@link ShardedCounter} (1 shard is the 'videos_views' layout).
+ *
+ * - 'increment': write throughput, grows with the shard count while one partition is the
+ *   bottleneck
+ * - 'read': cost of a read, one query per shard
+ *
+ * <pre>
+ * java -jar target/benchmarks.jar ShardedCounterBenchmark -p shards=1,8,32
+ * java -jar target/benchmarks.jar ShardedCounterBenchmark -p backend=stub -p stubCounterMicros=200
+ * </pre>
+ *
+ * With the stub, counter updates of a partition are applied one at a time, each taking
+ * 'stubCounterMicros': one shard caps at 1s / stubCounterMicros increments per second.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 10)
+@Threads(32)
+@Fork(1)
+public class ShardedCounterBenchmark {
+
+    /** Partitions of the hot video. */
+    @Param({"1", "4", "16", "64"})
+    public int shards;
+
+    /** 'RANDOM' or 'THREAD'. */
+    @Param({"RANDOM"})
+    public String selector;
+
+    /** 'cassandra' uses {@link BenchmarkSchema#CONTACT_POINT}, 'stub' starts a {@link StubCqlServer}. */
+    @Param({"cassandra"})
+    public String backend;
+
+    /** Simulated server latency when backend is 'stub'. */
+    @Param({"0"})
+    public int stubLatencyMicros;
+
+    /** Simulated time of a counter update on a partition when backend is 'stub'. */
+    @Param({"200"})
+    public int stubCounterMicros;
+
+    private Driver4xOperations operations;
+
+    private StubCqlServer stub;
+
+    private ShardedCounter counter;
+
+    private UUID hotVideo;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        String contactPoint = BenchmarkSchema.CONTACT_POINT;
+        if ("stub".equals(backend)) {
+            stub = new StubCqlServer()
+                    .withLatency(Duration.ofNanos(stubLatencyMicros * 1000L))
+                    .withCounterLatency(Duration.ofNanos(stubCounterMicros * 1000L))
+                    .start();
+            contactPoint = stub.getContactPoint();
+        }
+        operations = new Driver4xOperations();
+        operations.init(contactPoint);
+        counter = new ShardedCounter(operations.getSession(), BenchmarkSchema.KEYSPACE_NAME)
+                .withDefaultShards(shards)
+                .withShardSelector(ShardedCounter.ShardSelector.valueOf(selector));
+        hotVideo = UUID.randomUUID();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        operations.close();
+        if (stub != null) {
+            stub.close();
+        }
+    }
+
+    @Benchmark
+    public void increment() {
+        counter.incrementBy(hotVideo, 1);
+    }
+
+    @Benchmark
+    public long read() {
+        return counter.findById(hotVideo).orElse(0L);
+    }
+
+}
@@ -0,0 +1,384 @@
+package com.datastax.samples.benchmarks.stub;
+
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.datastax.oss.protocol.internal.Compressor;
+import com.datastax.oss.protocol.internal.FrameCodec;
+
+import io.netty.bootstrap.ServerBootstrap;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelInitializer;
+import io.netty.channel.ChannelOption;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.socket.SocketChannel;
+import io.netty.channel.socket.nio.NioServerSocketChannel;
+import io.netty.handler.codec.LengthFieldBasedFrameDecoder;
+
+/**
+ * In-JVM server speaking the CQL native protocol (v4) with scripted results.
+ *
+ * Both drivers can connect to it as to a single node Cassandra 3.11 cluster: STARTUP, OPTIONS,
+ * REGISTER, QUERY, PREPARE, EXECUTE and BATCH are answered, without any storage. SELECT return
+ * generated rows matching the table definition (killrvideo tables by default), mutations
+ * return nothing and lightweight transactions are always applied.
+ *
+ * With no server work and no network, what is measured is the driver: request encoding,
+ * codecs and mapping, pooling and response decoding.
+ *
+ * <pre>
+ * try (StubCqlServer stub = new StubCqlServer().withLatency(Duration.ofMillis(1)).start()) {
+ *     CqlSession.builder().addContactPoint(stub.getAddress()).withLocalDatacenter("datacenter1")...
+ * }
+ * </pre>
+ *
+ * Standalone, to run the samples of both modules offline:
+ * <pre>
+ * java -cp target/benchmarks.jar com.datastax.samples.benchmarks.stub.StubCqlServer [port] [latencyMicros] [resultSize]
+ * </pre>
+ */
+public class StubCqlServer implements AutoCloseable {
+
+    /** Logger for the class. */
+    private static Logger LOGGER = LoggerFactory.getLogger(StubCqlServer.class);
+
+    /** Highest protocol version, drivers negotiate down to it. */
+    public static final int PROTOCOL_VERSION = 4;
+
+    /** Frames can be up to 256MB. */
+    private static final int MAX_FRAME_LENGTH = 256 * 1024 * 1024;
+
+    private final StubSchema schema;
+
+    private final FrameCodec<ByteBuf> codec = FrameCodec.defaultServer(
+            new StubPrimitiveCodec(ByteBufAllocator.DEFAULT), Compressor.none());
+
+    /** Prepared statements, shared by all connections as on a real node. */
+    private final Map<ByteBuffer, StubQuery> prepared = new ConcurrentHashMap<>();
+
+    /** Parsed simple statements, not to parse them again on each QUERY. */
+    private final Map<String, StubQuery> queries = new ConcurrentHashMap<>();
+
+    private final LongAdder requestCount = new LongAdder();
+
+    private String host = "127.0.0.1";
+
+    private int port = 0;
+
+    private String localDatacenter = "datacenter1";
+
+    private volatile Duration latency = Duration.ZERO;
+
+    private volatile Duration counterLatency = Duration.ZERO;
+
+    private volatile Duration batchlogLatency = Duration.ZERO;
+
+    /** Time each counter partition is busy until, see {@link #withCounterLatency(Duration)}. */
+    private final Map<ByteBuffer, Long> counterPartitions = new ConcurrentHashMap<>();
+
+    private int resultSize = 100;
+
+    private int blobSize = 1024;
+
+    private EventLoopGroup eventLoopGroup;
+
+    private Channel serverChannel;
+
+    private StubSystemTables systemTables;
+
+    /**
+     * Stub serving the killrvideo tables.
+     */
+    public StubCqlServer() {
+        this(StubSchema.killrvideo());
+    }
+
+    /**
+     * Stub serving provided tables.
+     *
+     * @param schema
+     *      tables and types, completed by the DDL received
+     */
+    public StubCqlServer(StubSchema schema) {
+        this.schema = schema;
+    }
+
+    /**
+     * Listening address, port 0 (default) picks a free port.
+     *
+     * @param host
+     *      host
+     * @param port
+     *      port
+     * @return
+     *      current instance
+     */
+    public StubCqlServer withAddress(String host, int port) {
+        this.host = host;
+        this.port = port;
+        return this;
+    }
+
+    /**
+     * Datacenter of the node (system.local), defaults to 'datacenter1'.
+     *
+     * @param localDatacenter
+     *      datacenter name
+     * @return
+     *      current instance
+     */
+    public StubCqlServer withLocalDatacenter(String localDatacenter) {
+        this.localDatacenter = localDatacenter;
+        return this;
+    }
+
+    /**
+     * Delay before each statement response (QUERY, PREPARE, EXECUTE, BATCH), can be changed
+     * while the server is running.
+     *
+     * @param latency
+     *      simulated server latency
+     * @return
+     *      current instance
+     */
+    public StubCqlServer withLatency(Duration latency) {
+        this.latency = latency;
+        return this;
+    }
+
+    /**
+     * Time to apply a prepared counter update, added to the latency. Updates of the same
+     * partition are applied one after the other, as under the counter lock of the leader
+     * replica: a hot partition limits the throughput to one update per 'counterLatency'.
+     *
+     * @param counterLatency
+     *      simulated time of a counter update, zero (default) to disable
+     * @return
+     *      current instance
+     */
+    public StubCqlServer withCounterLatency(Duration counterLatency) {
+        this.counterLatency = counterLatency;
+        return this;
+    }
+
+    /**
+     * Rows returned by a SELECT, capped by its LIMIT. Set before statements are prepared.
+     *
+     * @param resultSize
+     *      number of rows (all pages)
+     * @return
+     *      current instance
+     */
+    public StubCqlServer withResultSize(int resultSize) {
+        this.resultSize = resultSize;
+        return this;
+    }
+
+    /**
+     * Size of the blob values returned. Set before statements are prepared.
+     *
+     * @param blobSize
+     *      size in bytes
+     * @return
+     *      current instance
+     */
+    public StubCqlServer withBlobSize(int blobSize) {
+        this.blobSize = blobSize;
+        return this;
+    }
+
+    /**
+     * Bind the server.
+     *
+     * @return
+     *      current instance
+     */
+    public synchronized StubCqlServer start() {
+        if (serverChannel != null) {
+            return this;
+        }
+        eventLoopGroup = new NioEventLoopGroup();
+        try {
+            serverChannel = new ServerBootstrap()
+                    .group(eventLoopGroup)
+                    .channel(NioServerSocketChannel.class)
+                    .childOption(ChannelOption.TCP_NODELAY, true)
+                    .childHandler(new ChannelInitializer<SocketChannel>() {
+                        @Override
+                        protected void initChannel(SocketChannel channel) {
+                            channel.pipeline()
+                                .addLast(new LengthFieldBasedFrameDecoder(MAX_FRAME_LENGTH, 5, 4, 0, 0))
+                                .addLast(new StubRequestHandler(StubCqlServer.this, codec));
+                        }
+                    })
+                    .bind(host, port).syncUninterruptibly().channel();
+        } catch (RuntimeException e) {
+            eventLoopGroup.shutdownGracefully();
+            throw e;
+        }
+        systemTables = new StubSystemTables(schema, getAddress().getAddress(), localDatacenter);
+        LOGGER.info("+ Stub CQL server listening on {} (latency={}, resultSize={}, blobSize={})",
+                getContactPoint(), latency, resultSize, blobSize);
+        return this;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public synchronized void close() {
+        if (serverChannel != null) {
+            serverChannel.close().syncUninterruptibly();
+            eventLoopGroup.shutdownGracefully(0, 1, TimeUnit.SECONDS).syncUninterruptibly();
+            LOGGER.info("+ Stub CQL server stopped after {} requests", getRequestCount());
+            serverChannel = null;
+        }
+    }
+
+    /**
+     * Address to use as contact point.
+     *
+     * @return
+     *      bound address
+     */
+    public InetSocketAddress getAddress() {
+        if (serverChannel == null) {
+            throw new IllegalStateException("Stub server is not started");
+        }
+        return (InetSocketAddress) serverChannel.localAddress();
+    }
+
+    /**
+     * Contact point as 'host:port'.
+     *
+     * @return
+     *      contact point
+     */
+    public String getContactPoint() {
+        return getAddress().getHostString() + ":" + getAddress().getPort();
+    }
+
+    /**
+     * Requests received since start, handshake included.
+     *
+     * @return
+     *      request count
+     */
+    public long getRequestCount() {
+        return requestCount.sum();
+    }
+
+    /**
+     * Time to write and remove the batchlog of a LOGGED batch, added to the latency. The
+     * coordinator stores the batch on two other nodes before applying it: at least one more
+     * round trip and two disk writes compared to UNLOGGED writes.
+     *
+     * @param batchlogLatency
+     *      simulated batchlog cost, zero (default) to disable
+     * @return
+     *      current instance
+     */
+    public StubCqlServer withBatchlogLatency(Duration batchlogLatency) {
+        this.batchlogLatency = batchlogLatency;
+        return this;
+    }
+
+    /**
+     * Getter accessor for attribute 'latency'.
+     *
+     * @return current value of 'latency'
+     */
+    public Duration getLatency() {
+        return latency;
+    }
+
+    /**
+     * Getter accessor for attribute 'schema'.
+     *
+     * @return current value of 'schema'
+     */
+    public StubSchema getSchema() {
+        return schema;
+    }
+
+    /**
+     * Getter accessor for attribute 'batchlogLatency'.
+     *
+     * @return current value of 'batchlogLatency'
+     */
+    public Duration getBatchlogLatency() {
+        return batchlogLatency;
+    }
+
+    StubSystemTables getSystemTables() {
+        return systemTables;
+    }
+
+    void onRequest() {
+        requestCount.increment();
+    }
+
+    StubQuery query(String keyspace, String cql) {
+        return queries.computeIfAbsent(keyspace + "/" + cql,
+                k -> StubQuery.parse(schema, keyspace, cql, resultSize, blobSize));
+    }
+
+    StubQuery prepare(String keyspace, String cql) {
+        StubQuery query = query(keyspace, cql);
+        prepared.putIfAbsent(ByteBuffer.wrap(query.getId()), query);
+        return query;
+    }
+
+    StubQuery getPrepared(byte[] id) {
+        return prepared.get(ByteBuffer.wrap(id));
+    }
+
+    /**
+     * Wait of a counter update: until its partition is free, then 'counterLatency'.
+     */
+    long counterDelayNanos(StubQuery query, List<ByteBuffer> values) {
+        long cost = counterLatency.toNanos();
+        int[] pkIndices = query.getVariables().pkIndices;
+        if (cost == 0 || !query.isCounterUpdate() || pkIndices == null) {
+            return 0;
+        }
+        int length = query.getId().length;
+        for (int index : pkIndices) {
+            length += 4 + values.get(index).remaining();
+        }
+        ByteBuffer partition = ByteBuffer.allocate(length).put(query.getId());
+        for (int index : pkIndices) {
+            partition.putInt(values.get(index).remaining()).put(values.get(index).duplicate());
+        }
+        partition.flip();
+        long now = System.nanoTime();
+        long done = counterPartitions.merge(partition, now + cost, (busyUntil, free) -> Math.max(busyUntil, now) + cost);
+        return done - now;
+    }
+
+    /**
+     * Run the stub standalone.
+     *
+     * @param args
+     *      [port] [latencyMicros] [resultSize]
+     */
+    public static void main(String[] args) {
+        StubCqlServer stub = new StubCqlServer()
+                .withAddress("127.0.0.1", args.length > 0 ? Integer.parseInt(args[0]) : 9042)
+                .withLatency(Duration.ofNanos(1000L * (args.length > 1 ? Long.parseLong(args[1]) : 0)))
+                .withResultSize(args.length > 2 ? Integer.parseInt(args[2]) : 100)
+                .start();
+        Runtime.getRuntime().addShutdownHook(new Thread(stub::close));
+    }
+
+}
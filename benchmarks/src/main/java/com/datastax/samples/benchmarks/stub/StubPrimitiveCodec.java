@@ -0,0 +1,252 @@
+package com.datastax.samples.benchmarks.stub;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.CRC32;
+
+import com.datastax.oss.protocol.internal.PrimitiveCodec;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.CompositeByteBuf;
+
+/**
+ * Protocol primitives ([int], [string], [bytes]...) read from and written to Netty buffers.
+ *
+ * The frame codec of the native-protocol library is generic over the buffer type, both
+ * drivers bring their own implementation for Netty but in internal packages. The stub keeps
+ * its own one to build against any driver version.
+ */
+public class StubPrimitiveCodec implements PrimitiveCodec<ByteBuf> {
+
+    private final ByteBufAllocator allocator;
+
+    /**
+     * Codec allocating its buffers from an allocator.
+     *
+     * @param allocator
+     *      buffer allocator
+     */
+    public StubPrimitiveCodec(ByteBufAllocator allocator) {
+        this.allocator = allocator;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public ByteBuf allocate(int size) {
+        return allocator.ioBuffer(size, size);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void release(ByteBuf toRelease) {
+        toRelease.release();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public int sizeOf(ByteBuf toMeasure) {
+        return toMeasure.readableBytes();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public ByteBuf concat(ByteBuf left, ByteBuf right) {
+        if (!left.isReadable()) {
+            return right.duplicate();
+        }
+        if (!right.isReadable()) {
+            return left.duplicate();
+        }
+        CompositeByteBuf composite = allocator.compositeBuffer(2);
+        return composite.addComponents(true, left, right);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void markReaderIndex(ByteBuf source) {
+        source.markReaderIndex();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void resetReaderIndex(ByteBuf source) {
+        source.resetReaderIndex();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public byte readByte(ByteBuf source) {
+        return source.readByte();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public int readInt(ByteBuf source) {
+        return source.readInt();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public int readInt(ByteBuf source, int offset) {
+        return source.getInt(source.readerIndex() + offset);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public InetAddress readInetAddr(ByteBuf source) {
+        byte[] address = new byte[source.readUnsignedByte()];
+        source.readBytes(address);
+        try {
+            return InetAddress.getByAddress(address);
+        } catch (UnknownHostException e) {
+            throw new IllegalArgumentException("Invalid address length: " + address.length, e);
+        }
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public long readLong(ByteBuf source) {
+        return source.readLong();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public int readUnsignedShort(ByteBuf source) {
+        return source.readUnsignedShort();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public ByteBuffer readBytes(ByteBuf source) {
+        int length = source.readInt();
+        if (length < 0) {
+            return null;
+        }
+        ByteBuffer bytes = ByteBuffer.allocate(length);
+        source.readBytes(bytes);
+        bytes.flip();
+        return bytes;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public byte[] readShortBytes(ByteBuf source) {
+        byte[] bytes = new byte[source.readUnsignedShort()];
+        source.readBytes(bytes);
+        return bytes;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public String readString(ByteBuf source) {
+        return readString(source, source.readUnsignedShort());
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public String readLongString(ByteBuf source) {
+        return readString(source, source.readInt());
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public ByteBuf readRetainedSlice(ByteBuf source, int sliceLength) {
+        return source.readRetainedSlice(sliceLength);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void updateCrc(ByteBuf source, CRC32 crc) {
+        crc.update(source.nioBuffer());
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void writeByte(byte b, ByteBuf dest) {
+        dest.writeByte(b);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void writeInt(int i, ByteBuf dest) {
+        dest.writeInt(i);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void writeInetAddr(InetAddress address, ByteBuf dest) {
+        byte[] bytes = address.getAddress();
+        dest.writeByte(bytes.length);
+        dest.writeBytes(bytes);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void writeLong(long l, ByteBuf dest) {
+        dest.writeLong(l);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void writeUnsignedShort(int i, ByteBuf dest) {
+        dest.writeShort(i);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void writeString(String s, ByteBuf dest) {
+        byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        dest.writeShort(bytes.length);
+        dest.writeBytes(bytes);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void writeLongString(String s, ByteBuf dest) {
+        byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        dest.writeInt(bytes.length);
+        dest.writeBytes(bytes);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void writeBytes(ByteBuffer bytes, ByteBuf dest) {
+        if (bytes == null) {
+            dest.writeInt(-1);
+        } else {
+            dest.writeInt(bytes.remaining());
+            dest.writeBytes(bytes.duplicate());
+        }
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void writeBytes(byte[] bytes, ByteBuf dest) {
+        if (bytes == null) {
+            dest.writeInt(-1);
+        } else {
+            dest.writeInt(bytes.length);
+            dest.writeBytes(bytes);
+        }
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void writeShortBytes(byte[] bytes, ByteBuf dest) {
+        dest.writeShort(bytes.length);
+        dest.writeBytes(bytes);
+    }
+
+    private static String readString(ByteBuf source, int length) {
+        if (length < 0 || source.readableBytes() < length) {
+            throw new IllegalArgumentException("Not enough bytes to read a string of length " + length);
+        }
+        String value = source.toString(source.readerIndex(), length, StandardCharsets.UTF_8);
+        source.skipBytes(length);
+        return value;
+    }
+
+}
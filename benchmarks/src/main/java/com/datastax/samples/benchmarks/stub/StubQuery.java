@@ -0,0 +1,391 @@
+package com.datastax.samples.benchmarks.stub;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Queue;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+import com.datastax.oss.protocol.internal.ProtocolConstants.DataType;
+import com.datastax.oss.protocol.internal.response.result.ColumnSpec;
+import com.datastax.oss.protocol.internal.response.result.DefaultRows;
+import com.datastax.oss.protocol.internal.response.result.RawType;
+import com.datastax.oss.protocol.internal.response.result.RowsMetadata;
+import com.datastax.samples.benchmarks.stub.StubSchema.Table;
+
+/**
+ * A statement parsed by the {@link StubCqlServer}: kind, variables, result metadata and
+ * the scripted rows returned when it is executed.
+ *
+ * Parsing is deliberately naive (regular expressions): it covers the statements of the
+ * samples and benchmarks, anything else is answered with an empty result.
+ */
+public class StubQuery {
+
+    /** What the statement does, drives the response. */
+    public enum Kind { SELECT, MUTATION, CONDITIONAL, USE, DDL, OTHER }
+
+    private static final Pattern SELECT = Pattern.compile(
+            "(?is)^\\s*SELECT\\s+(?:DISTINCT\\s+)?(.*?)\\s+FROM\\s+(?:\"?(\\w+)\"?\\.)?\"?(\\w+)\"?(.*)$");
+
+    private static final Pattern INSERT = Pattern.compile(
+            "(?is)^\\s*INSERT\\s+INTO\\s+(?:\"?(\\w+)\"?\\.)?\"?(\\w+)\"?\\s*\\(([^)]*)\\)\\s*VALUES\\s*\\(([^)]*)\\)(.*)$");
+
+    private static final Pattern UPDATE_DELETE = Pattern.compile(
+            "(?is)^\\s*(?:UPDATE|DELETE\\s+.*?\\s+FROM|DELETE\\s+FROM)\\s+(?:\"?(\\w+)\"?\\.)?\"?(\\w+)\"?(.*)$");
+
+    private static final Pattern USE = Pattern.compile("(?is)^\\s*USE\\s+\"?(\\w+)\"?\\s*;?\\s*$");
+
+    private static final Pattern DDL = Pattern.compile("(?is)^\\s*(CREATE|ALTER|DROP|TRUNCATE)\\s+.*");
+
+    private static final Pattern CONDITION = Pattern.compile("(?is).*\\sIF\\s+(NOT\\s+)?EXISTS.*|.*\\sIF\\s+\\w+\\s*=.*");
+
+    private static final Pattern LIMIT = Pattern.compile("(?is).*\\sLIMIT\\s+(\\d+).*");
+
+    private static final Pattern MARKER = Pattern.compile("\\?|:\\w+");
+
+    private static final Pattern COLUMN_RELATION = Pattern.compile(
+            "(?is).*?\"?(\\w+)\"?\\s*(?:=|<|>|<=|>=|!=)\\s*(?:\"?\\w+\"?\\s*[+-]\\s*)?$");
+
+    private static final Pattern TOKEN_RELATION = Pattern.compile(
+            "(?is).*TOKEN\\s*\\([^)]*\\)\\s*(?:=|<|>|<=|>=)\\s*$");
+
+    private static final Pattern COLUMN_IN = Pattern.compile("(?is).*?\"?(\\w+)\"?\\s+IN\\s*$");
+
+    private static final Pattern COLUMN_IN_LIST = Pattern.compile("(?is).*?\"?(\\w+)\"?\\s+IN\\s*\\([^)]*$");
+
+    private static final RawType INT     = RawType.PRIMITIVES.get(DataType.INT);
+    private static final RawType BIGINT  = RawType.PRIMITIVES.get(DataType.BIGINT);
+    private static final RawType VARCHAR = RawType.PRIMITIVES.get(DataType.VARCHAR);
+    private static final RawType BOOLEAN = RawType.PRIMITIVES.get(DataType.BOOLEAN);
+
+    private final byte[] id;
+
+    private final String cql;
+
+    private final Kind kind;
+
+    private final String keyspace;
+
+    private final RowsMetadata variables;
+
+    private final RowsMetadata resultMetadata;
+
+    /** Rows returned for SELECT (all pages), shared by all responses. */
+    private final List<List<ByteBuffer>> rows;
+
+    /** Update of a counter table, see {@link StubCqlServer#withCounterLatency}. */
+    private boolean counterUpdate;
+
+    private StubQuery(String cql, Kind kind, String keyspace, RowsMetadata variables,
+            RowsMetadata resultMetadata, List<List<ByteBuffer>> rows) {
+        this.id             = md5(keyspace + "/" + cql);
+        this.cql            = cql;
+        this.kind           = kind;
+        this.keyspace       = keyspace;
+        this.variables      = variables;
+        this.resultMetadata = resultMetadata;
+        this.rows           = rows;
+    }
+
+    /**
+     * Parse a statement.
+     *
+     * @param schema
+     *      known tables and types
+     * @param keyspace
+     *      keyspace of the connection (USE), can be null
+     * @param cql
+     *      statement
+     * @param resultSize
+     *      rows returned by a SELECT without LIMIT
+     * @param blobSize
+     *      size of blob values
+     * @return
+     *      parsed statement
+     */
+    public static StubQuery parse(StubSchema schema, String keyspace, String cql, int resultSize, int blobSize) {
+        Matcher m = USE.matcher(cql);
+        if (m.matches()) {
+            return new StubQuery(cql, Kind.USE, StubSchema.unquote(m.group(1)), empty(), empty(), Collections.emptyList());
+        }
+        if (DDL.matcher(cql).matches()) {
+            return new StubQuery(cql, Kind.DDL, keyspace, empty(), empty(), Collections.emptyList());
+        }
+        m = SELECT.matcher(cql);
+        if (m.matches()) {
+            return parseSelect(schema, keyspaceOf(m.group(2), keyspace), m, cql, resultSize, blobSize);
+        }
+        m = INSERT.matcher(cql);
+        if (m.matches()) {
+            Table table = table(schema, keyspaceOf(m.group(1), keyspace), m.group(2));
+            List<String> columns    = StubSchema.splitTopLevel(m.group(3));
+            List<String> values     = StubSchema.splitTopLevel(m.group(4));
+            List<ColumnSpec> specs  = new ArrayList<>();
+            for (int i = 0; i < values.size(); i++) {
+                if (MARKER.matcher(values.get(i)).matches()) {
+                    specs.add(table.columnSpec(StubSchema.unquote(columns.get(i)), specs.size()));
+                }
+            }
+            specs.addAll(variables(table, m.group(5), specs.size()));
+            return mutation(cql, table, specs);
+        }
+        m = UPDATE_DELETE.matcher(cql);
+        if (m.matches()) {
+            Table table = table(schema, keyspaceOf(m.group(1), keyspace), m.group(2));
+            StubQuery mutation = mutation(cql, table, variables(table, m.group(3), 0));
+            mutation.counterUpdate = table.getColumns().values().stream().anyMatch(type -> type.id == DataType.COUNTER);
+            return mutation;
+        }
+        return new StubQuery(cql, Kind.OTHER, keyspace, empty(), empty(), Collections.emptyList());
+    }
+
+    private static StubQuery parseSelect(StubSchema schema, String keyspace, Matcher m, String cql,
+            int resultSize, int blobSize) {
+        Table table = table(schema, keyspace, m.group(3));
+        List<ColumnSpec> result = new ArrayList<>();
+        if ("*".equals(m.group(1).trim())) {
+            for (String column : table.getColumns().keySet()) {
+                result.add(table.columnSpec(column, result.size()));
+            }
+        } else {
+            for (String selector : StubSchema.splitTopLevel(m.group(1))) {
+                result.add(selector(table, selector, result.size()));
+            }
+        }
+        List<ColumnSpec> variables = variables(table, m.group(4), 0);
+        int[] pkIndices = pkIndices(table, variables);
+        // A single row when the whole primary key is bound
+        int rowCount = pkIndices != null && variables.stream()
+                .map(variable -> variable.name)
+                .collect(Collectors.toSet())
+                .containsAll(table.getClusteringColumns()) ? 1 : resultSize;
+        Matcher limit = LIMIT.matcher(m.group(4));
+        if (limit.matches()) {
+            rowCount = Math.min(rowCount, Integer.parseInt(limit.group(1)));
+        }
+        List<List<ByteBuffer>> rows = new ArrayList<>(rowCount);
+        for (int i = 0; i < rowCount; i++) {
+            List<ByteBuffer> row = new ArrayList<>(result.size());
+            for (ColumnSpec column : result) {
+                row.add(StubValues.generate(column.type, column.name, i, blobSize));
+            }
+            rows.add(row);
+        }
+        return new StubQuery(cql, Kind.SELECT, table.getKeyspace(),
+                new RowsMetadata(variables, null, pkIndices, null),
+                new RowsMetadata(result, null, null, null), rows);
+    }
+
+    private static StubQuery mutation(String cql, Table table, List<ColumnSpec> variables) {
+        RowsMetadata vars = new RowsMetadata(variables, null, pkIndices(table, variables), null);
+        if (CONDITION.matcher(cql).matches()) {
+            // Lightweight transactions always apply
+            ColumnSpec applied = new ColumnSpec(table.getKeyspace(), table.getName(), "[applied]", 0, BOOLEAN);
+            return new StubQuery(cql, Kind.CONDITIONAL, table.getKeyspace(), vars,
+                    new RowsMetadata(List.of(applied), null, null, null),
+                    List.of(List.of(StubValues.generate(BOOLEAN, "[applied]", 0, 0))));
+        }
+        return new StubQuery(cql, Kind.MUTATION, table.getKeyspace(), vars, empty(), Collections.emptyList());
+    }
+
+    /**
+     * Bind markers after the table name: WHERE, SET, USING, IF and LIMIT clauses.
+     */
+    private static List<ColumnSpec> variables(Table table, String clauses, int firstIndex) {
+        List<ColumnSpec> specs = new ArrayList<>();
+        Matcher marker = MARKER.matcher(clauses);
+        while (marker.find()) {
+            String before = clauses.substring(0, marker.start());
+            String upper  = before.trim().toUpperCase();
+            int index = firstIndex + specs.size();
+            Matcher relation;
+            if (upper.endsWith("LIMIT") || upper.endsWith("TTL") || upper.endsWith("PER PARTITION LIMIT")) {
+                specs.add(new ColumnSpec(table.getKeyspace(), table.getName(), "[limit]", index, INT));
+            } else if (upper.endsWith("TIMESTAMP")) {
+                specs.add(new ColumnSpec(table.getKeyspace(), table.getName(), "[timestamp]", index, BIGINT));
+            } else if (TOKEN_RELATION.matcher(before).matches()) {
+                specs.add(new ColumnSpec(table.getKeyspace(), table.getName(), "partition key token", index, BIGINT));
+            } else if ((relation = COLUMN_IN.matcher(before)).matches()) {
+                ColumnSpec column = table.columnSpec(StubSchema.unquote(relation.group(1)), index);
+                specs.add(new ColumnSpec(column.ksName, column.tableName, column.name, index,
+                        new RawType.RawList(column.type)));
+            } else if ((relation = COLUMN_IN_LIST.matcher(before)).matches()
+                    || (relation = COLUMN_RELATION.matcher(before)).matches()) {
+                ColumnSpec column = table.columnSpec(StubSchema.unquote(relation.group(1)), index);
+                // counter increments are bound as bigint
+                RawType type = column.type.id == DataType.COUNTER ? BIGINT : column.type;
+                specs.add(new ColumnSpec(column.ksName, column.tableName, column.name, index, type));
+            } else {
+                specs.add(new ColumnSpec(table.getKeyspace(), table.getName(), "marker_" + index, index, VARCHAR));
+            }
+        }
+        return specs;
+    }
+
+    private static ColumnSpec selector(Table table, String selector, int index) {
+        String expression = selector.replaceAll("(?is)\\s+AS\\s+.*$", "").trim();
+        Matcher alias = Pattern.compile("(?is).*\\s+AS\\s+\"?(\\w+)\"?\\s*$").matcher(selector);
+        String lower = expression.toLowerCase();
+        RawType type;
+        String name;
+        if (lower.startsWith("count(")) {
+            type = BIGINT;
+            name = "count";
+        } else if (lower.startsWith("writetime(") || lower.startsWith("token(")) {
+            type = BIGINT;
+            name = lower.startsWith("token(") ? "system.token" + lower.substring(5) : lower;
+        } else if (lower.startsWith("ttl(")) {
+            type = INT;
+            name = lower;
+        } else if (table.getColumns().containsKey(StubSchema.unquote(expression))) {
+            name = StubSchema.unquote(expression);
+            type = table.getColumns().get(name);
+        } else {
+            type = VARCHAR;
+            name = lower;
+        }
+        if (alias.matches()) {
+            name = StubSchema.unquote(alias.group(1));
+        }
+        return new ColumnSpec(table.getKeyspace(), table.getName(), name, index, type);
+    }
+
+    /**
+     * Positions of the partition key columns in the variables, used by token aware routing.
+     */
+    private static int[] pkIndices(Table table, List<ColumnSpec> variables) {
+        int[] indices = new int[table.getPartitionKey().size()];
+        for (int i = 0; i < indices.length; i++) {
+            indices[i] = -1;
+            for (ColumnSpec variable : variables) {
+                if (variable.name.equals(table.getPartitionKey().get(i)) && !(variable.type instanceof RawType.RawList)) {
+                    indices[i] = variable.index;
+                    break;
+                }
+            }
+            if (indices[i] < 0) {
+                return null;
+            }
+        }
+        return indices;
+    }
+
+    private static Table table(StubSchema schema, String keyspace, String name) {
+        return schema.getTable(keyspace, name).orElseThrow(() ->
+                new IllegalArgumentException("unconfigured table " + name));
+    }
+
+    private static String keyspaceOf(String statementKeyspace, String connectionKeyspace) {
+        return statementKeyspace != null ? StubSchema.unquote(statementKeyspace) : connectionKeyspace;
+    }
+
+    private static RowsMetadata empty() {
+        return new RowsMetadata(Collections.emptyList(), null, null, null);
+    }
+
+    private static byte[] md5(String value) {
+        try {
+            return MessageDigest.getInstance("MD5").digest(value.getBytes(StandardCharsets.UTF_8));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("MD5 is not available", e);
+        }
+    }
+
+    /**
+     * Page of the scripted rows, the paging state is the offset of the next row.
+     *
+     * @param pageSize
+     *      page size requested by the driver, all rows when not positive
+     * @param pagingState
+     *      paging state from the previous page, can be null
+     * @param skipMetadata
+     *      if the driver already knows the result metadata (prepared statements)
+     * @return
+     *      rows
+     */
+    public DefaultRows page(int pageSize, ByteBuffer pagingState, boolean skipMetadata) {
+        int from = pagingState == null ? 0 : pagingState.getInt(pagingState.position());
+        int to   = pageSize <= 0 ? rows.size() : Math.min(rows.size(), from + pageSize);
+        ByteBuffer next = to < rows.size() ? ByteBuffer.allocate(4).putInt(0, to) : null;
+        Queue<List<ByteBuffer>> data = new ArrayDeque<>(Math.max(1, to - from));
+        for (int i = from; i < to; i++) {
+            data.add(rows.get(i));
+        }
+        RowsMetadata metadata = skipMetadata
+                ? new RowsMetadata(resultMetadata.columnCount, next, null, null)
+                : new RowsMetadata(resultMetadata.columnSpecs, next, null, null);
+        return new DefaultRows(metadata, data);
+    }
+
+    /**
+     * Getter accessor for attribute 'id'.
+     *
+     * @return current value of 'id'
+     */
+    public byte[] getId() {
+        return id;
+    }
+
+    /**
+     * Getter accessor for attribute 'cql'.
+     *
+     * @return current value of 'cql'
+     */
+    public String getCql() {
+        return cql;
+    }
+
+    /**
+     * Getter accessor for attribute 'kind'.
+     *
+     * @return current value of 'kind'
+     */
+    public Kind getKind() {
+        return kind;
+    }
+
+    /**
+     * Getter accessor for attribute 'keyspace'.
+     *
+     * @return current value of 'keyspace'
+     */
+    public String getKeyspace() {
+        return keyspace;
+    }
+
+    /**
+     * Getter accessor for attribute 'variables'.
+     *
+     * @return current value of 'variables'
+     */
+    public RowsMetadata getVariables() {
+        return variables;
+    }
+
+    /**
+     * Getter accessor for attribute 'counterUpdate'.
+     *
+     * @return current value of 'counterUpdate'
+     */
+    public boolean isCounterUpdate() {
+        return counterUpdate;
+    }
+
+    /**
+     * Getter accessor for attribute 'resultMetadata'.
+     *
+     * @return current value of 'resultMetadata'
+     */
+    public RowsMetadata getResultMetadata() {
+        return resultMetadata;
+    }
+
+}
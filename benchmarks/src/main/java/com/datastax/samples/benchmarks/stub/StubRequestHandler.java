@@ -0,0 +1,209 @@
+package com.datastax.samples.benchmarks.stub;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.datastax.oss.protocol.internal.Frame;
+import com.datastax.oss.protocol.internal.FrameCodec;
+import com.datastax.oss.protocol.internal.Message;
+import com.datastax.oss.protocol.internal.ProtocolConstants.ErrorCode;
+import com.datastax.oss.protocol.internal.request.Batch;
+import com.datastax.oss.protocol.internal.request.Execute;
+import com.datastax.oss.protocol.internal.request.Options;
+import com.datastax.oss.protocol.internal.request.Prepare;
+import com.datastax.oss.protocol.internal.request.Query;
+import com.datastax.oss.protocol.internal.request.Register;
+import com.datastax.oss.protocol.internal.request.Startup;
+import com.datastax.oss.protocol.internal.request.query.QueryOptions;
+import com.datastax.oss.protocol.internal.response.Error;
+import com.datastax.oss.protocol.internal.response.Ready;
+import com.datastax.oss.protocol.internal.response.Supported;
+import com.datastax.oss.protocol.internal.response.error.Unprepared;
+import com.datastax.oss.protocol.internal.response.result.Prepared;
+import com.datastax.oss.protocol.internal.response.result.SetKeyspace;
+import com.datastax.oss.protocol.internal.response.result.Void;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+
+/**
+ * One instance per connection: decodes request frames, computes the response
+ * and writes it back after the configured latency.
+ */
+public class StubRequestHandler extends ChannelInboundHandlerAdapter {
+
+    /** Logger for the class. */
+    private static Logger LOGGER = LoggerFactory.getLogger(StubRequestHandler.class);
+
+    private static final Map<String, List<String>> SUPPORTED = Map.of(
+            "CQL_VERSION", List.of("3.4.4"),
+            "COMPRESSION", List.of(),
+            "PROTOCOL_VERSIONS", List.of("3/v3", "4/v4"));
+
+    /** Batch type of the BATCH message. */
+    private static final byte LOGGED_BATCH = 0;
+
+    private final StubCqlServer server;
+
+    private final FrameCodec<ByteBuf> codec;
+
+    /** Keyspace set with 'USE' on this connection. */
+    private String keyspace;
+
+    /**
+     * Handler for a new connection.
+     *
+     * @param server
+     *      server holding schema, prepared statements and settings
+     * @param codec
+     *      server side frame codec
+     */
+    public StubRequestHandler(StubCqlServer server, FrameCodec<ByteBuf> codec) {
+        this.server = server;
+        this.codec  = codec;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void channelRead(ChannelHandlerContext ctx, Object msg) {
+        ByteBuf buffer = (ByteBuf) msg;
+        try {
+            int version = buffer.getByte(buffer.readerIndex()) & 0x7F;
+            if (version > StubCqlServer.PROTOCOL_VERSION) {
+                // Drivers negotiate down when they read this exact message
+                int streamId = buffer.getShort(buffer.readerIndex() + 2);
+                write(ctx, StubCqlServer.PROTOCOL_VERSION, streamId, new Error(ErrorCode.PROTOCOL_ERROR,
+                        "Invalid or unsupported protocol version (" + version + ")"), 0);
+                return;
+            }
+            Frame request = codec.decode(buffer);
+            server.onRequest();
+            Message response;
+            try {
+                response = respond(request.message);
+            } catch (IllegalArgumentException e) {
+                response = new Error(ErrorCode.INVALID, e.getMessage());
+            } catch (RuntimeException e) {
+                LOGGER.warn("Cannot answer {}", request.message, e);
+                response = new Error(ErrorCode.SERVER_ERROR, String.valueOf(e.getMessage()));
+            }
+            write(ctx, request.protocolVersion, request.streamId, response, latencyNanos(request.message));
+        } finally {
+            buffer.release();
+        }
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void channelReadComplete(ChannelHandlerContext ctx) {
+        // Responses without latency are flushed once per read, as the server does
+        ctx.flush();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause) {
+        LOGGER.warn("Closing stub connection {}", ctx.channel().remoteAddress(), cause);
+        ctx.close();
+    }
+
+    private Message respond(Message request) {
+        if (request instanceof Options) {
+            return new Supported(SUPPORTED);
+        }
+        if (request instanceof Startup || request instanceof Register) {
+            return new Ready();
+        }
+        if (request instanceof Query) {
+            Query query = (Query) request;
+            Optional<Message> system = server.getSystemTables().query(query.query);
+            if (system.isPresent()) {
+                return system.get();
+            }
+            return execute(server.query(keyspace(query.options), query.query), query.options, false);
+        }
+        if (request instanceof Prepare) {
+            Prepare prepare = (Prepare) request;
+            StubQuery query = server.prepare(prepare.keyspace != null ? prepare.keyspace : keyspace, prepare.cqlQuery);
+            return new Prepared(query.getId(), null, query.getVariables(), query.getResultMetadata());
+        }
+        if (request instanceof Execute) {
+            Execute execute = (Execute) request;
+            StubQuery query = server.getPrepared(execute.queryId);
+            if (query == null) {
+                return new Unprepared("Prepared query not found", execute.queryId);
+            }
+            return execute(query, execute.options, execute.options.skipMetadata);
+        }
+        if (request instanceof Batch) {
+            for (Object queryOrId : ((Batch) request).queriesOrIds) {
+                if (queryOrId instanceof byte[] && server.getPrepared((byte[]) queryOrId) == null) {
+                    return new Unprepared("Prepared query not found", (byte[]) queryOrId);
+                }
+            }
+            return Void.INSTANCE;
+        }
+        return new Error(ErrorCode.PROTOCOL_ERROR, "Unsupported request " + request);
+    }
+
+    private Message execute(StubQuery query, QueryOptions options, boolean skipMetadata) {
+        switch (query.getKind()) {
+            case USE:
+                keyspace = query.getKeyspace();
+                return new SetKeyspace(keyspace);
+            case DDL:
+                server.getSchema().apply(query.getCql());
+                return Void.INSTANCE;
+            case SELECT:
+            case CONDITIONAL:
+                return query.page(options.pageSize, options.pagingState, skipMetadata);
+            default:
+                return Void.INSTANCE;
+        }
+    }
+
+    private String keyspace(QueryOptions options) {
+        return options.keyspace != null ? options.keyspace : keyspace;
+    }
+
+    /**
+     * Latency applies to statements only, not to the connection handshake or system tables.
+     * Prepared counter updates also wait for their partition, LOGGED batches for the batchlog.
+     */
+    private long latencyNanos(Message request) {
+        if (request instanceof Query && server.getSystemTables().isSystemQuery(((Query) request).query)) {
+            return 0;
+        }
+        if (request instanceof Execute) {
+            Execute execute = (Execute) request;
+            StubQuery query = server.getPrepared(execute.queryId);
+            long counterDelay = query == null ? 0 : server.counterDelayNanos(query, execute.options.positionalValues);
+            return server.getLatency().toNanos() + counterDelay;
+        }
+        if (request instanceof Batch && ((Batch) request).type == LOGGED_BATCH) {
+            return server.getLatency().toNanos() + server.getBatchlogLatency().toNanos();
+        }
+        if (request instanceof Query || request instanceof Prepare || request instanceof Batch) {
+            return server.getLatency().toNanos();
+        }
+        return 0;
+    }
+
+    private void write(ChannelHandlerContext ctx, int version, int streamId, Message response, long delayNanos) {
+        Frame frame = Frame.forResponse(version, streamId, null,
+                Frame.NO_PAYLOAD, Collections.emptyList(), response);
+        if (delayNanos > 0) {
+            ctx.executor().schedule(() -> ctx.writeAndFlush(codec.encode(frame)), delayNanos, TimeUnit.NANOSECONDS);
+        } else {
+            ctx.write(codec.encode(frame));
+        }
+    }
+
+}
@@ -0,0 +1,379 @@
+package com.datastax.samples.benchmarks.stub;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import com.datastax.oss.protocol.internal.ProtocolConstants.DataType;
+import com.datastax.oss.protocol.internal.response.result.ColumnSpec;
+import com.datastax.oss.protocol.internal.response.result.RawType;
+import com.datastax.oss.protocol.internal.response.result.RawType.RawUdt;
+import com.datastax.samples.benchmarks.BenchmarkSchema;
+
+/**
+ * Tables and user defined types known by the {@link StubCqlServer}.
+ *
+ * The schema is learnt from plain CQL DDL, either scripted before start ({@link #killrvideo()})
+ * or received through QUERY requests: the stub never needs a hand written description
+ * of result sets.
+ */
+public class StubSchema {
+
+    private static final Pattern CREATE_KEYSPACE = Pattern.compile(
+            "(?is)^\\s*CREATE\\s+KEYSPACE\\s+(?:IF\\s+NOT\\s+EXISTS\\s+)?\"?(\\w+)\"?.*");
+
+    private static final Pattern CREATE_TYPE = Pattern.compile(
+            "(?is)^\\s*CREATE\\s+TYPE\\s+(?:IF\\s+NOT\\s+EXISTS\\s+)?(?:\"?(\\w+)\"?\\.)?\"?(\\w+)\"?\\s*(\\(.*)");
+
+    private static final Pattern CREATE_TABLE = Pattern.compile(
+            "(?is)^\\s*CREATE\\s+TABLE\\s+(?:IF\\s+NOT\\s+EXISTS\\s+)?(?:\"?(\\w+)\"?\\.)?\"?(\\w+)\"?\\s*(\\(.*)");
+
+    private static final Pattern PRIMARY_KEY = Pattern.compile(
+            "(?is)^PRIMARY\\s+KEY\\s*\\((.*)\\)$");
+
+    private static final Map<String, Integer> PRIMITIVES = new LinkedHashMap<>();
+
+    static {
+        PRIMITIVES.put("ascii",     DataType.ASCII);
+        PRIMITIVES.put("bigint",    DataType.BIGINT);
+        PRIMITIVES.put("blob",      DataType.BLOB);
+        PRIMITIVES.put("boolean",   DataType.BOOLEAN);
+        PRIMITIVES.put("counter",   DataType.COUNTER);
+        PRIMITIVES.put("date",      DataType.DATE);
+        PRIMITIVES.put("decimal",   DataType.DECIMAL);
+        PRIMITIVES.put("double",    DataType.DOUBLE);
+        PRIMITIVES.put("duration",  DataType.DURATION);
+        PRIMITIVES.put("float",     DataType.FLOAT);
+        PRIMITIVES.put("inet",      DataType.INET);
+        PRIMITIVES.put("int",       DataType.INT);
+        PRIMITIVES.put("smallint",  DataType.SMALLINT);
+        PRIMITIVES.put("text",      DataType.VARCHAR);
+        PRIMITIVES.put("time",      DataType.TIME);
+        PRIMITIVES.put("timestamp", DataType.TIMESTAMP);
+        PRIMITIVES.put("timeuuid",  DataType.TIMEUUID);
+        PRIMITIVES.put("tinyint",   DataType.TINYINT);
+        PRIMITIVES.put("uuid",      DataType.UUID);
+        PRIMITIVES.put("varchar",   DataType.VARCHAR);
+        PRIMITIVES.put("varint",    DataType.VARINT);
+    }
+
+    /** Keyspace names. */
+    private final Set<String> keyspaces = ConcurrentHashMap.newKeySet();
+
+    /** User defined types by 'keyspace.name'. */
+    private final Map<String, RawUdt> types = new ConcurrentHashMap<>();
+
+    /** Tables by 'keyspace.name'. */
+    private final Map<String, Table> tables = new ConcurrentHashMap<>();
+
+    /**
+     * Schema of the killrvideo keyspace, same tables as ExampleSchema in both sample modules.
+     *
+     * @return
+     *      scripted schema
+     */
+    public static StubSchema killrvideo() {
+        StubSchema schema = new StubSchema();
+        schema.apply(BenchmarkSchema.CREATE_KEYSPACE);
+        BenchmarkSchema.CREATE_SCHEMA.forEach(schema::apply);
+        return schema;
+    }
+
+    /**
+     * Learn from a DDL statement (CREATE KEYSPACE, TYPE or TABLE), other statements are ignored.
+     *
+     * @param cql
+     *      statement
+     * @return
+     *      if the statement changed the schema
+     */
+    public boolean apply(String cql) {
+        Matcher m = CREATE_KEYSPACE.matcher(cql);
+        if (m.matches()) {
+            return keyspaces.add(m.group(1).toLowerCase());
+        }
+        m = CREATE_TYPE.matcher(cql);
+        if (m.matches()) {
+            String keyspace = keyspaceOrDefault(m.group(1));
+            Map<String, RawType> fields = new LinkedHashMap<>();
+            for (String field : splitTopLevel(enclosed(m.group(3)))) {
+                String[] nameAndType = field.trim().split("\\s+", 2);
+                fields.put(unquote(nameAndType[0]), parseType(keyspace, nameAndType[1]));
+            }
+            String name = unquote(m.group(2));
+            types.putIfAbsent(keyspace + "." + name, new RawUdt(keyspace, name, fields));
+            return true;
+        }
+        m = CREATE_TABLE.matcher(cql);
+        if (m.matches()) {
+            String keyspace = keyspaceOrDefault(m.group(1));
+            Table table = parseTable(keyspace, unquote(m.group(2)), enclosed(m.group(3)));
+            tables.putIfAbsent(keyspace + "." + table.getName(), table);
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Find a table.
+     *
+     * @param keyspace
+     *      keyspace from the statement or the connection, can be null
+     * @param name
+     *      table name
+     * @return
+     *      table if known
+     */
+    public Optional<Table> getTable(String keyspace, String name) {
+        String tableName = unquote(name);
+        if (keyspace != null) {
+            return Optional.ofNullable(tables.get(unquote(keyspace) + "." + tableName));
+        }
+        return tables.values().stream().filter(t -> t.getName().equals(tableName)).findFirst();
+    }
+
+    /**
+     * Keyspaces, listed in system_schema.keyspaces.
+     *
+     * @return
+     *      keyspace names
+     */
+    public Set<String> getKeyspaces() {
+        return Collections.unmodifiableSet(keyspaces);
+    }
+
+    /**
+     * User defined types, listed in system_schema.types.
+     *
+     * @return
+     *      types
+     */
+    public Collection<RawUdt> getTypes() {
+        return Collections.unmodifiableCollection(types.values());
+    }
+
+    /**
+     * Parse a CQL type as 'map&lt;text,frozen&lt;video_format&gt;&gt;'.
+     *
+     * @param keyspace
+     *      keyspace of user defined types
+     * @param cql
+     *      type
+     * @return
+     *      protocol type
+     */
+    public RawType parseType(String keyspace, String cql) {
+        String type = cql.trim();
+        int open = type.indexOf('<');
+        if (open < 0) {
+            Integer primitive = PRIMITIVES.get(type.toLowerCase());
+            if (primitive != null) {
+                return RawType.PRIMITIVES.get(primitive);
+            }
+            RawUdt udt = types.get(keyspace + "." + unquote(type));
+            if (udt == null) {
+                throw new IllegalArgumentException("Unknown type '" + type + "' in keyspace " + keyspace);
+            }
+            return udt;
+        }
+        String container = type.substring(0, open).trim().toLowerCase();
+        List<String> args = splitTopLevel(type.substring(open + 1, type.lastIndexOf('>')));
+        switch (container) {
+            case "frozen":
+                return parseType(keyspace, args.get(0));
+            case "list":
+                return new RawType.RawList(parseType(keyspace, args.get(0)));
+            case "set":
+                return new RawType.RawSet(parseType(keyspace, args.get(0)));
+            case "map":
+                return new RawType.RawMap(parseType(keyspace, args.get(0)), parseType(keyspace, args.get(1)));
+            default:
+                throw new IllegalArgumentException("Unsupported type '" + cql + "'");
+        }
+    }
+
+    private Table parseTable(String keyspace, String name, String body) {
+        Map<String, RawType> columns = new LinkedHashMap<>();
+        List<String> partitionKey = new ArrayList<>();
+        List<String> clusteringColumns = new ArrayList<>();
+        for (String definition : splitTopLevel(body)) {
+            String def = definition.trim();
+            Matcher pk = PRIMARY_KEY.matcher(def);
+            if (pk.matches()) {
+                List<String> primaryKey = splitTopLevel(pk.group(1));
+                String first = primaryKey.get(0).trim();
+                if (first.startsWith("(")) {
+                    first = first.substring(1, first.length() - 1);
+                }
+                for (String column : splitTopLevel(first)) {
+                    partitionKey.add(unquote(column));
+                }
+                for (String column : primaryKey.subList(1, primaryKey.size())) {
+                    clusteringColumns.add(unquote(column));
+                }
+                continue;
+            }
+            String[] nameAndType = def.split("\\s+", 2);
+            String column = unquote(nameAndType[0]);
+            String type = nameAndType[1].replaceAll("(?i)\\s+(STATIC|PRIMARY\\s+KEY)\\b", "");
+            if (nameAndType[1].toUpperCase().contains("PRIMARY KEY")) {
+                partitionKey.add(column);
+            }
+            columns.put(column, parseType(keyspace, type));
+        }
+        return new Table(keyspace, name, columns, partitionKey, clusteringColumns);
+    }
+
+    private String keyspaceOrDefault(String keyspace) {
+        if (keyspace != null) {
+            return unquote(keyspace);
+        }
+        // DDL sent after 'USE': only one keyspace in the samples
+        return keyspaces.isEmpty() ? BenchmarkSchema.KEYSPACE_NAME : keyspaces.iterator().next();
+    }
+
+    /**
+     * Split on commas which are not nested in '&lt;&gt;' or '()'.
+     */
+    static List<String> splitTopLevel(String expression) {
+        List<String> parts = new ArrayList<>();
+        int depth = 0;
+        int start = 0;
+        for (int i = 0; i < expression.length(); i++) {
+            char c = expression.charAt(i);
+            if (c == '<' || c == '(') {
+                depth++;
+            } else if (c == '>' || c == ')') {
+                depth--;
+            } else if (c == ',' && depth == 0) {
+                parts.add(expression.substring(start, i).trim());
+                start = i + 1;
+            }
+        }
+        if (start < expression.length()) {
+            parts.add(expression.substring(start).trim());
+        }
+        return parts;
+    }
+
+    /**
+     * Content of the parenthesis opened at the first character, options after it are ignored.
+     */
+    static String enclosed(String expression) {
+        int depth = 0;
+        for (int i = 0; i < expression.length(); i++) {
+            char c = expression.charAt(i);
+            if (c == '(') {
+                depth++;
+            } else if (c == ')' && --depth == 0) {
+                return expression.substring(1, i);
+            }
+        }
+        throw new IllegalArgumentException("Unbalanced parenthesis in '" + expression + "'");
+    }
+
+    static String unquote(String identifier) {
+        String id = identifier.trim();
+        if (id.length() > 1 && id.startsWith("\"") && id.endsWith("\"")) {
+            return id.substring(1, id.length() - 1);
+        }
+        return id.toLowerCase();
+    }
+
+    /**
+     * Columns and partition key of a table.
+     */
+    public static class Table {
+
+        private final String keyspace;
+
+        private final String name;
+
+        private final Map<String, RawType> columns;
+
+        private final List<String> partitionKey;
+
+        private final List<String> clusteringColumns;
+
+        Table(String keyspace, String name, Map<String, RawType> columns,
+                List<String> partitionKey, List<String> clusteringColumns) {
+            this.keyspace          = keyspace;
+            this.name              = name;
+            this.columns           = columns;
+            this.partitionKey      = partitionKey;
+            this.clusteringColumns = clusteringColumns;
+        }
+
+        /**
+         * Column specification as expected in rows and variables metadata.
+         *
+         * @param column
+         *      column name
+         * @param index
+         *      position in the metadata
+         * @return
+         *      column specification
+         */
+        public ColumnSpec columnSpec(String column, int index) {
+            RawType type = columns.get(column);
+            if (type == null) {
+                throw new IllegalArgumentException("Undefined column name " + column + " in table " + name);
+            }
+            return new ColumnSpec(keyspace, name, column, index, type);
+        }
+
+        /**
+         * Getter accessor for attribute 'keyspace'.
+         *
+         * @return current value of 'keyspace'
+         */
+        public String getKeyspace() {
+            return keyspace;
+        }
+
+        /**
+         * Getter accessor for attribute 'name'.
+         *
+         * @return current value of 'name'
+         */
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * Getter accessor for attribute 'columns'.
+         *
+         * @return current value of 'columns'
+         */
+        public Map<String, RawType> getColumns() {
+            return columns;
+        }
+
+        /**
+         * Getter accessor for attribute 'partitionKey'.
+         *
+         * @return current value of 'partitionKey'
+         */
+        public List<String> getPartitionKey() {
+            return partitionKey;
+        }
+
+        /**
+         * Getter accessor for attribute 'clusteringColumns'.
+         *
+         * @return current value of 'clusteringColumns'
+         */
+        public List<String> getClusteringColumns() {
+            return clusteringColumns;
+        }
+    }
+
+}
@@ -0,0 +1,240 @@
+package com.datastax.samples.benchmarks.stub;
+
+import java.net.InetAddress;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Queue;
+import java.util.UUID;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+import com.datastax.oss.protocol.internal.Message;
+import com.datastax.oss.protocol.internal.ProtocolConstants.DataType;
+import com.datastax.oss.protocol.internal.ProtocolConstants.ErrorCode;
+import com.datastax.oss.protocol.internal.response.Error;
+import com.datastax.oss.protocol.internal.response.result.ColumnSpec;
+import com.datastax.oss.protocol.internal.response.result.DefaultRows;
+import com.datastax.oss.protocol.internal.response.result.RawType;
+import com.datastax.oss.protocol.internal.response.result.RawType.RawList;
+import com.datastax.oss.protocol.internal.response.result.RawType.RawMap;
+import com.datastax.oss.protocol.internal.response.result.RawType.RawSet;
+import com.datastax.oss.protocol.internal.response.result.RawType.RawUdt;
+import com.datastax.oss.protocol.internal.response.result.RowsMetadata;
+
+/**
+ * Scripted system tables read by the drivers at startup (control connection).
+ *
+ * The stub is a single node cluster owning the whole ring. Only keyspaces and user defined
+ * types are exposed in system_schema (tables are not needed to run prepared statements), other
+ * system tables are empty.
+ */
+public class StubSystemTables {
+
+    private static final RawType TEXT      = RawType.PRIMITIVES.get(DataType.VARCHAR);
+    private static final RawType INET      = RawType.PRIMITIVES.get(DataType.INET);
+    private static final RawType UUID_TYPE = RawType.PRIMITIVES.get(DataType.UUID);
+    private static final RawType BOOLEAN   = RawType.PRIMITIVES.get(DataType.BOOLEAN);
+
+    private static final Pattern SYSTEM_QUERY = Pattern.compile(
+            "(?is).*\\sFROM\\s+(system|system_schema|system_virtual_schema|system_auth|system_distributed|system_traces)\\..*");
+
+    private static final Map<Integer, String> CQL_TYPES = new LinkedHashMap<>();
+
+    static {
+        CQL_TYPES.put(DataType.ASCII,     "ascii");
+        CQL_TYPES.put(DataType.BIGINT,    "bigint");
+        CQL_TYPES.put(DataType.BLOB,      "blob");
+        CQL_TYPES.put(DataType.BOOLEAN,   "boolean");
+        CQL_TYPES.put(DataType.COUNTER,   "counter");
+        CQL_TYPES.put(DataType.DATE,      "date");
+        CQL_TYPES.put(DataType.DECIMAL,   "decimal");
+        CQL_TYPES.put(DataType.DOUBLE,    "double");
+        CQL_TYPES.put(DataType.DURATION,  "duration");
+        CQL_TYPES.put(DataType.FLOAT,     "float");
+        CQL_TYPES.put(DataType.INET,      "inet");
+        CQL_TYPES.put(DataType.INT,       "int");
+        CQL_TYPES.put(DataType.SMALLINT,  "smallint");
+        CQL_TYPES.put(DataType.TIME,      "time");
+        CQL_TYPES.put(DataType.TIMESTAMP, "timestamp");
+        CQL_TYPES.put(DataType.TIMEUUID,  "timeuuid");
+        CQL_TYPES.put(DataType.TINYINT,   "tinyint");
+        CQL_TYPES.put(DataType.UUID,      "uuid");
+        CQL_TYPES.put(DataType.VARCHAR,   "text");
+        CQL_TYPES.put(DataType.VARINT,    "varint");
+    }
+
+    /** Stable identifiers, drivers compare schema versions to check agreement. */
+    private static final ByteBuffer HOST_ID        = uuid(UUID.nameUUIDFromBytes("stub-host".getBytes()));
+    private static final ByteBuffer SCHEMA_VERSION = uuid(UUID.nameUUIDFromBytes("stub-schema".getBytes()));
+
+    private final StubSchema schema;
+
+    private final InetAddress address;
+
+    private final String datacenter;
+
+    /**
+     * Scripted system tables for a node.
+     *
+     * @param schema
+     *      keyspaces and types
+     * @param address
+     *      address of the node
+     * @param datacenter
+     *      datacenter of the node
+     */
+    public StubSystemTables(StubSchema schema, InetAddress address, String datacenter) {
+        this.schema     = schema;
+        this.address    = address;
+        this.datacenter = datacenter;
+    }
+
+    /**
+     * Answer a query on a system keyspace.
+     *
+     * @param cql
+     *      query
+     * @return
+     *      rows or error, empty if the query is not on a system keyspace
+     */
+    public Optional<Message> query(String cql) {
+        if (!isSystemQuery(cql)) {
+            return Optional.empty();
+        }
+        String query = cql.toLowerCase().replaceAll("\\s+", " ");
+        if (query.contains(" from system.local")) {
+            return Optional.of(local());
+        }
+        if (query.contains(" from system.peers_v2")) {
+            // Same answer as Cassandra 3.x, drivers fall back to system.peers
+            return Optional.of(new Error(ErrorCode.INVALID, "unconfigured table peers_v2"));
+        }
+        if (query.contains(" from system_schema.keyspaces")) {
+            return Optional.of(keyspaces());
+        }
+        if (query.contains(" from system_schema.types")) {
+            return Optional.of(types());
+        }
+        return Optional.of(rows(Collections.emptyList(), Collections.emptyList()));
+    }
+
+    /**
+     * Tell if a query reads a system keyspace.
+     *
+     * @param cql
+     *      query
+     * @return
+     *      if the query is answered by {@link #query(String)}
+     */
+    public boolean isSystemQuery(String cql) {
+        return SYSTEM_QUERY.matcher(cql).matches();
+    }
+
+    private DefaultRows local() {
+        Map<String, RawType> columns = new LinkedHashMap<>();
+        List<ByteBuffer> row = new ArrayList<>();
+        column(columns, row, "key",                     TEXT, StubValues.text("local"));
+        column(columns, row, "bootstrapped",            TEXT, StubValues.text("COMPLETED"));
+        column(columns, row, "broadcast_address",       INET, ByteBuffer.wrap(address.getAddress()));
+        column(columns, row, "cluster_name",            TEXT, StubValues.text("Stub Cluster"));
+        column(columns, row, "cql_version",             TEXT, StubValues.text("3.4.4"));
+        column(columns, row, "data_center",             TEXT, StubValues.text(datacenter));
+        column(columns, row, "host_id",                 UUID_TYPE, HOST_ID);
+        column(columns, row, "listen_address",          INET, ByteBuffer.wrap(address.getAddress()));
+        column(columns, row, "native_protocol_version", TEXT, StubValues.text("4"));
+        column(columns, row, "partitioner",             TEXT, StubValues.text("org.apache.cassandra.dht.Murmur3Partitioner"));
+        column(columns, row, "rack",                    TEXT, StubValues.text("rack1"));
+        column(columns, row, "release_version",         TEXT, StubValues.text("3.11.10"));
+        column(columns, row, "rpc_address",             INET, ByteBuffer.wrap(address.getAddress()));
+        column(columns, row, "schema_version",          UUID_TYPE, SCHEMA_VERSION);
+        column(columns, row, "tokens",                  new RawSet(TEXT),
+                StubValues.collectionOf(List.of(StubValues.text("0"))));
+        return rows(specs("system", "local", columns), List.of(row));
+    }
+
+    private DefaultRows keyspaces() {
+        Map<String, RawType> columns = new LinkedHashMap<>();
+        columns.put("keyspace_name", TEXT);
+        columns.put("durable_writes", BOOLEAN);
+        columns.put("replication", new RawMap(TEXT, TEXT));
+        Map<ByteBuffer, ByteBuffer> replication = new LinkedHashMap<>();
+        replication.put(StubValues.text("class"), StubValues.text("org.apache.cassandra.locator.SimpleStrategy"));
+        replication.put(StubValues.text("replication_factor"), StubValues.text("1"));
+        List<List<ByteBuffer>> data = schema.getKeyspaces().stream()
+                .map(keyspace -> List.of(
+                        StubValues.text(keyspace),
+                        StubValues.generate(BOOLEAN, "durable_writes", 0, 0),
+                        StubValues.mapOf(replication)))
+                .collect(Collectors.toList());
+        return rows(specs("system_schema", "keyspaces", columns), data);
+    }
+
+    private DefaultRows types() {
+        Map<String, RawType> columns = new LinkedHashMap<>();
+        columns.put("keyspace_name", TEXT);
+        columns.put("type_name", TEXT);
+        columns.put("field_names", new RawList(TEXT));
+        columns.put("field_types", new RawList(TEXT));
+        List<List<ByteBuffer>> data = new ArrayList<>();
+        for (RawUdt udt : schema.getTypes()) {
+            List<ByteBuffer> names = new ArrayList<>();
+            List<ByteBuffer> types = new ArrayList<>();
+            udt.fields.forEach((name, type) -> {
+                names.add(StubValues.text(name));
+                types.add(StubValues.text(cqlType(type)));
+            });
+            data.add(List.of(
+                    StubValues.text(udt.keyspace),
+                    StubValues.text(udt.typeName),
+                    StubValues.collectionOf(names),
+                    StubValues.collectionOf(types)));
+        }
+        return rows(specs("system_schema", "types", columns), data);
+    }
+
+    private static ByteBuffer uuid(UUID uuid) {
+        return ByteBuffer.allocate(16)
+                .putLong(0, uuid.getMostSignificantBits())
+                .putLong(8, uuid.getLeastSignificantBits());
+    }
+
+    private static String cqlType(RawType type) {
+        if (type instanceof RawList) {
+            return "list<" + cqlType(((RawList) type).elementType) + ">";
+        }
+        if (type instanceof RawSet) {
+            return "set<" + cqlType(((RawSet) type).elementType) + ">";
+        }
+        if (type instanceof RawMap) {
+            return "map<" + cqlType(((RawMap) type).keyType) + ", " + cqlType(((RawMap) type).valueType) + ">";
+        }
+        if (type instanceof RawUdt) {
+            return "frozen<" + ((RawUdt) type).typeName + ">";
+        }
+        return CQL_TYPES.getOrDefault(type.id, "blob");
+    }
+
+    private static void column(Map<String, RawType> columns, List<ByteBuffer> row,
+            String name, RawType type, ByteBuffer value) {
+        columns.put(name, type);
+        row.add(value);
+    }
+
+    private static List<ColumnSpec> specs(String keyspace, String table, Map<String, RawType> columns) {
+        List<ColumnSpec> specs = new ArrayList<>();
+        columns.forEach((name, type) -> specs.add(new ColumnSpec(keyspace, table, name, specs.size(), type)));
+        return specs;
+    }
+
+    private static DefaultRows rows(List<ColumnSpec> specs, List<List<ByteBuffer>> data) {
+        Queue<List<ByteBuffer>> queue = new ArrayDeque<>(data);
+        return new DefaultRows(new RowsMetadata(specs, null, null, null), queue);
+    }
+
+}
@@ -0,0 +1,204 @@
+package com.datastax.samples.benchmarks.stub;
+
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import com.datastax.oss.protocol.internal.ProtocolConstants.DataType;
+import com.datastax.oss.protocol.internal.response.result.RawType;
+import com.datastax.oss.protocol.internal.response.result.RawType.RawList;
+import com.datastax.oss.protocol.internal.response.result.RawType.RawMap;
+import com.datastax.oss.protocol.internal.response.result.RawType.RawSet;
+import com.datastax.oss.protocol.internal.response.result.RawType.RawUdt;
+
+/**
+ * Serialized values (protocol v4 layout) generated for the scripted result sets.
+ *
+ * Values are deterministic for a (column, row) pair, they are computed once per statement
+ * and then shared by all responses.
+ */
+public class StubValues {
+
+    /** Elements in generated lists and sets. */
+    private static final int COLLECTION_SIZE = 3;
+
+    /** 2020-01-01T00:00:00Z, timestamps are incremented by one second per row. */
+    private static final long EPOCH_MILLIS = 1577836800000L;
+
+    /** Days between 1970-01-01 and 2020-01-01. */
+    private static final int EPOCH_DAYS = 18262;
+
+    /**
+     * Hide default constructor
+     */
+    private StubValues() {}
+
+    /**
+     * Generate a value.
+     *
+     * @param type
+     *      column type
+     * @param column
+     *      column name, part of generated text values
+     * @param row
+     *      row index
+     * @param blobSize
+     *      size of blob values
+     * @return
+     *      serialized value
+     */
+    public static ByteBuffer generate(RawType type, String column, int row, int blobSize) {
+        if (type instanceof RawList) {
+            return collection(((RawList) type).elementType, column, row, blobSize);
+        }
+        if (type instanceof RawSet) {
+            return collection(((RawSet) type).elementType, column, row, blobSize);
+        }
+        if (type instanceof RawMap) {
+            RawMap map = (RawMap) type;
+            return serializeElements(1, List.of(
+                    generate(map.keyType, column, row, blobSize),
+                    generate(map.valueType, column, row, blobSize)));
+        }
+        if (type instanceof RawUdt) {
+            List<ByteBuffer> fields = new ArrayList<>();
+            ((RawUdt) type).fields.forEach((name, fieldType) ->
+                    fields.add(generate(fieldType, name, row, blobSize)));
+            return concatWithLength(fields, 0);
+        }
+        switch (type.id) {
+            case DataType.ASCII:
+            case DataType.VARCHAR:
+                return ByteBuffer.wrap((column + "_" + row).getBytes(StandardCharsets.UTF_8));
+            case DataType.BIGINT:
+            case DataType.COUNTER:
+            case DataType.TIME:
+                return ByteBuffer.allocate(8).putLong(0, row);
+            case DataType.TIMESTAMP:
+                return ByteBuffer.allocate(8).putLong(0, EPOCH_MILLIS + row * 1000L);
+            case DataType.INT:
+                return ByteBuffer.allocate(4).putInt(0, row);
+            case DataType.DATE:
+                // unsigned days, epoch is 2^31
+                return ByteBuffer.allocate(4).putInt(0, Integer.MIN_VALUE + EPOCH_DAYS + row);
+            case DataType.SMALLINT:
+                return ByteBuffer.allocate(2).putShort(0, (short) row);
+            case DataType.TINYINT:
+                return ByteBuffer.allocate(1).put(0, (byte) row);
+            case DataType.BOOLEAN:
+                return ByteBuffer.allocate(1).put(0, (byte) 1);
+            case DataType.DOUBLE:
+                return ByteBuffer.allocate(8).putDouble(0, row);
+            case DataType.FLOAT:
+                return ByteBuffer.allocate(4).putFloat(0, row);
+            case DataType.UUID:
+                // version 4, IETF variant
+                return uuid((((long) column.hashCode()) << 32) | 0x4000L, row);
+            case DataType.TIMEUUID:
+                // version 1, IETF variant
+                return uuid((((long) column.hashCode()) << 32) | 0x1000L, row);
+            case DataType.BLOB:
+                byte[] content = new byte[blobSize];
+                if (blobSize > 0) {
+                    content[0] = (byte) row;
+                }
+                return ByteBuffer.wrap(content);
+            case DataType.INET:
+                return ByteBuffer.wrap(new byte[] {127, 0, 0, 1});
+            case DataType.VARINT:
+                return ByteBuffer.wrap(BigInteger.valueOf(row).toByteArray());
+            case DataType.DECIMAL:
+                byte[] unscaled = BigInteger.valueOf(row).toByteArray();
+                return ByteBuffer.allocate(4 + unscaled.length).putInt(0).put(unscaled).flip();
+            case DataType.DURATION:
+                // months, days and nanoseconds as zero vints
+                return ByteBuffer.wrap(new byte[3]);
+            default:
+                return ByteBuffer.allocate(0);
+        }
+    }
+
+    /**
+     * Serialize values as text (system tables).
+     *
+     * @param value
+     *      text value
+     * @return
+     *      serialized value
+     */
+    public static ByteBuffer text(String value) {
+        return value == null ? null : ByteBuffer.wrap(value.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Serialize a list or set of already serialized elements.
+     *
+     * @param elements
+     *      elements
+     * @return
+     *      serialized collection
+     */
+    public static ByteBuffer collectionOf(List<ByteBuffer> elements) {
+        return serializeElements(elements.size(), elements);
+    }
+
+    /**
+     * Serialize a map of already serialized keys and values.
+     *
+     * @param entries
+     *      entries
+     * @return
+     *      serialized map
+     */
+    public static ByteBuffer mapOf(Map<ByteBuffer, ByteBuffer> entries) {
+        List<ByteBuffer> elements = new ArrayList<>();
+        entries.forEach((key, value) -> {
+            elements.add(key);
+            elements.add(value);
+        });
+        return serializeElements(entries.size(), elements);
+    }
+
+    private static ByteBuffer collection(RawType elementType, String column, int row, int blobSize) {
+        List<ByteBuffer> elements = new ArrayList<>();
+        for (int i = 0; i < COLLECTION_SIZE; i++) {
+            elements.add(generate(elementType, column, row * COLLECTION_SIZE + i, blobSize));
+        }
+        return collectionOf(elements);
+    }
+
+    private static ByteBuffer uuid(long msb, int row) {
+        return ByteBuffer.allocate(16).putLong(0, msb).putLong(8, 0x8000000000000000L | row);
+    }
+
+    private static ByteBuffer serializeElements(int count, List<ByteBuffer> elements) {
+        List<ByteBuffer> all = new ArrayList<>();
+        all.add(ByteBuffer.allocate(4).putInt(0, count));
+        all.addAll(elements);
+        return concatWithLength(all, 1);
+    }
+
+    /**
+     * Write [int length][bytes] for each value, the first 'raw' values are written as is.
+     */
+    private static ByteBuffer concatWithLength(List<ByteBuffer> values, int raw) {
+        int size = 0;
+        for (int i = 0; i < values.size(); i++) {
+            size += values.get(i).remaining() + (i < raw ? 0 : 4);
+        }
+        ByteBuffer result = ByteBuffer.allocate(size);
+        for (int i = 0; i < values.size(); i++) {
+            ByteBuffer value = values.get(i).duplicate();
+            if (i >= raw) {
+                result.putInt(value.remaining());
+            }
+            result.put(value);
+        }
+        result.flip();
+        return result;
+    }
+
+}
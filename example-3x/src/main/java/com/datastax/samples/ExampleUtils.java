@@ -26,14 +26,16 @@ public class ExampleUtils implements ExampleSchema {
 
     private static Logger LOGGER = LoggerFactory.getLogger(ExampleUtils.class);
     
+    /**
+     * Shared session on keyspace killrvideo, see {@link SessionManager}.
+     */
     public static Session connect(Cluster cluster) {
-        cluster = Cluster.builder().addContactPoint("127.0.0.1").build();
-        Session session = cluster.connect(KEYSPACE_NAME);
-        LOGGER.info("[OK] Connected to Keyspace '{}'", KEYSPACE_NAME);
-        return session;
+        return SessionManager.getSession();
     }
     
     public static void closeSessionAndCluster(Session session, Cluster cluster) {
+        // Cluster may not be known by the caller, it is the one owning the session
+        if (cluster == null && session != null) cluster = session.getCluster();
         if (session != null) session.close();
         if (cluster != null) cluster.close();
         LOGGER.info("[OK] Cluster and Session are now closed");
@@ -58,7 +60,7 @@ public class ExampleUtils implements ExampleSchema {
      *       'replication_factor': '1'}  
      * AND durable_writes = true;
      */
-    private static Statement createKeyspaceSimpleStrategy(String keyspaceName, int replicationFactor) {
+    public static Statement createKeyspaceSimpleStrategy(String keyspaceName, int replicationFactor) {
         return SchemaBuilder.createKeyspace(keyspaceName)
                 .ifNotExists().with().durableWrites(true)
                 .replication(ImmutableMap.of(
@@ -82,9 +84,8 @@ public class ExampleUtils implements ExampleSchema {
     * AND durable_writes = true;
     */ 
     public static void createKeyspace() {
-        try(Cluster cluster = Cluster.builder().addContactPoint("127.0.0.1").build()) {
-            createKeyspace(cluster);
-        }
+        // Keyspace is bootstrapped by the shared session, the session is reused by connect()
+        SessionManager.getSession();
     }
     
     /**
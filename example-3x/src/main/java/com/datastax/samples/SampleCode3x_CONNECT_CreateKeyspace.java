@@ -34,6 +34,7 @@ public class SampleCode3x_CONNECT_CreateKeyspace implements ExampleSchema {
         LOGGER.info("Starting 'CreateKeyspace' sample...");
         
         ExampleUtils.createKeyspace();
+        SessionManager.closeAll();
         System.exit(0);
     }
      
@@ -0,0 +1,255 @@
+package com.datastax.samples;
+
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.datastax.driver.core.Cluster;
+import com.datastax.driver.core.Metadata;
+import com.datastax.driver.core.Session;
+
+/**
+ * Holds the {@link Cluster} and {@link Session} used by the samples.
+ *
+ * Cluster (control connection, metadata, token map) and Session (connection pools)
+ * are heavy objects: they should be created ONCE and reused for the whole life of
+ * the application. Here a Cluster is created per profile and a Session per profile
+ * and keyspace.
+ *
+ * The keyspace is bootstrapped on the session itself: the session is opened without
+ * keyspace, the keyspace is created only if it is not found in the metadata and the
+ * session then switches to it. No throwaway Cluster or Session is needed.
+ */
+public class SessionManager implements ExampleSchema {
+
+    /** Logger for the class. */
+    private static Logger LOGGER = LoggerFactory.getLogger(SessionManager.class);
+
+    /** Profile used when nothing is specified: local node 127.0.0.1. */
+    public static final String DEFAULT_PROFILE = "default";
+
+    /** Set this system property to true to profile the startup of the sessions, see {@link StartupProfiler}. */
+    public static final String STARTUP_PROFILING_PROPERTY = "samples.startupProfiling";
+
+    /** How to build a cluster for each profile. */
+    private static final Map<String, Supplier<Cluster.Builder>> PROFILES = new ConcurrentHashMap<>();
+
+    /** Clusters, one per profile. */
+    private static final Map<String, Cluster> CLUSTERS = new ConcurrentHashMap<>();
+
+    /** Sessions, one per profile and keyspace. */
+    private static final Map<String, Session> SESSIONS = new ConcurrentHashMap<>();
+
+    /** Time spent to get each session ready in millis (including keyspace bootstrap). */
+    private static final Map<String, Long> STARTUP_TIMES = new ConcurrentHashMap<>();
+
+    /** Startup breakdown of each session, see {@link StartupProfiler}. */
+    private static final Map<String, StartupProfiler> STARTUP_PROFILES = new ConcurrentHashMap<>();
+
+    static {
+        registerProfile(DEFAULT_PROFILE, () -> Cluster.builder().addContactPoint("127.0.0.1"));
+    }
+
+    /** Hide default constructor. */
+    private SessionManager() {}
+
+    /**
+     * Define how to build the cluster of a profile.
+     *
+     * @param profile
+     *      profile name
+     * @param builder
+     *      cluster builder
+     */
+    public static void registerProfile(String profile, Cluster.Builder builder) {
+        registerProfile(profile, () -> builder);
+    }
+
+    /**
+     * Define how to build the cluster of a profile, the builder is created when the cluster
+     * is first needed (contact points resolution is then part of the startup profile).
+     *
+     * @param profile
+     *      profile name
+     * @param builder
+     *      cluster builder factory
+     */
+    public static void registerProfile(String profile, Supplier<Cluster.Builder> builder) {
+        PROFILES.put(profile, builder);
+    }
+
+    /**
+     * Session on keyspace killrvideo with the default profile.
+     *
+     * @return
+     *      shared session
+     */
+    public static Session getSession() {
+        return getSession(DEFAULT_PROFILE, KEYSPACE_NAME);
+    }
+
+    /**
+     * Retrieve (or create the first time) the session for a profile and a keyspace.
+     *
+     * @param profile
+     *      profile name
+     * @param keyspace
+     *      target keyspace, created if needed
+     * @return
+     *      shared session
+     */
+    public static synchronized Session getSession(String profile, String keyspace) {
+        String key = sessionKey(profile, keyspace);
+        Session session = SESSIONS.get(key);
+        if (session == null || session.isClosed() || session.getCluster().isClosed()) {
+            session = initSession(profile, keyspace);
+            SESSIONS.put(key, session);
+        }
+        return session;
+    }
+
+    /**
+     * Retrieve (or create the first time) the cluster of a profile.
+     *
+     * @param profile
+     *      profile name
+     * @return
+     *      shared cluster
+     */
+    public static synchronized Cluster getCluster(String profile) {
+        return getCluster(profile, null);
+    }
+
+    /**
+     * Time spent to make a session ready in millis, if it has been created.
+     *
+     * @param profile
+     *      profile name
+     * @param keyspace
+     *      target keyspace
+     * @return
+     *      startup duration in millis
+     */
+    public static Optional<Long> getStartupTime(String profile, String keyspace) {
+        return Optional.ofNullable(STARTUP_TIMES.get(sessionKey(profile, keyspace)));
+    }
+
+    /**
+     * Startup breakdown of a session (config, control connection, metadata, pools,
+     * keyspace and first prepare), if it has been created with {@link #STARTUP_PROFILING_PROPERTY} set.
+     *
+     * @param profile
+     *      profile name
+     * @param keyspace
+     *      target keyspace
+     * @return
+     *      startup profile
+     */
+    public static Optional<StartupProfiler> getStartupProfile(String profile, String keyspace) {
+        return Optional.ofNullable(STARTUP_PROFILES.get(sessionKey(profile, keyspace)));
+    }
+
+    /**
+     * Close all sessions and clusters, to be invoked when the application stops.
+     */
+    public static synchronized void closeAll() {
+        SESSIONS.values().forEach(Session::close);
+        CLUSTERS.values().forEach(Cluster::close);
+        SESSIONS.clear();
+        CLUSTERS.clear();
+        LOGGER.info("[OK] All Clusters and Sessions are now closed");
+    }
+
+    private static Session initSession(String profile, String keyspace) {
+        // Only opt-in sessions are instrumented
+        StartupProfiler profiler = Boolean.getBoolean(STARTUP_PROFILING_PROPERTY)
+                ? new StartupProfiler(sessionKey(profile, keyspace)) : null;
+        long top = System.nanoTime();
+        Cluster cluster = getCluster(profile, profiler);
+        Session session;
+        if (profiler == null) {
+            session = cluster.connect();
+        } else {
+            session = profiler.time(StartupProfiler.Phase.POOLS, cluster::connect);
+            profiler.connected();
+        }
+        long connected = System.nanoTime();
+        bootstrapKeyspace(session, keyspace);
+        long ready = System.nanoTime();
+        STARTUP_TIMES.put(sessionKey(profile, keyspace), TimeUnit.NANOSECONDS.toMillis(ready - top));
+        LOGGER.info("[OK] Connected to Keyspace '{}' with profile '{}' in {} ms (connect {} ms, keyspace {} ms)",
+                keyspace, profile,
+                TimeUnit.NANOSECONDS.toMillis(ready - top),
+                TimeUnit.NANOSECONDS.toMillis(connected - top),
+                TimeUnit.NANOSECONDS.toMillis(ready - connected));
+        if (profiler != null) {
+            profiler.record(StartupProfiler.Phase.KEYSPACE, connected, ready);
+            STARTUP_PROFILES.put(sessionKey(profile, keyspace), profiler);
+            // Reported again with the first prepare, when it happens
+            profiler.report();
+        }
+        return session;
+    }
+
+    /**
+     * Cluster of the profile, created and initialized (control connection, metadata)
+     * the first time.
+     *
+     * @param profiler
+     *      startup profiler of the session, null to report the cluster startup alone when
+     *      {@link #STARTUP_PROFILING_PROPERTY} is set
+     */
+    private static synchronized Cluster getCluster(String profile, StartupProfiler profiler) {
+        Cluster cluster = CLUSTERS.get(profile);
+        if (cluster == null || cluster.isClosed()) {
+            Supplier<Cluster.Builder> factory = PROFILES.get(profile);
+            if (factory == null) {
+                throw new IllegalArgumentException("Profile '" + profile + "' has not been registered");
+            }
+            StartupProfiler startup = profiler != null ? profiler
+                    : Boolean.getBoolean(STARTUP_PROFILING_PROPERTY) ? new StartupProfiler(profile) : null;
+            if (startup == null) {
+                cluster = factory.get().build();
+            } else {
+                Cluster.Builder builder = startup.instrument(startup.time(StartupProfiler.Phase.CONTACT_POINTS, factory));
+                cluster = startup.time(StartupProfiler.Phase.CONFIG, builder::build);
+            }
+            try {
+                if (startup == null) {
+                    cluster.init();
+                } else {
+                    startup.init(cluster);
+                }
+            } catch (RuntimeException e) {
+                cluster.close();
+                throw e;
+            }
+            CLUSTERS.put(profile, cluster);
+            if (startup != null && profiler == null) {
+                startup.report();
+            }
+        }
+        return cluster;
+    }
+
+    /**
+     * Create the keyspace (if needed) and switch to it using the same connections.
+     */
+    private static void bootstrapKeyspace(Session session, String keyspace) {
+        if (session.getCluster().getMetadata().getKeyspace(keyspace) == null) {
+            session.execute(ExampleUtils.createKeyspaceSimpleStrategy(keyspace, KEYSPACE_REPLICATION_FACTOR));
+            LOGGER.info("+ Keyspace '{}' created (if needed).", keyspace);
+        }
+        session.execute("USE " + Metadata.quoteIfNecessary(keyspace));
+    }
+
+    private static String sessionKey(String profile, String keyspace) {
+        return profile + "/" + keyspace;
+    }
+
+}
@@ -0,0 +1,464 @@
+package com.datastax.samples;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Supplier;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.datastax.driver.core.Cluster;
+import com.datastax.driver.core.NettyOptions;
+
+import io.netty.bootstrap.Bootstrap;
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.ChannelDuplexHandler;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelPipeline;
+import io.netty.channel.ChannelPromise;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.socket.SocketChannel;
+import io.netty.handler.ssl.SslHandler;
+import io.netty.util.Timer;
+
+/**
+ * Break down the time to first query of a {@link Cluster} and its first {@link com.datastax.driver.core.Session}.
+ *
+ * Phases, in this order:
+ * - config: {@link Cluster.Builder#build()} (configuration and policies)
+ * - contactPoints: creation of the builder, contact points are resolved when added
+ * - controlConnection: {@link Cluster#init()} until the control connection handshake is done
+ * - metadata: rest of {@link Cluster#init()}, node list, schema metadata and token map
+ * - pools: {@link Cluster#connect()}, connection pools to all nodes
+ * - keyspace: keyspace bootstrap, when recorded by the caller
+ * - firstPrepare: round trip of the first statement prepared
+ *
+ * The driver exposes no hook inside {@link Cluster#init()}: a Netty handler reads the frame
+ * headers exchanged on each connection, the first QUERY (system.local) ends the control
+ * connection handshake and the first PREPARE is timed until its response. The handler
+ * removes itself once the first prepare is done.
+ */
+public class StartupProfiler {
+
+    /** Logger for the class. */
+    private static Logger LOGGER = LoggerFactory.getLogger(StartupProfiler.class);
+
+    /** Native protocol opcodes. */
+    private static final int OPCODE_QUERY   = 0x07;
+    private static final int OPCODE_PREPARE = 0x09;
+
+    /** No prepare in flight on a connection. */
+    private static final int NO_STREAM = Integer.MIN_VALUE;
+
+    /**
+     * Startup phases, in chronological order.
+     */
+    public enum Phase {
+        CONFIG("config"),
+        CONTACT_POINTS("contactPoints"),
+        CONTROL_CONNECTION("controlConnection"),
+        METADATA("metadata"),
+        POOLS("pools"),
+        KEYSPACE("keyspace"),
+        FIRST_PREPARE("firstPrepare");
+
+        private final String label;
+
+        Phase(String label) {
+            this.label = label;
+        }
+
+        /**
+         * Getter accessor for attribute 'label'.
+         *
+         * @return current value of 'label'
+         */
+        public String getLabel() {
+            return label;
+        }
+    }
+
+    /** Name of the session in the report. */
+    private final String name;
+
+    /** Origin of all timings. */
+    private final long startNanos = System.nanoTime();
+
+    /** Duration of each phase in nanos, first measure wins. */
+    private final Map<Phase, Long> durations = new ConcurrentHashMap<>();
+
+    /** First QUERY sent, 0 until then. */
+    private volatile long firstQueryNanos;
+
+    /** Session ready and first prepare done, 0 until then. */
+    private volatile long connectedNanos;
+    private volatile long firstPrepareNanos;
+
+    /** Only the first prepare is timed. */
+    private final AtomicBoolean firstPrepareStarted = new AtomicBoolean();
+
+    /** A late first prepare triggers a new report. */
+    private volatile boolean reported;
+
+    /**
+     * Profiler for one cluster and session, timings start now.
+     *
+     * @param name
+     *      name in the report (profile, keyspace, application...)
+     */
+    public StartupProfiler(String name) {
+        this.name = name;
+    }
+
+    /**
+     * Install the frame listener on the connections of the cluster to build.
+     *
+     * Existing {@link NettyOptions} are kept and decorated.
+     *
+     * @param builder
+     *      cluster builder
+     * @return
+     *      same builder
+     */
+    public Cluster.Builder instrument(Cluster.Builder builder) {
+        NettyOptions current = builder.getConfiguration().getNettyOptions();
+        if (current instanceof ProfilingNettyOptions) {
+            // Builder reused, only the latest profiler listens
+            current = ((ProfilingNettyOptions) current).delegate;
+        }
+        return builder.withNettyOptions(new ProfilingNettyOptions(current));
+    }
+
+    /**
+     * Initialize the cluster (control connection and metadata).
+     *
+     * @param cluster
+     *      cluster built from an instrumented builder
+     * @return
+     *      same cluster
+     */
+    public Cluster init(Cluster cluster) {
+        long top = System.nanoTime();
+        cluster.init();
+        long end = System.nanoTime();
+        if (firstQueryNanos >= top && firstQueryNanos <= end) {
+            record(Phase.CONTROL_CONNECTION, top, firstQueryNanos);
+            record(Phase.METADATA, firstQueryNanos, end);
+        } else {
+            // builder not instrumented, init cannot be split
+            record(Phase.CONTROL_CONNECTION, top, end);
+        }
+        return cluster;
+    }
+
+    /**
+     * Mark the session as usable.
+     */
+    public void connected() {
+        connectedNanos = System.nanoTime();
+    }
+
+    /**
+     * Record a phase measured by the caller.
+     *
+     * @param phase
+     *      phase
+     * @param fromNanos
+     *      start, from {@link System#nanoTime()}
+     * @param toNanos
+     *      end, from {@link System#nanoTime()}
+     */
+    public void record(Phase phase, long fromNanos, long toNanos) {
+        durations.putIfAbsent(phase, Math.max(0, toNanos - fromNanos));
+    }
+
+    /**
+     * Run and time an action as a phase.
+     *
+     * @param phase
+     *      phase
+     * @param action
+     *      action to time
+     * @return
+     *      result of the action
+     */
+    public <T> T time(Phase phase, Supplier<T> action) {
+        long top = System.nanoTime();
+        try {
+            return action.get();
+        } finally {
+            record(phase, top, System.nanoTime());
+        }
+    }
+
+    /**
+     * Duration of a phase, if it has been measured.
+     *
+     * @param phase
+     *      phase
+     * @return
+     *      duration
+     */
+    public Optional<Duration> getDuration(Phase phase) {
+        return Optional.ofNullable(durations.get(phase)).map(Duration::ofNanos);
+    }
+
+    /**
+     * Time from the profiler creation to a usable session.
+     *
+     * @return
+     *      duration, empty while {@link #connected()} has not been called
+     */
+    public Optional<Duration> getConnectedTime() {
+        return elapsed(connectedNanos);
+    }
+
+    /**
+     * Time from the profiler creation to the end of the first prepare.
+     *
+     * @return
+     *      duration, empty while no statement has been prepared
+     */
+    public Optional<Duration> getTimeToFirstPrepare() {
+        return elapsed(firstPrepareNanos);
+    }
+
+    /**
+     * Report as a single JSON object, durations in milliseconds.
+     *
+     * @return
+     *      JSON report
+     */
+    public String toJson() {
+        StringBuilder json = new StringBuilder("{\"name\":\"").append(escape(name)).append("\",\"driver\":\"3.x\"");
+        getConnectedTime().ifPresent(d -> json.append(",\"connectedMs\":").append(millis(d)));
+        getTimeToFirstPrepare().ifPresent(d -> json.append(",\"timeToFirstPrepareMs\":").append(millis(d)));
+        json.append(",\"phases\":{");
+        List<String> phases = new ArrayList<>();
+        for (Phase phase : Phase.values()) {
+            getDuration(phase).ifPresent(d -> phases.add("\"" + phase.getLabel() + "\":" + millis(d)));
+        }
+        return json.append(String.join(",", phases)).append("}}").toString();
+    }
+
+    /**
+     * Log the phases on one line, then the JSON report.
+     *
+     * @return
+     *      JSON report
+     */
+    public String report() {
+        reported = true;
+        List<String> phases = new ArrayList<>();
+        for (Phase phase : Phase.values()) {
+            getDuration(phase).ifPresent(d -> phases.add(phase.getLabel() + "=" + millis(d) + "ms"));
+        }
+        String json = toJson();
+        LOGGER.info("+ Startup '{}' connected in {} ms, first prepare at {} ms [{}]", name,
+                getConnectedTime().map(StartupProfiler::millis).orElse("-"),
+                getTimeToFirstPrepare().map(StartupProfiler::millis).orElse("-"),
+                String.join(", ", phases));
+        LOGGER.info("+ Startup report {}", json);
+        return json;
+    }
+
+    private Optional<Duration> elapsed(long toNanos) {
+        return toNanos == 0 ? Optional.empty() : Optional.of(Duration.ofNanos(toNanos - startNanos));
+    }
+
+    private void onFirstPrepare(long fromNanos) {
+        firstPrepareNanos = System.nanoTime();
+        record(Phase.FIRST_PREPARE, fromNanos, firstPrepareNanos);
+        if (reported) {
+            report();
+        }
+    }
+
+    private static String millis(Duration duration) {
+        return String.format(Locale.ROOT, "%.1f", duration.toNanos() / 1_000_000d);
+    }
+
+    private static String escape(String value) {
+        return value.replace("\\", "\\\\").replace("\"", "\\\"");
+    }
+
+    /**
+     * Add the frame listener to each new connection, everything else is delegated.
+     */
+    private final class ProfilingNettyOptions extends NettyOptions {
+
+        private final NettyOptions delegate;
+
+        private ProfilingNettyOptions(NettyOptions delegate) {
+            this.delegate = delegate;
+        }
+
+        /** {@inheritDoc} */
+        @Override
+        public EventLoopGroup eventLoopGroup(ThreadFactory threadFactory) {
+            return delegate.eventLoopGroup(threadFactory);
+        }
+
+        /** {@inheritDoc} */
+        @Override
+        public Class<? extends SocketChannel> channelClass() {
+            return delegate.channelClass();
+        }
+
+        /** {@inheritDoc} */
+        @Override
+        public void afterBootstrapInitialized(Bootstrap bootstrap) {
+            delegate.afterBootstrapInitialized(bootstrap);
+        }
+
+        /** {@inheritDoc} */
+        @Override
+        public void afterChannelInitialized(SocketChannel channel) throws Exception {
+            delegate.afterChannelInitialized(channel);
+            if (firstPrepareNanos != 0) {
+                return;
+            }
+            ChannelPipeline pipeline = channel.pipeline();
+            ChannelHandlerContext ssl = pipeline.context(SslHandler.class);
+            // Frames are read in clear, right after TLS if any
+            if (ssl != null) {
+                pipeline.addAfter(ssl.name(), "startupProfiler", new FrameListener());
+            } else {
+                pipeline.addFirst("startupProfiler", new FrameListener());
+            }
+        }
+
+        /** {@inheritDoc} */
+        @Override
+        public void onClusterClose(EventLoopGroup eventLoopGroup) {
+            delegate.onClusterClose(eventLoopGroup);
+        }
+
+        /** {@inheritDoc} */
+        @Override
+        public Timer timer(ThreadFactory threadFactory) {
+            return delegate.timer(threadFactory);
+        }
+
+        /** {@inheritDoc} */
+        @Override
+        public void onClusterClose(Timer timer) {
+            delegate.onClusterClose(timer);
+        }
+    }
+
+    /**
+     * One per connection: follow request and response frames, bytes are not modified.
+     */
+    private final class FrameListener extends ChannelDuplexHandler {
+
+        private final FrameHeaders requests = new FrameHeaders();
+
+        private final FrameHeaders responses = new FrameHeaders();
+
+        /** Stream of the first prepare when sent on this connection. */
+        private int prepareStream = NO_STREAM;
+
+        private long prepareNanos;
+
+        /** {@inheritDoc} */
+        @Override
+        public void write(ChannelHandlerContext ctx, Object msg, ChannelPromise promise) throws Exception {
+            if (firstPrepareNanos != 0 && prepareStream == NO_STREAM) {
+                ctx.pipeline().remove(this);
+            } else if (msg instanceof ByteBuf) {
+                requests.read((ByteBuf) msg, this::onRequest);
+            }
+            ctx.write(msg, promise);
+        }
+
+        /** {@inheritDoc} */
+        @Override
+        public void channelRead(ChannelHandlerContext ctx, Object msg) throws Exception {
+            if (msg instanceof ByteBuf) {
+                responses.read((ByteBuf) msg, this::onResponse);
+            }
+            ctx.fireChannelRead(msg);
+        }
+
+        private void onRequest(int opcode, int stream) {
+            if (opcode == OPCODE_QUERY && firstQueryNanos == 0) {
+                firstQueryNanos = System.nanoTime();
+            } else if (opcode == OPCODE_PREPARE && firstPrepareStarted.compareAndSet(false, true)) {
+                prepareStream = stream;
+                prepareNanos  = System.nanoTime();
+            }
+        }
+
+        private void onResponse(int opcode, int stream) {
+            if (prepareStream != NO_STREAM && stream == prepareStream) {
+                prepareStream = NO_STREAM;
+                onFirstPrepare(prepareNanos);
+            }
+        }
+    }
+
+    /**
+     * Callback for each frame header.
+     */
+    private interface FrameHeaderListener {
+        void onFrame(int opcode, int stream);
+    }
+
+    /**
+     * Locate frame headers in a byte stream: headers may be split across buffers,
+     * bodies are skipped.
+     */
+    private static final class FrameHeaders {
+
+        /** v3+ headers are 9 bytes, v1/v2 headers are 8 bytes. */
+        private final byte[] header = new byte[9];
+
+        private int headerLength;
+
+        private int headerRead;
+
+        private long bodyRemaining;
+
+        private void read(ByteBuf buffer, FrameHeaderListener listener) {
+            int index = buffer.readerIndex();
+            int end   = buffer.writerIndex();
+            while (index < end) {
+                if (bodyRemaining > 0) {
+                    int skipped = (int) Math.min(bodyRemaining, end - index);
+                    index += skipped;
+                    bodyRemaining -= skipped;
+                    continue;
+                }
+                byte b = buffer.getByte(index++);
+                if (headerRead == 0) {
+                    headerLength = (b & 0x7F) >= 3 ? 9 : 8;
+                }
+                header[headerRead++] = b;
+                if (headerRead == headerLength) {
+                    headerRead = 0;
+                    if (headerLength == 9) {
+                        bodyRemaining = unsignedInt(5);
+                        listener.onFrame(header[4] & 0xFF, (short) (((header[2] & 0xFF) << 8) | (header[3] & 0xFF)));
+                    } else {
+                        bodyRemaining = unsignedInt(4);
+                        listener.onFrame(header[3] & 0xFF, header[2]);
+                    }
+                }
+            }
+        }
+
+        private long unsignedInt(int offset) {
+            return ((header[offset] & 0xFFL) << 24) | ((header[offset + 1] & 0xFFL) << 16)
+                    | ((header[offset + 2] & 0xFFL) << 8) | (header[offset + 3] & 0xFFL);
+        }
+    }
+
+}
@@ -0,0 +1,265 @@
+package com.datastax.samples;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.datastax.oss.driver.api.core.CqlSession;
+import com.datastax.oss.driver.api.core.cql.AsyncResultSet;
+import com.datastax.oss.driver.api.core.cql.BoundStatement;
+import com.datastax.oss.driver.api.core.cql.PreparedStatement;
+import com.datastax.oss.driver.api.core.cql.Row;
+
+/**
+ * Execute identical reads once when they are in flight at the same time (single flight).
+ *
+ * Rendering a popular page, hundreds of threads read the same user or the same comments
+ * at once: as many identical requests hit the same replicas. Here reads are keyed by
+ * prepared statement id, bound values and everything changing the result or how it is
+ * read (consistency level, page size, execution profile, keyspace): a read arriving while
+ * the same one is in progress waits for it and gets the same rows. Nothing is kept once the
+ * read completes, a later call sends a new request: no staleness, unlike a cache.
+ *
+ * Rows of all pages are read into a list shared by the callers, up to 'maxRows' (the read
+ * fails beyond): statements resuming from a paging state are rejected, page with the
+ * session instead. Rows are only read (the driver codecs do not move the buffers), they
+ * must not be modified.
+ *
+ * <pre>
+ * CoalescingExecutor reads = new CoalescingExecutor(session);
+ * reads.executeAsync(stmtFindUser.bind(email)).thenApply(rows -> rows.isEmpty() ? null : new UserDto(rows.get(0)));
+ * </pre>
+ */
+public class CoalescingExecutor {
+
+    /**
+     * Requests and executions of one statement.
+     */
+    public static class Metrics {
+
+        private final String query;
+
+        private final LongAdder requests = new LongAdder();
+
+        private final LongAdder executions = new LongAdder();
+
+        /**
+         * Metrics of a statement.
+         *
+         * @param query
+         *      query string
+         */
+        public Metrics(String query) {
+            this.query = query;
+        }
+
+        /**
+         * Getter accessor for attribute 'query'.
+         *
+         * @return current value of 'query'
+         */
+        public String getQuery() {
+            return query;
+        }
+
+        /**
+         * Calls to executeAsync().
+         *
+         * @return
+         *      number of calls
+         */
+        public long getRequests() {
+            return requests.sum();
+        }
+
+        /**
+         * Requests sent to the cluster.
+         *
+         * @return
+         *      number of requests
+         */
+        public long getExecutions() {
+            return executions.sum();
+        }
+
+        /**
+         * Calls which joined a read in progress.
+         *
+         * @return
+         *      requests - executions
+         */
+        public long getCoalesced() {
+            return getRequests() - getExecutions();
+        }
+
+        /**
+         * Share of the calls which did not send a request.
+         *
+         * @return
+         *      coalesced / requests
+         */
+        public double getDedupRatio() {
+            long total = getRequests();
+            return total == 0 ? 0 : (double) getCoalesced() / total;
+        }
+
+        /** {@inheritDoc} */
+        @Override
+        public String toString() {
+            return String.format("requests=%d, executions=%d, dedup=%.1f%%",
+                    getRequests(), getExecutions(), 100 * getDedupRatio());
+        }
+    }
+
+    private final CqlSession session;
+
+    /** Read in progress by (statement id, values, consistency, page size, profile, keyspace). */
+    private final Map<List<Object>, CompletableFuture<List<Row>>> inFlight = new ConcurrentHashMap<>();
+
+    /** Metrics by query string. */
+    private final Map<String, Metrics> metrics = new ConcurrentHashMap<>();
+
+    private int maxRows = 10_000;
+
+    /**
+     * Executor working with a session.
+     *
+     * @param session
+     *      current session
+     */
+    public CoalescingExecutor(CqlSession session) {
+        this.session = Objects.requireNonNull(session);
+    }
+
+    /**
+     * Rows a read can keep in memory, defaults to 10000.
+     *
+     * @param maxRows
+     *      maximum number of rows of all pages
+     * @return
+     *      current instance
+     */
+    public CoalescingExecutor withMaxRows(int maxRows) {
+        if (maxRows < 1) {
+            throw new IllegalArgumentException("maxRows must be positive");
+        }
+        this.maxRows = maxRows;
+        return this;
+    }
+
+    /**
+     * Execute a read, or join the identical read in progress.
+     *
+     * @param statement
+     *      bound SELECT statement, without paging state
+     * @return
+     *      rows of all pages, shared read-only by the callers
+     */
+    public List<Row> execute(BoundStatement statement) {
+        try {
+            return executeAsync(statement).toCompletableFuture().join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Execute a read asynchronously, or join the identical read in progress.
+     *
+     * @param statement
+     *      bound SELECT statement, without paging state
+     * @return
+     *      rows of all pages, shared read-only by the callers, failed beyond 'maxRows'
+     */
+    public CompletionStage<List<Row>> executeAsync(BoundStatement statement) {
+        PreparedStatement prepared = statement.getPreparedStatement();
+        if (prepared.getResultSetDefinitions().size() == 0) {
+            throw new IllegalArgumentException("Only reads can be coalesced: " + prepared.getQuery());
+        }
+        if (statement.getPagingState() != null) {
+            throw new IllegalArgumentException("Reads are coalesced from their first page: " + prepared.getQuery());
+        }
+        Metrics statementMetrics = getMetrics(prepared.getQuery());
+        statementMetrics.requests.increment();
+        List<Object> key = Arrays.asList(prepared.getId(), statement.getValues(), statement.getConsistencyLevel(),
+                statement.getPageSize(), statement.getExecutionProfileName(), statement.getExecutionProfile(),
+                statement.getKeyspace());
+        CompletableFuture<List<Row>> read = new CompletableFuture<>();
+        CompletableFuture<List<Row>> running = inFlight.putIfAbsent(key, read);
+        if (running != null) {
+            // Callers cannot complete the shared future
+            return running.minimalCompletionStage();
+        }
+        statementMetrics.executions.increment();
+        session.executeAsync(statement)
+               .thenCompose(rs -> readAll(rs, new ArrayList<>(), maxRows))
+               .whenComplete((rows, error) -> {
+                   // Removed first: a call after completion sends a new request
+                   inFlight.remove(key, read);
+                   if (error == null) {
+                       read.complete(Collections.unmodifiableList(rows));
+                   } else {
+                       read.completeExceptionally(error);
+                   }
+               });
+        return read.minimalCompletionStage();
+    }
+
+    private static CompletionStage<List<Row>> readAll(AsyncResultSet rs, List<Row> rows, int maxRows) {
+        for (Row row : rs.currentPage()) {
+            if (rows.size() == maxRows) {
+                return CompletableFuture.failedFuture(new IllegalStateException(
+                        "More than " + maxRows + " rows, use the session to page through them"));
+            }
+            rows.add(row);
+        }
+        if (rs.hasMorePages()) {
+            return rs.fetchNextPage().thenCompose(next -> readAll(next, rows, maxRows));
+        }
+        return CompletableFuture.completedFuture(rows);
+    }
+
+    /**
+     * Metrics of a statement.
+     *
+     * @param query
+     *      query string of the prepared statement
+     * @return
+     *      metrics, created empty if needed
+     */
+    public Metrics getMetrics(String query) {
+        return metrics.computeIfAbsent(query, Metrics::new);
+    }
+
+    /**
+     * Metrics of all statements executed.
+     *
+     * @return
+     *      metrics by query string
+     */
+    public Map<String, Metrics> getMetrics() {
+        return Collections.unmodifiableMap(metrics);
+    }
+
+    /**
+     * Reads in progress.
+     *
+     * @return
+     *      number of distinct reads
+     */
+    public int getInFlight() {
+        return inFlight.size();
+    }
+
+}
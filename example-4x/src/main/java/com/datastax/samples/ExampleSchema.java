@@ -67,6 +67,66 @@ public interface ExampleSchema {
     String VIDEO_VIEWS_VIDEOID    = "videoid";
     String VIDEO_VIEWS_VIEWS      = "views";
     
+    /**
+     * CREATE TABLE IF NOT EXISTS videos_views_sharded (
+     *    videoid     uuid,
+     *    shard       int,
+     *    views       counter,
+     *    PRIMARY KEY ((videoid, shard))
+     * );
+     */
+    String VIDEO_VIEWS_SHARDED_TABLENAME = "videos_views_sharded";
+    String VIDEO_VIEWS_SHARD             = "shard";
+    
+    /**
+     * CREATE TABLE IF NOT EXISTS videos_views_shards (
+     *    videoid     uuid,
+     *    shards      int,
+     *    PRIMARY KEY ((videoid), shards)
+     * ) WITH CLUSTERING ORDER BY (shards DESC);
+     */
+    String VIDEO_VIEWS_SHARDS_TABLENAME = "videos_views_shards";
+    String VIDEO_VIEWS_SHARDS           = "shards";
+    
+    /**
+     * CREATE TABLE IF NOT EXISTS videos_viewers (
+     *    videoid     uuid,
+     *    writer      text,
+     *    viewers     blob,
+     *    PRIMARY KEY ((videoid), writer)
+     * );
+     */
+    String VIDEO_VIEWERS_TABLENAME = "videos_viewers";
+    String VIDEO_VIEWERS_VIDEOID   = "videoid";
+    String VIDEO_VIEWERS_WRITER    = "writer";
+    String VIDEO_VIEWERS_VIEWERS   = "viewers";
+    
+    /**
+     * CREATE TABLE IF NOT EXISTS videos_views_by_minute (
+     *    videoid     uuid,
+     *    day         date,
+     *    minute      timestamp,
+     *    views       counter,
+     *    PRIMARY KEY ((videoid, day), minute)
+     * );
+     */
+    String VIDEO_VIEWS_BY_MINUTE_TABLENAME = "videos_views_by_minute";
+    String VIDEO_VIEWS_DAY                 = "day";
+    String VIDEO_VIEWS_MINUTE              = "minute";
+    
+    /**
+     * CREATE TABLE IF NOT EXISTS videos_views_rollups (
+     *    videoid     uuid,
+     *    resolution  text,
+     *    bucket      timestamp,
+     *    views       bigint,
+     *    PRIMARY KEY ((videoid, resolution), bucket)
+     * );
+     */
+    String VIDEO_VIEWS_ROLLUPS_TABLENAME = "videos_views_rollups";
+    String VIDEO_VIEWS_RESOLUTION        = "resolution";
+    String VIDEO_VIEWS_BUCKET            = "bucket";
+    
     /**
      * CREATE TABLE IF NOT EXISTS comments_by_video (
      *   videoid uuid,
@@ -1,6 +1,9 @@
 package com.datastax.samples;
 
-import java.net.InetSocketAddress;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -11,6 +14,10 @@ import com.datastax.oss.driver.api.core.metadata.schema.ClusteringOrder;
 import com.datastax.oss.driver.api.core.type.DataTypes;
 import com.datastax.oss.driver.api.querybuilder.QueryBuilder;
 import com.datastax.oss.driver.api.querybuilder.SchemaBuilder;
+import com.datastax.samples.schema.SchemaObject;
+import com.datastax.samples.schema.SchemaReconciler;
+import com.datastax.samples.schema.TableDefinition;
+import com.datastax.samples.schema.TypeDefinition;
 
 /**
  * Code reused in multiple samples.
@@ -20,14 +27,14 @@ public class ExampleUtils implements ExampleSchema {
 
     private static Logger LOGGER = LoggerFactory.getLogger(ExampleUtils.class);
     
+    /** Schema reconciler of each session, shared by the create* methods. */
+    private static final Map<CqlSession, SchemaReconciler> RECONCILERS = new ConcurrentHashMap<>();
+    
+    /**
+     * Shared session on keyspace killrvideo, see {@link SessionManager}.
+     */
     public static CqlSession connect() {
-        CqlSession cqlSession =  CqlSession.builder()
-            .addContactPoint(new InetSocketAddress("127.0.0.1", 9042))
-            .withKeyspace(KEYSPACE_NAME)
-            .withLocalDatacenter("datacenter1")
-            .build();
-        LOGGER.info("[OK] Connected to Keyspace {} on node 127.0.0.1", KEYSPACE_NAME);
-        return cqlSession;
+        return SessionManager.getSession();
     }
     
     public static void closeSession(CqlSession session) {
@@ -61,14 +68,11 @@ public class ExampleUtils implements ExampleSchema {
                     .build();
     }
     
+    /**
+     * Keyspace is bootstrapped by the shared session, the session is reused by {@link #connect()}.
+     */
     public static void createKeyspace() {
-        try (CqlSession cqlSession = CqlSession.builder()
-                .addContactPoint(new InetSocketAddress("127.0.0.1", 9042))
-                .withLocalDatacenter("datacenter1")
-                .build()) {
-            cqlSession.execute(createKeyspaceSimpleStrategy(KEYSPACE_NAME, KEYSPACE_REPLICATION_FACTOR));
-            LOGGER.info("+ Keyspace '{}' created (if needed).", KEYSPACE_NAME);
-        }
+        SessionManager.getSession();
     }
     
     /**
@@ -80,13 +84,21 @@ public class ExampleUtils implements ExampleSchema {
      * );
      */
     public static void createTableUser(CqlSession session) {
-        session.execute(SchemaBuilder.createTable(USER_TABLENAME)
-                    .ifNotExists()
+        reconcile(session, tableUserDefinition());
+        LOGGER.info("+ Table '{}' has been created (if needed).", USER_TABLENAME);
+    }
+
+    /**
+     * Definition of table 'users', see {@link #createTableUser(CqlSession)}.
+     *
+     * @return
+     *      expected columns and keys
+     */
+    public static TableDefinition tableUserDefinition() {
+        return new TableDefinition(USER_TABLENAME)
                     .withPartitionKey(USER_EMAIL, DataTypes.TEXT)
                     .withColumn(USER_FIRSTNAME, DataTypes.TEXT)
-                    .withColumn(USER_LASTNAME, DataTypes.TEXT)
-                    .build());
-        LOGGER.info("+ Table '{}' has been created (if needed).", USER_TABLENAME);
+                    .withColumn(USER_LASTNAME, DataTypes.TEXT);
     }
     
     /**
@@ -96,14 +108,21 @@ public class ExampleUtils implements ExampleSchema {
      *);
      */
     public static void createUdtVideoFormat(CqlSession session) {
-        session.execute(SchemaBuilder
-                .createType(UDT_VIDEO_FORMAT_NAME)
-                .ifNotExists()
-                .withField(UDT_VIDEO_FORMAT_WIDTH, DataTypes.INT)
-                .withField(UDT_VIDEO_FORMAT_HEIGHT, DataTypes.INT)
-                .build());
+        reconcile(session, udtVideoFormatDefinition());
         LOGGER.info("+ Type '{}' has been created (if needed).", UDT_VIDEO_FORMAT_NAME);
     }
+
+    /**
+     * Definition of type 'video_format', see {@link #createUdtVideoFormat(CqlSession)}.
+     *
+     * @return
+     *      expected fields
+     */
+    public static TypeDefinition udtVideoFormatDefinition() {
+        return new TypeDefinition(UDT_VIDEO_FORMAT_NAME)
+                .withField(UDT_VIDEO_FORMAT_WIDTH, DataTypes.INT)
+                .withField(UDT_VIDEO_FORMAT_HEIGHT, DataTypes.INT);
+    }
     
     /**
      * CREATE TABLE IF NOT EXISTS videos (
@@ -119,9 +138,18 @@ public class ExampleUtils implements ExampleSchema {
      * ); 
      **/
     public static void createTableVideo(CqlSession session) {
-        session.execute(SchemaBuilder
-                .createTable(VIDEO_TABLENAME)
-                .ifNotExists()
+        reconcile(session, tableVideoDefinition());
+        LOGGER.info("+ Table '{}' has been created (if needed).", VIDEO_TABLENAME);
+    }
+
+    /**
+     * Definition of table 'videos', see {@link #createTableVideo(CqlSession)}.
+     *
+     * @return
+     *      expected columns and keys
+     */
+    public static TableDefinition tableVideoDefinition() {
+        return new TableDefinition(VIDEO_TABLENAME)
                 .withPartitionKey(VIDEO_VIDEOID, DataTypes.UUID)
                 .withColumn(VIDEO_TITLE, DataTypes.TEXT)
                 .withColumn(VIDEO_UPLOAD, DataTypes.TIMESTAMP)
@@ -130,8 +158,7 @@ public class ExampleUtils implements ExampleSchema {
                 .withColumn(VIDEO_TAGS, DataTypes.setOf(DataTypes.TEXT))
                 .withColumn(VIDEO_FRAMES, DataTypes.listOf(DataTypes.INT))
                 .withColumn(VIDEO_FORMAT, DataTypes.mapOf(DataTypes.TEXT, 
-                        SchemaBuilder.udt(UDT_VIDEO_FORMAT_NAME, true))).build());
-        LOGGER.info("+ Table '{}' has been created (if needed).", VIDEO_TABLENAME);
+                        SchemaBuilder.udt(UDT_VIDEO_FORMAT_NAME, true)));
     }
 
     /**
@@ -142,14 +169,145 @@ public class ExampleUtils implements ExampleSchema {
      * );
      */
     public static void createTableVideoViews(CqlSession session) {
-        session.execute(SchemaBuilder
-                .createTable(VIDEO_VIEWS_TABLENAME)
-                .ifNotExists()
-                .withPartitionKey(VIDEO_VIEWS_VIDEOID, DataTypes.UUID)
-                .withColumn(VIDEO_VIEWS_VIEWS, DataTypes.COUNTER)
-                .build());
+        reconcile(session, tableVideoViewsDefinition());
         LOGGER.info("+ Table '{}' has been created (if needed).", VIDEO_VIEWS_TABLENAME);
     }
+
+    /**
+     * Definition of table 'videos_views', see {@link #createTableVideoViews(CqlSession)}.
+     *
+     * @return
+     *      expected columns and keys
+     */
+    public static TableDefinition tableVideoViewsDefinition() {
+        return new TableDefinition(VIDEO_VIEWS_TABLENAME)
+                .withPartitionKey(VIDEO_VIEWS_VIDEOID, DataTypes.UUID)
+                .withColumn(VIDEO_VIEWS_VIEWS, DataTypes.COUNTER);
+    }
+    
+    /**
+     * CREATE TABLE IF NOT EXISTS videos_views_sharded (
+     *    videoid     uuid,
+     *    shard       int,
+     *    views       counter,
+     *    PRIMARY KEY ((videoid, shard))
+     * );
+     * 
+     * CREATE TABLE IF NOT EXISTS videos_views_shards (
+     *    videoid     uuid,
+     *    shards      int,
+     *    PRIMARY KEY ((videoid), shards)
+     * ) WITH CLUSTERING ORDER BY (shards DESC);
+     */
+    public static void createTableVideoViewsSharded(CqlSession session) {
+        reconcile(session, tableVideoViewsShardedDefinition(), tableVideoViewsShardsDefinition());
+        LOGGER.info("+ Tables '{}' and '{}' have been created (if needed).", 
+                VIDEO_VIEWS_SHARDED_TABLENAME, VIDEO_VIEWS_SHARDS_TABLENAME);
+    }
+
+    /**
+     * Definition of table 'videos_views_sharded', see {@link #createTableVideoViewsSharded(CqlSession)}.
+     *
+     * @return
+     *      expected columns and keys
+     */
+    public static TableDefinition tableVideoViewsShardedDefinition() {
+        return new TableDefinition(VIDEO_VIEWS_SHARDED_TABLENAME)
+                .withPartitionKey(VIDEO_VIEWS_VIDEOID, DataTypes.UUID)
+                .withPartitionKey(VIDEO_VIEWS_SHARD, DataTypes.INT)
+                .withColumn(VIDEO_VIEWS_VIEWS, DataTypes.COUNTER);
+    }
+    
+    /**
+     * Definition of table 'videos_views_shards', shard counts of 'videos_views_sharded', see
+     * {@link #createTableVideoViewsSharded(CqlSession)}.
+     *
+     * @return
+     *      expected columns and keys
+     */
+    public static TableDefinition tableVideoViewsShardsDefinition() {
+        return new TableDefinition(VIDEO_VIEWS_SHARDS_TABLENAME)
+                .withPartitionKey(VIDEO_VIEWS_VIDEOID, DataTypes.UUID)
+                .withClusteringColumn(VIDEO_VIEWS_SHARDS, DataTypes.INT)
+                .withClusteringOrder(VIDEO_VIEWS_SHARDS, ClusteringOrder.DESC);
+    }
+    
+    /**
+     * CREATE TABLE IF NOT EXISTS videos_viewers (
+     *    videoid     uuid,
+     *    writer      text,
+     *    viewers     blob,
+     *    PRIMARY KEY ((videoid), writer)
+     * );
+     */
+    public static void createTableVideoViewers(CqlSession session) {
+        reconcile(session, tableVideoViewersDefinition());
+        LOGGER.info("+ Table '{}' has been created (if needed).", VIDEO_VIEWERS_TABLENAME);
+    }
+
+    /**
+     * Definition of table 'videos_viewers', see {@link #createTableVideoViewers(CqlSession)}.
+     *
+     * @return
+     *      expected columns and keys
+     */
+    public static TableDefinition tableVideoViewersDefinition() {
+        return new TableDefinition(VIDEO_VIEWERS_TABLENAME)
+                .withPartitionKey(VIDEO_VIEWERS_VIDEOID, DataTypes.UUID)
+                .withClusteringColumn(VIDEO_VIEWERS_WRITER, DataTypes.TEXT)
+                .withColumn(VIDEO_VIEWERS_VIEWERS, DataTypes.BLOB);
+    }
+    
+    /**
+     * CREATE TABLE IF NOT EXISTS videos_views_by_minute (
+     *    videoid     uuid,
+     *    day         date,
+     *    minute      timestamp,
+     *    views       counter,
+     *    PRIMARY KEY ((videoid, day), minute)
+     * );
+     * 
+     * CREATE TABLE IF NOT EXISTS videos_views_rollups (
+     *    videoid     uuid,
+     *    resolution  text,
+     *    bucket      timestamp,
+     *    views       bigint,
+     *    PRIMARY KEY ((videoid, resolution), bucket)
+     * );
+     */
+    public static void createTablesVideoViewsByTime(CqlSession session) {
+        reconcile(session, tableVideoViewsByMinuteDefinition(), tableVideoViewsRollupsDefinition());
+        LOGGER.info("+ Tables '{}' and '{}' have been created (if needed).", 
+                VIDEO_VIEWS_BY_MINUTE_TABLENAME, VIDEO_VIEWS_ROLLUPS_TABLENAME);
+    }
+
+    /**
+     * Definition of table 'videos_views_by_minute', see {@link #createTablesVideoViewsByTime(CqlSession)}.
+     *
+     * @return
+     *      expected columns and keys
+     */
+    public static TableDefinition tableVideoViewsByMinuteDefinition() {
+        return new TableDefinition(VIDEO_VIEWS_BY_MINUTE_TABLENAME)
+                .withPartitionKey(VIDEO_VIEWS_VIDEOID, DataTypes.UUID)
+                .withPartitionKey(VIDEO_VIEWS_DAY, DataTypes.DATE)
+                .withClusteringColumn(VIDEO_VIEWS_MINUTE, DataTypes.TIMESTAMP)
+                .withColumn(VIDEO_VIEWS_VIEWS, DataTypes.COUNTER);
+    }
+
+    /**
+     * Definition of table 'videos_views_rollups', see {@link #createTablesVideoViewsByTime(CqlSession)}.
+     *
+     * @return
+     *      expected columns and keys
+     */
+    public static TableDefinition tableVideoViewsRollupsDefinition() {
+        return new TableDefinition(VIDEO_VIEWS_ROLLUPS_TABLENAME)
+                .withPartitionKey(VIDEO_VIEWS_VIDEOID, DataTypes.UUID)
+                .withPartitionKey(VIDEO_VIEWS_RESOLUTION, DataTypes.TEXT)
+                .withClusteringColumn(VIDEO_VIEWS_BUCKET, DataTypes.TIMESTAMP)
+                .withColumn(VIDEO_VIEWS_VIEWS, DataTypes.BIGINT);
+    }
     
     /**
      * CREATE TABLE IF NOT EXISTS comments_by_user (
@@ -161,18 +319,23 @@ public class ExampleUtils implements ExampleSchema {
      * ) WITH CLUSTERING ORDER BY (commentid DESC);
      */
     public static void createTableCommentByUser(CqlSession session) {
-        
-        
-        session.execute(SchemaBuilder
-                .createTable(COMMENT_BY_USER_TABLENAME)
-                .ifNotExists()
+        reconcile(session, tableCommentByUserDefinition());
+        LOGGER.info("+ Table '{}' has been created (if needed).", COMMENT_BY_USER_TABLENAME);
+    }
+
+    /**
+     * Definition of table 'comments_by_user', see {@link #createTableCommentByUser(CqlSession)}.
+     *
+     * @return
+     *      expected columns and keys
+     */
+    public static TableDefinition tableCommentByUserDefinition() {
+        return new TableDefinition(COMMENT_BY_USER_TABLENAME)
                 .withPartitionKey(COMMENT_BY_USER_USERID, DataTypes.UUID)
                 .withClusteringColumn(COMMENT_BY_USER_COMMENTID, DataTypes.TIMEUUID)
                 .withColumn(COMMENT_BY_USER_VIDEOID, DataTypes.UUID)
                 .withColumn(COMMENT_BY_USER_COMMENT, DataTypes.TEXT)
-                .withClusteringOrder(COMMENT_BY_USER_COMMENTID, ClusteringOrder.DESC)
-                .build());
-        LOGGER.info("+ Table '{}' has been created (if needed).", COMMENT_BY_USER_TABLENAME);
+                .withClusteringOrder(COMMENT_BY_USER_COMMENTID, ClusteringOrder.DESC);
     }
     
     /**
@@ -185,16 +348,23 @@ public class ExampleUtils implements ExampleSchema {
      * ) WITH CLUSTERING ORDER BY (commentid DESC);
      */
     public static void createTableCommentByVideo(CqlSession session) {
-        session.execute(SchemaBuilder
-                .createTable(COMMENT_BY_VIDEO_TABLENAME)
-                .ifNotExists()
+        reconcile(session, tableCommentByVideoDefinition());
+        LOGGER.info("+ Table '{}' has been created (if needed).", COMMENT_BY_VIDEO_TABLENAME);
+    }
+
+    /**
+     * Definition of table 'comments_by_video', see {@link #createTableCommentByVideo(CqlSession)}.
+     *
+     * @return
+     *      expected columns and keys
+     */
+    public static TableDefinition tableCommentByVideoDefinition() {
+        return new TableDefinition(COMMENT_BY_VIDEO_TABLENAME)
                 .withPartitionKey(COMMENT_BY_VIDEO_VIDEOID, DataTypes.UUID)
                 .withClusteringColumn(COMMENT_BY_VIDEO_COMMENTID, DataTypes.TIMEUUID)
                 .withColumn(COMMENT_BY_VIDEO_USERID, DataTypes.UUID)
                 .withColumn(COMMENT_BY_VIDEO_COMMENT, DataTypes.TEXT)
-                .withClusteringOrder(COMMENT_BY_VIDEO_COMMENTID, ClusteringOrder.DESC)
-                .build());
-        LOGGER.info("+ Table '{}' has been created (if needed).", COMMENT_BY_VIDEO_TABLENAME);
+                .withClusteringOrder(COMMENT_BY_VIDEO_COMMENTID, ClusteringOrder.DESC);
     }
     
     /**
@@ -207,15 +377,85 @@ public class ExampleUtils implements ExampleSchema {
      * ) WITH CLUSTERING ORDER BY (upload DESC);
      */
     public static void createTableFiles(CqlSession session) {
-        session.execute(SchemaBuilder
-                .createTable(FILES_TABLENAME).ifNotExists()
+        reconcile(session, tableFilesDefinition());
+        LOGGER.info("+ Table '{}' has been created (if needed).", FILES_TABLENAME);
+    }
+
+    /**
+     * Definition of table 'files', see {@link #createTableFiles(CqlSession)}.
+     *
+     * @return
+     *      expected columns and keys
+     */
+    public static TableDefinition tableFilesDefinition() {
+        return new TableDefinition(FILES_TABLENAME)
                 .withPartitionKey(FILES_FILENAME, DataTypes.TEXT)
                 .withClusteringColumn(FILES_UPLOAD, DataTypes.TIMESTAMP)
                 .withStaticColumn(FILES_EXTENSION, DataTypes.TEXT)
                 .withColumn(FILES_BINARY, DataTypes.BLOB)
-                .withClusteringOrder(FILES_UPLOAD, ClusteringOrder.DESC)
-                .build());
-        LOGGER.info("+ Table '{}' has been created (if needed).", FILES_TABLENAME);        
+                .withClusteringOrder(FILES_UPLOAD, ClusteringOrder.DESC);
+    }
+    
+    /**
+     * Only send the DDL if the objects are missing or incomplete in the metadata, with the
+     * reconciler of the session.
+     */
+    private static void reconcile(CqlSession session, SchemaObject... definitions) {
+        RECONCILERS.keySet().removeIf(CqlSession::isClosed);
+        RECONCILERS.computeIfAbsent(session, SchemaReconciler::new).reconcile(Arrays.asList(definitions));
+    }
+    
+    /**
+     * Schema of {@link SampleCode4x_CONNECT_CreateSchema}, type 'video_format' is created
+     * before the tables by {@link SchemaReconciler}.
+     *
+     * @return
+     *      definitions of the schema objects
+     */
+    public static List<SchemaObject> schemaDefinitions() {
+        return Arrays.asList(
+                tableUserDefinition(),
+                tableVideoDefinition(),
+                tableVideoViewsDefinition(),
+                tableVideoViewsShardedDefinition(),
+                tableVideoViewsShardsDefinition(),
+                tableVideoViewersDefinition(),
+                tableVideoViewsByMinuteDefinition(),
+                tableVideoViewsRollupsDefinition(),
+                tableCommentByVideoDefinition(),
+                tableCommentByUserDefinition(),
+                udtVideoFormatDefinition());
+    }
+    
+    /**
+     * Tables dropped by {@link SampleCode4x_CONNECT_DropSchema}, before the type 'video_format'
+     * they use ({@link #dropUdtVideoFormatStatement()}).
+     *
+     * @return
+     *      DROP TABLE IF EXISTS statements
+     */
+    public static List<SimpleStatement> dropTablesStatements() {
+        return Arrays.asList(
+                SchemaBuilder.dropTable(COMMENT_BY_VIDEO_TABLENAME).ifExists().build(),
+                SchemaBuilder.dropTable(COMMENT_BY_USER_TABLENAME).ifExists().build(),
+                SchemaBuilder.dropTable(VIDEO_VIEWS_TABLENAME).ifExists().build(),
+                SchemaBuilder.dropTable(VIDEO_VIEWS_SHARDED_TABLENAME).ifExists().build(),
+                SchemaBuilder.dropTable(VIDEO_VIEWS_SHARDS_TABLENAME).ifExists().build(),
+                SchemaBuilder.dropTable(VIDEO_VIEWERS_TABLENAME).ifExists().build(),
+                SchemaBuilder.dropTable(VIDEO_VIEWS_BY_MINUTE_TABLENAME).ifExists().build(),
+                SchemaBuilder.dropTable(VIDEO_VIEWS_ROLLUPS_TABLENAME).ifExists().build(),
+                SchemaBuilder.dropTable(VIDEO_TABLENAME).ifExists().build(),
+                SchemaBuilder.dropTable(USER_TABLENAME).ifExists().build());
+    }
+    
+    /**
+     * Type dropped by {@link SampleCode4x_CONNECT_DropSchema}, once no table uses it.
+     *
+     * @return
+     *      DROP TYPE IF EXISTS statement
+     */
+    public static SimpleStatement dropUdtVideoFormatStatement() {
+        return SchemaBuilder.dropType(UDT_VIDEO_FORMAT_NAME).ifExists().build();
     }
     
 }
@@ -0,0 +1,63 @@
+package com.datastax.samples;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * 64-bit hash of the keys of the sketches and filters (HyperLogLog, BloomFilter).
+ *
+ * FNV-1a then the MurmurHash3 finalizer: FNV-1a is cheap on short keys, the finalizer spreads
+ * similar keys (emails differing by one character) over all bits. Stored sketches depend on
+ * it, the values must not change.
+ */
+public final class Hashing {
+
+    private Hashing() {
+    }
+
+    /**
+     * Hash of a string, UTF-8 encoded.
+     *
+     * @param key
+     *      key, e.g. an email
+     * @return
+     *      64-bit hash
+     */
+    public static long hash64(String key) {
+        return hash64(key.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Hash of bytes.
+     *
+     * @param bytes
+     *      key
+     * @return
+     *      64-bit hash
+     */
+    public static long hash64(byte[] bytes) {
+        long h = 0xcbf29ce484222325L;
+        for (byte b : bytes) {
+            h ^= b;
+            h *= 0x100000001b3L;
+        }
+        return fmix64(h);
+    }
+
+    /**
+     * MurmurHash3 finalizer, every input bit changes each output bit with a probability of 1/2.
+     *
+     * @param h
+     *      value to mix
+     * @return
+     *      mixed value
+     */
+    public static long fmix64(long h) {
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+
+}
@@ -0,0 +1,196 @@
+package com.datastax.samples;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Collectors;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.datastax.oss.driver.api.core.CqlSession;
+import com.datastax.oss.driver.api.core.cql.PreparedStatement;
+import com.datastax.oss.driver.api.core.cql.SimpleStatement;
+
+/**
+ * Prepare statements once, in parallel, and keep them by statement.
+ *
+ * Calling session.prepare() for each statement costs one round trip per statement
+ * (and per node as the driver prepares on all nodes). Here all statements of a component
+ * are given up front and prepared with prepareAsync() at the same time: the component
+ * pays the time of the slowest preparation instead of the sum of all of them.
+ *
+ * Use one registry per session, {@link SessionManager#getRegistry(CqlSession)}: a statement
+ * already prepared by another component is then a hit and not prepared again. Statements
+ * are compared with all their attributes, not only the query: the prepared statement
+ * inherits them (keyspace, idempotence, consistency...), the same query with other
+ * attributes is prepared on its own.
+ *
+ * <pre>
+ * Map&lt;SimpleStatement, PreparedStatement&gt; ps = registry.prepareAll(stmtInsert, stmtSelect);
+ * PreparedStatement psInsert = ps.get(stmtInsert);
+ * </pre>
+ */
+public class PreparedStatementRegistry {
+
+    /** Logger for the class. */
+    private static Logger LOGGER = LoggerFactory.getLogger(PreparedStatementRegistry.class);
+
+    /** Working session. */
+    private final CqlSession session;
+
+    /** Statements (or preparations in progress) by statement, query and attributes. */
+    private final Map<SimpleStatement, CompletableFuture<PreparedStatement>> statements = new ConcurrentHashMap<>();
+
+    /** Time spent to prepare each statement. */
+    private final Map<String, Duration> prepareLatencies = new ConcurrentHashMap<>();
+
+    /** Statement found in the registry. */
+    private final LongAdder hits = new LongAdder();
+
+    /** Statement had to be prepared. */
+    private final LongAdder misses = new LongAdder();
+
+    /**
+     * Registry working with a session.
+     *
+     * @param session
+     *      current session
+     */
+    public PreparedStatementRegistry(CqlSession session) {
+        this.session = session;
+    }
+
+    /**
+     * Prepare all statements in parallel and wait for all of them.
+     *
+     * @param statements
+     *      statements to prepare
+     * @return
+     *      prepared statements by statement
+     */
+    public Map<SimpleStatement, PreparedStatement> prepareAll(SimpleStatement... statements) {
+        return prepareAll(Arrays.asList(statements));
+    }
+
+    /**
+     * Prepare all statements in parallel and wait for all of them.
+     *
+     * @param statements
+     *      statements to prepare
+     * @return
+     *      prepared statements by statement
+     */
+    public Map<SimpleStatement, PreparedStatement> prepareAll(Collection<SimpleStatement> statements) {
+        long top = System.nanoTime();
+        List<CompletableFuture<PreparedStatement>> futures = statements.stream()
+                .map(this::lookup)
+                .collect(Collectors.toList());
+        await(CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0])));
+        LOGGER.info("+ {} statement(s) prepared in {} ms", statements.size(),
+                Duration.ofNanos(System.nanoTime() - top).toMillis());
+        Map<SimpleStatement, PreparedStatement> result = new HashMap<>();
+        statements.forEach(stmt -> result.put(stmt, await(this.statements.get(stmt))));
+        return result;
+    }
+
+    /**
+     * Access a statement, it is prepared if not already in the registry.
+     *
+     * @param statement
+     *      statement to prepare
+     * @return
+     *      prepared statement
+     */
+    public PreparedStatement get(SimpleStatement statement) {
+        return await(lookup(statement));
+    }
+
+    /**
+     * Access a statement from its query, it is prepared if not already in the registry.
+     *
+     * @param query
+     *      cql query
+     * @return
+     *      prepared statement
+     */
+    public PreparedStatement get(String query) {
+        return get(SimpleStatement.newInstance(query));
+    }
+
+    /**
+     * Time spent to prepare each statement.
+     *
+     * @return
+     *      latencies by query string
+     */
+    public Map<String, Duration> getPrepareLatencies() {
+        return Collections.unmodifiableMap(prepareLatencies);
+    }
+
+    /**
+     * Number of lookups served from the registry.
+     *
+     * @return
+     *      hit count
+     */
+    public long getHitCount() {
+        return hits.sum();
+    }
+
+    /**
+     * Number of lookups that required a preparation.
+     *
+     * @return
+     *      miss count
+     */
+    public long getMissCount() {
+        return misses.sum();
+    }
+
+    private CompletableFuture<PreparedStatement> lookup(SimpleStatement statement) {
+        String query = statement.getQuery();
+        CompletableFuture<PreparedStatement> existing = statements.get(statement);
+        if (existing == null) {
+            CompletableFuture<PreparedStatement> created = new CompletableFuture<>();
+            existing = statements.putIfAbsent(statement, created);
+            if (existing == null) {
+                misses.increment();
+                long top = System.nanoTime();
+                session.prepareAsync(statement).whenComplete((ps, error) -> {
+                    if (error != null) {
+                        // Do not keep failures, next lookup will try again
+                        statements.remove(statement, created);
+                        created.completeExceptionally(error);
+                    } else {
+                        prepareLatencies.put(query, Duration.ofNanos(System.nanoTime() - top));
+                        created.complete(ps);
+                    }
+                });
+                return created;
+            }
+        }
+        hits.increment();
+        return existing;
+    }
+
+    private static <T> T await(CompletableFuture<T> future) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+}
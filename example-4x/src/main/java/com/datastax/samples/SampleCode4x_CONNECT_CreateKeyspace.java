@@ -33,6 +33,7 @@ public class SampleCode4x_CONNECT_CreateKeyspace implements ExampleSchema {
     public static void main(String[] args) {
         LOGGER.info("Starting 'CreateKeyspace' sample...");
         ExampleUtils.createKeyspace();
+        SessionManager.closeAll();
         System.exit(0);
     }
      
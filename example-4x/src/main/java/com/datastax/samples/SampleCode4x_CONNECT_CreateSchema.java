@@ -1,13 +1,9 @@
 package com.datastax.samples;
 
-import static com.datastax.samples.ExampleUtils.createTableCommentByUser;
-import static com.datastax.samples.ExampleUtils.createTableCommentByVideo;
-import static com.datastax.samples.ExampleUtils.createTableUser;
-import static com.datastax.samples.ExampleUtils.createTableVideo;
-import static com.datastax.samples.ExampleUtils.createTableVideoViews;
-import static com.datastax.samples.ExampleUtils.createUdtVideoFormat;
+import static com.datastax.samples.ExampleUtils.schemaDefinitions;
 
 import java.net.InetSocketAddress;
+import java.time.Duration;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -20,6 +16,9 @@ import org.slf4j.LoggerFactory;
  * - Keyspace killrvideo created {@link SampleCode4x_CONNECT_CreateKeyspace}
  */
 import com.datastax.oss.driver.api.core.CqlSession;
+import com.datastax.oss.driver.api.core.config.DefaultDriverOption;
+import com.datastax.oss.driver.api.core.config.DriverConfigLoader;
+import com.datastax.samples.schema.SchemaReconciler;
 
 
 /**
@@ -37,17 +36,21 @@ public class SampleCode4x_CONNECT_CreateSchema implements ExampleSchema {
     public static void main(String[] args) {
         LOGGER.info("Starting 'CreateSchema' sample...");
         
+        // Schema agreement is checked once by the executor, not after each statement
+        DriverConfigLoader loader = DriverConfigLoader.programmaticBuilder()
+                .withDuration(DefaultDriverOption.CONTROL_CONNECTION_AGREEMENT_TIMEOUT, Duration.ZERO)
+                .build();
+        
         try (CqlSession cqlSession = CqlSession.builder()
+                .withConfigLoader(loader)
                 .addContactPoint(new InetSocketAddress("127.0.0.1", 9042))
                 .withLocalDatacenter("datacenter1")
                 .withKeyspace(KEYSPACE_NAME)
                 .build()) {
-                createUdtVideoFormat(cqlSession);
-                createTableUser(cqlSession);
-                createTableVideo(cqlSession);
-                createTableVideoViews(cqlSession);
-                createTableCommentByVideo(cqlSession);
-                createTableCommentByUser(cqlSession);
+                // Only missing objects are created: type 'video_format' first, then the tables in parallel
+                new SchemaReconciler(cqlSession)
+                    .addAll(schemaDefinitions())
+                    .reconcile();
         }
         LOGGER.info("[OK] Success");
         System.exit(0);
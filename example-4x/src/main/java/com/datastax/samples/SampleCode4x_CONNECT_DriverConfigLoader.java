@@ -7,6 +7,7 @@ import org.slf4j.LoggerFactory;
 
 import com.datastax.oss.driver.api.core.CqlSession;
 import com.datastax.oss.driver.api.core.config.DriverConfigLoader;
+import com.datastax.oss.driver.api.querybuilder.QueryBuilder;
 
 /**
  * Sample code to create tables, types and objects in a keyspace.
@@ -25,6 +26,9 @@ public class SampleCode4x_CONNECT_DriverConfigLoader implements ExampleSchema {
     /** StandAlone (vs JUNIT) to help you running. */
     public static void main(String[] args) {
         
+        // Time spent in each startup phase, until the first prepare
+        StartupProfiler profiler = new StartupProfiler("DriverConfigLoader");
+        
         // Load Configuration from file
         String confFilePath = SampleCode4x_CONNECT_DriverConfigLoader
                 .class.getResource("/custom_application.conf").getFile();
@@ -34,10 +38,16 @@ public class SampleCode4x_CONNECT_DriverConfigLoader implements ExampleSchema {
                 DriverConfigLoader.fromFile(new File(confFilePath));
         
         // Use it to create the session
-        try (CqlSession cqlSession = CqlSession.builder().withConfigLoader(loader).build()) {
+        try (CqlSession cqlSession = profiler.sessionBuilder().withConfigLoader(loader).build()) {
             
             // Use session
             LOGGER.info("[OK] Connected to Keyspace {}", cqlSession.getKeyspace().get());
+            
+            // Time to first query: config, control connection, metadata, pools and first prepare
+            cqlSession.prepare(QueryBuilder.selectFrom(USER_TABLENAME).all()
+                    .whereColumn(USER_EMAIL).isEqualTo(QueryBuilder.bindMarker())
+                    .build());
+            profiler.report();
         }
         LOGGER.info("[OK] Success");
         System.exit(0);
@@ -1,14 +1,18 @@
 package com.datastax.samples;
 
-import static com.datastax.samples.ExampleUtils.dropTableIfExists;
-import static com.datastax.samples.ExampleUtils.dropTypeIffExists;
+import static com.datastax.samples.ExampleUtils.dropTablesStatements;
+import static com.datastax.samples.ExampleUtils.dropUdtVideoFormatStatement;
 
 import java.net.InetSocketAddress;
+import java.time.Duration;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.datastax.oss.driver.api.core.CqlSession;
+import com.datastax.oss.driver.api.core.config.DefaultDriverOption;
+import com.datastax.oss.driver.api.core.config.DriverConfigLoader;
+import com.datastax.samples.schema.SchemaExecutor;
 
 /**
  * Sample code to create tables, types and objects in a keyspace.
@@ -27,18 +31,24 @@ public class SampleCode4x_CONNECT_DropSchema implements ExampleSchema {
     /** StandAlone (vs JUNIT) to help you running. */
     public static void main(String[] args) {
         
+        // Schema agreement is checked once by the executor, not after each statement
+        DriverConfigLoader loader = DriverConfigLoader.programmaticBuilder()
+                .withDuration(DefaultDriverOption.CONTROL_CONNECTION_AGREEMENT_TIMEOUT, Duration.ZERO)
+                .build();
+        
         try (CqlSession cqlSession = CqlSession.builder()
+                .withConfigLoader(loader)
                 .addContactPoint(new InetSocketAddress("127.0.0.1", 9042))
                 .withLocalDatacenter("datacenter1")
                 .withKeyspace(KEYSPACE_NAME)
                 .build()) {
             LOGGER.info("[OK] Connected to Keyspace");
-            dropTableIfExists(cqlSession, COMMENT_BY_VIDEO_TABLENAME);
-            dropTableIfExists(cqlSession, COMMENT_BY_USER_TABLENAME);
-            dropTableIfExists(cqlSession, VIDEO_VIEWS_TABLENAME);
-            dropTableIfExists(cqlSession, VIDEO_TABLENAME);
-            dropTableIfExists(cqlSession, USER_TABLENAME);
-            dropTypeIffExists(cqlSession, UDT_VIDEO_FORMAT_NAME);
+            // Tables in parallel, then type 'video_format'
+            new SchemaExecutor(cqlSession)
+                .addAll(dropTablesStatements())
+                .then()
+                .add(dropUdtVideoFormatStatement())
+                .execute();
         }
         LOGGER.info("[OK] Success");
         System.exit(0);
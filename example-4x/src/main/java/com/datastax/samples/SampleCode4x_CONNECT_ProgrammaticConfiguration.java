@@ -9,6 +9,7 @@ import org.slf4j.LoggerFactory;
 import com.datastax.oss.driver.api.core.CqlSession;
 import com.datastax.oss.driver.api.core.config.DefaultDriverOption;
 import com.datastax.oss.driver.api.core.config.DriverConfigLoader;
+import com.datastax.oss.driver.api.querybuilder.QueryBuilder;
 
 /**
  * Sample code to create tables, types and objects in a keyspace.
@@ -27,6 +28,9 @@ public class SampleCode4x_CONNECT_ProgrammaticConfiguration implements ExampleSc
     /** StandAlone (vs JUNIT) to help you running. */
     public static void main(String[] args) {
         
+        // Time spent in each startup phase, until the first prepare
+        StartupProfiler profiler = new StartupProfiler("ProgrammaticConfiguration");
+        
         DriverConfigLoader loader = DriverConfigLoader.programmaticBuilder()
             .withStringList(DefaultDriverOption.CONTACT_POINTS, Arrays.asList("127.0.0.1:9042"))
             .withString(DefaultDriverOption.LOAD_BALANCING_LOCAL_DATACENTER, "datacenter1")
@@ -41,10 +45,16 @@ public class SampleCode4x_CONNECT_ProgrammaticConfiguration implements ExampleSc
        
         
         // Use it to create the session
-        try (CqlSession cqlSession = CqlSession.builder().withConfigLoader(loader).build()) {
+        try (CqlSession cqlSession = profiler.sessionBuilder().withConfigLoader(loader).build()) {
             
             // Use session
             LOGGER.info("[OK] Connected to Keyspace {}", cqlSession.getKeyspace().get());
+            
+            // Time to first query: config, control connection, metadata, pools and first prepare
+            cqlSession.prepare(QueryBuilder.selectFrom(USER_TABLENAME).all()
+                    .whereColumn(USER_EMAIL).isEqualTo(QueryBuilder.bindMarker())
+                    .build());
+            profiler.report();
         }
         LOGGER.info("[OK] Success");
         System.exit(0);
@@ -7,7 +7,9 @@ import static com.datastax.samples.ExampleUtils.createTableUser;
 import static com.datastax.samples.ExampleUtils.truncateTable;
 
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.function.Predicate;
 import java.util.stream.Collectors;
 
 import org.slf4j.Logger;
@@ -17,8 +19,12 @@ import com.datastax.oss.driver.api.core.CqlSession;
 import com.datastax.oss.driver.api.core.cql.PreparedStatement;
 import com.datastax.oss.driver.api.core.cql.ResultSet;
 import com.datastax.oss.driver.api.core.cql.Row;
+import com.datastax.oss.driver.api.core.cql.SimpleStatement;
 import com.datastax.oss.driver.api.querybuilder.QueryBuilder;
+import com.datastax.samples.cache.CachingUserRepository;
 import com.datastax.samples.dto.UserDto;
+import com.datastax.samples.filter.PartitionKeyFilter;
+import com.datastax.samples.lwt.UniquenessGuard;
 
 /**
  * Sample codes using Cassandra OSS Driver 4.x
@@ -48,6 +54,15 @@ public class SampleCode4x_CRUD_01_Simple implements ExampleSchema {
     private static PreparedStatement stmtDeleteUser;
     private static PreparedStatement stmtFindUser;
     
+    // Lightweight transaction only for emails not known to exist
+    private static UniquenessGuard emailGuard;
+    
+    // Emails surely absent are answered without a round trip, null unless -Dsamples.keyFilter=true
+    private static PartitionKeyFilter emailFilter;
+    
+    // Profiles read through a local cache, invalidated by the writes of this class
+    private static CachingUserRepository userRepository;
+    
     /** StandAlone (vs JUNIT) to help you running. */
     public static void main(String[] args) {
         try {
@@ -68,6 +83,14 @@ public class SampleCode4x_CRUD_01_Simple implements ExampleSchema {
             
             // Prepare your statements once and execute multiple times 
             prepareStatements();
+            emailGuard = new UniquenessGuard(session);
+            if (Boolean.getBoolean(PartitionKeyFilter.ENABLED_PROPERTY)) {
+                // Reads all the emails of the table before the first check
+                emailFilter = new PartitionKeyFilter(session, USER_TABLENAME, USER_EMAIL).start();
+            }
+            userRepository = new CachingUserRepository(session)
+                    .withMaximumSize(1000)
+                    .withKeyFilter(emailFilter);
             
             // ========== CREATE ===========
             
@@ -124,31 +147,60 @@ public class SampleCode4x_CRUD_01_Simple implements ExampleSchema {
                     .collect(Collectors.toList());
             LOGGER.info("+ Retrieved users count {}", allUsers.size());
             
+            // ========= READ THROUGH CACHE ==============
+            
+            // Hot profile: loaded once, then served from memory (sync, async or reactive)
+            for (int i = 0; i < 1000; i++) {
+                userRepository.findById(userEmail);
+            }
+            userRepository.findByIdAsync(userEmail).toCompletableFuture().join();
+            userRepository.findByIdReactive(userEmail).block();
+            
+            // Writes of the repository invalidate the entry, next read loads the new value
+            userRepository.upsert(new UserDto(userEmail, "Cedrick", "LUNVEN"));
+            LOGGER.info("+ Retrieved after update: {}", userRepository.findById(userEmail).get().getLastName());
+            userRepository.logStatistics();
+            
         } finally {
+            if (emailFilter != null) {
+                emailFilter.close();
+            }
             closeSession(session);
         }
         System.exit(0);
     }
     
     private static boolean existUser(String email) {
-        return session.execute(stmtExistUser.bind(email)).getAvailableWithoutFetching() > 0;
+        Predicate<String> lookup = e -> session.execute(stmtExistUser.bind(e)).getAvailableWithoutFetching() > 0;
+        return emailFilter == null ? lookup.test(email) : emailFilter.exists(email, lookup);
+    }
+    
+    // Every write of a user goes through here (or the repository), the filter must know its email
+    private static void userWritten(String email) {
+        if (emailFilter != null) {
+            emailFilter.put(email);
+        }
+        userRepository.invalidate(email);
     }
     
     private static void createUser(String email, String firstname, String lastname) {
-        ResultSet rs = session.execute(stmtCreateUser.bind(email, firstname, lastname));
-        if (!rs.wasApplied()) {
+        if (!emailGuard.insertIfNotExists(email, stmtCreateUser.bind(email, firstname, lastname))) {
             throw new IllegalArgumentException("Email '" + email + "' already exist in Database. Cannot create new user");
         }
+        userWritten(email);
         LOGGER.info("+ User {} has been created", email);
     }
     
     private static void updateUser(String email, String firstname, String lastname) {
         session.execute(stmtUpsertUser.bind(email, firstname, lastname));
+        userWritten(email);
         LOGGER.info("+ User {} has been updated", email);
     }
     
     private static void deleteUser(String email) {
         session.execute(stmtDeleteUser.bind(email));
+        emailGuard.forget(email);
+        userRepository.invalidate(email);
         LOGGER.info("+ User {} has been deleted", email);
     }
     
@@ -160,32 +212,40 @@ public class SampleCode4x_CRUD_01_Simple implements ExampleSchema {
     }
     
     private static void prepareStatements() {
-        stmtCreateUser = session.prepare(QueryBuilder.insertInto(USER_TABLENAME)
+        SimpleStatement queryCreateUser = QueryBuilder.insertInto(USER_TABLENAME)
                 .value(USER_EMAIL, QueryBuilder.bindMarker())
                 .value(USER_FIRSTNAME, QueryBuilder.bindMarker())
                 .value(USER_LASTNAME, QueryBuilder.bindMarker())
-                .ifNotExists().build());
-        stmtUpsertUser = session.prepare(QueryBuilder.insertInto(USER_TABLENAME)
+                .ifNotExists().build();
+        SimpleStatement queryUpsertUser = QueryBuilder.insertInto(USER_TABLENAME)
                 .value(USER_EMAIL, QueryBuilder.bindMarker())
                 .value(USER_FIRSTNAME, QueryBuilder.bindMarker())
                 .value(USER_LASTNAME, QueryBuilder.bindMarker())
-                .build());
-        stmtExistUser = session.prepare(QueryBuilder
+                .build();
+        SimpleStatement queryExistUser = QueryBuilder
                 .selectFrom(USER_TABLENAME).column(USER_EMAIL)
                 .whereColumn(USER_EMAIL)
                 .isEqualTo(QueryBuilder.bindMarker())
-                .build());
-        stmtDeleteUser = session.prepare(QueryBuilder
+                .build();
+        SimpleStatement queryDeleteUser = QueryBuilder
                 .deleteFrom(USER_TABLENAME)
                 .whereColumn(USER_EMAIL)
                 .isEqualTo(QueryBuilder.bindMarker())
-                .build());
-        stmtFindUser = session.prepare(QueryBuilder
+                .build();
+        SimpleStatement queryFindUser = QueryBuilder
                 .selectFrom(USER_TABLENAME).all()
                 .whereColumn(USER_EMAIL)
                 .isEqualTo(QueryBuilder.bindMarker())
-                .build());
-       
+                .build();
+
+        // All statements are prepared in parallel: one round trip instead of 5
+        Map<SimpleStatement, PreparedStatement> prepared = SessionManager.getRegistry(session).prepareAll(
+                queryCreateUser, queryUpsertUser, queryExistUser, queryDeleteUser, queryFindUser);
+        stmtCreateUser = prepared.get(queryCreateUser);
+        stmtUpsertUser = prepared.get(queryUpsertUser);
+        stmtExistUser = prepared.get(queryExistUser);
+        stmtDeleteUser = prepared.get(queryDeleteUser);
+        stmtFindUser = prepared.get(queryFindUser);
     }
   
 }
@@ -7,17 +7,20 @@ import static com.datastax.samples.ExampleUtils.createTableUser;
 import static com.datastax.samples.ExampleUtils.truncateTable;
 
 import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
 import java.time.Duration;
+import java.util.ArrayList;
 import java.util.Iterator;
+import java.util.List;
+import java.util.stream.Stream;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.datastax.oss.driver.api.core.ConsistencyLevel;
 import com.datastax.oss.driver.api.core.CqlSession;
-import com.datastax.oss.driver.api.core.cql.BatchStatement;
-import com.datastax.oss.driver.api.core.cql.BatchStatementBuilder;
-import com.datastax.oss.driver.api.core.cql.DefaultBatchType;
+import com.datastax.oss.driver.api.core.cql.AsyncResultSet;
+import com.datastax.oss.driver.api.core.cql.BoundStatement;
 import com.datastax.oss.driver.api.core.cql.PreparedStatement;
 import com.datastax.oss.driver.api.core.cql.ResultSet;
 import com.datastax.oss.driver.api.core.cql.Row;
@@ -25,6 +28,13 @@ import com.datastax.oss.driver.api.core.cql.SimpleStatement;
 import com.datastax.oss.driver.api.querybuilder.QueryBuilder;
 
 import com.datastax.oss.protocol.internal.util.Bytes;
+import com.datastax.samples.bulk.StatementBatcher;
+import com.datastax.samples.bulk.StatementBatcher.Strategy;
+import com.datastax.samples.paging.AdaptivePageSizer;
+import com.datastax.samples.paging.CursorPager;
+import com.datastax.samples.paging.Page;
+import com.datastax.samples.paging.PageCursorCodec;
+import com.datastax.samples.paging.PrefetchingIterator;
 
 /**
  * Sample codes using Cassandra OSS Driver 4.x
@@ -71,12 +81,13 @@ public class SampleCode4x_CRUD_02_Paging implements ExampleSchema {
                     .value(USER_LASTNAME, QueryBuilder.bindMarker())
                     .build());
 
-            // Adding 50 records in the table
-            BatchStatementBuilder bb = BatchStatement.builder(DefaultBatchType.LOGGED);
+            // Adding 50 records in the table, each in its own partition: grouped in UNLOGGED
+            // batches by replica set instead of one LOGGED batch fanned out by a coordinator
+            List<BoundStatement> inserts = new ArrayList<>();
             for (int i = 0; i < 50; i++) {
-                bb.addStatement(stmtCreateUser.bind("user_" + i + "@sample.com", "user_" + i, "lastname"));
+                inserts.add(stmtCreateUser.bind("user_" + i + "@sample.com", "user_" + i, "lastname"));
 			}
-            session.execute(bb.build());
+            new StatementBatcher(session).withStrategy(Strategy.REPLICA_SET).execute(inserts);
             LOGGER.info("+ {} users have been created", 50);
             
             // Paged query
@@ -103,10 +114,34 @@ public class SampleCode4x_CRUD_02_Paging implements ExampleSchema {
             // If you need to go back to byteBuffer
             // ByteBuffer pagingStateAsBytesBack = Bytes.fromHexString(pageStateAsString);
             
-            statement.setPagingState(pagingStateAsBytes);
-            ResultSet page2 = session.execute(statement);
+            ResultSet page2 = session.execute(statement.setPagingState(pagingStateAsBytes));
             LOGGER.info("+ Page 2 has {} items", page2.getAvailableWithoutFetching());
             
+            // Large results: next pages are fetched while the current one is consumed
+            try (Stream<Row> rows = PrefetchingIterator.stream(session.executeAsync(statement))) {
+                LOGGER.info("+ {} rows read with prefetching", rows.count());
+            }
+            
+            // For web clients: signed cursors (the secret is shared by all instances)
+            // and the next page prefetched in memory for "load more"
+            byte[] secret = "change-me-a-secret-of-32-bytes-min".getBytes(StandardCharsets.UTF_8);
+            CursorPager pager = new CursorPager(session, new PageCursorCodec(secret))
+                    .withNextPageCache(100, Duration.ofSeconds(30));
+            Page<String> webPage = pager.fetch(statement, null, row -> row.getString(USER_EMAIL));
+            LOGGER.info("+ Web page 1 has {} items, next cursor {}", webPage.getItems().size(), webPage.getNextCursor());
+            webPage = pager.fetch(statement, webPage.getNextCursor(), row -> row.getString(USER_EMAIL));
+            LOGGER.info("+ Web page 2 has {} items (from cache: {})", webPage.getItems().size(), webPage.isFromCache());
+            
+            // Page size tuned from the observed row size and latency instead of a fixed value
+            AdaptivePageSizer pageSizer = new AdaptivePageSizer(session);
+            AsyncResultSet adaptivePage = pageSizer.executeAsync(statement).toCompletableFuture().join();
+            int adaptiveRows = adaptivePage.remaining();
+            while (adaptivePage.hasMorePages()) {
+                adaptivePage = pageSizer.fetchNextPage(statement, adaptivePage).toCompletableFuture().join();
+                adaptiveRows += adaptivePage.remaining();
+            }
+            LOGGER.info("+ {} rows read, page size is now {}", adaptiveRows, pageSizer.getPageSize(statement));
+            
         } finally {
             closeSession(session);
         }
@@ -7,19 +7,24 @@ import static com.datastax.samples.ExampleUtils.createTableCommentByUser;
 import static com.datastax.samples.ExampleUtils.createTableCommentByVideo;
 import static com.datastax.samples.ExampleUtils.truncateTable;
 
+import java.nio.file.Paths;
 import java.util.List;
+import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.datastax.oss.driver.api.core.CqlSession;
-import com.datastax.oss.driver.api.core.cql.BatchStatement;
-import com.datastax.oss.driver.api.core.cql.BatchType;
 import com.datastax.oss.driver.api.core.cql.PreparedStatement;
+import com.datastax.oss.driver.api.core.cql.SimpleStatement;
 import com.datastax.oss.driver.api.core.uuid.Uuids;
 import com.datastax.oss.driver.api.querybuilder.QueryBuilder;
+import com.datastax.samples.write.DenormalizedWriter;
+import com.datastax.samples.write.DenormalizedWriter.Strategy;
+import com.datastax.samples.write.FailureJournal;
 
 /**
  * Sample codes using Cassandra OSS Driver 4.x
@@ -50,6 +55,9 @@ public class SampleCode4x_CRUD_03_Batches implements ExampleSchema {
     private static PreparedStatement selectCommentByVideo;
     private static PreparedStatement selectCommentByUser;
     
+    // Writes a comment to both tables, LOGGED batch or parallel writes
+    private static DenormalizedWriter commentWriter;
+    
     /** StandAlone (vs JUNIT) to help you running. */
     public static void main(String[] args) {
         
@@ -71,6 +79,9 @@ public class SampleCode4x_CRUD_03_Batches implements ExampleSchema {
 
             // Prepare your statements once and execute multiple times 
             prepareStatements();
+            FailureJournal journal = new FailureJournal(Paths.get(System.getProperty("java.io.tmpdir"), "killrvideo-comments.journal"));
+            journal.replay(session);
+            commentWriter = new DenormalizedWriter(session).withJournal(journal);
 
             // Will use this identifiers is all tests
             UUID user_1    = UUID.randomUUID();UUID user_2    = UUID.randomUUID();
@@ -112,6 +123,24 @@ public class SampleCode4x_CRUD_03_Batches implements ExampleSchema {
             retrieveCommentsUser(user_1).stream().forEach(LOGGER::info);
             retrieveCommentsVideo(videoid_2).stream().forEach(LOGGER::info);
             
+            /*
+             * ====================== WRITE STRATEGIES ===========================
+             * == LOGGED batch (batchlog on 2 other nodes) vs parallel writes    =
+             * == retried then journaled: comments are eventually consistent    =
+             * ==================================================================
+             */
+            
+            for (Strategy strategy : Strategy.values()) {
+                commentWriter.withStrategy(strategy);
+                long top = System.nanoTime();
+                for (int i = 0; i < 200; i++) {
+                    createComment(user_1, videoid_2, "Comment " + i);
+                }
+                LOGGER.info("+ 200 comments written with {} in {} ms", strategy,
+                        TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - top));
+            }
+            commentWriter.close();
+            
         } finally {
             // Close Cluster and Session 
             closeSession(session);
@@ -121,42 +150,48 @@ public class SampleCode4x_CRUD_03_Batches implements ExampleSchema {
     
     private static void prepareStatements() {
         
-        insertIntoCommentByVideo = session.prepare(
-                QueryBuilder.insertInto(COMMENT_BY_VIDEO_TABLENAME)
+        SimpleStatement queryInsertIntoCommentByVideo = QueryBuilder.insertInto(COMMENT_BY_VIDEO_TABLENAME)
                             .value(COMMENT_BY_VIDEO_VIDEOID,   QueryBuilder.bindMarker())
                             .value(COMMENT_BY_VIDEO_USERID,    QueryBuilder.bindMarker())
                             .value(COMMENT_BY_VIDEO_COMMENTID, QueryBuilder.bindMarker())
                             .value(COMMENT_BY_VIDEO_COMMENT,   QueryBuilder.bindMarker())
-                            .build());
-        insertIntoCommentByUser = session.prepare(
-                QueryBuilder.insertInto(COMMENT_BY_USER_TABLENAME)
+                            .build();
+        SimpleStatement queryInsertIntoCommentByUser = QueryBuilder.insertInto(COMMENT_BY_USER_TABLENAME)
                             .value(COMMENT_BY_USER_USERID,     QueryBuilder.bindMarker())
                             .value(COMMENT_BY_USER_VIDEOID,    QueryBuilder.bindMarker())
                             .value(COMMENT_BY_USER_COMMENTID,  QueryBuilder.bindMarker())
                             .value(COMMENT_BY_USER_COMMENT,    QueryBuilder.bindMarker())
-                            .build());
+                            .build();
         
-        deleteCommentByUser = session.prepare(
-                QueryBuilder.deleteFrom(COMMENT_BY_USER_TABLENAME)
+        SimpleStatement queryDeleteCommentByUser = QueryBuilder.deleteFrom(COMMENT_BY_USER_TABLENAME)
                 .whereColumn(COMMENT_BY_USER_USERID).isEqualTo(QueryBuilder.bindMarker())
                 .whereColumn(COMMENT_BY_USER_COMMENTID).isEqualTo(QueryBuilder.bindMarker())
-                .build());
-        deleteCommentByVideo = session.prepare(
-                QueryBuilder.deleteFrom(COMMENT_BY_VIDEO_TABLENAME)
+                .build();
+        SimpleStatement queryDeleteCommentByVideo = QueryBuilder.deleteFrom(COMMENT_BY_VIDEO_TABLENAME)
                 .whereColumn(COMMENT_BY_VIDEO_VIDEOID).isEqualTo(QueryBuilder.bindMarker())
                 .whereColumn(COMMENT_BY_VIDEO_COMMENTID).isEqualTo(QueryBuilder.bindMarker())
-                .build());
+                .build();
         
-        selectCommentByVideo = session.prepare(
-                QueryBuilder.selectFrom(COMMENT_BY_VIDEO_TABLENAME)
+        SimpleStatement querySelectCommentByVideo = QueryBuilder.selectFrom(COMMENT_BY_VIDEO_TABLENAME)
                 .column(COMMENT_BY_VIDEO_COMMENT)
                 .whereColumn(COMMENT_BY_VIDEO_VIDEOID).isEqualTo(QueryBuilder.bindMarker())
-                .build());
-        selectCommentByUser  = session.prepare(
-                QueryBuilder.selectFrom(COMMENT_BY_USER_TABLENAME)
+                .build();
+        SimpleStatement querySelectCommentByUser = QueryBuilder.selectFrom(COMMENT_BY_USER_TABLENAME)
                 .column(COMMENT_BY_USER_COMMENT)
                 .whereColumn(COMMENT_BY_USER_USERID).isEqualTo(QueryBuilder.bindMarker())
-                .build());
+                .build();
+
+        // All statements are prepared in parallel: one round trip instead of 6
+        Map<SimpleStatement, PreparedStatement> prepared = SessionManager.getRegistry(session).prepareAll(
+                queryInsertIntoCommentByVideo, queryInsertIntoCommentByUser,
+                queryDeleteCommentByUser,      queryDeleteCommentByVideo,
+                querySelectCommentByVideo,     querySelectCommentByUser);
+        insertIntoCommentByVideo = prepared.get(queryInsertIntoCommentByVideo);
+        insertIntoCommentByUser = prepared.get(queryInsertIntoCommentByUser);
+        deleteCommentByUser = prepared.get(queryDeleteCommentByUser);
+        deleteCommentByVideo = prepared.get(queryDeleteCommentByVideo);
+        selectCommentByVideo = prepared.get(querySelectCommentByVideo);
+        selectCommentByUser = prepared.get(querySelectCommentByUser);
     }
 
     
@@ -167,19 +202,15 @@ public class SampleCode4x_CRUD_03_Batches implements ExampleSchema {
     }
      
     private static void updateComment(UUID commentid, UUID userid, UUID videoid, String comment) {
-        session.execute(BatchStatement
-                .builder(BatchType.LOGGED)
-                .addStatement(insertIntoCommentByVideo.bind(videoid, userid, commentid, comment))
-                .addStatement(insertIntoCommentByUser.bind(userid, videoid, commentid, comment))
-                .build());
+        commentWriter.execute(
+                insertIntoCommentByVideo.bind(videoid, userid, commentid, comment),
+                insertIntoCommentByUser.bind(userid, videoid, commentid, comment));
     }
     
     private static void deleteComment(UUID commentid, UUID userid, UUID videoid) {
-        session.execute(BatchStatement
-                .builder(BatchType.LOGGED)
-                .addStatement(deleteCommentByUser.bind(userid, commentid))
-                .addStatement(deleteCommentByVideo.bind(videoid, commentid))
-                .build());
+        commentWriter.execute(
+                deleteCommentByUser.bind(userid, commentid),
+                deleteCommentByVideo.bind(videoid, commentid));
     }
     
     private static List<String> retrieveCommentsVideo(UUID videoid) {
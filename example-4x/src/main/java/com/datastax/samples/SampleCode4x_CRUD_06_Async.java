@@ -3,25 +3,39 @@ package com.datastax.samples;
 import static com.datastax.samples.ExampleUtils.closeSession;
 import static com.datastax.samples.ExampleUtils.connect;
 import static com.datastax.samples.ExampleUtils.createKeyspace;
+import static com.datastax.samples.ExampleUtils.createTableCommentByVideo;
 import static com.datastax.samples.ExampleUtils.createTableUser;
+import static com.datastax.samples.ExampleUtils.createTableVideo;
+import static com.datastax.samples.ExampleUtils.createTableVideoViews;
+import static com.datastax.samples.ExampleUtils.createUdtVideoFormat;
 import static com.datastax.samples.ExampleUtils.truncateTable;
 
+import java.util.Arrays;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.UUID;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.CompletionStage;
 import java.util.concurrent.ExecutionException;
+import java.util.function.Function;
 import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.datastax.oss.driver.api.core.CqlSession;
-import com.datastax.oss.driver.api.core.cql.AsyncResultSet;
 import com.datastax.oss.driver.api.core.cql.PreparedStatement;
 import com.datastax.oss.driver.api.core.cql.Row;
+import com.datastax.oss.driver.api.core.cql.SimpleStatement;
+import com.datastax.oss.driver.api.core.uuid.Uuids;
 import com.datastax.oss.driver.api.querybuilder.QueryBuilder;
 import com.datastax.samples.dto.UserDto;
+import com.datastax.samples.filter.PartitionKeyFilter;
+import com.datastax.samples.loader.VideoPage;
+import com.datastax.samples.loader.VideoPageLoader;
+import com.datastax.samples.scan.TableScanner;
 
 /**
  * Sample codes using Cassandra OSS Driver 4.x
@@ -51,6 +65,12 @@ public class SampleCode4x_CRUD_06_Async implements ExampleSchema {
     private static PreparedStatement stmtDeleteUser;
     private static PreparedStatement stmtFindUser;
     
+    // Emails surely absent are answered without a round trip, null unless -Dsamples.keyFilter=true
+    private static PartitionKeyFilter emailFilter;
+    
+    // Identical reads in flight at the same time share one request
+    private static CoalescingExecutor sharedReads;
+    
     /** StandAlone (vs JUNIT) to help you running. 
      * @throws ExecutionException 
      * @throws InterruptedException */
@@ -68,12 +88,21 @@ public class SampleCode4x_CRUD_06_Async implements ExampleSchema {
             
             // Create working table User (if needed)
             createTableUser(session);
+            createUdtVideoFormat(session);
+            createTableVideo(session);
+            createTableVideoViews(session);
+            createTableCommentByVideo(session);
             
             // Empty tables for tests
             truncateTable(session, USER_TABLENAME);
             
             // Prepare your statements once and execute multiple times 
             prepareStatements();
+            if (Boolean.getBoolean(PartitionKeyFilter.ENABLED_PROPERTY)) {
+                // Reads all the emails of the table before the first check
+                emailFilter = new PartitionKeyFilter(session, USER_TABLENAME, USER_EMAIL).start();
+            }
+            sharedReads = new CoalescingExecutor(session);
             
             // ========== CREATE ===========
             
@@ -117,24 +146,57 @@ public class SampleCode4x_CRUD_06_Async implements ExampleSchema {
                 .thenAccept(erick -> LOGGER.info("+ Retrieved '{}': (expecting result) {}", userEmail2, erick))
                 .get(); // enforce blocking call to have logs.
             
+            // Hot profile read by 200 requests at once: one CQL request per read in flight
+            List<CompletableFuture<Optional<UserDto>>> hotReads = IntStream.range(0, 200)
+                    .mapToObj(i -> findUserByIdAsync(userEmail))
+                    .collect(Collectors.toList());
+            CompletableFuture.allOf(hotReads.toArray(new CompletableFuture<?>[0])).get();
+            sharedReads.getMetrics().forEach((query, metrics) -> LOGGER.info("+ {} : {}", query, metrics));
+            
+            // Pages of 2 videos of the same uploader (one listed twice): reads of a request run together, once per key
+            UUID videoid1 = UUID.randomUUID();
+            UUID videoid2 = UUID.randomUUID();
+            createVideoWithComments(videoid1, userEmail, "Driver 4x migration");
+            createVideoWithComments(videoid2, userEmail, "Driver 4x async");
+            VideoPageLoader pageLoader = new VideoPageLoader(session);
+            VideoPageLoader.Request request = pageLoader.newRequest();
+            long top = System.nanoTime();
+            List<VideoPage> pages = request.loadPages(Arrays.asList(videoid1, videoid2, videoid1))
+                    .toCompletableFuture().get();
+            pages.forEach(page -> LOGGER.info("+ Page {}", page));
+            LOGGER.info("+ {} pages loaded in {} ms: {} loads, {} keys read", pages.size(),
+                    (System.nanoTime() - top) / 1_000_000, request.getRequests(), request.getFetches());
+            request.logStatistics();
+            
             // Read all (first upserts)
             updateUserAsync(userEmail2, "Eric", "Ramirez");
             updateUserAsync(userEmail, "Cedrick", "Lunven");
-            List<UserDto > allUsers = session
-                    .execute(QueryBuilder.selectFrom(USER_TABLENAME).all().build())
-                    .all().stream().map(UserDto::new)
-                    .collect(Collectors.toList());
-            LOGGER.info("+ Retrieved users count {}", allUsers.size());
+            // Token ranges read in parallel, rows are consumed as they come (no full list in memory)
+            new TableScanner(session, USER_TABLENAME)
+                    .scanAsync(row -> LOGGER.debug("+ Retrieved {}", new UserDto(row)))
+                    .thenAccept(count -> LOGGER.info("+ Retrieved users count {}", count))
+                    .toCompletableFuture().get(); // enforce blocking call to have logs.
             
         } finally {
+            if (emailFilter != null) {
+                emailFilter.close();
+            }
             closeSession(session);
         }
         System.exit(0);
     }
     
     private static CompletionStage<Boolean> existUserAsync(String email) {
-        return session.executeAsync(stmtExistUser.bind(email))
-                      .thenApply(ars -> ars.one() != null);
+        Function<String, CompletionStage<Boolean>> lookup = e -> session.executeAsync(stmtExistUser.bind(e))
+                                                                        .thenApply(ars -> ars.one() != null);
+        return emailFilter == null ? lookup.apply(email) : emailFilter.existsAsync(email, lookup);
+    }
+    
+    // Every write of a user goes through here, the filter must know its email
+    private static void userWritten(String email) {
+        if (emailFilter != null) {
+            emailFilter.put(email);
+        }
     }
     
     private static CompletableFuture<Void> createUserAsync(String email, String firstname, String lastname) {
@@ -144,13 +206,17 @@ public class SampleCode4x_CRUD_06_Async implements ExampleSchema {
                             throw new IllegalArgumentException("Email '" + email + 
                                     "' already exist in Database. Cannot create new user");
                         }
+                        userWritten(email);
                         LOGGER.info("+ User {} has been created", email);
                       }).toCompletableFuture();
     }
     
     private static CompletableFuture<Void> updateUserAsync(String email, String firstname, String lastname) {
         return session.executeAsync(stmtUpsertUser.bind(email, firstname, lastname))
-                .thenAccept(rs -> LOGGER.info("+ User {} has been updated", email))
+                .thenAccept(rs -> {
+                        userWritten(email);
+                        LOGGER.info("+ User {} has been updated", email);
+                      })
                 .toCompletableFuture();
     }
     
@@ -161,47 +227,75 @@ public class SampleCode4x_CRUD_06_Async implements ExampleSchema {
     }
     
     private static CompletableFuture< Optional < UserDto > > findUserByIdAsync(String email) {
-        return session.executeAsync(stmtFindUser.bind(email))
-                      .thenApply(SampleCode4x_CRUD_06_Async::mapUserDtoRow)
-                      .toCompletableFuture();
+        return sharedReads.executeAsync(stmtFindUser.bind(email))
+                          .thenApply(SampleCode4x_CRUD_06_Async::mapUserDtoRow)
+                          .toCompletableFuture();
     }
     
-    private static Optional < UserDto > mapUserDtoRow(AsyncResultSet asyncRS) {
-        Row myRow = asyncRS.one();
-        if (myRow == null) {
+    private static void createVideoWithComments(UUID videoid, String email, String title) {
+        session.execute(QueryBuilder.insertInto(VIDEO_TABLENAME)
+                .value(VIDEO_VIDEOID, QueryBuilder.literal(videoid))
+                .value(VIDEO_TITLE, QueryBuilder.literal(title))
+                .value(VIDEO_USER_EMAIL, QueryBuilder.literal(email))
+                .build());
+        session.execute(QueryBuilder.update(VIDEO_VIEWS_TABLENAME)
+                .increment(VIDEO_VIEWS_VIEWS, QueryBuilder.literal(10L))
+                .whereColumn(VIDEO_VIEWS_VIDEOID).isEqualTo(QueryBuilder.literal(videoid))
+                .build());
+        UUID userid = UUID.randomUUID();
+        for (String comment : Arrays.asList("Nice", "Very helpful")) {
+            session.execute(QueryBuilder.insertInto(COMMENT_BY_VIDEO_TABLENAME)
+                    .value(COMMENT_BY_VIDEO_VIDEOID, QueryBuilder.literal(videoid))
+                    .value(COMMENT_BY_VIDEO_COMMENTID, QueryBuilder.literal(Uuids.timeBased()))
+                    .value(COMMENT_BY_VIDEO_USERID, QueryBuilder.literal(userid))
+                    .value(COMMENT_BY_VIDEO_COMMENT, QueryBuilder.literal(comment))
+                    .build());
+        }
+    }
+    
+    private static Optional < UserDto > mapUserDtoRow(List<Row> rows) {
+        if (rows.isEmpty()) {
             return Optional.empty();
         }
-        return Optional.of(new UserDto(myRow));
+        return Optional.of(new UserDto(rows.get(0)));
     }
     
     private static void prepareStatements() {
-        stmtCreateUser = session.prepare(QueryBuilder.insertInto(USER_TABLENAME)
+        SimpleStatement queryCreateUser = QueryBuilder.insertInto(USER_TABLENAME)
                 .value(USER_EMAIL, QueryBuilder.bindMarker())
                 .value(USER_FIRSTNAME, QueryBuilder.bindMarker())
                 .value(USER_LASTNAME, QueryBuilder.bindMarker())
-                .ifNotExists().build());
+                .ifNotExists().build();
         // Using a - SLOW - lightweight transaction to check user existence
-        stmtUpsertUser = session.prepare(QueryBuilder.insertInto(USER_TABLENAME)
+        SimpleStatement queryUpsertUser = QueryBuilder.insertInto(USER_TABLENAME)
                 .value(USER_EMAIL, QueryBuilder.bindMarker())
                 .value(USER_FIRSTNAME, QueryBuilder.bindMarker())
                 .value(USER_LASTNAME, QueryBuilder.bindMarker())
-                .build());
-        stmtExistUser = session.prepare(QueryBuilder
+                .build();
+        SimpleStatement queryExistUser = QueryBuilder
                 .selectFrom(USER_TABLENAME).column(USER_EMAIL)
                 .whereColumn(USER_EMAIL)
                 .isEqualTo(QueryBuilder.bindMarker())
-                .build());
-        stmtDeleteUser = session.prepare(QueryBuilder
+                .build();
+        SimpleStatement queryDeleteUser = QueryBuilder
                 .deleteFrom(USER_TABLENAME)
                 .whereColumn(USER_EMAIL)
                 .isEqualTo(QueryBuilder.bindMarker())
-                .build());
-        stmtFindUser = session.prepare(QueryBuilder
+                .build();
+        SimpleStatement queryFindUser = QueryBuilder
                 .selectFrom(USER_TABLENAME).all()
                 .whereColumn(USER_EMAIL)
                 .isEqualTo(QueryBuilder.bindMarker())
-                .build());
-       
+                .build();
+
+        // All statements are prepared in parallel: one round trip instead of 5
+        Map<SimpleStatement, PreparedStatement> prepared = SessionManager.getRegistry(session).prepareAll(
+                queryCreateUser, queryUpsertUser, queryExistUser, queryDeleteUser, queryFindUser);
+        stmtCreateUser = prepared.get(queryCreateUser);
+        stmtUpsertUser = prepared.get(queryUpsertUser);
+        stmtExistUser = prepared.get(queryExistUser);
+        stmtDeleteUser = prepared.get(queryDeleteUser);
+        stmtFindUser = prepared.get(queryFindUser);
     }
   
 }
@@ -7,7 +7,12 @@ import static com.datastax.samples.ExampleUtils.createTableCommentByUser;
 import static com.datastax.samples.ExampleUtils.createTableCommentByVideo;
 import static com.datastax.samples.ExampleUtils.truncateTable;
 
+import java.nio.file.Paths;
+import java.util.List;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -18,6 +23,12 @@ import com.datastax.samples.objectmapping.CommentByUser;
 import com.datastax.samples.objectmapping.CommentByVideo;
 import com.datastax.samples.objectmapping.CommentDao;
 import com.datastax.samples.objectmapping.CommentDaoMapper;
+import com.datastax.samples.objectmapping.CommentDaoQueryProvider;
+import com.datastax.samples.write.DenormalizedWriter;
+import com.datastax.samples.write.FailureJournal;
+
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
 
 /**
  * Sample codes using Cassandra OSS Driver 4.x
@@ -39,6 +50,8 @@ public class SampleCode4x_CRUD_07_ObjectMapping implements ExampleSchema {
     
     // This will be used as singletons for the sample
     private static CqlSession session;
+    
+    private static DenormalizedWriter commentWriter;
    
     /** StandAlone (vs JUNIT) to help you running. */
     public static void main(String[] args) {
@@ -59,10 +72,16 @@ public class SampleCode4x_CRUD_07_ObjectMapping implements ExampleSchema {
             truncateTable(session, COMMENT_BY_USER_TABLENAME);
             truncateTable(session, COMMENT_BY_VIDEO_TABLENAME);
    
+            // Writes given up by the DAO are journaled, replayed at next start
+            FailureJournal journal = new FailureJournal(Paths.get(System.getProperty("java.io.tmpdir"), "killrvideo-comments.journal"));
+            journal.replay(session);
+            commentWriter = new DenormalizedWriter(session).withJournal(journal);
+            
             // All logic is defined in Mapper/Dao/Entities in objectmapping package
             // Mapper required the table to exist
             CommentDao dao = CommentDaoMapper.builder(session)
                     .withDefaultKeyspace(KEYSPACE_NAME)
+                    .withCustomState(CommentDaoQueryProvider.COMMENT_WRITER, commentWriter)
                     .build().commentDao();
             
             // DataSet
@@ -115,8 +134,30 @@ public class SampleCode4x_CRUD_07_ObjectMapping implements ExampleSchema {
             dao.retrieveVideoComments(videoid_2).all()
                .stream().map(CommentByVideo::getComment)
                .forEach(LOGGER::info);
+            
+            // Popular video: concurrent reads of its comments share the request in flight
+            List<CompletableFuture<List<CommentByVideo>>> reads = IntStream.range(0, 100)
+                    .mapToObj(i -> dao.retrieveVideoCommentsShared(videoid_2).toCompletableFuture())
+                    .collect(Collectors.toList());
+            LOGGER.info("+ {} concurrent reads returned {} comments each", 
+                    reads.size(), reads.get(0).join().size());
+            
+            // Event loops: writes and reads never block the calling thread
+            Comment c5 = new Comment(user_1, videoid_1, "Posted without blocking");
+            dao.upsertAsync(c5, DenormalizedWriter.Strategy.FAN_OUT)
+               .thenCompose(v -> dao.retrieveUserCommentsAsync(user_1))
+               .thenAccept(rs -> rs.currentPage().forEach(c -> LOGGER.info("+ Async {}", c.getComment())))
+               .toCompletableFuture().join(); // enforce blocking call to have logs.
+            Flux.from(dao.retrieveVideoCommentsReactive(videoid_1))
+                .map(CommentByVideo::getComment)
+                .doOnNext(comment -> LOGGER.info("+ Reactive {}", comment))
+                .then(Mono.fromCompletionStage(() -> dao.deleteAsync(c5)))
+                .block(); // enforce blocking call to have logs.
                         
         } finally {
+            if (commentWriter != null) {
+                commentWriter.close();
+            }
             // Close Cluster and Session 
             closeSession(session);
         }
@@ -4,8 +4,15 @@ import static com.datastax.samples.ExampleUtils.connect;
 import static com.datastax.samples.ExampleUtils.closeSession;
 import static com.datastax.samples.ExampleUtils.createKeyspace;
 import static com.datastax.samples.ExampleUtils.createTableVideoViews;
+import static com.datastax.samples.ExampleUtils.createTableVideoViewsSharded;
+import static com.datastax.samples.ExampleUtils.createTablesVideoViewsByTime;
 import static com.datastax.samples.ExampleUtils.truncateTable;
 
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.util.Map;
 import java.util.Optional;
 import java.util.UUID;
 
@@ -15,7 +22,11 @@ import org.slf4j.LoggerFactory;
 import com.datastax.oss.driver.api.core.CqlSession;
 import com.datastax.oss.driver.api.core.cql.PreparedStatement;
 import com.datastax.oss.driver.api.core.cql.Row;
+import com.datastax.oss.driver.api.core.cql.SimpleStatement;
 import com.datastax.oss.driver.api.querybuilder.QueryBuilder;
+import com.datastax.samples.counter.CoalescingCounterWriter;
+import com.datastax.samples.counter.ShardedCounter;
+import com.datastax.samples.counter.TimeBucketedViewCounter;
 
 /**
  * Working with Counters :
@@ -71,9 +82,14 @@ public class SampleCode4x_CRUD_08_Counters implements ExampleSchema {
             
             // Create tables for tests
             createTableVideoViews(session);
+            createTableVideoViewsSharded(session);
+            createTablesVideoViewsByTime(session);
             
             // Empty tables for tests
             truncateTable(session, VIDEO_VIEWS_TABLENAME);
+            truncateTable(session, VIDEO_VIEWS_SHARDED_TABLENAME);
+            truncateTable(session, VIDEO_VIEWS_BY_MINUTE_TABLENAME);
+            truncateTable(session, VIDEO_VIEWS_ROLLUPS_TABLENAME);
 
             // Prepare your statements once and execute multiple times 
             prepareStatements();
@@ -92,6 +108,35 @@ public class SampleCode4x_CRUD_08_Counters implements ExampleSchema {
             decrementBy(videoId, 8);
             LOGGER.info("+ Video views : {}", findById(videoId).get());
             
+            // Many views of the same video: summed in memory, written once per second
+            try (CoalescingCounterWriter views = new CoalescingCounterWriter(session)) {
+                for (int i = 0; i < 10000; i++) {
+                    views.increment(videoId, 1);
+                }
+            }
+            LOGGER.info("+ Video views : {}", findById(videoId).get());
+            
+            // A popular video: views spread over 16 partitions, a read sums them
+            ShardedCounter shardedViews = new ShardedCounter(session).withShards(videoId, 16);
+            for (int i = 0; i < 100; i++) {
+                shardedViews.incrementBy(videoId, 1);
+            }
+            LOGGER.info("+ Sharded video views : {}", shardedViews.findById(videoId).get());
+            shardedViews.delete(videoId);
+            
+            // Views by minute over 3 days, rolled up in hours and days once closed
+            try (TimeBucketedViewCounter timedViews = new TimeBucketedViewCounter(session)) {
+                Instant now = Instant.now();
+                for (int minutes = 0; minutes < 3 * 24 * 60; minutes += 10) {
+                    timedViews.incrementBy(videoId, now.minus(Duration.ofMinutes(minutes)), 2);
+                }
+                timedViews.rollup();
+                LOGGER.info("+ Views last hour : {}", timedViews.countViews(videoId, now.minus(Duration.ofHours(1)), now));
+                LOGGER.info("+ Views last 48 hours : {} ({} buckets read)", 
+                        timedViews.countViews(videoId, now.minus(Duration.ofHours(48)), now), timedViews.getBucketsRead());
+                LOGGER.info("+ Views yesterday : {}", timedViews.rollupDay(videoId, LocalDate.now(ZoneOffset.UTC).minusDays(1)));
+            }
+            
             // ========= DELETE ============
             
             delete(videoId);
@@ -128,31 +173,38 @@ public class SampleCode4x_CRUD_08_Counters implements ExampleSchema {
     private static void prepareStatements() {
 
         // update videos_views SET views =  views + X WHERE videoid=... 
-        stmtIncrement = session.prepare(QueryBuilder
+        SimpleStatement queryIncrement = QueryBuilder
                 .update(VIDEO_VIEWS_TABLENAME)
                 .increment(VIDEO_VIEWS_VIEWS, QueryBuilder.bindMarker())
                 .whereColumn(VIDEO_VIEWS_VIDEOID).isEqualTo(QueryBuilder.bindMarker())
-                .build());
+                .build();
 
         // update videos_views SET views =  views + X WHERE videoid=..
-        stmtDecrement =  session.prepare(QueryBuilder
+        SimpleStatement queryDecrement = QueryBuilder
                 .update(VIDEO_VIEWS_TABLENAME)
                 .decrement(VIDEO_VIEWS_VIEWS, QueryBuilder.bindMarker())
                 .whereColumn(VIDEO_VIEWS_VIDEOID).isEqualTo(QueryBuilder.bindMarker())
-                .build());
+                .build();
         
         // SELECT views FROM videos_views WHERE videoid=... 
-        stmtFindById = session.prepare(QueryBuilder
+        SimpleStatement queryFindById = QueryBuilder
                 .selectFrom(VIDEO_VIEWS_TABLENAME).column(VIDEO_VIEWS_VIEWS)
                 .whereColumn(VIDEO_VIEWS_VIDEOID).isEqualTo(QueryBuilder.bindMarker())
-                .build());
+                .build();
                 
         // DELETE FROM videos_views WHERE videoid=... 
-        stmtDelete = session.prepare(QueryBuilder
+        SimpleStatement queryDelete = QueryBuilder
                 .deleteFrom(VIDEO_VIEWS_TABLENAME)
                 .whereColumn(VIDEO_VIEWS_VIDEOID).isEqualTo(QueryBuilder.bindMarker())
-                .build());
-        
+                .build();
+
+        // All statements are prepared in parallel: one round trip instead of 4
+        Map<SimpleStatement, PreparedStatement> prepared = SessionManager.getRegistry(session).prepareAll(
+                queryIncrement, queryDecrement, queryFindById, queryDelete);
+        stmtIncrement = prepared.get(queryIncrement);
+        stmtDecrement = prepared.get(queryDecrement);
+        stmtFindById = prepared.get(queryFindById);
+        stmtDelete = prepared.get(queryDelete);
     }
 
 }
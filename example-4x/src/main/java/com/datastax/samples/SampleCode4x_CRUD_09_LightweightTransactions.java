@@ -2,12 +2,19 @@ package com.datastax.samples;
 
 import static com.datastax.samples.ExampleUtils.*;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.datastax.oss.driver.api.core.CqlSession;
 import com.datastax.oss.driver.api.core.cql.PreparedStatement;
+import com.datastax.oss.driver.api.core.cql.SimpleStatement;
 import com.datastax.oss.driver.api.querybuilder.QueryBuilder;
+import com.datastax.samples.lwt.UniquenessGuard;
 
 
 /**
@@ -30,6 +37,9 @@ public class SampleCode4x_CRUD_09_LightweightTransactions implements ExampleSche
     private static PreparedStatement stmtCreateUser;
     private static PreparedStatement stmtUpdateUserLwt;
     
+    // Emails known to exist skip the Paxos round, concurrent attempts on an email run one
+    private static UniquenessGuard emailGuard;
+    
     /** StandAlone (vs JUNIT) to help you running. */
     public static void main(String[] args) {
         try {
@@ -39,6 +49,7 @@ public class SampleCode4x_CRUD_09_LightweightTransactions implements ExampleSche
             
             // Use PreparedStatement for queries that are executed multiple times in your application
             prepareStatements();
+            emailGuard = new UniquenessGuard(session);
             
             // Create working table User (if needed)
             createTableUser(session);
@@ -51,6 +62,17 @@ public class SampleCode4x_CRUD_09_LightweightTransactions implements ExampleSche
             boolean second = createUserIfNotExist("clun@sample.com", "Cedric", "Lunven");
             LOGGER.info("+ Created first time ? {} and second time {}", first, second);
             
+            // Registration spike: 1000 attempts on 50 emails, one Paxos round per email
+            List<CompletableFuture<Boolean>> attempts = new ArrayList<>();
+            for (int i = 0; i < 1000; i++) {
+                String email = "user" + (i % 50) + "@sample.com";
+                attempts.add(emailGuard.insertIfNotExistsAsync(email, 
+                        stmtCreateUser.bind(email, "First" + i, "Last" + i)).toCompletableFuture());
+            }
+            long created = attempts.stream().filter(CompletableFuture::join).count();
+            LOGGER.info("+ {} users created by 1000 attempts", created);
+            emailGuard.getMetrics().forEach((query, metrics) -> LOGGER.info("+ {} : {}", query, metrics));
+            
             // Update if condition
             boolean applied1 = updateIf("clun@sample.com", "Cedric", "BEST");
             boolean applied2 = updateIf("clun@sample.com", "Cedrick", "Lunven");
@@ -64,10 +86,10 @@ public class SampleCode4x_CRUD_09_LightweightTransactions implements ExampleSche
     
     /**
      * The resultset is applied only if the record is created. If not the resultSet is populated
-     * with existing data in DB (read)
+     * with existing data in DB (read). An email already created through the guard is not sent.
      */
     private static boolean createUserIfNotExist(String email, String firstname, String lastname) {
-        return session.execute(stmtCreateUser.bind(email, firstname, lastname)).wasApplied();
+        return emailGuard.insertIfNotExists(email, stmtCreateUser.bind(email, firstname, lastname));
     }
     
     /**
@@ -91,12 +113,12 @@ public class SampleCode4x_CRUD_09_LightweightTransactions implements ExampleSche
          * VALUES(?,?,?)
          * IF NOT EXISTS
          */
-        stmtCreateUser = session.prepare(QueryBuilder.insertInto(USER_TABLENAME)
+        SimpleStatement queryCreateUser = QueryBuilder.insertInto(USER_TABLENAME)
                 .value(USER_EMAIL, QueryBuilder.bindMarker())
                 .value(USER_FIRSTNAME, QueryBuilder.bindMarker())
                 .value(USER_LASTNAME, QueryBuilder.bindMarker())
                 .ifNotExists()
-                .build());
+                .build();
         
         /* 
          * UPDATE users SET lastname=:lastname
@@ -106,11 +128,17 @@ public class SampleCode4x_CRUD_09_LightweightTransactions implements ExampleSche
          * Operators available for LWT Condition: 
          * =, <, <=, >, >=, != and IN
          */
-        stmtUpdateUserLwt = session.prepare(QueryBuilder.update(USER_TABLENAME)
+        SimpleStatement queryUpdateUserLwt = QueryBuilder.update(USER_TABLENAME)
                 .setColumn(USER_LASTNAME, QueryBuilder.bindMarker(USER_LASTNAME))
                 .whereColumn(USER_EMAIL).isEqualTo(QueryBuilder.bindMarker(USER_EMAIL))
                 .ifColumn(USER_FIRSTNAME).isEqualTo(QueryBuilder.bindMarker(USER_FIRSTNAME))
-                .build());
+                .build();
+
+        // All statements are prepared in parallel: one round trip instead of 2
+        Map<SimpleStatement, PreparedStatement> prepared = SessionManager.getRegistry(session).prepareAll(
+                queryCreateUser, queryUpdateUserLwt);
+        stmtCreateUser = prepared.get(queryCreateUser);
+        stmtUpdateUserLwt = prepared.get(queryUpdateUserLwt);
     }
 
 }
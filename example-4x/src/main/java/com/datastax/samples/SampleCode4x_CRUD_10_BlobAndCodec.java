@@ -4,6 +4,7 @@ import static com.datastax.samples.ExampleUtils.closeSession;
 import static com.datastax.samples.ExampleUtils.connect;
 import static com.datastax.samples.ExampleUtils.createKeyspace;
 import static com.datastax.samples.ExampleUtils.createTableFiles;
+import static com.datastax.samples.ExampleUtils.createTableVideoViewers;
 import static com.datastax.samples.ExampleUtils.truncateTable;
 
 import java.io.Closeable;
@@ -14,7 +15,9 @@ import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.nio.channels.FileChannel;
 import java.time.Instant;
+import java.util.Map;
 import java.util.Optional;
+import java.util.UUID;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -23,8 +26,10 @@ import com.datastax.oss.driver.api.core.CqlSession;
 import com.datastax.oss.driver.api.core.cql.PreparedStatement;
 import com.datastax.oss.driver.api.core.cql.ResultSet;
 import com.datastax.oss.driver.api.core.cql.Row;
+import com.datastax.oss.driver.api.core.cql.SimpleStatement;
 import com.datastax.oss.driver.api.querybuilder.QueryBuilder;
 import com.datastax.samples.codec.BytesArrayTypeCodec;
+import com.datastax.samples.counter.UniqueViewerCounter;
 import com.datastax.samples.dto.FileDto;
 
 /**
@@ -74,9 +79,11 @@ public class SampleCode4x_CRUD_10_BlobAndCodec implements ExampleSchema {
             
             // Create working table User (if needed)
             createTableFiles(session);
+            createTableVideoViewers(session);
             
             // Empty tables for tests
             truncateTable(session, FILES_TABLENAME);
+            truncateTable(session, VIDEO_VIEWERS_TABLENAME);
             
             // Prepare your statements once and execute multiple times 
             prepareStatements();
@@ -101,6 +108,17 @@ public class SampleCode4x_CRUD_10_BlobAndCodec implements ExampleSchema {
            byte[] fileBinaryContent = readContentAsByteArray("cassandra_logo.png");
            LOGGER.info("+ Length of file {} byte(s)", fileBinaryContent.length);
            
+           /* A blob holding a sketch (HyperLogLogCodec): distinct viewers of a video
+            * estimated in 4KB, whatever the number of viewers
+            */
+           UUID videoId = UUID.randomUUID();
+           UniqueViewerCounter viewers = new UniqueViewerCounter(session, "sample");
+           for (int i = 0; i < 50000; i++) {
+               viewers.addViewer(videoId, "user_" + (i % 20000) + "@sample.com");
+           }
+           viewers.close();
+           LOGGER.info("+ Distinct viewers (expecting about 20000): {}", viewers.findById(videoId).orElse(0L));
+           
         } finally {
             closeSession(session);
         }
@@ -154,18 +172,24 @@ public class SampleCode4x_CRUD_10_BlobAndCodec implements ExampleSchema {
     
     private static void prepareStatements() {
         
-        stmtInsertFile = session.prepare(QueryBuilder
+        SimpleStatement queryInsertFile = QueryBuilder
                 .insertInto(FILES_TABLENAME)
                 .value(FILES_FILENAME, QueryBuilder.bindMarker(FILES_FILENAME))
                 .value(FILES_EXTENSION, QueryBuilder.bindMarker(FILES_EXTENSION))
                 .value(FILES_UPLOAD, QueryBuilder.bindMarker(FILES_UPLOAD))
-                .value(FILES_BINARY, QueryBuilder.bindMarker(FILES_BINARY)).build());
+                .value(FILES_BINARY, QueryBuilder.bindMarker(FILES_BINARY)).build();
 
         // Get latest version of a file
-        stmtReadFile = session.prepare(QueryBuilder
+        SimpleStatement queryReadFile = QueryBuilder
                 .selectFrom(FILES_TABLENAME).all()
                 .whereColumn(FILES_FILENAME).isEqualTo(QueryBuilder.bindMarker())
-                .limit(1).build());
+                .limit(1).build();
+
+        // All statements are prepared in parallel: one round trip instead of 2
+        Map<SimpleStatement, PreparedStatement> prepared = SessionManager.getRegistry(session).prepareAll(
+                queryInsertFile, queryReadFile);
+        stmtInsertFile = prepared.get(queryInsertFile);
+        stmtReadFile = prepared.get(queryReadFile);
     }
     
     public static ByteBuffer readBytesFromFile(File file) throws IOException {
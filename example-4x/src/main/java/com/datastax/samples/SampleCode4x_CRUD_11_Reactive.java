@@ -6,8 +6,13 @@ import static com.datastax.samples.ExampleUtils.createKeyspace;
 import static com.datastax.samples.ExampleUtils.createTableUser;
 import static com.datastax.samples.ExampleUtils.truncateTable;
 
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
 import java.util.Optional;
 import java.util.concurrent.ExecutionException;
+import java.util.function.Function;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -18,6 +23,11 @@ import com.datastax.oss.driver.api.core.cql.PreparedStatement;
 import com.datastax.oss.driver.api.core.cql.SimpleStatement;
 import com.datastax.oss.driver.api.querybuilder.QueryBuilder;
 import com.datastax.samples.dto.UserDto;
+import com.datastax.samples.filter.PartitionKeyFilter;
+import com.datastax.samples.scan.ExportReport;
+import com.datastax.samples.scan.TableExporter;
+import com.datastax.samples.scan.TableExporter.Format;
+import com.datastax.samples.scan.TableScanner;
 
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
@@ -50,11 +60,15 @@ public class SampleCode4x_CRUD_11_Reactive implements ExampleSchema {
     private static PreparedStatement stmtDeleteUser;
     private static PreparedStatement stmtFindUser;
     
+    // Emails surely absent are answered without a round trip, null unless -Dsamples.keyFilter=true
+    private static PartitionKeyFilter emailFilter;
+    
     /** StandAlone (vs JUNIT) to help you running. 
      * @throws ExecutionException 
-     * @throws InterruptedException */
+     * @throws InterruptedException 
+     * @throws IOException */
     public static void main(String[] args) 
-    throws InterruptedException, ExecutionException {
+    throws InterruptedException, ExecutionException, IOException {
         try {
             
             // === INITIALIZING ===
@@ -73,6 +87,10 @@ public class SampleCode4x_CRUD_11_Reactive implements ExampleSchema {
             
             // Prepare your statements once and execute multiple times 
             prepareStatements();
+            if (Boolean.getBoolean(PartitionKeyFilter.ENABLED_PROPERTY)) {
+                // Reads all the emails of the table before the first check
+                emailFilter = new PartitionKeyFilter(session, USER_TABLENAME, USER_EMAIL).start();
+            }
             
             // ========== CREATE / UPDATE ===========
             
@@ -123,16 +141,42 @@ public class SampleCode4x_CRUD_11_Reactive implements ExampleSchema {
                 .doOnNext(email -> LOGGER.info("+ '{}' email found", email))
                 .blockLast();
             
+            // Export the table to files, rows are streamed through a bounded buffer
+            Path exportDir = Files.createTempDirectory("killrvideo-export");
+            ExportReport csvReport = new TableExporter(exportDir, USER_TABLENAME, Format.CSV)
+                .export(session.executeReactive(QueryBuilder.selectFrom(USER_TABLENAME).all().build()));
+            LOGGER.info("+ CSV export: {}", csvReport);
+            
+            // Same with a parallel scan by token ranges, compressed and split in files of 64MB
+            ExportReport ndjsonReport = new TableExporter(exportDir, USER_TABLENAME, Format.NDJSON)
+                .withGzip(true)
+                .withMaxFileBytes(64 * 1024 * 1024)
+                .export(new TableScanner(session, USER_TABLENAME).withPartitionKey(USER_EMAIL).flux());
+            LOGGER.info("+ NDJSON export: {}", ndjsonReport);
+            
             Thread.sleep(500);
         } finally {
+            if (emailFilter != null) {
+                emailFilter.close();
+            }
             closeSession(session);
         }
         System.exit(0);
     }
     
     private static Mono<Boolean> existUserReactive(String email) {
-        ReactiveResultSet rrs = session.executeReactive(stmtExistUser.bind(email));
-        return Mono.from(rrs).map(rs -> true).defaultIfEmpty(false);
+        Function<String, Mono<Boolean>> lookup = e -> {
+            ReactiveResultSet rrs = session.executeReactive(stmtExistUser.bind(e));
+            return Mono.from(rrs).map(rs -> true).defaultIfEmpty(false);
+        };
+        return emailFilter == null ? Mono.defer(() -> lookup.apply(email)) : emailFilter.existsReactive(email, lookup);
+    }
+    
+    // Every write of a user goes through here, the filter must know its email
+    private static void userWritten(String email) {
+        if (emailFilter != null) {
+            emailFilter.put(email);
+        }
     }
     
     private static Mono<Optional<UserDto>> findUserByIdReactive(String email) {
@@ -144,7 +188,7 @@ public class SampleCode4x_CRUD_11_Reactive implements ExampleSchema {
     
     private static Mono<Void> upsertUserReactive(String email, String firstname, String lastname) {
         ReactiveResultSet rrs = session.executeReactive(stmtUpsertUser.bind(email, firstname, lastname));
-        return Mono.from(rrs).then();
+        return Mono.from(rrs).then().doOnSuccess(v -> userWritten(email));
     }
     
     private static Mono<Void> deleteUserReactive(String email) {
@@ -157,27 +201,34 @@ public class SampleCode4x_CRUD_11_Reactive implements ExampleSchema {
     }
     
     private static void prepareStatements() {
-        stmtUpsertUser = session.prepare(QueryBuilder.insertInto(USER_TABLENAME)
+        SimpleStatement queryUpsertUser = QueryBuilder.insertInto(USER_TABLENAME)
                 .value(USER_EMAIL, QueryBuilder.bindMarker())
                 .value(USER_FIRSTNAME, QueryBuilder.bindMarker())
                 .value(USER_LASTNAME, QueryBuilder.bindMarker())
-                .build());
-        stmtExistUser = session.prepare(QueryBuilder
+                .build();
+        SimpleStatement queryExistUser = QueryBuilder
                 .selectFrom(USER_TABLENAME).column(USER_EMAIL)
                 .whereColumn(USER_EMAIL)
                 .isEqualTo(QueryBuilder.bindMarker())
-                .build());
-        stmtDeleteUser = session.prepare(QueryBuilder
+                .build();
+        SimpleStatement queryDeleteUser = QueryBuilder
                 .deleteFrom(USER_TABLENAME)
                 .whereColumn(USER_EMAIL)
                 .isEqualTo(QueryBuilder.bindMarker())
-                .build());
-        stmtFindUser = session.prepare(QueryBuilder
+                .build();
+        SimpleStatement queryFindUser = QueryBuilder
                 .selectFrom(USER_TABLENAME).all()
                 .whereColumn(USER_EMAIL)
                 .isEqualTo(QueryBuilder.bindMarker())
-                .build());
-       
+                .build();
+
+        // All statements are prepared in parallel: one round trip instead of 4
+        Map<SimpleStatement, PreparedStatement> prepared = SessionManager.getRegistry(session).prepareAll(
+                queryUpsertUser, queryExistUser, queryDeleteUser, queryFindUser);
+        stmtUpsertUser = prepared.get(queryUpsertUser);
+        stmtExistUser = prepared.get(queryExistUser);
+        stmtDeleteUser = prepared.get(queryDeleteUser);
+        stmtFindUser = prepared.get(queryFindUser);
     }
   
 }
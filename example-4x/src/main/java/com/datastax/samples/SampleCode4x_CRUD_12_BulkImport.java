@@ -0,0 +1,101 @@
+package com.datastax.samples;
+
+import static com.datastax.samples.ExampleUtils.closeSession;
+import static com.datastax.samples.ExampleUtils.connect;
+import static com.datastax.samples.ExampleUtils.createKeyspace;
+import static com.datastax.samples.ExampleUtils.createTableUser;
+import static com.datastax.samples.ExampleUtils.truncateTable;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.datastax.oss.driver.api.core.CqlSession;
+import com.datastax.samples.bulk.BulkImportReport;
+import com.datastax.samples.bulk.UserBulkImporter;
+
+/**
+ * Sample codes using Cassandra OSS Driver 4.x
+ *
+ * Disclaimers:
+ *  - Tests for arguments nullity has been removed for code clarity
+ *  - Packaged as a main class for usability
+ *
+ * Pre-requisites:
+ * - Cassandra running locally (127.0.0.1, port 9042)
+ *
+ * Usage: SampleCode4x_CRUD_12_BulkImport [file.csv|file.tsv] [maxInFlight]
+ * Without file, 100000 users are generated in a temporary CSV file.
+ */
+public class SampleCode4x_CRUD_12_BulkImport implements ExampleSchema {
+
+    /** Logger for the class. */
+    private static Logger LOGGER = LoggerFactory.getLogger(SampleCode4x_CRUD_12_BulkImport.class);
+
+    /** Users generated when no file is provided. */
+    private static final int GENERATED_USERS = 100000;
+
+    /** StandAlone (vs JUNIT) to help you running.
+     * @throws IOException */
+    public static void main(String[] args) throws IOException {
+
+        CqlSession session = null;
+        Path file = null;
+        try {
+
+            // === INITIALIZING ===
+
+            // Create killrvideo keyspace (if needed)
+            createKeyspace();
+
+            // Initialize Cluster and Session Objects
+            session = connect();
+
+            // Create working table User (if needed)
+            createTableUser(session);
+
+            // Empty tables for tests
+            truncateTable(session, USER_TABLENAME);
+
+            // File to import
+            file = args.length > 0 ? Paths.get(args[0]) : generateUsers(GENERATED_USERS);
+
+            // Stream the file with a bounded number of inserts in flight
+            UserBulkImporter importer = new UserBulkImporter(session);
+            if (args.length > 1) {
+                importer.withMaxInFlight(Integer.parseInt(args[1]));
+            }
+            BulkImportReport report = importer.importFile(file);
+            LOGGER.info("+ {} rows/s, p99 {} ms",
+                    Math.round(report.getRowsPerSecond()),
+                    report.getLatencyAtPercentile(99).toMillis());
+
+        } finally {
+            if (args.length == 0 && file != null) {
+                Files.deleteIfExists(file);
+            }
+            closeSession(session);
+        }
+        System.exit(0);
+    }
+
+    private static Path generateUsers(int count) throws IOException {
+        Path file = Files.createTempFile("users", ".csv");
+        try (BufferedWriter writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            writer.write(USER_EMAIL + "," + USER_FIRSTNAME + "," + USER_LASTNAME);
+            writer.newLine();
+            for (int i = 0; i < count; i++) {
+                writer.write("user_" + i + "@sample.com,user_" + i + ",lastname");
+                writer.newLine();
+            }
+        }
+        LOGGER.info("+ {} users generated in {}", count, file);
+        return file;
+    }
+}
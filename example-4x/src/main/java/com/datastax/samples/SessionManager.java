@@ -0,0 +1,220 @@
+package com.datastax.samples;
+
+import java.net.InetSocketAddress;
+import java.time.Duration;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.datastax.oss.driver.api.core.CqlIdentifier;
+import com.datastax.oss.driver.api.core.CqlSession;
+import com.datastax.oss.driver.api.core.CqlSessionBuilder;
+import com.datastax.oss.driver.api.core.InvalidKeyspaceException;
+import com.datastax.oss.driver.api.core.config.DriverConfigLoader;
+
+/**
+ * Holds the {@link CqlSession} used by the samples.
+ *
+ * A CqlSession is a heavy object (control connection, metadata and token map refresh,
+ * connection pools, Netty event loops): it should be created ONCE and reused for the
+ * whole life of the application. Sessions are cached here per configuration profile
+ * and keyspace.
+ *
+ * Sessions are opened on their keyspace: each connection is initialized on it, statements
+ * are prepared for it, and the keyspace never changes at runtime (no 'USE'). When the
+ * keyspace does not exist yet, it is created with fully qualified DDL by the session of the
+ * profile without keyspace, kept to create the next ones, then the session is opened.
+ *
+ * Profiles:
+ * - {@link #DEFAULT_PROFILE}: local node 127.0.0.1:9042, datacenter 'datacenter1'
+ * - any other name is the basename of a configuration file in the classpath
+ *   (e.g. 'custom_application' for /custom_application.conf)
+ */
+public class SessionManager implements ExampleSchema {
+
+    /** Logger for the class. */
+    private static Logger LOGGER = LoggerFactory.getLogger(SessionManager.class);
+
+    /** Profile used when nothing is specified. */
+    public static final String DEFAULT_PROFILE = "default";
+
+    /** Set this system property to true to profile the startup of the sessions, see {@link StartupProfiler}. */
+    public static final String STARTUP_PROFILING_PROPERTY = "samples.startupProfiling";
+
+    /** Sessions, one per profile and keyspace. */
+    private static final Map<String, CqlSession> SESSIONS = new ConcurrentHashMap<>();
+
+    /** Sessions without keyspace, one per profile, opened to create a missing keyspace. */
+    private static final Map<String, CqlSession> BOOTSTRAP_SESSIONS = new ConcurrentHashMap<>();
+
+    /** Time spent to get each session ready (including keyspace bootstrap). */
+    private static final Map<String, Duration> STARTUP_TIMES = new ConcurrentHashMap<>();
+
+    /** Prepared statements of each session, shared by all components. */
+    private static final Map<CqlSession, PreparedStatementRegistry> REGISTRIES = new ConcurrentHashMap<>();
+
+    /** Startup breakdown of each session, when profiling is enabled. */
+    private static final Map<String, StartupProfiler> STARTUP_PROFILES = new ConcurrentHashMap<>();
+
+    /** Hide default constructor. */
+    private SessionManager() {}
+
+    /**
+     * Session on keyspace killrvideo with the default profile.
+     *
+     * @return
+     *      shared session
+     */
+    public static CqlSession getSession() {
+        return getSession(DEFAULT_PROFILE, KEYSPACE_NAME);
+    }
+
+    /**
+     * Retrieve (or create the first time) the session for a profile and a keyspace.
+     *
+     * @param profile
+     *      configuration profile
+     * @param keyspace
+     *      target keyspace, created if needed
+     * @return
+     *      shared session
+     */
+    public static synchronized CqlSession getSession(String profile, String keyspace) {
+        String key = sessionKey(profile, keyspace);
+        CqlSession session = SESSIONS.get(key);
+        if (session == null || session.isClosed()) {
+            session = initSession(profile, keyspace);
+            SESSIONS.put(key, session);
+        }
+        return session;
+    }
+
+    /**
+     * Retrieve (or create the first time) the prepared statements of a session.
+     *
+     * Components give their statements to the same registry: a statement prepared by one
+     * of them is reused by the others instead of being prepared again.
+     *
+     * @param session
+     *      any session, not only the ones of this class
+     * @return
+     *      shared registry
+     */
+    public static PreparedStatementRegistry getRegistry(CqlSession session) {
+        REGISTRIES.keySet().removeIf(CqlSession::isClosed);
+        return REGISTRIES.computeIfAbsent(session, PreparedStatementRegistry::new);
+    }
+
+    /**
+     * Time spent to make a session ready, if it has been created.
+     *
+     * @param profile
+     *      configuration profile
+     * @param keyspace
+     *      target keyspace
+     * @return
+     *      startup duration
+     */
+    public static Optional<Duration> getStartupTime(String profile, String keyspace) {
+        return Optional.ofNullable(STARTUP_TIMES.get(sessionKey(profile, keyspace)));
+    }
+
+    /**
+     * Startup breakdown of a session (config, contact points, metadata, pools, keyspace and
+     * first prepare), if it has been created with {@link #STARTUP_PROFILING_PROPERTY} set.
+     *
+     * @param profile
+     *      configuration profile
+     * @param keyspace
+     *      target keyspace
+     * @return
+     *      startup profile
+     */
+    public static Optional<StartupProfiler> getStartupProfile(String profile, String keyspace) {
+        return Optional.ofNullable(STARTUP_PROFILES.get(sessionKey(profile, keyspace)));
+    }
+
+    /**
+     * Close all sessions, to be invoked when the application stops.
+     */
+    public static synchronized void closeAll() {
+        SESSIONS.values().stream()
+                .filter(s -> !s.isClosed())
+                .forEach(CqlSession::close);
+        BOOTSTRAP_SESSIONS.values().stream()
+                .filter(s -> !s.isClosed())
+                .forEach(CqlSession::close);
+        SESSIONS.clear();
+        BOOTSTRAP_SESSIONS.clear();
+        REGISTRIES.clear();
+        LOGGER.info("[OK] All sessions are now closed");
+    }
+
+    private static CqlSession initSession(String profile, String keyspace) {
+        // Only opt-in sessions are instrumented
+        StartupProfiler profiler = Boolean.getBoolean(STARTUP_PROFILING_PROPERTY)
+                ? new StartupProfiler(sessionKey(profile, keyspace)) : null;
+        CqlIdentifier keyspaceId = CqlIdentifier.fromCql(keyspace);
+        long top = System.nanoTime();
+        long bootstrapped = top;
+        CqlSession session;
+        try {
+            session = sessionBuilder(profiler, profile).withKeyspace(keyspaceId).build();
+        } catch (InvalidKeyspaceException e) {
+            bootstrapKeyspace(profile, keyspaceId);
+            bootstrapped = System.nanoTime();
+            if (profiler != null) {
+                // Phases of the failed attempt are overwritten by the new one
+                profiler = new StartupProfiler(sessionKey(profile, keyspace));
+            }
+            session = sessionBuilder(profiler, profile).withKeyspace(keyspaceId).build();
+        }
+        long ready = System.nanoTime();
+        STARTUP_TIMES.put(sessionKey(profile, keyspace), Duration.ofNanos(ready - top));
+        LOGGER.info("[OK] Connected to Keyspace {} with profile '{}' in {} ms (keyspace {} ms, connect {} ms)",
+                keyspace, profile,
+                Duration.ofNanos(ready - top).toMillis(),
+                Duration.ofNanos(bootstrapped - top).toMillis(),
+                Duration.ofNanos(ready - bootstrapped).toMillis());
+        if (profiler != null) {
+            profiler.record(StartupProfiler.Phase.KEYSPACE, top, bootstrapped);
+            STARTUP_PROFILES.put(sessionKey(profile, keyspace), profiler);
+            // Reported again with the first prepare, when it happens
+            profiler.report();
+        }
+        return session;
+    }
+
+    private static CqlSessionBuilder sessionBuilder(StartupProfiler profiler, String profile) {
+        CqlSessionBuilder builder = profiler == null ? CqlSession.builder() : profiler.sessionBuilder();
+        if (DEFAULT_PROFILE.equals(profile)) {
+            return builder
+                    .addContactPoint(new InetSocketAddress("127.0.0.1", 9042))
+                    .withLocalDatacenter("datacenter1");
+        }
+        return builder.withConfigLoader(DriverConfigLoader.fromClasspath(profile));
+    }
+
+    /**
+     * Create a missing keyspace with the session of the profile without keyspace.
+     */
+    private static void bootstrapKeyspace(String profile, CqlIdentifier keyspace) {
+        CqlSession session = BOOTSTRAP_SESSIONS.get(profile);
+        if (session == null || session.isClosed()) {
+            session = sessionBuilder(null, profile).build();
+            BOOTSTRAP_SESSIONS.put(profile, session);
+        }
+        if (!session.getMetadata().getKeyspace(keyspace).isPresent()) {
+            session.execute(ExampleUtils.createKeyspaceSimpleStrategy(keyspace.asCql(true), KEYSPACE_REPLICATION_FACTOR));
+            LOGGER.info("+ Keyspace '{}' created (if needed).", keyspace.asInternal());
+        }
+    }
+
+    private static String sessionKey(String profile, String keyspace) {
+        return profile + "/" + keyspace;
+    }
+
+}
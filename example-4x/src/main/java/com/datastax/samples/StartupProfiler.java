@@ -0,0 +1,475 @@
+package com.datastax.samples;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Supplier;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.datastax.oss.driver.api.core.CqlIdentifier;
+import com.datastax.oss.driver.api.core.CqlSession;
+import com.datastax.oss.driver.api.core.CqlSessionBuilder;
+import com.datastax.oss.driver.api.core.config.DriverConfig;
+import com.datastax.oss.driver.api.core.config.DriverConfigLoader;
+import com.datastax.oss.driver.api.core.context.DriverContext;
+import com.datastax.oss.driver.api.core.cql.PrepareRequest;
+import com.datastax.oss.driver.api.core.metadata.Metadata;
+import com.datastax.oss.driver.api.core.metrics.Metrics;
+import com.datastax.oss.driver.api.core.session.ProgrammaticArguments;
+import com.datastax.oss.driver.api.core.session.Request;
+import com.datastax.oss.driver.api.core.type.reflect.GenericType;
+
+/**
+ * Break down the time to first query of a {@link CqlSession}.
+ *
+ * Sessions built with {@link #sessionBuilder()} report, in this order:
+ * - config: parsing of the configuration ({@link DriverConfigLoader#getInitialConfig()})
+ * - contactPoints: contact points merge and DNS resolution
+ * - metadata: driver context (event loops), control connection handshake, node list, schema
+ *   metadata and token map
+ * - pools: connection pools to all nodes (and initial keyspace)
+ * - keyspace: keyspace bootstrap, when recorded by the caller
+ * - firstPrepare: round trip of the first statement prepared
+ *
+ * Phases are delimited with the public hooks of the session builder: the config loader is
+ * timed and notified when the driver is initialized (metadata ready, pools not opened yet),
+ * the context creation and the wrapping of the ready session are observed, and the session
+ * is wrapped to time the first prepare. The control connection has no public hook, its
+ * handshake is part of 'metadata'. It is meant for diagnostics: a profiler is used for a
+ * single session, and nothing is instrumented for sessions built without it.
+ *
+ * <pre>
+ * StartupProfiler profiler = new StartupProfiler("worker");
+ * try (CqlSession session = profiler.sessionBuilder().withConfigLoader(loader).build()) {
+ *     session.prepare(...);
+ *     profiler.report();
+ * }
+ * </pre>
+ */
+public class StartupProfiler {
+
+    /** Logger for the class. */
+    private static Logger LOGGER = LoggerFactory.getLogger(StartupProfiler.class);
+
+    /**
+     * Startup phases, in chronological order.
+     */
+    public enum Phase {
+        CONFIG("config"),
+        CONTACT_POINTS("contactPoints"),
+        METADATA("metadata"),
+        POOLS("pools"),
+        KEYSPACE("keyspace"),
+        FIRST_PREPARE("firstPrepare");
+
+        private final String label;
+
+        Phase(String label) {
+            this.label = label;
+        }
+
+        /**
+         * Getter accessor for attribute 'label'.
+         *
+         * @return current value of 'label'
+         */
+        public String getLabel() {
+            return label;
+        }
+    }
+
+    /** Name of the session in the report. */
+    private final String name;
+
+    /** Origin of all timings. */
+    private final long startNanos = System.nanoTime();
+
+    /** Duration of each phase in nanos, first measure wins. */
+    private final Map<Phase, Long> durations = new ConcurrentHashMap<>();
+
+    /** End of the phases chained by the driver, the next phase starts there. */
+    private volatile long configNanos;
+    private volatile long contactPointsNanos;
+    private volatile long metadataNanos;
+
+    /** Session ready and first prepare done, 0 until then. */
+    private volatile long connectedNanos;
+    private volatile long firstPrepareNanos;
+
+    /** Only the first prepare is timed. */
+    private final AtomicBoolean firstPrepareStarted = new AtomicBoolean();
+
+    /** A late first prepare triggers a new report. */
+    private volatile boolean reported;
+
+    /**
+     * Profiler for one session, timings start now.
+     *
+     * @param name
+     *      name in the report (profile, keyspace, application...)
+     */
+    public StartupProfiler(String name) {
+        this.name = name;
+    }
+
+    /**
+     * Session builder instrumented for this profiler.
+     *
+     * @return
+     *      a new builder, to be used once
+     */
+    public CqlSessionBuilder sessionBuilder() {
+        return new ProfilingSessionBuilder(this);
+    }
+
+    /**
+     * Record a phase measured by the caller.
+     *
+     * @param phase
+     *      phase
+     * @param fromNanos
+     *      start, from {@link System#nanoTime()}
+     * @param toNanos
+     *      end, from {@link System#nanoTime()}
+     */
+    public void record(Phase phase, long fromNanos, long toNanos) {
+        durations.putIfAbsent(phase, Math.max(0, toNanos - fromNanos));
+    }
+
+    /**
+     * Run and time an action as a phase.
+     *
+     * @param phase
+     *      phase
+     * @param action
+     *      action to time
+     * @return
+     *      result of the action
+     */
+    public <T> T time(Phase phase, Supplier<T> action) {
+        long top = System.nanoTime();
+        try {
+            return action.get();
+        } finally {
+            record(phase, top, System.nanoTime());
+        }
+    }
+
+    /**
+     * Duration of a phase, if it has been measured.
+     *
+     * @param phase
+     *      phase
+     * @return
+     *      duration
+     */
+    public Optional<Duration> getDuration(Phase phase) {
+        return Optional.ofNullable(durations.get(phase)).map(Duration::ofNanos);
+    }
+
+    /**
+     * Time from the profiler creation to a usable session.
+     *
+     * @return
+     *      duration, empty while the session is not built
+     */
+    public Optional<Duration> getConnectedTime() {
+        return elapsed(connectedNanos);
+    }
+
+    /**
+     * Time from the profiler creation to the end of the first prepare.
+     *
+     * @return
+     *      duration, empty while no statement has been prepared
+     */
+    public Optional<Duration> getTimeToFirstPrepare() {
+        return elapsed(firstPrepareNanos);
+    }
+
+    /**
+     * Report as a single JSON object, durations in milliseconds.
+     *
+     * @return
+     *      JSON report
+     */
+    public String toJson() {
+        StringBuilder json = new StringBuilder("{\"name\":\"").append(escape(name)).append("\",\"driver\":\"4.x\"");
+        getConnectedTime().ifPresent(d -> json.append(",\"connectedMs\":").append(millis(d)));
+        getTimeToFirstPrepare().ifPresent(d -> json.append(",\"timeToFirstPrepareMs\":").append(millis(d)));
+        json.append(",\"phases\":{");
+        List<String> phases = new ArrayList<>();
+        for (Phase phase : Phase.values()) {
+            getDuration(phase).ifPresent(d -> phases.add("\"" + phase.getLabel() + "\":" + millis(d)));
+        }
+        return json.append(String.join(",", phases)).append("}}").toString();
+    }
+
+    /**
+     * Log the phases on one line, then the JSON report.
+     *
+     * @return
+     *      JSON report
+     */
+    public String report() {
+        reported = true;
+        List<String> phases = new ArrayList<>();
+        for (Phase phase : Phase.values()) {
+            getDuration(phase).ifPresent(d -> phases.add(phase.getLabel() + "=" + millis(d) + "ms"));
+        }
+        String json = toJson();
+        LOGGER.info("+ Startup '{}' connected in {} ms, first prepare at {} ms [{}]", name,
+                getConnectedTime().map(StartupProfiler::millis).orElse("-"),
+                getTimeToFirstPrepare().map(StartupProfiler::millis).orElse("-"),
+                String.join(", ", phases));
+        LOGGER.info("+ Startup report {}", json);
+        return json;
+    }
+
+    private Optional<Duration> elapsed(long toNanos) {
+        return toNanos == 0 ? Optional.empty() : Optional.of(Duration.ofNanos(toNanos - startNanos));
+    }
+
+    private void onConfigLoaded() {
+        if (configNanos == 0) {
+            configNanos = System.nanoTime();
+            record(Phase.CONFIG, startNanos, configNanos);
+        }
+    }
+
+    private void onContextCreated() {
+        contactPointsNanos = System.nanoTime();
+        record(Phase.CONTACT_POINTS, configNanos != 0 ? configNanos : startNanos, contactPointsNanos);
+    }
+
+    private void onMetadataLoaded() {
+        metadataNanos = System.nanoTime();
+        record(Phase.METADATA, contactPointsNanos, metadataNanos);
+    }
+
+    private void onConnected() {
+        connectedNanos = System.nanoTime();
+        if (metadataNanos != 0) {
+            record(Phase.POOLS, metadataNanos, connectedNanos);
+        }
+    }
+
+    private void onFirstPrepare(long fromNanos) {
+        firstPrepareNanos = System.nanoTime();
+        record(Phase.FIRST_PREPARE, fromNanos, firstPrepareNanos);
+        if (reported) {
+            report();
+        }
+    }
+
+    private static String millis(Duration duration) {
+        return String.format(Locale.ROOT, "%.1f", duration.toNanos() / 1_000_000d);
+    }
+
+    private static String escape(String value) {
+        return value.replace("\\", "\\\\").replace("\"", "\\\"");
+    }
+
+    /**
+     * Builder instrumented through the public hooks of {@link CqlSessionBuilder}.
+     */
+    private static final class ProfilingSessionBuilder extends CqlSessionBuilder {
+
+        private final StartupProfiler profiler;
+
+        private ProfilingSessionBuilder(StartupProfiler profiler) {
+            this.profiler = profiler;
+        }
+
+        /** {@inheritDoc} */
+        @Override
+        public CqlSessionBuilder withConfigLoader(DriverConfigLoader configLoader) {
+            return super.withConfigLoader(configLoader == null ? null
+                    : new ProfilingConfigLoader(configLoader, profiler));
+        }
+
+        /** {@inheritDoc} */
+        @Override
+        protected DriverConfigLoader defaultConfigLoader(ClassLoader classLoader) {
+            return new ProfilingConfigLoader(super.defaultConfigLoader(classLoader), profiler);
+        }
+
+        /** {@inheritDoc} */
+        @Override
+        protected DriverContext buildContext(DriverConfigLoader configLoader, ProgrammaticArguments arguments) {
+            // Contact points have been merged and resolved at this point
+            profiler.onContextCreated();
+            return super.buildContext(configLoader, arguments);
+        }
+
+        /** {@inheritDoc} */
+        @Override
+        protected CqlSession wrap(CqlSession defaultSession) {
+            // Session initialized: pools opened (and initial keyspace set)
+            profiler.onConnected();
+            return new ProfilingSession(super.wrap(defaultSession), profiler);
+        }
+    }
+
+    /**
+     * Time the first load of the configuration, then the driver initialization: the loader
+     * is notified once the control connection and the metadata are ready, before the pools.
+     */
+    private static final class ProfilingConfigLoader implements DriverConfigLoader {
+
+        private final DriverConfigLoader delegate;
+
+        private final StartupProfiler profiler;
+
+        private ProfilingConfigLoader(DriverConfigLoader delegate, StartupProfiler profiler) {
+            this.delegate = delegate;
+            this.profiler = profiler;
+        }
+
+        /** {@inheritDoc} */
+        @Override
+        public DriverConfig getInitialConfig() {
+            DriverConfig config = delegate.getInitialConfig();
+            profiler.onConfigLoaded();
+            return config;
+        }
+
+        /** {@inheritDoc} */
+        @Override
+        public void onDriverInit(DriverContext context) {
+            profiler.onMetadataLoaded();
+            delegate.onDriverInit(context);
+        }
+
+        /** {@inheritDoc} */
+        @Override
+        public CompletionStage<Boolean> reload() {
+            return delegate.reload();
+        }
+
+        /** {@inheritDoc} */
+        @Override
+        public boolean supportsReloading() {
+            return delegate.supportsReloading();
+        }
+
+        /** {@inheritDoc} */
+        @Override
+        public void close() {
+            delegate.close();
+        }
+    }
+
+    /**
+     * Time the first prepare going through the session, sync or async, other calls are
+     * delegated to the session built by the driver.
+     */
+    private static final class ProfilingSession implements CqlSession {
+
+        private final CqlSession delegate;
+
+        private final StartupProfiler profiler;
+
+        private ProfilingSession(CqlSession delegate, StartupProfiler profiler) {
+            this.delegate = delegate;
+            this.profiler = profiler;
+        }
+
+        /** {@inheritDoc} */
+        @Override
+        public <RequestT extends Request, ResultT> ResultT execute(RequestT request, GenericType<ResultT> resultType) {
+            if (!(request instanceof PrepareRequest) || !profiler.firstPrepareStarted.compareAndSet(false, true)) {
+                return delegate.execute(request, resultType);
+            }
+            long top = System.nanoTime();
+            ResultT result = delegate.execute(request, resultType);
+            if (result instanceof CompletionStage) {
+                ((CompletionStage<?>) result).whenComplete((prepared, error) -> profiler.onFirstPrepare(top));
+            } else {
+                profiler.onFirstPrepare(top);
+            }
+            return result;
+        }
+
+        /** {@inheritDoc} */
+        @Override
+        public String getName() {
+            return delegate.getName();
+        }
+
+        /** {@inheritDoc} */
+        @Override
+        public Metadata getMetadata() {
+            return delegate.getMetadata();
+        }
+
+        /** {@inheritDoc} */
+        @Override
+        public boolean isSchemaMetadataEnabled() {
+            return delegate.isSchemaMetadataEnabled();
+        }
+
+        /** {@inheritDoc} */
+        @Override
+        public CompletionStage<Metadata> setSchemaMetadataEnabled(Boolean newValue) {
+            return delegate.setSchemaMetadataEnabled(newValue);
+        }
+
+        /** {@inheritDoc} */
+        @Override
+        public CompletionStage<Metadata> refreshSchemaAsync() {
+            return delegate.refreshSchemaAsync();
+        }
+
+        /** {@inheritDoc} */
+        @Override
+        public CompletionStage<Boolean> checkSchemaAgreementAsync() {
+            return delegate.checkSchemaAgreementAsync();
+        }
+
+        /** {@inheritDoc} */
+        @Override
+        public DriverContext getContext() {
+            return delegate.getContext();
+        }
+
+        /** {@inheritDoc} */
+        @Override
+        public Optional<CqlIdentifier> getKeyspace() {
+            return delegate.getKeyspace();
+        }
+
+        /** {@inheritDoc} */
+        @Override
+        public Optional<Metrics> getMetrics() {
+            return delegate.getMetrics();
+        }
+
+        /** {@inheritDoc} */
+        @Override
+        public CompletionStage<Void> closeFuture() {
+            return delegate.closeFuture();
+        }
+
+        /** {@inheritDoc} */
+        @Override
+        public CompletionStage<Void> closeAsync() {
+            return delegate.closeAsync();
+        }
+
+        /** {@inheritDoc} */
+        @Override
+        public CompletionStage<Void> forceCloseAsync() {
+            return delegate.forceCloseAsync();
+        }
+    }
+
+}
@@ -0,0 +1,155 @@
+package com.datastax.samples.bulk;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+import org.HdrHistogram.Histogram;
+
+/**
+ * Outcome of a {@link UserBulkImporter} run: counts, throughput and write latencies.
+ */
+public class BulkImportReport {
+
+    private final long rowsImported;
+
+    private final long rowsFailed;
+
+    private final long rowsSkipped;
+
+    private final long retries;
+
+    private final boolean aborted;
+
+    private final Duration elapsed;
+
+    /** Latency of each imported row in microseconds, retries included. */
+    private final Histogram latencies;
+
+    /**
+     * Report of a run.
+     *
+     * @param rowsImported
+     *      rows written
+     * @param rowsFailed
+     *      rows not written after all retries
+     * @param rowsSkipped
+     *      malformed lines
+     * @param retries
+     *      number of attempts retried
+     * @param aborted
+     *      if the import stopped before the end of the file (too many failures)
+     * @param elapsed
+     *      time of the whole run
+     * @param latencies
+     *      latencies of imported rows in microseconds
+     */
+    public BulkImportReport(long rowsImported, long rowsFailed, long rowsSkipped, long retries,
+            boolean aborted, Duration elapsed, Histogram latencies) {
+        this.rowsImported = rowsImported;
+        this.rowsFailed   = rowsFailed;
+        this.rowsSkipped  = rowsSkipped;
+        this.retries      = retries;
+        this.aborted      = aborted;
+        this.elapsed      = elapsed;
+        this.latencies    = latencies;
+    }
+
+    /**
+     * Imported rows per second over the run.
+     *
+     * @return
+     *      throughput
+     */
+    public double getRowsPerSecond() {
+        long nanos = elapsed.toNanos();
+        return nanos == 0 ? 0 : rowsImported * (double) TimeUnit.SECONDS.toNanos(1) / nanos;
+    }
+
+    /**
+     * Write latency at a given percentile.
+     *
+     * @param percentile
+     *      percentile between 0 and 100, e.g. 99.0
+     * @return
+     *      latency, zero if nothing has been imported
+     */
+    public Duration getLatencyAtPercentile(double percentile) {
+        return Duration.ofNanos(TimeUnit.MICROSECONDS.toNanos(latencies.getValueAtPercentile(percentile)));
+    }
+
+    /**
+     * Getter accessor for attribute 'rowsImported'.
+     *
+     * @return current value of 'rowsImported'
+     */
+    public long getRowsImported() {
+        return rowsImported;
+    }
+
+    /**
+     * Getter accessor for attribute 'rowsFailed'.
+     *
+     * @return current value of 'rowsFailed'
+     */
+    public long getRowsFailed() {
+        return rowsFailed;
+    }
+
+    /**
+     * Getter accessor for attribute 'rowsSkipped'.
+     *
+     * @return current value of 'rowsSkipped'
+     */
+    public long getRowsSkipped() {
+        return rowsSkipped;
+    }
+
+    /**
+     * Getter accessor for attribute 'retries'.
+     *
+     * @return current value of 'retries'
+     */
+    public long getRetries() {
+        return retries;
+    }
+
+    /**
+     * Getter accessor for attribute 'aborted'.
+     *
+     * @return current value of 'aborted'
+     */
+    public boolean isAborted() {
+        return aborted;
+    }
+
+    /**
+     * Getter accessor for attribute 'elapsed'.
+     *
+     * @return current value of 'elapsed'
+     */
+    public Duration getElapsed() {
+        return elapsed;
+    }
+
+    /**
+     * Getter accessor for attribute 'latencies'.
+     *
+     * @return current value of 'latencies' (microseconds)
+     */
+    public Histogram getLatencies() {
+        return latencies;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public String toString() {
+        return String.format("%d rows imported in %d ms (%.0f rows/s), %d failed, %d skipped, %d retries%s, "
+                + "latency p50=%.2f ms p99=%.2f ms max=%.2f ms",
+                rowsImported, elapsed.toMillis(), getRowsPerSecond(), rowsFailed, rowsSkipped, retries,
+                aborted ? ", ABORTED" : "",
+                latencies.getValueAtPercentile(50) / 1000.0,
+                latencies.getValueAtPercentile(99) / 1000.0,
+                latencies.getMaxValue() / 1000.0);
+    }
+
+}
@@ -0,0 +1,300 @@
+package com.datastax.samples.bulk;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.datastax.oss.driver.api.core.CqlIdentifier;
+import com.datastax.oss.driver.api.core.CqlSession;
+import com.datastax.oss.driver.api.core.cql.BatchStatement;
+import com.datastax.oss.driver.api.core.cql.BatchableStatement;
+import com.datastax.oss.driver.api.core.cql.DefaultBatchType;
+import com.datastax.oss.driver.api.core.cql.Statement;
+import com.datastax.oss.driver.api.core.metadata.Node;
+import com.datastax.oss.driver.api.core.metadata.TokenMap;
+
+/**
+ * Group writes on many partitions into UNLOGGED batches the cluster can apply cheaply.
+ *
+ * A LOGGED batch over 50 partitions (CRUD_02) is written to the batchlog of two nodes first,
+ * then its coordinator sends each mutation to the replicas of each partition: one node does
+ * the work of the whole cluster. Here statements are grouped by partition, or by the set of
+ * replicas owning their token, and each group is sent as an UNLOGGED batch. The driver routes
+ * a batch with the routing key of its first statement, so a group goes straight to a replica
+ * which applies the mutations locally (same partition: a single mutation) instead of fanning
+ * them out.
+ *
+ * Batches are split when they would exceed 'maxBatchBytes' (Cassandra warns above
+ * 'batch_size_warn_threshold', 5 KiB by default). With {@link Strategy#NONE}, statements are
+ * sent one by one, still routed to a replica by the token-aware load balancing policy.
+ *
+ * <pre>
+ * new StatementBatcher(session)
+ *    .withStrategy(Strategy.REPLICA_SET)
+ *    .execute(statements);
+ * </pre>
+ */
+public class StatementBatcher {
+
+    /** Logger for the class. */
+    private static Logger LOGGER = LoggerFactory.getLogger(StatementBatcher.class);
+
+    /**
+     * How statements are grouped.
+     */
+    public enum Strategy {
+        /** One batch per partition key, applied atomically and in isolation by the replicas. */
+        PARTITION,
+        /** One batch per replica set, partitions of a batch are on the same nodes. */
+        REPLICA_SET,
+        /** No batch, one request per statement. */
+        NONE
+    }
+
+    private final CqlSession session;
+
+    private Strategy strategy = Strategy.PARTITION;
+
+    private DefaultBatchType batchType = DefaultBatchType.UNLOGGED;
+
+    private int maxBatchBytes = 5 * 1024;
+
+    private int maxInFlight = 64;
+
+    /**
+     * Batcher for a session, the token map comes from the session metadata.
+     *
+     * @param session
+     *      current session
+     */
+    public StatementBatcher(CqlSession session) {
+        this.session = Objects.requireNonNull(session);
+    }
+
+    /**
+     * Grouping of statements, defaults to {@link Strategy#PARTITION}.
+     *
+     * @param strategy
+     *      grouping strategy
+     * @return
+     *      current instance
+     */
+    public StatementBatcher withStrategy(Strategy strategy) {
+        this.strategy = Objects.requireNonNull(strategy);
+        return this;
+    }
+
+    /**
+     * Type of the batches, defaults to UNLOGGED. Counter updates cannot be mixed with other
+     * writes and need COUNTER batches.
+     *
+     * @param batchType
+     *      UNLOGGED or COUNTER
+     * @return
+     *      current instance
+     */
+    public StatementBatcher withBatchType(DefaultBatchType batchType) {
+        if (batchType == DefaultBatchType.LOGGED) {
+            throw new IllegalArgumentException("LOGGED batches are not grouped by replicas, use BatchStatement");
+        }
+        this.batchType = Objects.requireNonNull(batchType);
+        return this;
+    }
+
+    /**
+     * Maximum size of a batch (serialized statements), defaults to 5 KiB.
+     *
+     * @param maxBatchBytes
+     *      size in bytes, a statement larger than this is sent alone
+     * @return
+     *      current instance
+     */
+    public StatementBatcher withMaxBatchBytes(int maxBatchBytes) {
+        if (maxBatchBytes < 1) {
+            throw new IllegalArgumentException("maxBatchBytes must be positive");
+        }
+        this.maxBatchBytes = maxBatchBytes;
+        return this;
+    }
+
+    /**
+     * Requests (batches or statements) sent and not completed at the same time, defaults to 64.
+     *
+     * @param maxInFlight
+     *      maximum number of concurrent requests
+     * @return
+     *      current instance
+     */
+    public StatementBatcher withMaxInFlight(int maxInFlight) {
+        if (maxInFlight < 1) {
+            throw new IllegalArgumentException("maxInFlight must be positive");
+        }
+        this.maxInFlight = maxInFlight;
+        return this;
+    }
+
+    /**
+     * Group statements into batches following the strategy, groups keep the order
+     * of their first statement and statements keep their order in a group.
+     *
+     * @param statements
+     *      statements to write
+     * @return
+     *      requests to execute, batches or single statements
+     */
+    public List<Statement<?>> group(Collection<? extends BatchableStatement<?>> statements) {
+        if (strategy == Strategy.NONE) {
+            return new ArrayList<>(statements);
+        }
+        Optional<TokenMap> tokenMap = strategy == Strategy.REPLICA_SET ? session.getMetadata().getTokenMap() : Optional.empty();
+        Map<Object, List<BatchableStatement<?>>> groups = new LinkedHashMap<>();
+        for (BatchableStatement<?> statement : statements) {
+            groups.computeIfAbsent(groupKey(statement, tokenMap), k -> new ArrayList<>()).add(statement);
+        }
+        List<Statement<?>> requests = new ArrayList<>();
+        for (List<BatchableStatement<?>> group : groups.values()) {
+            List<BatchableStatement<?>> chunk = new ArrayList<>();
+            int chunkBytes = 0;
+            for (BatchableStatement<?> statement : group) {
+                int size = statement.computeSizeInBytes(session.getContext());
+                if (!chunk.isEmpty() && chunkBytes + size > maxBatchBytes) {
+                    requests.add(toRequest(chunk));
+                    chunk = new ArrayList<>();
+                    chunkBytes = 0;
+                }
+                chunk.add(statement);
+                chunkBytes += size;
+            }
+            requests.add(toRequest(chunk));
+        }
+        LOGGER.debug("{} statements grouped in {} requests ({})", statements.size(), requests.size(), strategy);
+        return requests;
+    }
+
+    /**
+     * Group and execute statements.
+     *
+     * @param statements
+     *      statements to write
+     */
+    public void execute(Collection<? extends BatchableStatement<?>> statements) {
+        try {
+            executeAsync(statements).toCompletableFuture().join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Group and execute statements asynchronously, at most 'maxInFlight' requests at a time.
+     *
+     * @param statements
+     *      statements to write
+     * @return
+     *      completed when all requests are, failed with the first error (no new request is sent)
+     */
+    public CompletionStage<Void> executeAsync(Collection<? extends BatchableStatement<?>> statements) {
+        return new Run(group(statements).iterator()).start();
+    }
+
+    /**
+     * Statements with the same key go in the same batch. A statement without routing
+     * information gets a key of its own.
+     */
+    private Object groupKey(BatchableStatement<?> statement, Optional<TokenMap> tokenMap) {
+        CqlIdentifier keyspace = statement.getRoutingKeyspace() != null ? statement.getRoutingKeyspace()
+                : statement.getKeyspace() != null ? statement.getKeyspace()
+                : session.getKeyspace().orElse(null);
+        ByteBuffer routingKey = statement.getRoutingKey();
+        if (keyspace == null || (routingKey == null && statement.getRoutingToken() == null)) {
+            return new Object();
+        }
+        if (tokenMap.isPresent()) {
+            Set<Node> replicas = routingKey != null
+                    ? tokenMap.get().getReplicas(keyspace, routingKey)
+                    : tokenMap.get().getReplicas(keyspace, statement.getRoutingToken());
+            if (!replicas.isEmpty()) {
+                return replicas;
+            }
+        }
+        return routingKey != null ? Arrays.asList(keyspace, routingKey) : Arrays.asList(keyspace, statement.getRoutingToken());
+    }
+
+    private Statement<?> toRequest(List<BatchableStatement<?>> chunk) {
+        if (chunk.size() == 1) {
+            return chunk.get(0);
+        }
+        boolean idempotent = chunk.stream().allMatch(s -> Boolean.TRUE.equals(s.isIdempotent()));
+        return BatchStatement.newInstance(batchType, chunk).setIdempotent(idempotent);
+    }
+
+    /**
+     * State of one execution.
+     */
+    private class Run {
+
+        private final Iterator<Statement<?>> requests;
+
+        private final CompletableFuture<Void> result = new CompletableFuture<>();
+
+        private int inFlight;
+
+        private RuntimeException failure;
+
+        private Run(Iterator<Statement<?>> requests) {
+            this.requests = requests;
+        }
+
+        private CompletionStage<Void> start() {
+            launch();
+            return result;
+        }
+
+        private void launch() {
+            boolean finished;
+            synchronized (this) {
+                while (failure == null && inFlight < maxInFlight && requests.hasNext()) {
+                    inFlight++;
+                    session.executeAsync(requests.next()).whenComplete((rs, error) -> onComplete(error));
+                }
+                finished = inFlight == 0 && (failure != null || !requests.hasNext());
+            }
+            if (finished && !result.isDone()) {
+                if (failure != null) {
+                    result.completeExceptionally(failure);
+                } else {
+                    result.complete(null);
+                }
+            }
+        }
+
+        private void onComplete(Throwable error) {
+            synchronized (this) {
+                inFlight--;
+                if (error != null && failure == null) {
+                    failure = error instanceof RuntimeException ? (RuntimeException) error
+                            : new IllegalStateException(error.getMessage(), error);
+                }
+            }
+            launch();
+        }
+    }
+
+}
@@ -0,0 +1,397 @@
+package com.datastax.samples.bulk;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.datastax.oss.driver.api.core.AllNodesFailedException;
+import com.datastax.oss.driver.api.core.CqlSession;
+import com.datastax.oss.driver.api.core.DriverTimeoutException;
+import com.datastax.oss.driver.api.core.connection.BusyConnectionException;
+import com.datastax.oss.driver.api.core.connection.ClosedConnectionException;
+import com.datastax.oss.driver.api.core.cql.BoundStatement;
+import com.datastax.oss.driver.api.core.cql.PreparedStatement;
+import com.datastax.oss.driver.api.core.servererrors.OverloadedException;
+import com.datastax.oss.driver.api.core.servererrors.UnavailableException;
+import com.datastax.oss.driver.api.core.servererrors.WriteTimeoutException;
+import com.datastax.oss.driver.api.querybuilder.QueryBuilder;
+import com.datastax.samples.ExampleSchema;
+import com.datastax.samples.SessionManager;
+
+/**
+ * Stream a CSV (or TSV) file into the 'users' table with a bounded number of requests in flight.
+ *
+ * Batches (CRUD_02) do not make imports faster: a multi-partition batch is split by the
+ * coordinator and logged ones cost an extra write to the batchlog. Individual asynchronous
+ * inserts are routed by the driver to a replica (token aware) and spread over the cluster,
+ * but an unbounded loop of executeAsync() keeps every pending row in memory and ends with
+ * BusyConnectionException or OverloadedException.
+ *
+ * Here the file reader takes a permit before each insert and the permit is given back when
+ * the insert completes: when 'maxInFlight' rows are pending, reading blocks until the cluster
+ * catches up (backpressure). The upsert is idempotent, failures worth another try (timeouts,
+ * overloaded or unavailable coordinator, busy connections) are retried with an exponential
+ * backoff while the row keeps its permit.
+ *
+ * The file holds the columns 'email', 'firstname' and 'lastname', in this order or in the order
+ * given by a header line. Lines are parsed as RFC 4180 records without line breaks in fields.
+ *
+ * <pre>
+ * BulkImportReport report = new UserBulkImporter(session)
+ *    .withMaxInFlight(512)
+ *    .importFile(Paths.get("users.csv"));
+ * </pre>
+ */
+public class UserBulkImporter implements ExampleSchema {
+
+    /** Logger for the class. */
+    private static Logger LOGGER = LoggerFactory.getLogger(UserBulkImporter.class);
+
+    /** Failures logged individually, then only counted. */
+    private static final int LOGGED_FAILURES = 10;
+
+    private final CqlSession session;
+
+    /** Upsert used for each row. */
+    private final PreparedStatement stmtUpsertUser;
+
+    private int maxInFlight = 256;
+
+    private int maxRetries = 3;
+
+    private Duration retryDelay = Duration.ofMillis(100);
+
+    private long maxFailures = 1000;
+
+    /** Field separator, null to use the file extension ('.tsv' or not). */
+    private Character delimiter;
+
+    private boolean header = true;
+
+    private Duration progressInterval = Duration.ofSeconds(5);
+
+    /**
+     * Importer for a session connected to the 'killrvideo' keyspace, prepares the upsert.
+     *
+     * @param session
+     *      current session
+     */
+    public UserBulkImporter(CqlSession session) {
+        this.session = Objects.requireNonNull(session);
+        this.stmtUpsertUser = SessionManager.getRegistry(session).get(QueryBuilder.insertInto(USER_TABLENAME)
+                .value(USER_EMAIL, QueryBuilder.bindMarker())
+                .value(USER_FIRSTNAME, QueryBuilder.bindMarker())
+                .value(USER_LASTNAME, QueryBuilder.bindMarker())
+                .build()
+                .setIdempotent(true));
+    }
+
+    /**
+     * Rows sent and not completed at the same time, defaults to 256.
+     *
+     * Should stay below 'advanced.connection.max-requests-per-connection' multiplied by the
+     * pool size of the nodes, or requests wait for a stream id in the driver.
+     *
+     * @param maxInFlight
+     *      maximum number of concurrent inserts
+     * @return
+     *      current instance
+     */
+    public UserBulkImporter withMaxInFlight(int maxInFlight) {
+        if (maxInFlight < 1) {
+            throw new IllegalArgumentException("maxInFlight must be positive");
+        }
+        this.maxInFlight = maxInFlight;
+        return this;
+    }
+
+    /**
+     * Retries of a failed row, with a delay doubling at each attempt. Defaults to 3 retries
+     * starting at 100 ms.
+     *
+     * @param maxRetries
+     *      retries after the first attempt
+     * @param retryDelay
+     *      delay before the first retry
+     * @return
+     *      current instance
+     */
+    public UserBulkImporter withRetries(int maxRetries, Duration retryDelay) {
+        if (maxRetries < 0) {
+            throw new IllegalArgumentException("maxRetries must not be negative");
+        }
+        this.maxRetries = maxRetries;
+        this.retryDelay = Objects.requireNonNull(retryDelay);
+        return this;
+    }
+
+    /**
+     * Stop reading the file after this number of failed rows, defaults to 1000.
+     *
+     * @param maxFailures
+     *      failed rows tolerated
+     * @return
+     *      current instance
+     */
+    public UserBulkImporter withMaxFailures(long maxFailures) {
+        this.maxFailures = maxFailures;
+        return this;
+    }
+
+    /**
+     * Field separator, by default tab for '.tsv' files and comma otherwise.
+     *
+     * @param delimiter
+     *      separator
+     * @return
+     *      current instance
+     */
+    public UserBulkImporter withDelimiter(char delimiter) {
+        this.delimiter = delimiter;
+        return this;
+    }
+
+    /**
+     * Tell if the first line names the columns, defaults to true.
+     *
+     * @param header
+     *      if the file has a header line
+     * @return
+     *      current instance
+     */
+    public UserBulkImporter withHeader(boolean header) {
+        this.header = header;
+        return this;
+    }
+
+    /**
+     * Interval between two progress logs, defaults to 5 seconds.
+     *
+     * @param progressInterval
+     *      interval
+     * @return
+     *      current instance
+     */
+    public UserBulkImporter withProgressInterval(Duration progressInterval) {
+        this.progressInterval = Objects.requireNonNull(progressInterval);
+        return this;
+    }
+
+    /**
+     * Import a file and wait for all rows to be written.
+     *
+     * @param file
+     *      CSV or TSV file
+     * @return
+     *      counts and latencies
+     * @throws IOException
+     *      cannot read the file
+     */
+    public BulkImportReport importFile(Path file) throws IOException {
+        char separator = delimiter != null ? delimiter
+                : file.toString().toLowerCase(Locale.ROOT).endsWith(".tsv") ? '\t' : ',';
+        LOGGER.info("+ Importing {} with {} rows in flight", file, maxInFlight);
+        Run run = new Run();
+        boolean aborted;
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            int[] columns = { 0, 1, 2 };
+            long lineNumber = 0;
+            String line;
+            while ((line = reader.readLine()) != null && run.failed.sum() < maxFailures) {
+                lineNumber++;
+                if (line.isBlank()) {
+                    continue;
+                }
+                List<String> fields = split(line, separator);
+                if (header && lineNumber == 1) {
+                    columns = columns(fields);
+                    continue;
+                }
+                if (fields.size() <= Math.max(columns[0], Math.max(columns[1], columns[2]))
+                        || fields.get(columns[0]).isEmpty()) {
+                    run.skipped.increment();
+                    LOGGER.warn("+ Line {} skipped, malformed: {}", lineNumber, line);
+                    continue;
+                }
+                // Blocks when maxInFlight rows are pending
+                run.permits.acquireUninterruptibly();
+                run.execute(stmtUpsertUser.bind(
+                        fields.get(columns[0]), fields.get(columns[1]), fields.get(columns[2])), 0, System.nanoTime());
+                run.logProgress(false);
+            }
+            aborted = line != null;
+        } finally {
+            // Wait for the rows in flight
+            run.permits.acquireUninterruptibly(maxInFlight);
+            run.permits.release(maxInFlight);
+        }
+        run.logProgress(true);
+        BulkImportReport report = new BulkImportReport(run.imported.sum(), run.failed.sum(), run.skipped.sum(),
+                run.retries.sum(), aborted, Duration.ofNanos(System.nanoTime() - run.startNanos), run.total);
+        if (aborted) {
+            LOGGER.warn("+ Import aborted after {} failures: {}", report.getRowsFailed(), report);
+        } else {
+            LOGGER.info("[OK] {}", report);
+        }
+        return report;
+    }
+
+    /**
+     * Positions of the columns named in the header.
+     */
+    private static int[] columns(List<String> header) {
+        int[] columns = new int[3];
+        String[] names = { USER_EMAIL, USER_FIRSTNAME, USER_LASTNAME };
+        for (int i = 0; i < names.length; i++) {
+            columns[i] = -1;
+            for (int j = 0; j < header.size(); j++) {
+                if (header.get(j).trim().equalsIgnoreCase(names[i])) {
+                    columns[i] = j;
+                }
+            }
+            if (columns[i] < 0) {
+                throw new IllegalArgumentException("Column '" + names[i] + "' not found in header " + header);
+            }
+        }
+        return columns;
+    }
+
+    /**
+     * Fields of a delimited line, double quotes enclose fields and are escaped by doubling them.
+     *
+     * @param line
+     *      line of the file
+     * @param delimiter
+     *      field separator
+     * @return
+     *      unquoted fields
+     */
+    static List<String> split(String line, char delimiter) {
+        List<String> fields = new ArrayList<>();
+        StringBuilder field = new StringBuilder();
+        boolean quoted = false;
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (quoted) {
+                if (c == '"' && i + 1 < line.length() && line.charAt(i + 1) == '"') {
+                    field.append('"');
+                    i++;
+                } else if (c == '"') {
+                    quoted = false;
+                } else {
+                    field.append(c);
+                }
+            } else if (c == '"') {
+                quoted = true;
+            } else if (c == delimiter) {
+                fields.add(field.toString());
+                field.setLength(0);
+            } else {
+                field.append(c);
+            }
+        }
+        fields.add(field.toString());
+        return fields;
+    }
+
+    /**
+     * Failures the next attempt has a chance to avoid, the statement being idempotent.
+     */
+    private static boolean isRetryable(Throwable error) {
+        return error instanceof DriverTimeoutException
+            || error instanceof WriteTimeoutException
+            || error instanceof OverloadedException
+            || error instanceof UnavailableException
+            || error instanceof BusyConnectionException
+            || error instanceof ClosedConnectionException
+            || error instanceof AllNodesFailedException;
+    }
+
+    /**
+     * State of one import.
+     */
+    private class Run {
+
+        private final Semaphore permits = new Semaphore(maxInFlight);
+
+        private final LongAdder imported = new LongAdder();
+
+        private final LongAdder failed = new LongAdder();
+
+        private final LongAdder skipped = new LongAdder();
+
+        private final LongAdder retries = new LongAdder();
+
+        /** Written by the driver threads, read by the file reader for each progress log. */
+        private final Recorder recorder = new Recorder(3);
+
+        /** Latencies of the whole run, only accessed by the file reader. */
+        private final Histogram total = new Histogram(3);
+
+        private final long startNanos = System.nanoTime();
+
+        private long lastProgressNanos = startNanos;
+
+        private long lastProgressRows;
+
+        private void execute(BoundStatement statement, int attempt, long rowStartNanos) {
+            session.executeAsync(statement).whenComplete((rs, error) -> {
+                if (error == null) {
+                    recorder.recordValue(TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - rowStartNanos));
+                    imported.increment();
+                    permits.release();
+                } else if (attempt < maxRetries && statement.isIdempotent() && isRetryable(error)) {
+                    retries.increment();
+                    // Exponential backoff with jitter, the permit is kept so reading stays throttled
+                    long backoff = Math.max(1, retryDelay.toMillis() << attempt);
+                    long delay = backoff / 2 + ThreadLocalRandom.current().nextLong(backoff);
+                    CompletableFuture.delayedExecutor(delay, TimeUnit.MILLISECONDS)
+                            .execute(() -> execute(statement, attempt + 1, rowStartNanos));
+                } else {
+                    failed.increment();
+                    if (failed.sum() <= LOGGED_FAILURES) {
+                        LOGGER.warn("+ Cannot import '{}' after {} attempt(s): {}",
+                                statement.getString(USER_EMAIL), attempt + 1, error.toString());
+                    }
+                    permits.release();
+                }
+            });
+        }
+
+        private void logProgress(boolean last) {
+            long now = System.nanoTime();
+            if (!last && now - lastProgressNanos < progressInterval.toNanos()) {
+                return;
+            }
+            Histogram interval = recorder.getIntervalHistogram();
+            total.add(interval);
+            long rows = imported.sum();
+            if (!last) {
+                LOGGER.info("+ {} rows imported, {} rows/s, p99 {} ms, {} in flight", rows,
+                        (rows - lastProgressRows) * TimeUnit.SECONDS.toNanos(1) / (now - lastProgressNanos),
+                        String.format("%.2f", interval.getValueAtPercentile(99) / 1000.0),
+                        maxInFlight - permits.availablePermits());
+            }
+            lastProgressNanos = now;
+            lastProgressRows  = rows;
+        }
+    }
+
+}
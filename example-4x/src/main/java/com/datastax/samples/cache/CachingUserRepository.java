@@ -0,0 +1,502 @@
+package com.datastax.samples.cache;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.datastax.oss.driver.api.core.CqlSession;
+import com.datastax.oss.driver.api.core.cql.PreparedStatement;
+import com.datastax.oss.driver.api.core.cql.Row;
+import com.datastax.oss.driver.api.core.cql.SimpleStatement;
+import com.datastax.oss.driver.api.querybuilder.QueryBuilder;
+import com.datastax.samples.ExampleSchema;
+import com.datastax.samples.PreparedStatementRegistry;
+import com.datastax.samples.SessionManager;
+import com.datastax.samples.dto.UserDto;
+import com.datastax.samples.filter.PartitionKeyFilter;
+
+import reactor.core.publisher.Mono;
+
+/**
+ * Users of the table 'users' read through a local cache.
+ *
+ * A profile is read thousands of times for each change, each read a round trip to the
+ * cluster. Here results (user or absent) are kept in a {@link WTinyLfuCache} of
+ * 'maximumSize' entries for 'timeToLive'. A read after 'refreshAfter' returns the cached
+ * user and reloads it in the background: a key read often never waits for the database,
+ * a key not read again just expires.
+ *
+ * Upserts and deletes of this repository invalidate the key once written, and a load
+ * started before the end of a write of the same key does not cache what it read (it may be
+ * the previous value). Writes of other processes are seen after 'timeToLive' at most, or when
+ * {@link #invalidate(String)} is called. With {@link #withKeyFilter(PartitionKeyFilter)},
+ * the upserts also add their key to the filter once written.
+ *
+ * <pre>
+ * CachingUserRepository users = new CachingUserRepository(session).withMaximumSize(50_000);
+ * Optional&lt;UserDto&gt; user = users.findById(email);
+ * </pre>
+ */
+public class CachingUserRepository implements ExampleSchema {
+
+    /** Logger for the class. */
+    private static Logger LOGGER = LoggerFactory.getLogger(CachingUserRepository.class);
+
+    /** Write sequences, a write only prevents the loads of the keys of its stripe. */
+    private static final int WRITE_STRIPES = 1024;
+
+    /** Cached result of a read. */
+    private static final class Entry {
+        private final Optional<UserDto> user;
+        private final long loadedAt = System.nanoTime();
+        private final AtomicBoolean refreshing = new AtomicBoolean();
+
+        private Entry(Optional<UserDto> user) {
+            this.user = user;
+        }
+    }
+
+    private final CqlSession session;
+
+    private final PreparedStatement stmtFindUser;
+
+    private final PreparedStatement stmtUpsertUser;
+
+    private final PreparedStatement stmtDeleteUser;
+
+    private WTinyLfuCache<String, Entry> cache = new WTinyLfuCache<>(10_000);
+
+    private Duration timeToLive = Duration.ofMinutes(5);
+
+    private Duration refreshAfter = Duration.ofMinutes(4);
+
+    /** Filter of the existing emails, null if none. */
+    private PartitionKeyFilter keyFilter;
+
+    /** Writes of the keys of each stripe, incremented at the start and the end of each write. */
+    private final AtomicLongArray writeSequences = new AtomicLongArray(WRITE_STRIPES);
+
+    private final LongAdder hits = new LongAdder();
+
+    private final LongAdder misses = new LongAdder();
+
+    private final LongAdder expirations = new LongAdder();
+
+    private final LongAdder refreshes = new LongAdder();
+
+    private final LongAdder loadFailures = new LongAdder();
+
+    private final LongAdder invalidations = new LongAdder();
+
+    private final Histogram loadLatencies = new ConcurrentHistogram(TimeUnit.MINUTES.toMicros(1), 3);
+
+    /**
+     * Repository for the table 'users' of the session keyspace.
+     *
+     * @param session
+     *      current session
+     */
+    public CachingUserRepository(CqlSession session) {
+        this(session, SessionManager.getRegistry(session));
+    }
+
+    /**
+     * Repository for the table 'users' of the session keyspace.
+     *
+     * @param session
+     *      current session
+     * @param registry
+     *      prepared statements of the session
+     */
+    public CachingUserRepository(CqlSession session, PreparedStatementRegistry registry) {
+        this.session = Objects.requireNonNull(session);
+        SimpleStatement queryFindUser = QueryBuilder
+                .selectFrom(USER_TABLENAME).all()
+                .whereColumn(USER_EMAIL).isEqualTo(QueryBuilder.bindMarker())
+                .build();
+        SimpleStatement queryUpsertUser = QueryBuilder.insertInto(USER_TABLENAME)
+                .value(USER_EMAIL, QueryBuilder.bindMarker())
+                .value(USER_FIRSTNAME, QueryBuilder.bindMarker())
+                .value(USER_LASTNAME, QueryBuilder.bindMarker())
+                .build();
+        SimpleStatement queryDeleteUser = QueryBuilder
+                .deleteFrom(USER_TABLENAME)
+                .whereColumn(USER_EMAIL).isEqualTo(QueryBuilder.bindMarker())
+                .build();
+        Map<SimpleStatement, PreparedStatement> prepared = registry.prepareAll(
+                queryFindUser, queryUpsertUser, queryDeleteUser);
+        stmtFindUser   = prepared.get(queryFindUser);
+        stmtUpsertUser = prepared.get(queryUpsertUser);
+        stmtDeleteUser = prepared.get(queryDeleteUser);
+    }
+
+    /**
+     * Users kept in memory, defaults to 10000. Clears the cache.
+     *
+     * @param maximumSize
+     *      maximum number of entries
+     * @return
+     *      current instance
+     */
+    public CachingUserRepository withMaximumSize(int maximumSize) {
+        this.cache = new WTinyLfuCache<>(maximumSize);
+        return this;
+    }
+
+    /**
+     * Time a user is cached, defaults to 5 minutes.
+     *
+     * @param timeToLive
+     *      time after the load, also the delay before writes of others are seen
+     * @return
+     *      current instance
+     */
+    public CachingUserRepository withTimeToLive(Duration timeToLive) {
+        if (timeToLive.isNegative() || timeToLive.isZero()) {
+            throw new IllegalArgumentException("timeToLive must be positive");
+        }
+        this.timeToLive = timeToLive;
+        return this;
+    }
+
+    /**
+     * Age from which a read reloads the user in the background, defaults to 4 minutes.
+     *
+     * @param refreshAfter
+     *      time after the load, at least 'timeToLive' to disable
+     * @return
+     *      current instance
+     */
+    public CachingUserRepository withRefreshAfter(Duration refreshAfter) {
+        if (refreshAfter.isNegative() || refreshAfter.isZero()) {
+            throw new IllegalArgumentException("refreshAfter must be positive");
+        }
+        this.refreshAfter = refreshAfter;
+        return this;
+    }
+
+    /**
+     * Filter of the existing emails to update with the upserts, none by default.
+     *
+     * @param keyFilter
+     *      filter of the table 'users', null for none
+     * @return
+     *      current instance
+     */
+    public CachingUserRepository withKeyFilter(PartitionKeyFilter keyFilter) {
+        this.keyFilter = keyFilter;
+        return this;
+    }
+
+    /**
+     * Find a user by its email.
+     *
+     * @param email
+     *      user email
+     * @return
+     *      user, empty if it does not exist
+     */
+    public Optional<UserDto> findById(String email) {
+        return join(findByIdAsync(email));
+    }
+
+    /**
+     * Find a user by its email asynchronously, completed at once when cached.
+     *
+     * @param email
+     *      user email
+     * @return
+     *      user, empty if it does not exist
+     */
+    public CompletionStage<Optional<UserDto>> findByIdAsync(String email) {
+        Entry entry = cache.getIfPresent(email);
+        if (entry != null) {
+            long age = System.nanoTime() - entry.loadedAt;
+            if (age < timeToLive.toNanos()) {
+                hits.increment();
+                if (age >= refreshAfter.toNanos() && entry.refreshing.compareAndSet(false, true)) {
+                    refreshes.increment();
+                    // Reset even when the result is not cached (failure or concurrent write): next read tries again
+                    load(email).whenComplete((user, error) -> entry.refreshing.set(false));
+                }
+                return CompletableFuture.completedFuture(entry.user);
+            }
+            expirations.increment();
+        }
+        misses.increment();
+        return load(email);
+    }
+
+    /**
+     * Find a user by its email with a publisher.
+     *
+     * @param email
+     *      user email
+     * @return
+     *      user, empty if it does not exist
+     */
+    public Mono<Optional<UserDto>> findByIdReactive(String email) {
+        return Mono.fromCompletionStage(() -> findByIdAsync(email));
+    }
+
+    private CompletionStage<Optional<UserDto>> load(String email) {
+        int stripe = stripe(email);
+        long sequence = writeSequences.get(stripe);
+        long start = System.nanoTime();
+        return session.executeAsync(stmtFindUser.bind(email)).handle((rs, error) -> {
+            loadLatencies.recordValue(Math.min(TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - start),
+                    loadLatencies.getHighestTrackableValue()));
+            if (error != null) {
+                loadFailures.increment();
+                throw error instanceof CompletionException ? (CompletionException) error : new CompletionException(error);
+            }
+            Row row = rs.one();
+            Optional<UserDto> user = row == null ? Optional.empty() : Optional.of(new UserDto(row));
+            if (writeSequences.get(stripe) == sequence) {
+                cache.put(email, new Entry(user));
+            }
+            return user;
+        });
+    }
+
+    /**
+     * Insert or update a user.
+     *
+     * @param user
+     *      user
+     */
+    public void upsert(UserDto user) {
+        join(upsertAsync(user));
+    }
+
+    /**
+     * Insert or update a user asynchronously, its cache entry is invalidated once written.
+     *
+     * @param user
+     *      user
+     * @return
+     *      completed when written
+     */
+    public CompletionStage<Void> upsertAsync(UserDto user) {
+        writeSequences.incrementAndGet(stripe(user.getEmail()));
+        return session.executeAsync(stmtUpsertUser.bind(user.getEmail(), user.getFirstName(), user.getLastName()))
+                      .whenComplete((rs, error) -> {
+                          if (error == null && keyFilter != null) {
+                              keyFilter.put(user.getEmail());
+                          }
+                          invalidate(user.getEmail());
+                      })
+                      .thenApply(rs -> null);
+    }
+
+    /**
+     * Insert or update a user with a publisher.
+     *
+     * @param user
+     *      user
+     * @return
+     *      completed when written
+     */
+    public Mono<Void> upsertReactive(UserDto user) {
+        return Mono.fromCompletionStage(() -> upsertAsync(user));
+    }
+
+    /**
+     * Delete a user.
+     *
+     * @param email
+     *      user email
+     */
+    public void delete(String email) {
+        join(deleteAsync(email));
+    }
+
+    /**
+     * Delete a user asynchronously, its cache entry is invalidated once deleted.
+     *
+     * @param email
+     *      user email
+     * @return
+     *      completed when deleted
+     */
+    public CompletionStage<Void> deleteAsync(String email) {
+        writeSequences.incrementAndGet(stripe(email));
+        return session.executeAsync(stmtDeleteUser.bind(email))
+                      .whenComplete((rs, error) -> invalidate(email))
+                      .thenApply(rs -> null);
+    }
+
+    /**
+     * Delete a user with a publisher.
+     *
+     * @param email
+     *      user email
+     * @return
+     *      completed when deleted
+     */
+    public Mono<Void> deleteReactive(String email) {
+        return Mono.fromCompletionStage(() -> deleteAsync(email));
+    }
+
+    /**
+     * A user has been written by another statement (e.g. a lightweight transaction).
+     *
+     * @param email
+     *      user email
+     */
+    public void invalidate(String email) {
+        writeSequences.incrementAndGet(stripe(email));
+        cache.invalidate(email);
+        invalidations.increment();
+    }
+
+    /**
+     * Log the cache statistics.
+     */
+    public void logStatistics() {
+        LOGGER.info("+ User cache: {} entries, hit ratio {}%, {} loads (p99 {} ms, {} failed), "
+                + "{} refreshes, {} expirations, {} evictions, {} invalidations",
+                getSize(), String.format("%.1f", 100 * getHitRatio()), getLoads(),
+                String.format("%.2f", loadLatencies.getValueAtPercentile(99) / 1000.0), getLoadFailures(),
+                getRefreshes(), getExpirations(), getEvictions(), getInvalidations());
+    }
+
+    private static int stripe(String email) {
+        int h = email.hashCode();
+        return (h ^ (h >>> 16)) & (WRITE_STRIPES - 1);
+    }
+
+    private static <T> T join(CompletionStage<T> stage) {
+        try {
+            return stage.toCompletableFuture().join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Reads answered from the cache.
+     *
+     * @return
+     *      number of reads
+     */
+    public long getHits() {
+        return hits.sum();
+    }
+
+    /**
+     * Reads loaded from the database, absent or expired.
+     *
+     * @return
+     *      number of reads
+     */
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    /**
+     * Share of the reads answered from the cache.
+     *
+     * @return
+     *      hits / (hits + misses)
+     */
+    public double getHitRatio() {
+        long reads = getHits() + getMisses();
+        return reads == 0 ? 0 : (double) getHits() / reads;
+    }
+
+    /**
+     * Queries to the database, misses and refreshes.
+     *
+     * @return
+     *      number of loads
+     */
+    public long getLoads() {
+        return loadLatencies.getTotalCount();
+    }
+
+    /**
+     * Latencies of the loads, in microseconds.
+     *
+     * @return
+     *      copy of the histogram
+     */
+    public Histogram getLoadLatencies() {
+        return loadLatencies.copy();
+    }
+
+    /**
+     * Getter accessor for attribute 'loadFailures'.
+     *
+     * @return current value of 'loadFailures'
+     */
+    public long getLoadFailures() {
+        return loadFailures.sum();
+    }
+
+    /**
+     * Reloads started by a read after 'refreshAfter'.
+     *
+     * @return
+     *      number of refreshes
+     */
+    public long getRefreshes() {
+        return refreshes.sum();
+    }
+
+    /**
+     * Reads of an entry older than 'timeToLive'.
+     *
+     * @return
+     *      number of reads
+     */
+    public long getExpirations() {
+        return expirations.sum();
+    }
+
+    /**
+     * Entries removed by the size bound.
+     *
+     * @return
+     *      number of entries
+     */
+    public long getEvictions() {
+        return cache.getEvictions();
+    }
+
+    /**
+     * Getter accessor for attribute 'invalidations'.
+     *
+     * @return current value of 'invalidations'
+     */
+    public long getInvalidations() {
+        return invalidations.sum();
+    }
+
+    /**
+     * Users and absent emails cached.
+     *
+     * @return
+     *      number of entries
+     */
+    public int getSize() {
+        return cache.size();
+    }
+
+}
@@ -0,0 +1,96 @@
+package com.datastax.samples.cache;
+
+/**
+ * Approximate access frequency of keys (count-min sketch), used to admit an entry in
+ * {@link WTinyLfuCache}.
+ *
+ * 4 counters of 4 bits per key, in 4 rows, the frequency is the smallest one. After
+ * 10 * maximumSize increments all counters are halved: old popularity fades out.
+ *
+ * Not thread-safe.
+ */
+class FrequencySketch {
+
+    private static final long[] SEEDS = {
+        0xc3a5c85c97cb3127L, 0xb492b66fbe98f273L, 0x9ae16a3b2f90404fL, 0xcbf29ce484222325L };
+
+    private static final long RESET_MASK = 0x7777777777777777L;
+
+    /** 16 counters per word. */
+    private final long[] table;
+
+    private final int sampleSize;
+
+    private int additions;
+
+    /**
+     * Sketch for a cache.
+     *
+     * @param maximumSize
+     *      maximum number of entries of the cache
+     */
+    FrequencySketch(int maximumSize) {
+        int counters = Integer.highestOneBit(Math.max(16, Math.min(maximumSize, 1 << 26)) - 1) << 1;
+        this.table      = new long[counters / 16 * 4];
+        this.sampleSize = 10 * Math.max(1, maximumSize);
+    }
+
+    /**
+     * Count an access, saturates at 15.
+     *
+     * @param hashCode
+     *      hash code of the key
+     */
+    void increment(int hashCode) {
+        boolean added = false;
+        for (int row = 0; row < 4; row++) {
+            int index  = index(hashCode, row);
+            int offset = counterOffset(hashCode, row);
+            if (((table[index] >>> offset) & 0xfL) != 0xfL) {
+                table[index] += 1L << offset;
+                added = true;
+            }
+        }
+        if (added && ++additions == sampleSize) {
+            for (int i = 0; i < table.length; i++) {
+                table[i] = (table[i] >>> 1) & RESET_MASK;
+            }
+            additions /= 2;
+        }
+    }
+
+    /**
+     * Estimated accesses since the last halving.
+     *
+     * @param hashCode
+     *      hash code of the key
+     * @return
+     *      between 0 and 15
+     */
+    int frequency(int hashCode) {
+        int frequency = 0xf;
+        for (int row = 0; row < 4; row++) {
+            int count = (int) ((table[index(hashCode, row)] >>> counterOffset(hashCode, row)) & 0xfL);
+            frequency = Math.min(frequency, count);
+        }
+        return frequency;
+    }
+
+    /**
+     * Each row has its own quarter of the words.
+     */
+    private int index(int hashCode, int row) {
+        int rowWords = table.length / 4;
+        return row * rowWords + (int) ((spread(hashCode, row) >>> 32) & (rowWords - 1));
+    }
+
+    private int counterOffset(int hashCode, int row) {
+        return (int) (spread(hashCode, row) & 0xf) << 2;
+    }
+
+    private static long spread(int hashCode, int row) {
+        long h = (hashCode + SEEDS[row]) * SEEDS[(row + 1) & 3];
+        return h ^ (h >>> 29);
+    }
+
+}
@@ -0,0 +1,287 @@
+package com.datastax.samples.cache;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Size-bounded cache keeping the entries most often used recently (W-TinyLFU).
+ *
+ * An LRU cache evicts a popular entry as soon as a scan reads more new keys than the
+ * cache holds. Here a new entry goes to a small LRU window (1% of the entries), then
+ * competes for the main area with the least recently used entry there: the one accessed
+ * more often according to a {@link FrequencySketch} stays. The main area is a segmented
+ * LRU: entries accessed again move from 'probation' (20%) to 'protected' (80%).
+ *
+ * Reads do not wait for the lock: when it is taken, the access is not recorded (like the
+ * lossy read buffers of Caffeine), the entry is returned anyway.
+ *
+ * @param <K>
+ *      key type
+ * @param <V>
+ *      value type
+ */
+public class WTinyLfuCache<K, V> {
+
+    /** Queue of an entry. */
+    private enum Area { WINDOW, PROBATION, PROTECTED }
+
+    /** Entry, also a node of the queue of its area. */
+    private static final class Node<K, V> {
+        private final K key;
+        private volatile V value;
+        private Area area;
+        private Node<K, V> prev;
+        private Node<K, V> next;
+
+        private Node(K key, V value) {
+            this.key   = key;
+            this.value = value;
+        }
+    }
+
+    /** Doubly linked list, least recently used first. */
+    private static final class AccessQueue<K, V> {
+        private Node<K, V> head;
+        private Node<K, V> tail;
+        private int size;
+
+        private void addLast(Node<K, V> node) {
+            node.prev = tail;
+            node.next = null;
+            if (tail == null) {
+                head = node;
+            } else {
+                tail.next = node;
+            }
+            tail = node;
+            size++;
+        }
+
+        private void remove(Node<K, V> node) {
+            if (node.prev == null) {
+                head = node.next;
+            } else {
+                node.prev.next = node.next;
+            }
+            if (node.next == null) {
+                tail = node.prev;
+            } else {
+                node.next.prev = node.prev;
+            }
+            node.prev = null;
+            node.next = null;
+            size--;
+        }
+
+        private void moveToEnd(Node<K, V> node) {
+            if (tail != node) {
+                remove(node);
+                addLast(node);
+            }
+        }
+    }
+
+    private final Map<K, Node<K, V>> data = new ConcurrentHashMap<>();
+
+    private final ReentrantLock lock = new ReentrantLock();
+
+    private final AccessQueue<K, V> window = new AccessQueue<>();
+
+    private final AccessQueue<K, V> probation = new AccessQueue<>();
+
+    private final AccessQueue<K, V> protectedArea = new AccessQueue<>();
+
+    private final FrequencySketch sketch;
+
+    private final int maximumSize;
+
+    private final int maxWindow;
+
+    private final int maxProtected;
+
+    private final LongAdder evictions = new LongAdder();
+
+    /**
+     * Empty cache.
+     *
+     * @param maximumSize
+     *      maximum number of entries
+     */
+    public WTinyLfuCache(int maximumSize) {
+        if (maximumSize < 1) {
+            throw new IllegalArgumentException("maximumSize must be positive");
+        }
+        this.maximumSize  = maximumSize;
+        this.maxWindow    = Math.max(1, maximumSize / 100);
+        this.maxProtected = (int) ((maximumSize - maxWindow) * 0.8);
+        this.sketch       = new FrequencySketch(maximumSize);
+    }
+
+    /**
+     * Value of a key, the access is counted.
+     *
+     * @param key
+     *      key
+     * @return
+     *      value, null if absent
+     */
+    public V getIfPresent(K key) {
+        Node<K, V> node = data.get(key);
+        if (lock.tryLock()) {
+            try {
+                sketch.increment(key.hashCode());
+                // Might have been evicted since read
+                if (node != null && node.area != null) {
+                    onAccess(node);
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+        return node == null ? null : node.value;
+    }
+
+    /**
+     * Add or replace the value of a key, may evict another entry (or this one).
+     *
+     * @param key
+     *      key
+     * @param value
+     *      value
+     */
+    public void put(K key, V value) {
+        lock.lock();
+        try {
+            Node<K, V> node = data.get(key);
+            if (node != null) {
+                node.value = value;
+                onAccess(node);
+                return;
+            }
+            node = new Node<>(key, value);
+            node.area = Area.WINDOW;
+            window.addLast(node);
+            data.put(key, node);
+            sketch.increment(key.hashCode());
+            evict();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Remove the entry of a key.
+     *
+     * @param key
+     *      key
+     */
+    public void invalidate(K key) {
+        lock.lock();
+        try {
+            Node<K, V> node = data.remove(key);
+            if (node != null) {
+                unlink(node);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void onAccess(Node<K, V> node) {
+        switch (node.area) {
+            case WINDOW:
+                window.moveToEnd(node);
+                break;
+            case PROBATION:
+                probation.remove(node);
+                node.area = Area.PROTECTED;
+                protectedArea.addLast(node);
+                if (protectedArea.size > maxProtected) {
+                    Node<K, V> demoted = protectedArea.head;
+                    protectedArea.remove(demoted);
+                    demoted.area = Area.PROBATION;
+                    probation.addLast(demoted);
+                }
+                break;
+            default:
+                protectedArea.moveToEnd(node);
+        }
+    }
+
+    /**
+     * Entries leaving the window enter probation, then the least frequent of the newcomer
+     * and the probation victim is evicted while the cache is full.
+     */
+    private void evict() {
+        while (window.size > maxWindow) {
+            Node<K, V> candidate = window.head;
+            window.remove(candidate);
+            candidate.area = Area.PROBATION;
+            probation.addLast(candidate);
+            if (data.size() > maximumSize) {
+                Node<K, V> victim = probation.head;
+                if (victim != candidate
+                        && sketch.frequency(candidate.key.hashCode()) > sketch.frequency(victim.key.hashCode())) {
+                    remove(victim);
+                } else {
+                    remove(candidate);
+                }
+            }
+        }
+        while (data.size() > maximumSize) {
+            remove(probation.head != null ? probation.head : protectedArea.head != null ? protectedArea.head : window.head);
+        }
+    }
+
+    private void remove(Node<K, V> node) {
+        data.remove(node.key, node);
+        unlink(node);
+        evictions.increment();
+    }
+
+    private void unlink(Node<K, V> node) {
+        switch (node.area) {
+            case WINDOW:
+                window.remove(node);
+                break;
+            case PROBATION:
+                probation.remove(node);
+                break;
+            default:
+                protectedArea.remove(node);
+        }
+        node.area = null;
+    }
+
+    /**
+     * Getter accessor for attribute 'maximumSize'.
+     *
+     * @return current value of 'maximumSize'
+     */
+    public int getMaximumSize() {
+        return maximumSize;
+    }
+
+    /**
+     * Entries in the cache.
+     *
+     * @return
+     *      number of entries
+     */
+    public int size() {
+        return data.size();
+    }
+
+    /**
+     * Entries removed to stay under the maximum size.
+     *
+     * @return
+     *      number of entries
+     */
+    public long getEvictions() {
+        return evictions.sum();
+    }
+
+}
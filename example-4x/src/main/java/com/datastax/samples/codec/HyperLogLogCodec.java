@@ -0,0 +1,56 @@
+package com.datastax.samples.codec;
+
+import java.nio.ByteBuffer;
+
+import com.datastax.oss.driver.api.core.ProtocolVersion;
+import com.datastax.oss.driver.api.core.type.DataType;
+import com.datastax.oss.driver.api.core.type.DataTypes;
+import com.datastax.oss.driver.api.core.type.codec.TypeCodec;
+import com.datastax.oss.driver.api.core.type.reflect.GenericType;
+import com.datastax.oss.protocol.internal.util.Bytes;
+import com.datastax.samples.counter.HyperLogLog;
+
+/**
+ * Store a {@link HyperLogLog} sketch in a blob column.
+ */
+public class HyperLogLogCodec implements TypeCodec<HyperLogLog> {
+
+    /** {@inheritDoc} */
+    @Override
+    public GenericType<HyperLogLog> getJavaType() {
+        return GenericType.of(HyperLogLog.class);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public DataType getCqlType() {
+        return DataTypes.BLOB;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public ByteBuffer encode(HyperLogLog value, ProtocolVersion protocolVersion) {
+        return value == null ? null : value.toBytes();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public HyperLogLog decode(ByteBuffer bytes, ProtocolVersion protocolVersion) {
+        return bytes == null || !bytes.hasRemaining() ? null : HyperLogLog.fromBytes(bytes);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public String format(HyperLogLog value) {
+        return value == null ? "NULL" : Bytes.toHexString(value.toBytes());
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public HyperLogLog parse(String value) {
+        return (value == null || value.isEmpty() || value.equalsIgnoreCase("NULL"))
+                ? null
+                : HyperLogLog.fromBytes(Bytes.fromHexString(value));
+    }
+
+}
@@ -0,0 +1,380 @@
+package com.datastax.samples.counter;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.datastax.oss.driver.api.core.CqlSession;
+import com.datastax.oss.driver.api.core.cql.BatchStatement;
+import com.datastax.oss.driver.api.core.cql.BatchableStatement;
+import com.datastax.oss.driver.api.core.cql.DefaultBatchType;
+import com.datastax.oss.driver.api.core.cql.PreparedStatement;
+import com.datastax.oss.driver.api.core.cql.Statement;
+import com.datastax.oss.driver.api.querybuilder.QueryBuilder;
+import com.datastax.samples.ExampleSchema;
+import com.datastax.samples.bulk.StatementBatcher;
+import com.datastax.samples.bulk.StatementBatcher.Strategy;
+
+/**
+ * Add up video views in memory and write the sums, instead of one UPDATE per view.
+ *
+ * Each counter update is a read-before-write on the leader replica: a popular video viewed
+ * thousands of times per second (CRUD_08 incrementBy) makes thousands of slow writes on the
+ * same partition. Here increments go to a LongAdder per video (no lock, contention spread
+ * over cells) and a background thread writes the sum of each video every 'flushInterval',
+ * or sooner when 'maxPendingKeys' videos are waiting. Sums are sent in COUNTER batches
+ * grouped by replica set ({@link StatementBatcher}): N views of a video in an interval cost
+ * one mutation.
+ *
+ * Counter updates are not idempotent and never retried: when a write fails or times out,
+ * its deltas are counted in {@link #getLostDeltas()} (views not written, or not known to be).
+ * Views not flushed yet are lost if the process dies, {@link #close()} flushes them: it waits
+ * for the increments in progress and rejects the next ones before the final flush.
+ *
+ * <pre>
+ * try (CoalescingCounterWriter views = new CoalescingCounterWriter(session)) {
+ *     views.increment(videoid, 1);
+ * }
+ * </pre>
+ */
+public class CoalescingCounterWriter implements ExampleSchema, AutoCloseable {
+
+    /** Logger for the class. */
+    private static Logger LOGGER = LoggerFactory.getLogger(CoalescingCounterWriter.class);
+
+    private final CqlSession session;
+
+    private final PreparedStatement stmtIncrement;
+
+    private final StatementBatcher batcher;
+
+    /** Deltas not written yet by video. */
+    private final Map<UUID, LongAdder> pending = new ConcurrentHashMap<>();
+
+    /** A flush has been requested because of the number of pending videos. */
+    private final AtomicBoolean flushRequested = new AtomicBoolean();
+
+    private Duration flushInterval = Duration.ofSeconds(1);
+
+    private int maxPendingKeys = 10_000;
+
+    private int maxInFlight = 32;
+
+    private Semaphore inFlight;
+
+    private volatile ScheduledExecutorService flusher;
+
+    /** Increments share the read lock, close() takes the write lock to fence them. */
+    private final ReadWriteLock fence = new ReentrantReadWriteLock();
+
+    private volatile boolean closed;
+
+    private final LongAdder increments = new LongAdder();
+
+    private final LongAdder writes = new LongAdder();
+
+    private final LongAdder flushes = new LongAdder();
+
+    private final LongAdder lostDeltas = new LongAdder();
+
+    /**
+     * Writer for the table 'videos_views', flushing starts with the first increment.
+     *
+     * @param session
+     *      current session
+     */
+    public CoalescingCounterWriter(CqlSession session) {
+        this.session = Objects.requireNonNull(session);
+        this.stmtIncrement = session.prepare(QueryBuilder
+                .update(VIDEO_VIEWS_TABLENAME)
+                .increment(VIDEO_VIEWS_VIEWS, QueryBuilder.bindMarker())
+                .whereColumn(VIDEO_VIEWS_VIDEOID).isEqualTo(QueryBuilder.bindMarker())
+                .build());
+        this.batcher = new StatementBatcher(session)
+                .withStrategy(Strategy.REPLICA_SET)
+                .withBatchType(DefaultBatchType.COUNTER);
+    }
+
+    /**
+     * Time between two flushes, defaults to 1 second. Set before the first increment.
+     *
+     * @param flushInterval
+     *      flush interval, also the maximum delay before views are visible
+     * @return
+     *      current instance
+     */
+    public synchronized CoalescingCounterWriter withFlushInterval(Duration flushInterval) {
+        if (flushInterval.isNegative() || flushInterval.isZero()) {
+            throw new IllegalArgumentException("flushInterval must be positive");
+        }
+        if (flusher != null) {
+            throw new IllegalStateException("Writer already started, flushInterval is set before the first increment");
+        }
+        this.flushInterval = flushInterval;
+        return this;
+    }
+
+    /**
+     * Flush before the interval when this number of videos have pending views, defaults to 10000.
+     *
+     * @param maxPendingKeys
+     *      number of videos
+     * @return
+     *      current instance
+     */
+    public CoalescingCounterWriter withMaxPendingKeys(int maxPendingKeys) {
+        if (maxPendingKeys < 1) {
+            throw new IllegalArgumentException("maxPendingKeys must be positive");
+        }
+        this.maxPendingKeys = maxPendingKeys;
+        return this;
+    }
+
+    /**
+     * Writes sent and not completed at the same time during a flush, defaults to 32.
+     * Set before the first increment.
+     *
+     * @param maxInFlight
+     *      maximum number of concurrent requests
+     * @return
+     *      current instance
+     */
+    public synchronized CoalescingCounterWriter withMaxInFlight(int maxInFlight) {
+        if (maxInFlight < 1) {
+            throw new IllegalArgumentException("maxInFlight must be positive");
+        }
+        if (inFlight != null) {
+            throw new IllegalStateException("Writer already started, maxInFlight is set before the first increment");
+        }
+        this.maxInFlight = maxInFlight;
+        return this;
+    }
+
+    /**
+     * Add views to a video, written with the next flush.
+     *
+     * @param videoid
+     *      video identifier
+     * @param delta
+     *      views to add, negative to remove
+     * @throws IllegalStateException
+     *      once close() has started
+     */
+    public void increment(UUID videoid, long delta) {
+        if (flusher == null) {
+            start();
+        }
+        fence.readLock().lock();
+        try {
+            if (closed) {
+                throw new IllegalStateException("Writer is closed");
+            }
+            increments.increment();
+            add(videoid, delta);
+        } finally {
+            fence.readLock().unlock();
+        }
+        if (pending.size() >= maxPendingKeys && flushRequested.compareAndSet(false, true)) {
+            try {
+                flusher.execute(this::flushQuietly);
+            } catch (RejectedExecutionException e) {
+                // Closing, the final flush writes them
+            }
+        }
+    }
+
+    /**
+     * A flush removes the adder of an idle video: an increment which got it just before
+     * moves what it added to the new adder of the video.
+     */
+    private void add(UUID videoid, long delta) {
+        while (delta != 0) {
+            LongAdder adder = pending.computeIfAbsent(videoid, k -> new LongAdder());
+            adder.add(delta);
+            if (pending.get(videoid) == adder) {
+                return;
+            }
+            delta = adder.sumThenReset();
+        }
+    }
+
+    /**
+     * Write all pending views now, waits until the writes are sent (not completed).
+     */
+    public synchronized void flush() {
+        flushRequested.set(false);
+        Map<BatchableStatement<?>, Long> deltas = new IdentityHashMap<>();
+        List<BatchableStatement<?>> updates = new ArrayList<>();
+        for (Map.Entry<UUID, LongAdder> entry : pending.entrySet()) {
+            LongAdder adder = entry.getValue();
+            long delta = adder.sumThenReset();
+            if (delta == 0 && pending.remove(entry.getKey(), adder)) {
+                // Idle since last flush, what was added in the meantime is still written
+                delta = adder.sumThenReset();
+            }
+            if (delta != 0) {
+                BatchableStatement<?> update = stmtIncrement.bind(delta, entry.getKey());
+                updates.add(update);
+                deltas.put(update, delta);
+            }
+        }
+        if (updates.isEmpty()) {
+            return;
+        }
+        Semaphore permits = permits();
+        for (Statement<?> request : batcher.group(updates)) {
+            long requestDeltas = 0;
+            if (request instanceof BatchStatement) {
+                for (BatchableStatement<?> update : (BatchStatement) request) {
+                    requestDeltas += Math.abs(deltas.get(update));
+                }
+            } else {
+                requestDeltas = Math.abs(deltas.get(request));
+            }
+            long lost = requestDeltas;
+            permits.acquireUninterruptibly();
+            session.executeAsync(request).whenComplete((rs, error) -> {
+                permits.release();
+                if (error != null) {
+                    lostDeltas.add(lost);
+                    LOGGER.warn("Counter write failed, {} views lost: {}", lost, error.getMessage());
+                }
+            });
+        }
+        writes.add(updates.size());
+        flushes.increment();
+    }
+
+    /**
+     * Stop the periodic flush, write pending views and wait for the writes to complete.
+     */
+    @Override
+    public void close() {
+        // Waits for the increments in progress, the next ones see 'closed'
+        fence.writeLock().lock();
+        try {
+            closed = true;
+        } finally {
+            fence.writeLock().unlock();
+        }
+        ScheduledExecutorService periodicFlush;
+        synchronized (this) {
+            periodicFlush = flusher;
+        }
+        // Not holding the lock, a flush in progress needs it
+        if (periodicFlush != null) {
+            periodicFlush.shutdown();
+            try {
+                periodicFlush.awaitTermination(1, TimeUnit.MINUTES);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        synchronized (this) {
+            flush();
+            Semaphore permits = permits();
+            permits.acquireUninterruptibly(maxInFlight);
+            permits.release(maxInFlight);
+        }
+        LOGGER.info("[OK] {} increments written in {} counter updates ({} flushes, {} views lost)",
+                getIncrements(), getWrites(), getFlushes(), getLostDeltas());
+    }
+
+    private synchronized void start() {
+        if (flusher == null && !closed) {
+            inFlight = new Semaphore(maxInFlight);
+            flusher = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread thread = new Thread(r, "counter-flusher");
+                thread.setDaemon(true);
+                return thread;
+            });
+            long interval = flushInterval.toNanos();
+            flusher.scheduleWithFixedDelay(this::flushQuietly, interval, interval, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    private synchronized Semaphore permits() {
+        if (inFlight == null) {
+            inFlight = new Semaphore(maxInFlight);
+        }
+        return inFlight;
+    }
+
+    /**
+     * An exception would cancel the periodic flush.
+     */
+    private void flushQuietly() {
+        try {
+            flush();
+        } catch (RuntimeException e) {
+            LOGGER.warn("Flush failed: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Increments received.
+     *
+     * @return
+     *      number of calls to increment()
+     */
+    public long getIncrements() {
+        return increments.sum();
+    }
+
+    /**
+     * Counter updates sent, one per video and flush.
+     *
+     * @return
+     *      number of updates
+     */
+    public long getWrites() {
+        return writes.sum();
+    }
+
+    /**
+     * Getter accessor for attribute 'flushes'.
+     *
+     * @return current value of 'flushes'
+     */
+    public long getFlushes() {
+        return flushes.sum();
+    }
+
+    /**
+     * Views of failed or timed out writes, not written or not known to be.
+     *
+     * @return
+     *      sum of the absolute value of lost deltas
+     */
+    public long getLostDeltas() {
+        return lostDeltas.sum();
+    }
+
+    /**
+     * Videos with views waiting for the next flush.
+     *
+     * @return
+     *      number of videos
+     */
+    public int getPendingKeys() {
+        return pending.size();
+    }
+
+}
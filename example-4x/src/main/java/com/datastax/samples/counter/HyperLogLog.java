@@ -0,0 +1,184 @@
+package com.datastax.samples.counter;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import com.datastax.samples.Hashing;
+
+/**
+ * Sketch estimating the number of distinct values added, in a fixed size.
+ *
+ * 2^precision registers of one byte keep, for the values hashed to them, the longest run of
+ * leading zeros of the hash. The estimate has a standard error of 1.04 / sqrt(2^precision):
+ * 1.6% with the default precision of 12, for 4 KiB whatever the number of values. Adding a
+ * value twice, or merging a sketch twice, does not change the estimate.
+ *
+ * Not thread-safe.
+ */
+public class HyperLogLog {
+
+    /** Serialization format, first byte. */
+    private static final byte VERSION = 1;
+
+    /** Precision by default, 4096 registers. */
+    public static final int DEFAULT_PRECISION = 12;
+
+    private final int precision;
+
+    private final byte[] registers;
+
+    /**
+     * Empty sketch with the default precision.
+     */
+    public HyperLogLog() {
+        this(DEFAULT_PRECISION);
+    }
+
+    /**
+     * Empty sketch.
+     *
+     * @param precision
+     *      between 4 and 16, the sketch has 2^precision registers
+     */
+    public HyperLogLog(int precision) {
+        if (precision < 4 || precision > 16) {
+            throw new IllegalArgumentException("Precision must be between 4 and 16");
+        }
+        this.precision = precision;
+        this.registers = new byte[1 << precision];
+    }
+
+    /**
+     * Read a sketch serialized with {@link #toBytes()}.
+     *
+     * @param bytes
+     *      version, precision and registers
+     * @return
+     *      sketch
+     */
+    public static HyperLogLog fromBytes(ByteBuffer bytes) {
+        ByteBuffer buffer = bytes.duplicate();
+        if (buffer.remaining() < 2 || buffer.get() != VERSION) {
+            throw new IllegalArgumentException("Invalid sketch: unknown format");
+        }
+        HyperLogLog sketch = new HyperLogLog(buffer.get());
+        if (buffer.remaining() != sketch.registers.length) {
+            throw new IllegalArgumentException("Invalid sketch: " + buffer.remaining() + " registers");
+        }
+        buffer.get(sketch.registers);
+        return sketch;
+    }
+
+    /**
+     * Serialize the sketch, 2^precision + 2 bytes.
+     *
+     * @return
+     *      version, precision and registers
+     */
+    public ByteBuffer toBytes() {
+        ByteBuffer buffer = ByteBuffer.allocate(2 + registers.length);
+        buffer.put(VERSION).put((byte) precision).put(registers);
+        buffer.flip();
+        return buffer;
+    }
+
+    /**
+     * Add a value.
+     *
+     * @param value
+     *      value, e.g. a user email
+     */
+    public void add(String value) {
+        addHash(Hashing.hash64(value));
+    }
+
+    /**
+     * Add a 64-bit hash, values must be hashed uniformly.
+     *
+     * @param hash
+     *      hash of the value
+     */
+    public void addHash(long hash) {
+        int index = (int) (hash >>> (64 - precision));
+        // Sentinel bit: the rank is at most 64 - precision + 1
+        int rank = Long.numberOfLeadingZeros((hash << precision) | (1L << (precision - 1))) + 1;
+        if (rank > registers[index]) {
+            registers[index] = (byte) rank;
+        }
+    }
+
+    /**
+     * Add the values of another sketch: the result counts the union.
+     *
+     * @param other
+     *      sketch with the same precision
+     */
+    public void merge(HyperLogLog other) {
+        if (other.precision != precision) {
+            throw new IllegalArgumentException("Cannot merge precision " + other.precision + " into " + precision);
+        }
+        for (int i = 0; i < registers.length; i++) {
+            if (other.registers[i] > registers[i]) {
+                registers[i] = other.registers[i];
+            }
+        }
+    }
+
+    /**
+     * Estimated number of distinct values, linear counting for small cardinalities.
+     *
+     * @return
+     *      estimate
+     */
+    public long cardinality() {
+        int m = registers.length;
+        double sum = 0;
+        int zeros = 0;
+        for (byte register : registers) {
+            sum += 1.0 / (1L << register);
+            if (register == 0) {
+                zeros++;
+            }
+        }
+        double alpha = m == 16 ? 0.673 : m == 32 ? 0.697 : m == 64 ? 0.709 : 0.7213 / (1 + 1.079 / m);
+        double estimate = alpha * m * m / sum;
+        if (estimate <= 2.5 * m && zeros > 0) {
+            estimate = m * Math.log((double) m / zeros);
+        }
+        return Math.round(estimate);
+    }
+
+    /**
+     * Getter accessor for attribute 'precision'.
+     *
+     * @return current value of 'precision'
+     */
+    public int getPrecision() {
+        return precision;
+    }
+
+    /**
+     * Copy of the sketch.
+     *
+     * @return
+     *      independent sketch with the same registers
+     */
+    public HyperLogLog copy() {
+        HyperLogLog copy = new HyperLogLog(precision);
+        System.arraycopy(registers, 0, copy.registers, 0, registers.length);
+        return copy;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public boolean equals(Object obj) {
+        return obj instanceof HyperLogLog && Arrays.equals(registers, ((HyperLogLog) obj).registers);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public int hashCode() {
+        return Arrays.hashCode(registers);
+    }
+
+}
@@ -0,0 +1,363 @@
+package com.datastax.samples.counter;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+
+import com.datastax.oss.driver.api.core.CqlIdentifier;
+import com.datastax.oss.driver.api.core.CqlSession;
+import com.datastax.oss.driver.api.core.cql.AsyncResultSet;
+import com.datastax.oss.driver.api.core.cql.PreparedStatement;
+import com.datastax.oss.driver.api.core.cql.Row;
+import com.datastax.oss.driver.api.core.cql.SimpleStatement;
+import com.datastax.oss.driver.api.querybuilder.QueryBuilder;
+import com.datastax.samples.ExampleSchema;
+import com.datastax.samples.PreparedStatementRegistry;
+import com.datastax.samples.SessionManager;
+
+/**
+ * Views of a video spread over several counter partitions, 'videos_views_sharded'.
+ *
+ * All increments of 'videos_views' for a video hit one partition, hence one replica set,
+ * and counter updates of a partition are applied one at a time by the leader replica: a
+ * viral video saturates a few nodes whatever the size of the cluster. Here the views are
+ * stored in N partitions (videoid, shard), each increment goes to one of them (random, or
+ * the same one for a given thread) and a read sums the N partitions, queried in parallel
+ * and each one routed to its own replicas.
+ *
+ * The number of shards can be set per video (a few shards for most videos, many for the
+ * popular ones) and may only grow: shards above the current count would not be read. It is
+ * stored in 'videos_views_shards', one row per count ever set, the highest first: every
+ * instance reads the same count, and the first write of a video stores the default one.
+ *
+ * Same operations as CRUD_08: incrementBy, decrementBy, findById and delete.
+ *
+ * <pre>
+ * ShardedCounter views = new ShardedCounter(session).withShards(viralVideo, 64); // stored
+ * views.incrementBy(viralVideo, 1);
+ * long total = views.findById(viralVideo).orElse(0L);
+ * </pre>
+ */
+public class ShardedCounter implements ExampleSchema {
+
+    /**
+     * Shard of an increment.
+     */
+    public enum ShardSelector {
+        /** Random shard, spreads the load of any writer. */
+        RANDOM,
+        /** Shard from the thread id, the writes of a thread on a video go to one partition. */
+        THREAD
+    }
+
+    private final CqlSession session;
+
+    private final PreparedStatement stmtIncrement;
+
+    private final PreparedStatement stmtFindShard;
+
+    private final PreparedStatement stmtDeleteShard;
+
+    private final PreparedStatement stmtFindShards;
+
+    private final PreparedStatement stmtInsertShards;
+
+    private final PreparedStatement stmtDeleteShards;
+
+    /** Shard count stored for the videos written by this instance, a lower bound of the current one. */
+    private final Map<UUID, Integer> shardsByVideo = new ConcurrentHashMap<>();
+
+    private int defaultShards = 8;
+
+    private ShardSelector selector = ShardSelector.RANDOM;
+
+    /**
+     * Counter for the session keyspace.
+     *
+     * @param session
+     *      session connected to a keyspace
+     */
+    public ShardedCounter(CqlSession session) {
+        this(session, session.getKeyspace().orElseThrow(
+                () -> new IllegalArgumentException("Session has no keyspace")).asInternal());
+    }
+
+    /**
+     * Counter for the table 'videos_views_sharded' of a keyspace.
+     *
+     * @param session
+     *      current session
+     * @param keyspace
+     *      keyspace name
+     */
+    public ShardedCounter(CqlSession session, String keyspace) {
+        this(session, keyspace, SessionManager.getRegistry(session));
+    }
+
+    /**
+     * Counter for the table 'videos_views_sharded' of a keyspace.
+     *
+     * @param session
+     *      current session
+     * @param keyspace
+     *      keyspace name
+     * @param registry
+     *      prepared statements of the session
+     */
+    public ShardedCounter(CqlSession session, String keyspace, PreparedStatementRegistry registry) {
+        this.session = Objects.requireNonNull(session);
+        CqlIdentifier ks = CqlIdentifier.fromCql(keyspace);
+        SimpleStatement queryIncrement = QueryBuilder
+                .update(ks, CqlIdentifier.fromCql(VIDEO_VIEWS_SHARDED_TABLENAME))
+                .increment(VIDEO_VIEWS_VIEWS, QueryBuilder.bindMarker())
+                .whereColumn(VIDEO_VIEWS_VIDEOID).isEqualTo(QueryBuilder.bindMarker())
+                .whereColumn(VIDEO_VIEWS_SHARD).isEqualTo(QueryBuilder.bindMarker())
+                .build();
+        SimpleStatement queryFindShard = QueryBuilder
+                .selectFrom(ks, CqlIdentifier.fromCql(VIDEO_VIEWS_SHARDED_TABLENAME)).column(VIDEO_VIEWS_VIEWS)
+                .whereColumn(VIDEO_VIEWS_VIDEOID).isEqualTo(QueryBuilder.bindMarker())
+                .whereColumn(VIDEO_VIEWS_SHARD).isEqualTo(QueryBuilder.bindMarker())
+                .build();
+        SimpleStatement queryDeleteShard = QueryBuilder
+                .deleteFrom(ks, CqlIdentifier.fromCql(VIDEO_VIEWS_SHARDED_TABLENAME))
+                .whereColumn(VIDEO_VIEWS_VIDEOID).isEqualTo(QueryBuilder.bindMarker())
+                .whereColumn(VIDEO_VIEWS_SHARD).isEqualTo(QueryBuilder.bindMarker())
+                .build();
+        SimpleStatement queryFindShards = QueryBuilder
+                .selectFrom(ks, CqlIdentifier.fromCql(VIDEO_VIEWS_SHARDS_TABLENAME)).column(VIDEO_VIEWS_SHARDS)
+                .whereColumn(VIDEO_VIEWS_VIDEOID).isEqualTo(QueryBuilder.bindMarker())
+                .limit(1)
+                .build();
+        SimpleStatement queryInsertShards = QueryBuilder
+                .insertInto(ks, CqlIdentifier.fromCql(VIDEO_VIEWS_SHARDS_TABLENAME))
+                .value(VIDEO_VIEWS_VIDEOID, QueryBuilder.bindMarker())
+                .value(VIDEO_VIEWS_SHARDS, QueryBuilder.bindMarker())
+                .build();
+        SimpleStatement queryDeleteShards = QueryBuilder
+                .deleteFrom(ks, CqlIdentifier.fromCql(VIDEO_VIEWS_SHARDS_TABLENAME))
+                .whereColumn(VIDEO_VIEWS_VIDEOID).isEqualTo(QueryBuilder.bindMarker())
+                .build();
+        Map<SimpleStatement, PreparedStatement> prepared = registry.prepareAll(
+                queryIncrement, queryFindShard, queryDeleteShard,
+                queryFindShards, queryInsertShards, queryDeleteShards);
+        stmtIncrement    = prepared.get(queryIncrement);
+        stmtFindShard    = prepared.get(queryFindShard);
+        stmtDeleteShard  = prepared.get(queryDeleteShard);
+        stmtFindShards   = prepared.get(queryFindShards);
+        stmtInsertShards = prepared.get(queryInsertShards);
+        stmtDeleteShards = prepared.get(queryDeleteShards);
+    }
+
+    /**
+     * Shards of the videos without a stored count, defaults to 8. Stored at the first write
+     * of a video: changing it only applies to videos not written yet.
+     *
+     * @param defaultShards
+     *      shard count
+     * @return
+     *      current instance
+     */
+    public ShardedCounter withDefaultShards(int defaultShards) {
+        if (defaultShards < 1) {
+            throw new IllegalArgumentException("defaultShards must be positive");
+        }
+        this.defaultShards = defaultShards;
+        return this;
+    }
+
+    /**
+     * Store the shard count of a video, for all instances.
+     *
+     * @param videoid
+     *      video identifier
+     * @param shards
+     *      shard count, at least the current one
+     * @return
+     *      current instance
+     */
+    public ShardedCounter withShards(UUID videoid, int shards) {
+        int current = getShards(videoid);
+        if (shards < current) {
+            throw new IllegalArgumentException("Shard count of " + videoid + " cannot decrease from " + current);
+        }
+        join(session.executeAsync(stmtInsertShards.bind(videoid, shards)));
+        shardsByVideo.merge(videoid, shards, Math::max);
+        return this;
+    }
+
+    /**
+     * Shard of each increment, defaults to {@link ShardSelector#RANDOM}.
+     *
+     * @param selector
+     *      shard selection
+     * @return
+     *      current instance
+     */
+    public ShardedCounter withShardSelector(ShardSelector selector) {
+        this.selector = Objects.requireNonNull(selector);
+        return this;
+    }
+
+    /**
+     * Shard count of a video, as stored.
+     *
+     * @param videoid
+     *      video identifier
+     * @return
+     *      shard count, 0 when the video has never been written
+     */
+    public int getShards(UUID videoid) {
+        return join(findShardsAsync(videoid));
+    }
+
+    /**
+     * Add views to one shard of a video.
+     *
+     * @param videoid
+     *      video identifier
+     * @param val
+     *      views to add
+     */
+    public void incrementBy(UUID videoid, long val) {
+        join(incrementByAsync(videoid, val));
+    }
+
+    /**
+     * Remove views from one shard of a video.
+     *
+     * @param videoid
+     *      video identifier
+     * @param val
+     *      views to remove
+     */
+    public void decrementBy(UUID videoid, long val) {
+        join(incrementByAsync(videoid, -val));
+    }
+
+    /**
+     * Add views to one shard of a video asynchronously.
+     *
+     * @param videoid
+     *      video identifier
+     * @param val
+     *      views to add, negative to remove
+     * @return
+     *      completed when written
+     */
+    public CompletionStage<Void> incrementByAsync(UUID videoid, long val) {
+        return writeShardsAsync(videoid).thenCompose(shards -> {
+            int shard = selector == ShardSelector.THREAD
+                    ? (int) (Thread.currentThread().getId() % shards)
+                    : ThreadLocalRandom.current().nextInt(shards);
+            return session.executeAsync(stmtIncrement.bind(val, videoid, shard));
+        }).thenApply(rs -> null);
+    }
+
+    /**
+     * Views of a video, sum of all shards.
+     *
+     * @param videoid
+     *      video identifier
+     * @return
+     *      views, empty when no shard has been written
+     */
+    public Optional<Long> findById(UUID videoid) {
+        return join(findByIdAsync(videoid));
+    }
+
+    /**
+     * Views of a video asynchronously: the shard count, then one query per shard, all sent
+     * at once.
+     *
+     * @param videoid
+     *      video identifier
+     * @return
+     *      views, empty when no shard has been written
+     */
+    public CompletionStage<Optional<Long>> findByIdAsync(UUID videoid) {
+        return findShardsAsync(videoid).thenCompose(shards -> sumShards(videoid, shards));
+    }
+
+    private CompletionStage<Optional<Long>> sumShards(UUID videoid, int shards) {
+        List<CompletableFuture<Row>> reads = new ArrayList<>();
+        for (int shard = 0; shard < shards; shard++) {
+            reads.add(session.executeAsync(stmtFindShard.bind(videoid, shard))
+                             .thenApply(AsyncResultSet::one)
+                             .toCompletableFuture());
+        }
+        return CompletableFuture.allOf(reads.toArray(new CompletableFuture<?>[0])).thenApply(v -> {
+            Optional<Long> total = Optional.empty();
+            for (CompletableFuture<Row> read : reads) {
+                Row row = read.join();
+                if (row != null) {
+                    total = Optional.of(total.orElse(0L) + row.getLong(VIDEO_VIEWS_VIEWS));
+                }
+            }
+            return total;
+        });
+    }
+
+    /**
+     * Delete all shards of a video.
+     *
+     * @param videoid
+     *      video identifier
+     */
+    public void delete(UUID videoid) {
+        int shards = getShards(videoid);
+        List<CompletableFuture<AsyncResultSet>> deletes = new ArrayList<>();
+        for (int shard = 0; shard < shards; shard++) {
+            deletes.add(session.executeAsync(stmtDeleteShard.bind(videoid, shard)).toCompletableFuture());
+        }
+        join(CompletableFuture.allOf(deletes.toArray(new CompletableFuture<?>[0])));
+        // Shard count last: the shards stay reachable until they are all deleted
+        join(session.executeAsync(stmtDeleteShards.bind(videoid)));
+        shardsByVideo.remove(videoid);
+    }
+
+    /**
+     * Highest shard count stored for a video, at least the one this instance stored.
+     */
+    private CompletionStage<Integer> findShardsAsync(UUID videoid) {
+        int known = shardsByVideo.getOrDefault(videoid, 0);
+        return session.executeAsync(stmtFindShards.bind(videoid)).thenApply(rs -> {
+            Row row = rs.one();
+            return Math.max(known, row == null ? 0 : row.getInt(VIDEO_VIEWS_SHARDS));
+        });
+    }
+
+    /**
+     * Shard count for a write: read once per video, the default is stored before the first
+     * write so that readers never miss a shard.
+     */
+    private CompletionStage<Integer> writeShardsAsync(UUID videoid) {
+        Integer known = shardsByVideo.get(videoid);
+        if (known != null) {
+            return CompletableFuture.completedFuture(known);
+        }
+        return findShardsAsync(videoid).thenCompose(stored -> stored > 0
+                    ? CompletableFuture.completedFuture(stored)
+                    : session.executeAsync(stmtInsertShards.bind(videoid, defaultShards)).thenApply(rs -> defaultShards))
+                .thenApply(shards -> shardsByVideo.merge(videoid, shards, Math::max));
+    }
+
+    private static <T> T join(CompletionStage<T> stage) {
+        try {
+            return stage.toCompletableFuture().join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+}
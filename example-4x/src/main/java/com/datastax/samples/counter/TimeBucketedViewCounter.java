@@ -0,0 +1,675 @@
+package com.datastax.samples.counter;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.datastax.oss.driver.api.core.CqlSession;
+import com.datastax.oss.driver.api.core.cql.AsyncResultSet;
+import com.datastax.oss.driver.api.core.cql.BoundStatement;
+import com.datastax.oss.driver.api.core.cql.PreparedStatement;
+import com.datastax.oss.driver.api.core.cql.Row;
+import com.datastax.oss.driver.api.core.cql.SimpleStatement;
+import com.datastax.oss.driver.api.querybuilder.QueryBuilder;
+import com.datastax.samples.ExampleSchema;
+import com.datastax.samples.PreparedStatementRegistry;
+import com.datastax.samples.SessionManager;
+
+/**
+ * Views of a video over time, 'videos_views_by_minute' and 'videos_views_rollups'.
+ *
+ * 'videos_views' only keeps the lifetime total. Here each view increments the counter of
+ * its minute (UTC), in one partition per video and day to keep partitions at 1440 rows.
+ * Once an hour is over, a background task sums its minutes into an hour bucket, then the
+ * hours of a closed day into a day bucket. Counters cannot be overwritten, so rollups are
+ * plain bigint written with an INSERT: computing a rollup twice, from any instance, gives
+ * the same row.
+ *
+ * A range query reads the coarsest buckets covering the window: full days from the day
+ * rollups, the hours around them from the hour rollups and the minutes at both ends: up to
+ * 7 queries sent at once when the rollups are there, plus one minute query per run of
+ * buckets without rollup and per day partition of that run. Views in the last 30 days cost
+ * about 30 day rows, plus up to 46 hours and 236 minutes when the bounds are not aligned,
+ * instead of 43200 minutes.
+ *
+ * Buckets which ended more than 'gracePeriod' plus 'rollupInterval' ago are read from the
+ * rollups. Rollups are computed for the minutes written by this instance: a bucket without
+ * rollup, e.g. written by an instance stopped before its rollup, is read from its minutes
+ * until {@link #rollupDay(UUID, LocalDate)} recomputes the day. {@link #close()} rejects new
+ * increments and waits for the ones in progress before the last rollup.
+ *
+ * <pre>
+ * try (TimeBucketedViewCounter views = new TimeBucketedViewCounter(session)) {
+ *     views.incrementBy(videoid, 1);
+ *     long lastHour = views.countViews(videoid, Instant.now().minus(Duration.ofHours(1)), Instant.now());
+ * }
+ * </pre>
+ */
+public class TimeBucketedViewCounter implements ExampleSchema, AutoCloseable {
+
+    /** Logger for the class. */
+    private static Logger LOGGER = LoggerFactory.getLogger(TimeBucketedViewCounter.class);
+
+    /**
+     * Size of a bucket.
+     */
+    public enum Resolution {
+        /** Counter of 'videos_views_by_minute'. */
+        MINUTE(ChronoUnit.MINUTES),
+        /** Sum of 60 minutes in 'videos_views_rollups'. */
+        HOUR(ChronoUnit.HOURS),
+        /** Sum of 24 hours in 'videos_views_rollups'. */
+        DAY(ChronoUnit.DAYS);
+
+        private final ChronoUnit unit;
+
+        Resolution(ChronoUnit unit) {
+            this.unit = unit;
+        }
+
+        /**
+         * Start of the bucket containing an instant.
+         *
+         * @param instant
+         *      any instant
+         * @return
+         *      instant truncated to the resolution, UTC
+         */
+        public Instant floor(Instant instant) {
+            return instant.truncatedTo(unit);
+        }
+
+        /**
+         * Start of the first bucket at or after an instant.
+         *
+         * @param instant
+         *      any instant
+         * @return
+         *      instant rounded up to the resolution, UTC
+         */
+        public Instant ceil(Instant instant) {
+            Instant floor = floor(instant);
+            return floor.equals(instant) ? floor : floor.plus(1, unit);
+        }
+
+        /**
+         * Getter accessor for attribute 'unit'.
+         *
+         * @return current value of 'unit'
+         */
+        public ChronoUnit getUnit() {
+            return unit;
+        }
+    }
+
+    private final CqlSession session;
+
+    private final PreparedStatement stmtIncrementMinute;
+
+    private final PreparedStatement stmtFindMinutes;
+
+    private final PreparedStatement stmtUpsertRollup;
+
+    private final PreparedStatement stmtFindRollups;
+
+    /** Hours written by this instance and not rolled up yet, as (videoid, hour). */
+    private final Set<List<Object>> dirtyHours = ConcurrentHashMap.newKeySet();
+
+    /** Days with a new hour rollup, as (videoid, day). */
+    private final Set<List<Object>> dirtyDays = ConcurrentHashMap.newKeySet();
+
+    private Duration gracePeriod = Duration.ofMinutes(1);
+
+    private Duration rollupInterval = Duration.ofMinutes(1);
+
+    private volatile ScheduledExecutorService roller;
+
+    /** Increments share the read lock, close() takes the write lock to fence them. */
+    private final ReadWriteLock fence = new ReentrantReadWriteLock();
+
+    /** Increments sent and not completed, the last rollup waits for them. */
+    private final Set<CompletableFuture<Void>> pendingIncrements = ConcurrentHashMap.newKeySet();
+
+    private volatile boolean closed;
+
+    private final LongAdder increments = new LongAdder();
+
+    private final LongAdder rollups = new LongAdder();
+
+    private final LongAdder bucketsRead = new LongAdder();
+
+    /**
+     * Counter for the tables of the session keyspace, rollups start with the first increment.
+     *
+     * @param session
+     *      current session
+     */
+    public TimeBucketedViewCounter(CqlSession session) {
+        this(session, SessionManager.getRegistry(session));
+    }
+
+    /**
+     * Counter for the tables of the session keyspace, rollups start with the first increment.
+     *
+     * @param session
+     *      current session
+     * @param registry
+     *      prepared statements of the session
+     */
+    public TimeBucketedViewCounter(CqlSession session, PreparedStatementRegistry registry) {
+        this.session = Objects.requireNonNull(session);
+        SimpleStatement queryIncrementMinute = QueryBuilder
+                .update(VIDEO_VIEWS_BY_MINUTE_TABLENAME)
+                .increment(VIDEO_VIEWS_VIEWS, QueryBuilder.bindMarker())
+                .whereColumn(VIDEO_VIEWS_VIDEOID).isEqualTo(QueryBuilder.bindMarker())
+                .whereColumn(VIDEO_VIEWS_DAY).isEqualTo(QueryBuilder.bindMarker())
+                .whereColumn(VIDEO_VIEWS_MINUTE).isEqualTo(QueryBuilder.bindMarker())
+                .build();
+        SimpleStatement queryFindMinutes = QueryBuilder
+                .selectFrom(VIDEO_VIEWS_BY_MINUTE_TABLENAME).column(VIDEO_VIEWS_VIEWS)
+                .whereColumn(VIDEO_VIEWS_VIDEOID).isEqualTo(QueryBuilder.bindMarker())
+                .whereColumn(VIDEO_VIEWS_DAY).isEqualTo(QueryBuilder.bindMarker())
+                .whereColumn(VIDEO_VIEWS_MINUTE).isGreaterThanOrEqualTo(QueryBuilder.bindMarker())
+                .whereColumn(VIDEO_VIEWS_MINUTE).isLessThan(QueryBuilder.bindMarker())
+                .build();
+        SimpleStatement queryUpsertRollup = QueryBuilder
+                .insertInto(VIDEO_VIEWS_ROLLUPS_TABLENAME)
+                .value(VIDEO_VIEWS_VIDEOID, QueryBuilder.bindMarker())
+                .value(VIDEO_VIEWS_RESOLUTION, QueryBuilder.bindMarker())
+                .value(VIDEO_VIEWS_BUCKET, QueryBuilder.bindMarker())
+                .value(VIDEO_VIEWS_VIEWS, QueryBuilder.bindMarker())
+                .build().setIdempotent(true);
+        SimpleStatement queryFindRollups = QueryBuilder
+                .selectFrom(VIDEO_VIEWS_ROLLUPS_TABLENAME).columns(VIDEO_VIEWS_BUCKET, VIDEO_VIEWS_VIEWS)
+                .whereColumn(VIDEO_VIEWS_VIDEOID).isEqualTo(QueryBuilder.bindMarker())
+                .whereColumn(VIDEO_VIEWS_RESOLUTION).isEqualTo(QueryBuilder.bindMarker())
+                .whereColumn(VIDEO_VIEWS_BUCKET).isGreaterThanOrEqualTo(QueryBuilder.bindMarker())
+                .whereColumn(VIDEO_VIEWS_BUCKET).isLessThan(QueryBuilder.bindMarker())
+                .build();
+        Map<SimpleStatement, PreparedStatement> prepared = registry.prepareAll(
+                queryIncrementMinute, queryFindMinutes, queryUpsertRollup, queryFindRollups);
+        stmtIncrementMinute = prepared.get(queryIncrementMinute);
+        stmtFindMinutes     = prepared.get(queryFindMinutes);
+        stmtUpsertRollup    = prepared.get(queryUpsertRollup);
+        stmtFindRollups     = prepared.get(queryFindRollups);
+    }
+
+    /**
+     * Delay after the end of a bucket before it is rolled up, defaults to 1 minute.
+     *
+     * @param gracePeriod
+     *      longest delay of a view write, e.g. clock skew and retries
+     * @return
+     *      current instance
+     */
+    public TimeBucketedViewCounter withGracePeriod(Duration gracePeriod) {
+        if (gracePeriod.isNegative()) {
+            throw new IllegalArgumentException("gracePeriod must not be negative");
+        }
+        this.gracePeriod = gracePeriod;
+        return this;
+    }
+
+    /**
+     * Time between two rollups of the closed buckets, defaults to 1 minute.
+     *
+     * @param rollupInterval
+     *      rollup interval
+     * @return
+     *      current instance
+     */
+    public TimeBucketedViewCounter withRollupInterval(Duration rollupInterval) {
+        if (rollupInterval.isNegative() || rollupInterval.isZero()) {
+            throw new IllegalArgumentException("rollupInterval must be positive");
+        }
+        this.rollupInterval = rollupInterval;
+        return this;
+    }
+
+    /**
+     * Add views to the current minute of a video.
+     *
+     * @param videoid
+     *      video identifier
+     * @param val
+     *      views to add
+     */
+    public void incrementBy(UUID videoid, long val) {
+        incrementBy(videoid, Instant.now(), val);
+    }
+
+    /**
+     * Add views to the minute of a video containing an instant.
+     *
+     * @param videoid
+     *      video identifier
+     * @param at
+     *      time of the views
+     * @param val
+     *      views to add, negative to remove
+     */
+    public void incrementBy(UUID videoid, Instant at, long val) {
+        join(incrementByAsync(videoid, at, val));
+    }
+
+    /**
+     * Add views to the minute of a video containing an instant asynchronously.
+     *
+     * @param videoid
+     *      video identifier
+     * @param at
+     *      time of the views
+     * @param val
+     *      views to add, negative to remove
+     * @return
+     *      completed when written
+     * @throws IllegalStateException
+     *      once close() has started
+     */
+    public CompletionStage<Void> incrementByAsync(UUID videoid, Instant at, long val) {
+        if (roller == null) {
+            start();
+        }
+        Instant minute = Resolution.MINUTE.floor(at);
+        CompletableFuture<Void> write;
+        fence.readLock().lock();
+        try {
+            if (closed) {
+                throw new IllegalStateException("Counter is closed");
+            }
+            write = session.executeAsync(stmtIncrementMinute.bind(val, videoid, day(minute), minute))
+                           .<Void>thenApply(rs -> {
+                               increments.increment();
+                               // Marked once written, a rollup started before would miss it
+                               dirtyHours.add(Arrays.asList(videoid, Resolution.HOUR.floor(minute)));
+                               return null;
+                           })
+                           .toCompletableFuture();
+            pendingIncrements.add(write);
+        } finally {
+            fence.readLock().unlock();
+        }
+        // Added first, removed even when already completed
+        write.whenComplete((v, error) -> pendingIncrements.remove(write));
+        return write;
+    }
+
+    /**
+     * Views of a video in a window.
+     *
+     * @param videoid
+     *      video identifier
+     * @param from
+     *      start of the window, inclusive, rounded down to the minute
+     * @param to
+     *      end of the window, exclusive, rounded up to the minute
+     * @return
+     *      views
+     */
+    public long countViews(UUID videoid, Instant from, Instant to) {
+        return join(countViewsAsync(videoid, from, to));
+    }
+
+    /**
+     * Views of a video in a window asynchronously, from the coarsest buckets available.
+     *
+     * @param videoid
+     *      video identifier
+     * @param from
+     *      start of the window, inclusive, rounded down to the minute
+     * @param to
+     *      end of the window, exclusive, rounded up to the minute
+     * @return
+     *      views
+     */
+    public CompletionStage<Long> countViewsAsync(UUID videoid, Instant from, Instant to) {
+        Instant start = Resolution.MINUTE.floor(from);
+        Instant end   = Resolution.MINUTE.ceil(to);
+        if (!start.isBefore(end)) {
+            return CompletableFuture.completedFuture(0L);
+        }
+        Instant rolledUp = Instant.now().minus(gracePeriod).minus(rollupInterval);
+        List<CompletableFuture<Long>> reads = new ArrayList<>();
+        Instant dayStart = Resolution.DAY.ceil(start);
+        Instant dayEnd   = min(Resolution.DAY.floor(end), Resolution.DAY.floor(rolledUp));
+        if (dayStart.isBefore(dayEnd)) {
+            reads.add(sumRollups(videoid, Resolution.DAY, dayStart, dayEnd));
+            readHoursAndMinutes(videoid, start, dayStart, rolledUp, reads);
+            readHoursAndMinutes(videoid, dayEnd, end, rolledUp, reads);
+        } else {
+            readHoursAndMinutes(videoid, start, end, rolledUp, reads);
+        }
+        return sum(reads);
+    }
+
+    /**
+     * Full hours of a part of the window from the hour rollups, the rest from the minutes.
+     */
+    private void readHoursAndMinutes(UUID videoid, Instant from, Instant to, Instant rolledUp,
+            List<CompletableFuture<Long>> reads) {
+        if (!from.isBefore(to)) {
+            return;
+        }
+        Instant hourStart = Resolution.HOUR.ceil(from);
+        Instant hourEnd   = min(Resolution.HOUR.floor(to), Resolution.HOUR.floor(rolledUp));
+        if (hourStart.isBefore(hourEnd)) {
+            reads.add(sumRollups(videoid, Resolution.HOUR, hourStart, hourEnd));
+            readMinutes(videoid, from, hourStart, reads);
+            readMinutes(videoid, hourEnd, to, reads);
+        } else {
+            readMinutes(videoid, from, to, reads);
+        }
+    }
+
+    /**
+     * Minutes of a part of the window, one query per day partition.
+     */
+    private void readMinutes(UUID videoid, Instant from, Instant to, List<CompletableFuture<Long>> reads) {
+        Instant start = from;
+        while (start.isBefore(to)) {
+            Instant end = min(to, Resolution.DAY.floor(start).plus(1, ChronoUnit.DAYS));
+            reads.add(sumViews(stmtFindMinutes.bind(videoid, day(start), start, end)));
+            start = end;
+        }
+    }
+
+    /**
+     * Sum of the rollups of a range, the buckets without rollup are read from their minutes:
+     * one query per run of missing buckets, a day partition at most.
+     */
+    private CompletableFuture<Long> sumRollups(UUID videoid, Resolution resolution, Instant from, Instant to) {
+        return session.executeAsync(stmtFindRollups.bind(videoid, resolution.name(), from, to))
+                      .thenCompose(rs -> findRollups(rs, new HashMap<>()))
+                      .thenCompose(rolledUp -> {
+                          long total = 0;
+                          List<CompletableFuture<Long>> reads = new ArrayList<>();
+                          Instant missingFrom = null;
+                          for (Instant bucket = from; bucket.isBefore(to); bucket = bucket.plus(1, resolution.getUnit())) {
+                              Long views = rolledUp.get(bucket);
+                              if (views != null) {
+                                  total += views;
+                                  if (missingFrom != null) {
+                                      readMinutes(videoid, missingFrom, bucket, reads);
+                                      missingFrom = null;
+                                  }
+                              } else if (missingFrom == null) {
+                                  missingFrom = bucket;
+                              }
+                          }
+                          if (missingFrom != null) {
+                              readMinutes(videoid, missingFrom, to, reads);
+                          }
+                          long sum = total;
+                          return sum(reads).thenApply(minutes -> sum + minutes);
+                      })
+                      .toCompletableFuture();
+    }
+
+    private CompletionStage<Map<Instant, Long>> findRollups(AsyncResultSet rs, Map<Instant, Long> rolledUp) {
+        for (Row row : rs.currentPage()) {
+            rolledUp.put(row.getInstant(VIDEO_VIEWS_BUCKET), row.getLong(VIDEO_VIEWS_VIEWS));
+            bucketsRead.increment();
+        }
+        if (rs.hasMorePages()) {
+            return rs.fetchNextPage().thenCompose(next -> findRollups(next, rolledUp));
+        }
+        return CompletableFuture.completedFuture(rolledUp);
+    }
+
+    /**
+     * Sum of the column 'views' of all pages, counter or bigint.
+     */
+    private CompletableFuture<Long> sumViews(BoundStatement query) {
+        return session.executeAsync(query)
+                      .thenCompose(rs -> sumViews(rs, 0L))
+                      .toCompletableFuture();
+    }
+
+    private CompletionStage<Long> sumViews(AsyncResultSet rs, long total) {
+        for (Row row : rs.currentPage()) {
+            total += row.getLong(VIDEO_VIEWS_VIEWS);
+            bucketsRead.increment();
+        }
+        if (rs.hasMorePages()) {
+            long sum = total;
+            return rs.fetchNextPage().thenCompose(next -> sumViews(next, sum));
+        }
+        return CompletableFuture.completedFuture(total);
+    }
+
+    /**
+     * Recompute the hour bucket of a video from its minutes.
+     *
+     * @param videoid
+     *      video identifier
+     * @param hour
+     *      any instant of the hour
+     * @return
+     *      views of the hour, completed when written
+     */
+    public CompletionStage<Long> rollupHour(UUID videoid, Instant hour) {
+        Instant start = Resolution.HOUR.floor(hour);
+        return rollup(videoid, Resolution.HOUR, start,
+                sumViews(stmtFindMinutes.bind(videoid, day(start), start, start.plus(1, ChronoUnit.HOURS))));
+    }
+
+    /**
+     * Recompute the hour buckets of a video from its minutes, then its day bucket.
+     *
+     * @param videoid
+     *      video identifier
+     * @param day
+     *      day, UTC
+     * @return
+     *      views of the day
+     */
+    public long rollupDay(UUID videoid, LocalDate day) {
+        Instant start = day.atStartOfDay(ZoneOffset.UTC).toInstant();
+        List<CompletableFuture<Long>> hours = new ArrayList<>();
+        for (int hour = 0; hour < 24; hour++) {
+            hours.add(rollupHour(videoid, start.plus(hour, ChronoUnit.HOURS)).toCompletableFuture());
+        }
+        return join(sum(hours).thenCompose(views -> rollupDayFromHours(videoid, start)));
+    }
+
+    /**
+     * Day bucket from the hour rollups, the minutes of the hours without rollup.
+     */
+    private CompletionStage<Long> rollupDayFromHours(UUID videoid, Instant day) {
+        return rollup(videoid, Resolution.DAY, day,
+                sumRollups(videoid, Resolution.HOUR, day, day.plus(1, ChronoUnit.DAYS)));
+    }
+
+    private CompletionStage<Long> rollup(UUID videoid, Resolution resolution, Instant bucket,
+            CompletableFuture<Long> views) {
+        return views.thenCompose(total -> session
+                .executeAsync(stmtUpsertRollup.bind(videoid, resolution.name(), bucket, total))
+                .thenApply(rs -> {
+                    rollups.increment();
+                    return total;
+                }));
+    }
+
+    /**
+     * Roll up the hours written by this instance which are closed, then their days when
+     * closed, and wait for the writes. A bucket which cannot be written is retried next time.
+     */
+    public synchronized void rollup() {
+        Instant closedBefore = Instant.now().minus(gracePeriod);
+        List<CompletableFuture<Void>> hours = new ArrayList<>();
+        for (List<Object> key : dirtyHours) {
+            UUID videoid = (UUID) key.get(0);
+            Instant hour = (Instant) key.get(1);
+            if (hour.plus(1, ChronoUnit.HOURS).isAfter(closedBefore) || !dirtyHours.remove(key)) {
+                continue;
+            }
+            hours.add(rollupHour(videoid, hour).<Void>handle((views, error) -> {
+                if (error == null) {
+                    dirtyDays.add(Arrays.asList(videoid, Resolution.DAY.floor(hour)));
+                } else {
+                    LOGGER.warn("Cannot roll up {} of {}, retried with next rollup: {}", hour, videoid, error.getMessage());
+                    dirtyHours.add(key);
+                }
+                return null;
+            }).toCompletableFuture());
+        }
+        CompletableFuture.allOf(hours.toArray(new CompletableFuture<?>[0])).join();
+        List<CompletableFuture<Void>> days = new ArrayList<>();
+        for (List<Object> key : dirtyDays) {
+            UUID videoid = (UUID) key.get(0);
+            Instant day = (Instant) key.get(1);
+            if (day.plus(1, ChronoUnit.DAYS).isAfter(closedBefore) || !dirtyDays.remove(key)) {
+                continue;
+            }
+            days.add(rollupDayFromHours(videoid, day).<Void>handle((views, error) -> {
+                if (error != null) {
+                    LOGGER.warn("Cannot roll up {} of {}, retried with next rollup: {}", day, videoid, error.getMessage());
+                    dirtyDays.add(key);
+                }
+                return null;
+            }).toCompletableFuture());
+        }
+        CompletableFuture.allOf(days.toArray(new CompletableFuture<?>[0])).join();
+    }
+
+    /**
+     * Reject new increments, wait for the ones in progress, stop the periodic rollup and roll
+     * up the buckets closed by now. Buckets still open are rolled up by another instance
+     * writing them, or with {@link #rollupDay(UUID, LocalDate)}.
+     */
+    @Override
+    public void close() {
+        // Waits for the increments being sent, the next ones see 'closed'
+        fence.writeLock().lock();
+        try {
+            closed = true;
+        } finally {
+            fence.writeLock().unlock();
+        }
+        // Failed increments are not rolled up, only their completion matters
+        CompletableFuture.allOf(pendingIncrements.toArray(new CompletableFuture<?>[0]))
+                         .handle((v, error) -> null)
+                         .join();
+        ScheduledExecutorService periodicRollup;
+        synchronized (this) {
+            periodicRollup = roller;
+        }
+        if (periodicRollup != null) {
+            periodicRollup.shutdown();
+            try {
+                periodicRollup.awaitTermination(1, TimeUnit.MINUTES);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        rollup();
+        LOGGER.info("[OK] {} increments, {} rollups written, {} hours still open",
+                getIncrements(), getRollups(), dirtyHours.size());
+    }
+
+    private synchronized void start() {
+        if (roller == null && !closed) {
+            roller = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread thread = new Thread(r, "views-rollup");
+                thread.setDaemon(true);
+                return thread;
+            });
+            long interval = rollupInterval.toNanos();
+            roller.scheduleWithFixedDelay(this::rollupQuietly, interval, interval, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    /**
+     * An exception would cancel the periodic rollup.
+     */
+    private void rollupQuietly() {
+        try {
+            rollup();
+        } catch (RuntimeException e) {
+            LOGGER.warn("Rollup failed: {}", e.getMessage());
+        }
+    }
+
+    private static CompletableFuture<Long> sum(List<CompletableFuture<Long>> reads) {
+        return CompletableFuture.allOf(reads.toArray(new CompletableFuture<?>[0])).thenApply(v -> {
+            long total = 0;
+            for (CompletableFuture<Long> read : reads) {
+                total += read.join();
+            }
+            return total;
+        });
+    }
+
+    private static LocalDate day(Instant instant) {
+        return LocalDate.ofInstant(instant, ZoneOffset.UTC);
+    }
+
+    private static Instant min(Instant a, Instant b) {
+        return a.isBefore(b) ? a : b;
+    }
+
+    private static <T> T join(CompletionStage<T> stage) {
+        try {
+            return stage.toCompletableFuture().join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Increments written.
+     *
+     * @return
+     *      number of minute counter updates
+     */
+    public long getIncrements() {
+        return increments.sum();
+    }
+
+    /**
+     * Hour and day buckets written.
+     *
+     * @return
+     *      number of rollups
+     */
+    public long getRollups() {
+        return rollups.sum();
+    }
+
+    /**
+     * Rows read by range queries and rollups.
+     *
+     * @return
+     *      number of buckets read
+     */
+    public long getBucketsRead() {
+        return bucketsRead.sum();
+    }
+
+}
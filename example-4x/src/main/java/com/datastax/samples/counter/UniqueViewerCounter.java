@@ -0,0 +1,385 @@
+package com.datastax.samples.counter;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.datastax.oss.driver.api.core.CqlSession;
+import com.datastax.oss.driver.api.core.cql.PreparedStatement;
+import com.datastax.oss.driver.api.core.cql.Row;
+import com.datastax.oss.driver.api.core.cql.SimpleStatement;
+import com.datastax.oss.driver.api.querybuilder.QueryBuilder;
+import com.datastax.samples.ExampleSchema;
+import com.datastax.samples.PreparedStatementRegistry;
+import com.datastax.samples.SessionManager;
+import com.datastax.samples.codec.HyperLogLogCodec;
+
+/**
+ * Estimated number of distinct viewers of each video, 'videos_viewers'.
+ *
+ * Keeping the viewers in a set&lt;text&gt; grows without limit and a read returns all of them.
+ * Here each video has {@link HyperLogLog} sketches of a fixed size (4 KiB by default) in a
+ * blob column, read with {@link HyperLogLogCodec}: a read costs the same for 10 viewers or
+ * 10 million, for an error around 1.6%.
+ *
+ * Viewers are added to in-memory sketches, merged into the stored ones every
+ * 'flushInterval'. Each writer (application instance) owns one row per video and is the
+ * only one to rewrite it: a flush reads the row, merges and writes it back without any
+ * lightweight transaction. A read merges the rows of all writers, so use a stable writer
+ * name (e.g. the host name) to keep the number of rows per video small.
+ *
+ * <pre>
+ * try (UniqueViewerCounter viewers = new UniqueViewerCounter(session, "web-1")) {
+ *     viewers.addViewer(videoid, email);
+ * }
+ * long distinct = viewers.findById(videoid).orElse(0L);
+ * </pre>
+ */
+public class UniqueViewerCounter implements ExampleSchema, AutoCloseable {
+
+    /** Logger for the class. */
+    private static Logger LOGGER = LoggerFactory.getLogger(UniqueViewerCounter.class);
+
+    private static final HyperLogLogCodec CODEC = new HyperLogLogCodec();
+
+    private final CqlSession session;
+
+    private final String writer;
+
+    private final PreparedStatement stmtFindSketch;
+
+    private final PreparedStatement stmtFindSketches;
+
+    private final PreparedStatement stmtUpsertSketch;
+
+    /** Viewers added since the last flush by video. */
+    private final Map<UUID, HyperLogLog> pending = new ConcurrentHashMap<>();
+
+    private int precision = HyperLogLog.DEFAULT_PRECISION;
+
+    private Duration flushInterval = Duration.ofSeconds(5);
+
+    private int maxInFlight = 32;
+
+    private volatile ScheduledExecutorService flusher;
+
+    private volatile boolean closed;
+
+    private final LongAdder viewersAdded = new LongAdder();
+
+    private final LongAdder sketchesWritten = new LongAdder();
+
+    /**
+     * Counter for the table 'videos_viewers' of the session keyspace.
+     *
+     * @param session
+     *      current session
+     * @param writer
+     *      name of this writer, the same after a restart
+     */
+    public UniqueViewerCounter(CqlSession session, String writer) {
+        this(session, writer, SessionManager.getRegistry(session));
+    }
+
+    /**
+     * Counter for the table 'videos_viewers' of the session keyspace.
+     *
+     * @param session
+     *      current session
+     * @param writer
+     *      name of this writer, the same after a restart
+     * @param registry
+     *      prepared statements of the session
+     */
+    public UniqueViewerCounter(CqlSession session, String writer, PreparedStatementRegistry registry) {
+        this.session = Objects.requireNonNull(session);
+        this.writer  = Objects.requireNonNull(writer);
+        SimpleStatement queryFindSketch = QueryBuilder
+                .selectFrom(VIDEO_VIEWERS_TABLENAME).column(VIDEO_VIEWERS_VIEWERS)
+                .whereColumn(VIDEO_VIEWERS_VIDEOID).isEqualTo(QueryBuilder.bindMarker())
+                .whereColumn(VIDEO_VIEWERS_WRITER).isEqualTo(QueryBuilder.bindMarker())
+                .build();
+        SimpleStatement queryFindSketches = QueryBuilder
+                .selectFrom(VIDEO_VIEWERS_TABLENAME).columns(VIDEO_VIEWERS_WRITER, VIDEO_VIEWERS_VIEWERS)
+                .whereColumn(VIDEO_VIEWERS_VIDEOID).isEqualTo(QueryBuilder.bindMarker())
+                .build();
+        SimpleStatement queryUpsertSketch = QueryBuilder
+                .insertInto(VIDEO_VIEWERS_TABLENAME)
+                .value(VIDEO_VIEWERS_VIDEOID, QueryBuilder.bindMarker())
+                .value(VIDEO_VIEWERS_WRITER, QueryBuilder.bindMarker())
+                .value(VIDEO_VIEWERS_VIEWERS, QueryBuilder.bindMarker())
+                .build().setIdempotent(true);
+        Map<SimpleStatement, PreparedStatement> prepared = registry.prepareAll(
+                queryFindSketch, queryFindSketches, queryUpsertSketch);
+        stmtFindSketch   = prepared.get(queryFindSketch);
+        stmtFindSketches = prepared.get(queryFindSketches);
+        stmtUpsertSketch = prepared.get(queryUpsertSketch);
+    }
+
+    /**
+     * Precision of the sketches, defaults to 12 (4 KiB, 1.6% error). Must not change once
+     * sketches are stored.
+     *
+     * @param precision
+     *      between 4 and 16
+     * @return
+     *      current instance
+     */
+    public UniqueViewerCounter withPrecision(int precision) {
+        if (precision < 4 || precision > 16) {
+            throw new IllegalArgumentException("Precision must be between 4 and 16");
+        }
+        this.precision = precision;
+        return this;
+    }
+
+    /**
+     * Time between two flushes, defaults to 5 seconds.
+     *
+     * @param flushInterval
+     *      flush interval, also the maximum delay before viewers are counted
+     * @return
+     *      current instance
+     */
+    public UniqueViewerCounter withFlushInterval(Duration flushInterval) {
+        if (flushInterval.isNegative() || flushInterval.isZero()) {
+            throw new IllegalArgumentException("flushInterval must be positive");
+        }
+        this.flushInterval = flushInterval;
+        return this;
+    }
+
+    /**
+     * Videos flushed at the same time, defaults to 32.
+     *
+     * @param maxInFlight
+     *      maximum number of concurrent read and write
+     * @return
+     *      current instance
+     */
+    public UniqueViewerCounter withMaxInFlight(int maxInFlight) {
+        if (maxInFlight < 1) {
+            throw new IllegalArgumentException("maxInFlight must be positive");
+        }
+        this.maxInFlight = maxInFlight;
+        return this;
+    }
+
+    /**
+     * Record a viewer of a video, counted after the next flush.
+     *
+     * @param videoid
+     *      video identifier
+     * @param viewer
+     *      viewer identifier, e.g. email
+     */
+    public void addViewer(UUID videoid, String viewer) {
+        if (closed) {
+            throw new IllegalStateException("Counter is closed");
+        }
+        if (flusher == null) {
+            start();
+        }
+        viewersAdded.increment();
+        while (true) {
+            HyperLogLog sketch = pending.computeIfAbsent(videoid, k -> new HyperLogLog(precision));
+            synchronized (sketch) {
+                sketch.add(viewer);
+            }
+            if (pending.get(videoid) == sketch) {
+                return;
+            }
+            // Taken by a flush in the meantime, adding a viewer twice is harmless
+        }
+    }
+
+    /**
+     * Estimated distinct viewers of a video, from the sketches of all writers.
+     *
+     * @param videoid
+     *      video identifier
+     * @return
+     *      estimate, empty when no viewer has been flushed, sketches which cannot be read or
+     *      merged are skipped
+     */
+    public Optional<Long> findById(UUID videoid) {
+        HyperLogLog total = null;
+        for (Row row : session.execute(stmtFindSketches.bind(videoid))) {
+            HyperLogLog sketch;
+            try {
+                sketch = row.get(VIDEO_VIEWERS_VIEWERS, CODEC);
+            } catch (IllegalArgumentException e) {
+                // Replaced with the next flush of its writer
+                LOGGER.warn("Viewers of {} by '{}' skipped: {}", videoid, row.getString(VIDEO_VIEWERS_WRITER), e.getMessage());
+                continue;
+            }
+            if (sketch == null) {
+                continue;
+            }
+            if (total == null) {
+                total = sketch;
+            } else if (total.getPrecision() == sketch.getPrecision()) {
+                total.merge(sketch);
+            } else {
+                LOGGER.warn("Viewers of {} by '{}' skipped: precision {} instead of {}", videoid,
+                        row.getString(VIDEO_VIEWERS_WRITER), sketch.getPrecision(), total.getPrecision());
+            }
+        }
+        return Optional.ofNullable(total).map(HyperLogLog::cardinality);
+    }
+
+    /**
+     * Merge the pending sketches into the stored ones and wait for the writes. A video that
+     * cannot be read or written is kept for the next flush, a stored sketch that cannot be
+     * decoded or merged is replaced.
+     */
+    public synchronized void flush() {
+        Semaphore permits = new Semaphore(maxInFlight);
+        List<CompletableFuture<Void>> writes = new ArrayList<>();
+        for (UUID videoid : pending.keySet()) {
+            HyperLogLog sketch = pending.remove(videoid);
+            if (sketch == null) {
+                continue;
+            }
+            HyperLogLog delta;
+            synchronized (sketch) {
+                delta = sketch.copy();
+            }
+            permits.acquireUninterruptibly();
+            writes.add(session.executeAsync(stmtFindSketch.bind(videoid, writer))
+                .thenCompose(rs -> {
+                    mergeStored(videoid, rs.one(), delta);
+                    return session.executeAsync(stmtUpsertSketch.boundStatementBuilder()
+                            .setUuid(0, videoid)
+                            .setString(1, writer)
+                            .set(2, delta, CODEC)
+                            .build());
+                })
+                .<Void>handle((rs, error) -> {
+                    permits.release();
+                    if (error == null) {
+                        sketchesWritten.increment();
+                    } else {
+                        LOGGER.warn("Cannot write viewers of {}, retried with next flush: {}", videoid, error.getMessage());
+                        pending.merge(videoid, delta, (current, failed) -> {
+                            synchronized (current) {
+                                current.merge(failed);
+                            }
+                            return current;
+                        });
+                    }
+                    return null;
+                })
+                .toCompletableFuture());
+        }
+        CompletableFuture.allOf(writes.toArray(new CompletableFuture<?>[0])).join();
+    }
+
+    /**
+     * Merge the stored sketch of this writer into the delta. A sketch which cannot be read
+     * or merged (corrupt, other precision) would fail every flush: the delta overwrites it.
+     */
+    private void mergeStored(UUID videoid, Row row, HyperLogLog delta) {
+        if (row == null) {
+            return;
+        }
+        try {
+            HyperLogLog stored = row.get(VIDEO_VIEWERS_VIEWERS, CODEC);
+            if (stored != null) {
+                delta.merge(stored);
+            }
+        } catch (IllegalArgumentException e) {
+            LOGGER.warn("Stored viewers of {} discarded, overwritten with the new ones: {}", videoid, e.getMessage());
+        }
+    }
+
+    /**
+     * Stop the periodic flush and write pending viewers.
+     */
+    @Override
+    public void close() {
+        ScheduledExecutorService periodicFlush;
+        synchronized (this) {
+            closed = true;
+            periodicFlush = flusher;
+        }
+        if (periodicFlush != null) {
+            periodicFlush.shutdown();
+            try {
+                periodicFlush.awaitTermination(1, TimeUnit.MINUTES);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        flush();
+        LOGGER.info("[OK] {} viewers added, {} sketches written", getViewersAdded(), getSketchesWritten());
+    }
+
+    private synchronized void start() {
+        if (flusher == null && !closed) {
+            flusher = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread thread = new Thread(r, "viewers-flusher");
+                thread.setDaemon(true);
+                return thread;
+            });
+            long interval = flushInterval.toNanos();
+            flusher.scheduleWithFixedDelay(this::flushQuietly, interval, interval, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    /**
+     * An exception would cancel the periodic flush.
+     */
+    private void flushQuietly() {
+        try {
+            flush();
+        } catch (RuntimeException e) {
+            LOGGER.warn("Flush failed: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Viewers recorded.
+     *
+     * @return
+     *      number of calls to addViewer()
+     */
+    public long getViewersAdded() {
+        return viewersAdded.sum();
+    }
+
+    /**
+     * Sketches merged and written.
+     *
+     * @return
+     *      one per video and flush
+     */
+    public long getSketchesWritten() {
+        return sketchesWritten.sum();
+    }
+
+    /**
+     * Videos with viewers waiting for the next flush.
+     *
+     * @return
+     *      number of videos
+     */
+    public int getPendingVideos() {
+        return pending.size();
+    }
+
+}
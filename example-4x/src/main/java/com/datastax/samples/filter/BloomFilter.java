@@ -0,0 +1,129 @@
+package com.datastax.samples.filter;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import com.datastax.samples.Hashing;
+
+/**
+ * Set of keys answering 'maybe' or 'certainly not', in a fixed size.
+ *
+ * Each key sets k bits among m. A key is absent when one of its bits is not set, present
+ * otherwise with a probability of error (false positive) depending on the bits per key:
+ * 9.6 bits and 7 hash functions for 1%, 14.4 bits and 10 functions for 0.1%. Keys cannot
+ * be removed.
+ *
+ * Thread-safe, bits are set with compare-and-set.
+ */
+public class BloomFilter {
+
+    private final AtomicLongArray words;
+
+    private final long bits;
+
+    private final int hashFunctions;
+
+    /**
+     * Filter sized for a number of keys and a false positive rate.
+     *
+     * @param expectedKeys
+     *      number of keys, the rate is higher when more are added
+     * @param falsePositiveRate
+     *      between 0 and 1 excluded, e.g. 0.01
+     */
+    public BloomFilter(long expectedKeys, double falsePositiveRate) {
+        if (expectedKeys < 1) {
+            throw new IllegalArgumentException("expectedKeys must be positive");
+        }
+        if (falsePositiveRate <= 0 || falsePositiveRate >= 1) {
+            throw new IllegalArgumentException("falsePositiveRate must be between 0 and 1");
+        }
+        long optimalBits = (long) Math.ceil(-expectedKeys * Math.log(falsePositiveRate) / (Math.log(2) * Math.log(2)));
+        int wordCount = (int) Math.min(Integer.MAX_VALUE - 8, Math.max(1, (optimalBits + 63) / 64));
+        this.words         = new AtomicLongArray(wordCount);
+        this.bits          = wordCount * 64L;
+        this.hashFunctions = (int) Math.max(1, Math.round((double) bits / expectedKeys * Math.log(2)));
+    }
+
+    /**
+     * Add a key.
+     *
+     * @param key
+     *      key, e.g. an email
+     */
+    public void put(String key) {
+        long h1 = Hashing.hash64(key);
+        long h2 = Hashing.fmix64(h1 ^ 0x9e3779b97f4a7c15L) | 1;
+        for (int i = 0; i < hashFunctions; i++) {
+            long bit = ((h1 + i * h2) & Long.MAX_VALUE) % bits;
+            int index = (int) (bit >>> 6);
+            long mask = 1L << bit;
+            long word = words.get(index);
+            while ((word & mask) == 0 && !words.compareAndSet(index, word, word | mask)) {
+                word = words.get(index);
+            }
+        }
+    }
+
+    /**
+     * Test a key.
+     *
+     * @param key
+     *      key, e.g. an email
+     * @return
+     *      false when the key has never been added, true when it probably has
+     */
+    public boolean mightContain(String key) {
+        long h1 = Hashing.hash64(key);
+        long h2 = Hashing.fmix64(h1 ^ 0x9e3779b97f4a7c15L) | 1;
+        for (int i = 0; i < hashFunctions; i++) {
+            long bit = ((h1 + i * h2) & Long.MAX_VALUE) % bits;
+            if ((words.get((int) (bit >>> 6)) & (1L << bit)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * False positive rate with the keys added so far, from the bits set.
+     *
+     * @return
+     *      probability that an absent key is reported present
+     */
+    public double getExpectedFalsePositiveRate() {
+        long set = 0;
+        for (int i = 0; i < words.length(); i++) {
+            set += Long.bitCount(words.get(i));
+        }
+        return Math.pow((double) set / bits, hashFunctions);
+    }
+
+    /**
+     * Getter accessor for attribute 'bits'.
+     *
+     * @return current value of 'bits'
+     */
+    public long getBits() {
+        return bits;
+    }
+
+    /**
+     * Getter accessor for attribute 'hashFunctions'.
+     *
+     * @return current value of 'hashFunctions'
+     */
+    public int getHashFunctions() {
+        return hashFunctions;
+    }
+
+    /**
+     * Memory of the bits.
+     *
+     * @return
+     *      size in bytes
+     */
+    public long getMemoryBytes() {
+        return bits / 8;
+    }
+
+}
@@ -0,0 +1,430 @@
+package com.datastax.samples.filter;
+
+import java.time.Duration;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.datastax.oss.driver.api.core.CqlSession;
+import com.datastax.samples.scan.TableScanner;
+
+import reactor.core.publisher.Mono;
+
+/**
+ * Answer 'does this key exist' locally when it does not.
+ *
+ * Checking an email at sign-up costs a round trip to a coordinator, and most checked emails
+ * do not exist. Here a {@link BloomFilter} of the partition keys of a table is built by
+ * reading the key column of all token ranges ({@link TableScanner}), then updated by the
+ * writes of the repository ({@link #put(String)}) and rebuilt every 'rebuildInterval' to
+ * drop deleted keys and resize. A key absent from the filter is answered in nanoseconds,
+ * the others (and all keys before the first build) are checked in the database.
+ *
+ * Keys written by another process are only seen after the next rebuild: until then they
+ * are reported absent. Use it when this repository is the only writer, or when a stale
+ * 'absent' is acceptable (the insert itself still uses IF NOT EXISTS). {@link #start()} reads
+ * the whole table and blocks until done: the samples only use a filter when
+ * {@link #ENABLED_PROPERTY} is set, and without it every check goes to the database.
+ *
+ * <pre>
+ * PartitionKeyFilter emails = new PartitionKeyFilter(session, USER_TABLENAME, USER_EMAIL).start();
+ * boolean exists = emails.exists(email, e -> existUserInDb(e));
+ * </pre>
+ */
+public class PartitionKeyFilter implements AutoCloseable {
+
+    /** Logger for the class. */
+    private static Logger LOGGER = LoggerFactory.getLogger(PartitionKeyFilter.class);
+
+    /** Set this system property to true to check the keys with a filter in the samples. */
+    public static final String ENABLED_PROPERTY = "samples.keyFilter";
+
+    private final CqlSession session;
+
+    private final String table;
+
+    private final String keyColumn;
+
+    /** Filter in use, null until the first build. */
+    private volatile BloomFilter current;
+
+    /** Filter being built, also receives the writes. */
+    private volatile BloomFilter building;
+
+    private long expectedKeys = 100_000;
+
+    private double falsePositiveRate = 0.01;
+
+    private Duration rebuildInterval = Duration.ofHours(1);
+
+    private int parallelism = Math.max(4, Runtime.getRuntime().availableProcessors());
+
+    private ScheduledExecutorService rebuilder;
+
+    private volatile long keysAtLastBuild;
+
+    private final LongAdder lookups = new LongAdder();
+
+    private final LongAdder negatives = new LongAdder();
+
+    private final LongAdder falsePositives = new LongAdder();
+
+    private final LongAdder rebuilds = new LongAdder();
+
+    /**
+     * Filter for a table of the session keyspace with a single partition key column.
+     *
+     * @param session
+     *      session connected to a keyspace
+     * @param table
+     *      table name
+     * @param keyColumn
+     *      partition key column, text
+     */
+    public PartitionKeyFilter(CqlSession session, String table, String keyColumn) {
+        this.session   = Objects.requireNonNull(session);
+        this.table     = Objects.requireNonNull(table);
+        this.keyColumn = Objects.requireNonNull(keyColumn);
+    }
+
+    /**
+     * Keys expected, defaults to 100000. A rebuild uses twice the keys read last time if higher.
+     *
+     * @param expectedKeys
+     *      number of keys
+     * @return
+     *      current instance
+     */
+    public PartitionKeyFilter withExpectedKeys(long expectedKeys) {
+        if (expectedKeys < 1) {
+            throw new IllegalArgumentException("expectedKeys must be positive");
+        }
+        this.expectedKeys = expectedKeys;
+        return this;
+    }
+
+    /**
+     * Target false positive rate, defaults to 1% (9.6 bits per key).
+     *
+     * @param falsePositiveRate
+     *      between 0 and 1 excluded
+     * @return
+     *      current instance
+     */
+    public PartitionKeyFilter withFalsePositiveRate(double falsePositiveRate) {
+        if (falsePositiveRate <= 0 || falsePositiveRate >= 1) {
+            throw new IllegalArgumentException("falsePositiveRate must be between 0 and 1");
+        }
+        this.falsePositiveRate = falsePositiveRate;
+        return this;
+    }
+
+    /**
+     * Time between two rebuilds, defaults to 1 hour.
+     *
+     * @param rebuildInterval
+     *      rebuild interval, also the delay before keys written by others are seen
+     * @return
+     *      current instance
+     */
+    public PartitionKeyFilter withRebuildInterval(Duration rebuildInterval) {
+        if (rebuildInterval.isNegative() || rebuildInterval.isZero()) {
+            throw new IllegalArgumentException("rebuildInterval must be positive");
+        }
+        this.rebuildInterval = rebuildInterval;
+        return this;
+    }
+
+    /**
+     * Token ranges read at the same time by a build, defaults to the number of cores (at least 4).
+     *
+     * @param parallelism
+     *      concurrent range queries
+     * @return
+     *      current instance
+     */
+    public PartitionKeyFilter withParallelism(int parallelism) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("parallelism must be positive");
+        }
+        this.parallelism = parallelism;
+        return this;
+    }
+
+    /**
+     * Build the filter now and rebuild it periodically.
+     *
+     * @return
+     *      current instance
+     */
+    public synchronized PartitionKeyFilter start() {
+        if (rebuilder == null) {
+            rebuild();
+            rebuilder = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread thread = new Thread(r, "key-filter-rebuild");
+                thread.setDaemon(true);
+                return thread;
+            });
+            long interval = rebuildInterval.toNanos();
+            rebuilder.scheduleWithFixedDelay(this::rebuildQuietly, interval, interval, TimeUnit.NANOSECONDS);
+        }
+        return this;
+    }
+
+    /**
+     * Read all keys of the table into a new filter, then use it. Keys written meanwhile are
+     * added to both filters.
+     *
+     * @return
+     *      number of keys read
+     */
+    public long rebuild() {
+        try {
+            return rebuildAsync().toCompletableFuture().join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Read all keys of the table into a new filter asynchronously.
+     *
+     * @return
+     *      number of keys read, the current filter is kept on error
+     */
+    public synchronized CompletionStage<Long> rebuildAsync() {
+        if (building != null) {
+            throw new IllegalStateException("A rebuild is in progress");
+        }
+        long start = System.nanoTime();
+        BloomFilter next = new BloomFilter(Math.max(expectedKeys, 2 * keysAtLastBuild), falsePositiveRate);
+        // Writes go to the new filter before the scan starts: a key written is either read or put
+        building = next;
+        CompletionStage<Long> scan;
+        try {
+            scan = new TableScanner(session, table)
+                    .withPartitionKey(keyColumn)
+                    .withColumns(keyColumn)
+                    .withParallelism(parallelism)
+                    .scanAsync(row -> next.put(row.getString(keyColumn)));
+        } catch (RuntimeException e) {
+            building = null;
+            throw e;
+        }
+        return scan.whenComplete((keys, error) -> {
+                if (error == null) {
+                    current = next;
+                    keysAtLastBuild = keys;
+                    rebuilds.increment();
+                    LOGGER.info("+ Key filter of '{}' built with {} keys in {} ms ({} KiB, expected false positives {}%)",
+                            table, keys, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start),
+                            next.getMemoryBytes() / 1024, String.format("%.2f", 100 * next.getExpectedFalsePositiveRate()));
+                } else {
+                    LOGGER.warn("Key filter of '{}' not rebuilt: {}", table, error.getMessage());
+                }
+                building = null;
+            });
+    }
+
+    /**
+     * A key has been written, call it once the write succeeded.
+     *
+     * @param key
+     *      partition key
+     */
+    public void put(String key) {
+        // Building read first: once null, the rebuilt filter is the current one
+        BloomFilter next = building;
+        BloomFilter filter = current;
+        if (filter != null) {
+            filter.put(key);
+        }
+        if (next != null) {
+            next.put(key);
+        }
+    }
+
+    /**
+     * Test a key without the database.
+     *
+     * @param key
+     *      partition key
+     * @return
+     *      false when the key certainly does not exist, true when it must be checked
+     */
+    public boolean mightExist(String key) {
+        lookups.increment();
+        BloomFilter filter = current;
+        if (filter == null || filter.mightContain(key)) {
+            return true;
+        }
+        negatives.increment();
+        return false;
+    }
+
+    /**
+     * Check a key, in the database only when the filter cannot tell.
+     *
+     * @param key
+     *      partition key
+     * @param lookup
+     *      existence check in the database
+     * @return
+     *      if the key exists
+     */
+    public boolean exists(String key, Predicate<String> lookup) {
+        return mightExist(key) && recordLookup(lookup.test(key));
+    }
+
+    /**
+     * Check a key asynchronously, in the database only when the filter cannot tell.
+     *
+     * @param key
+     *      partition key
+     * @param lookup
+     *      existence check in the database
+     * @return
+     *      if the key exists
+     */
+    public CompletionStage<Boolean> existsAsync(String key, Function<String, CompletionStage<Boolean>> lookup) {
+        if (!mightExist(key)) {
+            return CompletableFuture.completedFuture(false);
+        }
+        return lookup.apply(key).thenApply(this::recordLookup);
+    }
+
+    /**
+     * Check a key with a publisher, in the database only when the filter cannot tell.
+     *
+     * @param key
+     *      partition key
+     * @param lookup
+     *      existence check in the database
+     * @return
+     *      if the key exists
+     */
+    public Mono<Boolean> existsReactive(String key, Function<String, Mono<Boolean>> lookup) {
+        return Mono.defer(() -> mightExist(key)
+                ? lookup.apply(key).map(this::recordLookup)
+                : Mono.just(false));
+    }
+
+    /**
+     * A key the filter could not exclude does not exist: false positive.
+     */
+    private boolean recordLookup(boolean exists) {
+        if (!exists && current != null) {
+            falsePositives.increment();
+        }
+        return exists;
+    }
+
+    /**
+     * Stop the periodic rebuild.
+     */
+    @Override
+    public synchronized void close() {
+        if (rebuilder != null) {
+            rebuilder.shutdownNow();
+        }
+        LOGGER.info("[OK] Key filter of '{}': {} lookups, {} answered locally, false positive rate {}%",
+                table, getLookups(), getNegatives(), String.format("%.2f", 100 * getFalsePositiveRate()));
+    }
+
+    /**
+     * An exception would cancel the periodic rebuild.
+     */
+    private void rebuildQuietly() {
+        try {
+            rebuild();
+        } catch (RuntimeException e) {
+            LOGGER.warn("Rebuild failed: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Keys tested.
+     *
+     * @return
+     *      number of lookups
+     */
+    public long getLookups() {
+        return lookups.sum();
+    }
+
+    /**
+     * Keys reported absent without the database.
+     *
+     * @return
+     *      number of lookups
+     */
+    public long getNegatives() {
+        return negatives.sum();
+    }
+
+    /**
+     * Keys the filter reported present, not found in the database.
+     *
+     * @return
+     *      number of lookups
+     */
+    public long getFalsePositives() {
+        return falsePositives.sum();
+    }
+
+    /**
+     * Observed false positive rate, over the lookups of absent keys.
+     *
+     * @return
+     *      false positives / (false positives + negatives)
+     */
+    public double getFalsePositiveRate() {
+        long absent = getFalsePositives() + getNegatives();
+        return absent == 0 ? 0 : (double) getFalsePositives() / absent;
+    }
+
+    /**
+     * False positive rate expected from the bits set in the current filter.
+     *
+     * @return
+     *      probability, 1 before the first build
+     */
+    public double getExpectedFalsePositiveRate() {
+        BloomFilter filter = current;
+        return filter == null ? 1 : filter.getExpectedFalsePositiveRate();
+    }
+
+    /**
+     * Memory of the current filter.
+     *
+     * @return
+     *      size in bytes, 0 before the first build
+     */
+    public long getMemoryBytes() {
+        BloomFilter filter = current;
+        return filter == null ? 0 : filter.getMemoryBytes();
+    }
+
+    /**
+     * Getter accessor for attribute 'rebuilds'.
+     *
+     * @return current value of 'rebuilds'
+     */
+    public long getRebuilds() {
+        return rebuilds.sum();
+    }
+
+}
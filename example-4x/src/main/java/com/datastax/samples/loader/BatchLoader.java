@@ -0,0 +1,209 @@
+package com.datastax.samples.loader;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+/**
+ * Load entities by key for the duration of a request, each distinct key read once (DataLoader).
+ *
+ * Parts of a page ask for the same entities independently: here keys requested during a
+ * tick are collected, deduplicated, then given together to a batch read. The batch read
+ * decides how to query them, {@link VideoPageLoader} groups the keys by replica set and
+ * sends one 'IN' per group, routed to a replica owning all its partitions: the coordinator
+ * reads them locally instead of waiting on other nodes. Keys missing from the result of
+ * the batch read are loaded as null.
+ *
+ * Values are kept until the loader is discarded: create one loader per request, never
+ * share one between requests (nothing is invalidated). Failures are kept as well, a failed
+ * batch read fails all its keys.
+ *
+ * Keys requested by a callback of a dispatched read (a video, then its uploader) start
+ * the next tick.
+ *
+ * @param <K>
+ *      key type
+ * @param <V>
+ *      value type
+ */
+public class BatchLoader<K, V> {
+
+    private final String name;
+
+    /** Read of the keys of a tick, values by key. */
+    private final Function<List<K>, CompletionStage<Map<K, V>>> fetchAll;
+
+    /** Runs the dispatch at the end of the tick. */
+    private final Executor tick;
+
+    /** Loads of the request by key. */
+    private final Map<K, CompletableFuture<V>> loads = new ConcurrentHashMap<>();
+
+    /** Keys waiting for the dispatch. */
+    private final Queue<K> pending = new ConcurrentLinkedQueue<>();
+
+    private final AtomicBoolean scheduled = new AtomicBoolean();
+
+    private final LongAdder requests = new LongAdder();
+
+    private final LongAdder fetches = new LongAdder();
+
+    private final LongAdder dispatches = new LongAdder();
+
+    /**
+     * Loader dispatching the keys requested within 'tickMillis'.
+     *
+     * @param name
+     *      entity name, for the logs
+     * @param fetchAll
+     *      asynchronous read of distinct keys, absent keys are left out of the map
+     * @param tickMillis
+     *      time keys are collected before a dispatch, 0 for the next task of the common pool
+     */
+    public BatchLoader(String name, Function<List<K>, CompletionStage<Map<K, V>>> fetchAll, long tickMillis) {
+        if (tickMillis < 0) {
+            throw new IllegalArgumentException("tickMillis must not be negative");
+        }
+        this.name     = Objects.requireNonNull(name);
+        this.fetchAll = Objects.requireNonNull(fetchAll);
+        this.tick     = CompletableFuture.delayedExecutor(tickMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Value of a key, read at the end of the tick unless already requested.
+     *
+     * @param key
+     *      key
+     * @return
+     *      value, null when absent
+     */
+    public CompletionStage<V> load(K key) {
+        Objects.requireNonNull(key);
+        requests.increment();
+        CompletableFuture<V> load = loads.get(key);
+        if (load == null) {
+            CompletableFuture<V> created = new CompletableFuture<>();
+            load = loads.putIfAbsent(key, created);
+            if (load == null) {
+                load = created;
+                pending.add(key);
+                if (scheduled.compareAndSet(false, true)) {
+                    tick.execute(this::dispatch);
+                }
+            }
+        }
+        // Callers cannot complete the shared future
+        return load.minimalCompletionStage();
+    }
+
+    /**
+     * Values of several keys, in the same order.
+     *
+     * @param keys
+     *      keys, duplicates allowed
+     * @return
+     *      values, null when absent
+     */
+    public CompletionStage<List<V>> loadMany(Collection<K> keys) {
+        List<CompletableFuture<V>> values = new ArrayList<>(keys.size());
+        keys.forEach(key -> values.add(load(key).toCompletableFuture()));
+        return CompletableFuture.allOf(values.toArray(new CompletableFuture<?>[0])).thenApply(v -> {
+            List<V> result = new ArrayList<>(values.size());
+            values.forEach(value -> result.add(value.join()));
+            return result;
+        });
+    }
+
+    /**
+     * Send the batch read of the pending keys now, without waiting for the end of the tick.
+     */
+    public void dispatch() {
+        // Reset first: a key added from now on schedules another tick
+        scheduled.set(false);
+        List<K> keys = new ArrayList<>();
+        K key;
+        while ((key = pending.poll()) != null) {
+            keys.add(key);
+        }
+        if (keys.isEmpty()) {
+            return;
+        }
+        fetches.add(keys.size());
+        dispatches.increment();
+        CompletionStage<Map<K, V>> values;
+        try {
+            values = fetchAll.apply(keys);
+        } catch (RuntimeException e) {
+            values = CompletableFuture.failedFuture(e);
+        }
+        values.whenComplete((found, error) -> {
+            for (K requested : keys) {
+                CompletableFuture<V> load = loads.get(requested);
+                if (error == null) {
+                    load.complete(found.get(requested));
+                } else {
+                    load.completeExceptionally(error);
+                }
+            }
+        });
+    }
+
+    /**
+     * Getter accessor for attribute 'name'.
+     *
+     * @return current value of 'name'
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Calls to load().
+     *
+     * @return
+     *      number of keys requested
+     */
+    public long getRequests() {
+        return requests.sum();
+    }
+
+    /**
+     * Keys given to the batch reads.
+     *
+     * @return
+     *      number of distinct keys
+     */
+    public long getFetches() {
+        return fetches.sum();
+    }
+
+    /**
+     * Batch reads, one per tick with keys.
+     *
+     * @return
+     *      number of dispatches
+     */
+    public long getDispatches() {
+        return dispatches.sum();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public String toString() {
+        return String.format("%s: requests=%d, keys read=%d, dispatches=%d",
+                name, getRequests(), getFetches(), getDispatches());
+    }
+
+}
@@ -0,0 +1,101 @@
+package com.datastax.samples.loader;
+
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+
+import com.datastax.samples.dto.UserDto;
+import com.datastax.samples.dto.VideoDto;
+import com.datastax.samples.objectmapping.Comment;
+
+/**
+ * What is needed to render a video: the video, its views, its latest comments and users.
+ */
+public class VideoPage {
+
+    private final VideoDto video;
+
+    private final long views;
+
+    private final List<Comment> comments;
+
+    private final UserDto uploader;
+
+    private final Set<UUID> commenters;
+
+    /**
+     * Page built by {@link VideoPageLoader}.
+     *
+     * @param video
+     *      row of 'videos'
+     * @param views
+     *      counter of 'videos_views', 0 if never viewed
+     * @param comments
+     *      latest comments of 'comments_by_video'
+     * @param uploader
+     *      user of the video email, null if absent
+     * @param commenters
+     *      distinct authors of the comments
+     */
+    public VideoPage(VideoDto video, long views, List<Comment> comments, UserDto uploader, Set<UUID> commenters) {
+        this.video      = video;
+        this.views      = views;
+        this.comments   = comments;
+        this.uploader   = uploader;
+        this.commenters = commenters;
+    }
+
+    /**
+     * Getter accessor for attribute 'video'.
+     *
+     * @return current value of 'video'
+     */
+    public VideoDto getVideo() {
+        return video;
+    }
+
+    /**
+     * Getter accessor for attribute 'views'.
+     *
+     * @return current value of 'views'
+     */
+    public long getViews() {
+        return views;
+    }
+
+    /**
+     * Getter accessor for attribute 'comments'.
+     *
+     * @return current value of 'comments'
+     */
+    public List<Comment> getComments() {
+        return comments;
+    }
+
+    /**
+     * Getter accessor for attribute 'uploader'.
+     *
+     * @return current value of 'uploader'
+     */
+    public UserDto getUploader() {
+        return uploader;
+    }
+
+    /**
+     * Getter accessor for attribute 'commenters'.
+     *
+     * @return current value of 'commenters'
+     */
+    public Set<UUID> getCommenters() {
+        return commenters;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public String toString() {
+        return String.format("'%s' by %s, %d views, %d comments from %d users",
+                video.getTitle(), uploader == null ? video.getEmail() : uploader.getEmail(),
+                views, comments.size(), commenters.size());
+    }
+
+}
@@ -0,0 +1,395 @@
+package com.datastax.samples.loader;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.datastax.oss.driver.api.core.CqlIdentifier;
+import com.datastax.oss.driver.api.core.CqlSession;
+import com.datastax.oss.driver.api.core.ProtocolVersion;
+import com.datastax.oss.driver.api.core.cql.AsyncResultSet;
+import com.datastax.oss.driver.api.core.cql.BoundStatement;
+import com.datastax.oss.driver.api.core.cql.PreparedStatement;
+import com.datastax.oss.driver.api.core.cql.Row;
+import com.datastax.oss.driver.api.core.cql.SimpleStatement;
+import com.datastax.oss.driver.api.core.metadata.Node;
+import com.datastax.oss.driver.api.core.metadata.TokenMap;
+import com.datastax.oss.driver.api.core.type.codec.TypeCodec;
+import com.datastax.oss.driver.api.core.type.codec.TypeCodecs;
+import com.datastax.oss.driver.api.querybuilder.QueryBuilder;
+import com.datastax.samples.ExampleSchema;
+import com.datastax.samples.PreparedStatementRegistry;
+import com.datastax.samples.SessionManager;
+import com.datastax.samples.dto.UserDto;
+import com.datastax.samples.dto.VideoDto;
+import com.datastax.samples.objectmapping.Comment;
+
+/**
+ * Load the pages of videos with all reads of a request in flight at the same time.
+ *
+ * Rendering a video reads 'videos', 'videos_views', 'comments_by_video' and 'users' (the
+ * uploader): one blocking call after the other, the page costs the sum of the reads. Here
+ * each request gets its own {@link BatchLoader} per table: the videos, their views and their
+ * comments are read in the first tick, the uploaders (known from the video rows) in the
+ * second one. A page costs the slowest read of each tick, and a key needed twice in the
+ * request (two videos of the same uploader, a video listed twice) is read once.
+ *
+ * The keys of a tick are grouped by the set of replicas owning them, and each group is
+ * read with one 'IN' of at most 'maxKeysPerQuery' keys, routed to one of these replicas:
+ * it reads all partitions locally. Comments use 'PER PARTITION LIMIT' and are read until
+ * the last page, 'maxComments' may be above the page size.
+ *
+ * Comment authors are not loaded: comments only hold the userid of their author and 'users'
+ * is keyed by email, so the distinct authors are returned as ids and the only users read
+ * are the uploaders.
+ *
+ * <pre>
+ * VideoPageLoader pages = new VideoPageLoader(session);
+ * VideoPageLoader.Request request = pages.newRequest();
+ * request.loadPage(videoid).thenAccept(page -&gt; render(page));
+ * </pre>
+ */
+public class VideoPageLoader implements ExampleSchema {
+
+    /** Logger for the class. */
+    private static Logger LOGGER = LoggerFactory.getLogger(VideoPageLoader.class);
+
+    /**
+     * Loaders of a request, discard it with the request.
+     */
+    public class Request {
+
+        private final BatchLoader<UUID, VideoDto> videos =
+                new BatchLoader<>(VIDEO_TABLENAME, VideoPageLoader.this::readVideos, tickMillis);
+
+        private final BatchLoader<UUID, Long> views =
+                new BatchLoader<>(VIDEO_VIEWS_TABLENAME, VideoPageLoader.this::readViews, tickMillis);
+
+        private final BatchLoader<UUID, List<Comment>> comments =
+                new BatchLoader<>(COMMENT_BY_VIDEO_TABLENAME, VideoPageLoader.this::readComments, tickMillis);
+
+        private final BatchLoader<String, UserDto> users =
+                new BatchLoader<>(USER_TABLENAME, VideoPageLoader.this::readUsers, tickMillis);
+
+        /**
+         * Page of a video.
+         *
+         * @param videoid
+         *      video unique identifier
+         * @return
+         *      page, empty if the video does not exist
+         */
+        public CompletionStage<Optional<VideoPage>> loadPage(UUID videoid) {
+            CompletableFuture<VideoDto> video = videos.load(videoid).toCompletableFuture();
+            CompletableFuture<Long> viewCount = views.load(videoid).toCompletableFuture();
+            CompletableFuture<List<Comment>> latest = comments.load(videoid).toCompletableFuture();
+            // Depends on the video row: next tick
+            CompletableFuture<UserDto> uploader = video.thenCompose(v -> v == null || v.getEmail() == null
+                    ? CompletableFuture.completedFuture(null)
+                    : users.load(v.getEmail())).toCompletableFuture();
+            return CompletableFuture.allOf(video, viewCount, latest, uploader).thenApply(v -> {
+                if (video.join() == null) {
+                    return Optional.empty();
+                }
+                Set<UUID> commenters = new LinkedHashSet<>();
+                latest.join().forEach(c -> commenters.add(c.getUserid()));
+                return Optional.of(new VideoPage(video.join(), viewCount.join(), latest.join(),
+                        uploader.join(), Collections.unmodifiableSet(commenters)));
+            });
+        }
+
+        /**
+         * Pages of several videos, sharing the reads of the same keys.
+         *
+         * @param videoids
+         *      video unique identifiers
+         * @return
+         *      pages of the existing videos, in the same order
+         */
+        public CompletionStage<List<VideoPage>> loadPages(List<UUID> videoids) {
+            List<CompletableFuture<Optional<VideoPage>>> pages = new ArrayList<>(videoids.size());
+            videoids.forEach(videoid -> pages.add(loadPage(videoid).toCompletableFuture()));
+            return CompletableFuture.allOf(pages.toArray(new CompletableFuture<?>[0])).thenApply(v -> {
+                List<VideoPage> result = new ArrayList<>(pages.size());
+                pages.forEach(page -> page.join().ifPresent(result::add));
+                return result;
+            });
+        }
+
+        /**
+         * Page of a video, blocking.
+         *
+         * @param videoid
+         *      video unique identifier
+         * @return
+         *      page, empty if the video does not exist
+         */
+        public Optional<VideoPage> findPage(UUID videoid) {
+            try {
+                return loadPage(videoid).toCompletableFuture().join();
+            } catch (CompletionException e) {
+                if (e.getCause() instanceof RuntimeException) {
+                    throw (RuntimeException) e.getCause();
+                }
+                throw e;
+            }
+        }
+
+        /**
+         * Log the reads of the request, per table.
+         */
+        public void logStatistics() {
+            LOGGER.info("+ {}", videos);
+            LOGGER.info("+ {}", views);
+            LOGGER.info("+ {}", comments);
+            LOGGER.info("+ {}", users);
+        }
+
+        /**
+         * Distinct keys read by the request, all tables.
+         *
+         * @return
+         *      number of keys
+         */
+        public long getFetches() {
+            return videos.getFetches() + views.getFetches() + comments.getFetches() + users.getFetches();
+        }
+
+        /**
+         * Loads asked by the pages of the request.
+         *
+         * @return
+         *      number of keys requested
+         */
+        public long getRequests() {
+            return videos.getRequests() + views.getRequests() + comments.getRequests() + users.getRequests();
+        }
+    }
+
+    private final CqlSession session;
+
+    private final PreparedStatement stmtFindVideos;
+
+    private final PreparedStatement stmtFindViews;
+
+    private final PreparedStatement stmtFindComments;
+
+    private final PreparedStatement stmtFindUsers;
+
+    private long tickMillis = 1;
+
+    private int maxComments = 20;
+
+    private int maxKeysPerQuery = 20;
+
+    /**
+     * Loader working with a session connected to the keyspace.
+     *
+     * @param session
+     *      current session
+     */
+    public VideoPageLoader(CqlSession session) {
+        this(session, SessionManager.getRegistry(session));
+    }
+
+    /**
+     * Loader working with a session connected to the keyspace.
+     *
+     * @param session
+     *      current session
+     * @param registry
+     *      prepared statements of the session
+     */
+    public VideoPageLoader(CqlSession session, PreparedStatementRegistry registry) {
+        this.session = Objects.requireNonNull(session);
+        SimpleStatement queryFindVideos = QueryBuilder
+                .selectFrom(VIDEO_TABLENAME)
+                .column(VIDEO_VIDEOID).column(VIDEO_TITLE).column(VIDEO_USER_EMAIL).column(VIDEO_URL)
+                .whereColumn(VIDEO_VIDEOID).in(QueryBuilder.bindMarker())
+                .build();
+        SimpleStatement queryFindViews = QueryBuilder
+                .selectFrom(VIDEO_VIEWS_TABLENAME).column(VIDEO_VIEWS_VIDEOID).column(VIDEO_VIEWS_VIEWS)
+                .whereColumn(VIDEO_VIEWS_VIDEOID).in(QueryBuilder.bindMarker())
+                .build();
+        SimpleStatement queryFindComments = QueryBuilder
+                .selectFrom(COMMENT_BY_VIDEO_TABLENAME).all()
+                .whereColumn(COMMENT_BY_VIDEO_VIDEOID).in(QueryBuilder.bindMarker())
+                .perPartitionLimit(QueryBuilder.bindMarker())
+                .build();
+        SimpleStatement queryFindUsers = QueryBuilder
+                .selectFrom(USER_TABLENAME).all()
+                .whereColumn(USER_EMAIL).in(QueryBuilder.bindMarker())
+                .build();
+        Map<SimpleStatement, PreparedStatement> prepared = registry.prepareAll(
+                queryFindVideos, queryFindViews, queryFindComments, queryFindUsers);
+        stmtFindVideos   = prepared.get(queryFindVideos);
+        stmtFindViews    = prepared.get(queryFindViews);
+        stmtFindComments = prepared.get(queryFindComments);
+        stmtFindUsers    = prepared.get(queryFindUsers);
+    }
+
+    /**
+     * Time keys are collected before being read, defaults to 1 millisecond.
+     *
+     * @param tickMillis
+     *      tick duration, 0 to read as soon as the common pool runs the dispatch
+     * @return
+     *      current instance
+     */
+    public VideoPageLoader withTickMillis(long tickMillis) {
+        if (tickMillis < 0) {
+            throw new IllegalArgumentException("tickMillis must not be negative");
+        }
+        this.tickMillis = tickMillis;
+        return this;
+    }
+
+    /**
+     * Comments shown in a page, defaults to 20. Read until the last page, any value works.
+     *
+     * @param maxComments
+     *      latest comments read per video
+     * @return
+     *      current instance
+     */
+    public VideoPageLoader withMaxComments(int maxComments) {
+        if (maxComments < 1) {
+            throw new IllegalArgumentException("maxComments must be positive");
+        }
+        this.maxComments = maxComments;
+        return this;
+    }
+
+    /**
+     * Keys of the same replica set read by one 'IN', defaults to 20. Larger lists make the
+     * coordinator hold more partitions in memory for one response.
+     *
+     * @param maxKeysPerQuery
+     *      keys per query, 1 for single-partition reads
+     * @return
+     *      current instance
+     */
+    public VideoPageLoader withMaxKeysPerQuery(int maxKeysPerQuery) {
+        if (maxKeysPerQuery < 1) {
+            throw new IllegalArgumentException("maxKeysPerQuery must be positive");
+        }
+        this.maxKeysPerQuery = maxKeysPerQuery;
+        return this;
+    }
+
+    /**
+     * Loaders for a new request.
+     *
+     * @return
+     *      request-scoped loaders
+     */
+    public Request newRequest() {
+        return new Request();
+    }
+
+    private CompletionStage<Map<UUID, VideoDto>> readVideos(List<UUID> videoids) {
+        return readGrouped(videoids, TypeCodecs.UUID, ids -> stmtFindVideos.bind(ids), (row, videos) -> {
+            VideoDto video = new VideoDto(row.getUuid(VIDEO_VIDEOID), row.getString(VIDEO_TITLE),
+                    row.getString(VIDEO_USER_EMAIL), row.getString(VIDEO_URL));
+            video.setUrl(row.getString(VIDEO_URL));
+            videos.put(video.getVideoid(), video);
+        });
+    }
+
+    private CompletionStage<Map<UUID, Long>> readViews(List<UUID> videoids) {
+        return this.<UUID, Long>readGrouped(videoids, TypeCodecs.UUID, ids -> stmtFindViews.bind(ids),
+                (row, views) -> views.put(row.getUuid(VIDEO_VIEWS_VIDEOID), row.getLong(VIDEO_VIEWS_VIEWS)))
+                // Never viewed: no row
+                .thenApply(views -> {
+                    videoids.forEach(videoid -> views.putIfAbsent(videoid, 0L));
+                    return views;
+                });
+    }
+
+    private CompletionStage<Map<UUID, List<Comment>>> readComments(List<UUID> videoids) {
+        return this.<UUID, List<Comment>>readGrouped(videoids, TypeCodecs.UUID,
+                ids -> stmtFindComments.bind(ids, maxComments), (row, comments) -> {
+            Comment comment = new Comment();
+            comment.setVideoid(row.getUuid(COMMENT_BY_VIDEO_VIDEOID));
+            comment.setCommentid(row.getUuid(COMMENT_BY_VIDEO_COMMENTID));
+            comment.setUserid(row.getUuid(COMMENT_BY_VIDEO_USERID));
+            comment.setComment(row.getString(COMMENT_BY_VIDEO_COMMENT));
+            // A partition is read by one query, its pages one after the other
+            comments.computeIfAbsent(comment.getVideoid(), k -> new ArrayList<>()).add(comment);
+        }).thenApply(comments -> {
+            Map<UUID, List<Comment>> result = new HashMap<>();
+            videoids.forEach(videoid -> result.put(videoid,
+                    Collections.unmodifiableList(comments.getOrDefault(videoid, Collections.emptyList()))));
+            return result;
+        });
+    }
+
+    private CompletionStage<Map<String, UserDto>> readUsers(List<String> emails) {
+        return readGrouped(emails, TypeCodecs.TEXT, keys -> stmtFindUsers.bind(keys),
+                (row, users) -> users.put(row.getString(USER_EMAIL), new UserDto(row)));
+    }
+
+    /**
+     * Read keys with one 'IN' per replica set and chunk of 'maxKeysPerQuery', all pages.
+     * Without token map (metadata disabled) keys are only chunked.
+     */
+    private <K, V> CompletionStage<Map<K, V>> readGrouped(List<K> keys, TypeCodec<K> keyCodec,
+            Function<List<K>, BoundStatement> query, BiConsumer<Row, Map<K, V>> collect) {
+        ProtocolVersion protocolVersion = session.getContext().getProtocolVersion();
+        Optional<TokenMap> tokenMap = session.getMetadata().getTokenMap();
+        Optional<CqlIdentifier> keyspace = session.getKeyspace();
+        Map<Object, List<K>> groups = new LinkedHashMap<>();
+        for (K key : keys) {
+            Object group = "all";
+            if (tokenMap.isPresent() && keyspace.isPresent()) {
+                Set<Node> replicas = tokenMap.get().getReplicas(keyspace.get(), keyCodec.encode(key, protocolVersion));
+                if (!replicas.isEmpty()) {
+                    group = replicas;
+                }
+            }
+            groups.computeIfAbsent(group, k -> new ArrayList<>()).add(key);
+        }
+        Map<K, V> values = new ConcurrentHashMap<>();
+        List<CompletableFuture<Void>> reads = new ArrayList<>();
+        for (List<K> group : groups.values()) {
+            for (int i = 0; i < group.size(); i += maxKeysPerQuery) {
+                List<K> chunk = group.subList(i, Math.min(group.size(), i + maxKeysPerQuery));
+                // The driver cannot route an 'IN': use the first key, the others have the same replicas
+                BoundStatement statement = query.apply(new ArrayList<>(chunk))
+                        .setRoutingKey(keyCodec.encode(chunk.get(0), protocolVersion));
+                reads.add(session.executeAsync(statement)
+                        .thenCompose(rs -> collectAll(rs, values, collect))
+                        .toCompletableFuture());
+            }
+        }
+        return CompletableFuture.allOf(reads.toArray(new CompletableFuture<?>[0])).thenApply(v -> values);
+    }
+
+    private <K, V> CompletionStage<Void> collectAll(AsyncResultSet rs, Map<K, V> values, BiConsumer<Row, Map<K, V>> collect) {
+        for (Row row : rs.currentPage()) {
+            collect.accept(row, values);
+        }
+        if (rs.hasMorePages()) {
+            return rs.fetchNextPage().thenCompose(next -> collectAll(next, values, collect));
+        }
+        return CompletableFuture.completedFuture(null);
+    }
+
+}
@@ -0,0 +1,209 @@
+package com.datastax.samples.lwt;
+
+import java.util.concurrent.atomic.LongAdder;
+
+import com.datastax.oss.driver.api.core.DriverException;
+import com.datastax.oss.driver.api.core.cql.ExecutionInfo;
+import com.datastax.oss.driver.api.core.servererrors.CASWriteUnknownException;
+import com.datastax.oss.driver.api.core.servererrors.DefaultWriteType;
+import com.datastax.oss.driver.api.core.servererrors.UnavailableException;
+import com.datastax.oss.driver.api.core.servererrors.WriteTimeoutException;
+
+/**
+ * Outcome of the conditional statements executed through a {@link UniquenessGuard}, for
+ * one statement.
+ *
+ * A Paxos round which cannot complete because other rounds on the same partition keep
+ * preempting it ends with a CAS write timeout: timeouts are the client view of contention.
+ */
+public class CasMetrics {
+
+    private final String query;
+
+    private final LongAdder cacheHits = new LongAdder();
+
+    private final LongAdder coalesced = new LongAdder();
+
+    private final LongAdder attempts = new LongAdder();
+
+    private final LongAdder applied = new LongAdder();
+
+    private final LongAdder rejected = new LongAdder();
+
+    private final LongAdder retries = new LongAdder();
+
+    private final LongAdder casWriteTimeouts = new LongAdder();
+
+    private final LongAdder casWriteUnknowns = new LongAdder();
+
+    private final LongAdder unavailables = new LongAdder();
+
+    private final LongAdder failures = new LongAdder();
+
+    /**
+     * Metrics of a statement.
+     *
+     * @param query
+     *      query string of the statement
+     */
+    public CasMetrics(String query) {
+        this.query = query;
+    }
+
+    void recordCacheHit() {
+        cacheHits.increment();
+    }
+
+    void recordCoalesced() {
+        coalesced.increment();
+    }
+
+    void recordAttempt() {
+        attempts.increment();
+    }
+
+    void recordResult(boolean wasApplied, ExecutionInfo executionInfo) {
+        (wasApplied ? applied : rejected).increment();
+        recordRetries(executionInfo);
+    }
+
+    void recordError(Throwable error) {
+        failures.increment();
+        if (error instanceof WriteTimeoutException
+                && ((WriteTimeoutException) error).getWriteType() == DefaultWriteType.CAS) {
+            casWriteTimeouts.increment();
+        } else if (error instanceof CASWriteUnknownException) {
+            casWriteUnknowns.increment();
+        } else if (error instanceof UnavailableException) {
+            unavailables.increment();
+        }
+        if (error instanceof DriverException) {
+            recordRetries(((DriverException) error).getExecutionInfo());
+        }
+    }
+
+    /**
+     * Each error of the execution info is a node tried before the last one.
+     */
+    private void recordRetries(ExecutionInfo executionInfo) {
+        if (executionInfo != null) {
+            retries.add(executionInfo.getErrors().size());
+        }
+    }
+
+    /**
+     * Getter accessor for attribute 'query'.
+     *
+     * @return current value of 'query'
+     */
+    public String getQuery() {
+        return query;
+    }
+
+    /**
+     * Calls answered from the keys known to exist, without any request.
+     *
+     * @return
+     *      number of calls
+     */
+    public long getCacheHits() {
+        return cacheHits.sum();
+    }
+
+    /**
+     * Calls which waited for an attempt on the same key in progress in this process.
+     *
+     * @return
+     *      number of calls
+     */
+    public long getCoalesced() {
+        return coalesced.sum();
+    }
+
+    /**
+     * Statements sent, each one a Paxos round.
+     *
+     * @return
+     *      number of statements
+     */
+    public long getAttempts() {
+        return attempts.sum();
+    }
+
+    /**
+     * Getter accessor for attribute 'applied'.
+     *
+     * @return current value of 'applied'
+     */
+    public long getApplied() {
+        return applied.sum();
+    }
+
+    /**
+     * Statements not applied, the condition was false (e.g. the row exists).
+     *
+     * @return
+     *      number of statements
+     */
+    public long getRejected() {
+        return rejected.sum();
+    }
+
+    /**
+     * Nodes tried by the driver before the one answering (retries, speculative executions).
+     *
+     * @return
+     *      number of node errors
+     */
+    public long getRetries() {
+        return retries.sum();
+    }
+
+    /**
+     * Write timeouts of type CAS: contention or slow replicas, the outcome is unknown.
+     *
+     * @return
+     *      number of timeouts
+     */
+    public long getCasWriteTimeouts() {
+        return casWriteTimeouts.sum();
+    }
+
+    /**
+     * Getter accessor for attribute 'casWriteUnknowns'.
+     *
+     * @return current value of 'casWriteUnknowns'
+     */
+    public long getCasWriteUnknowns() {
+        return casWriteUnknowns.sum();
+    }
+
+    /**
+     * Getter accessor for attribute 'unavailables'.
+     *
+     * @return current value of 'unavailables'
+     */
+    public long getUnavailables() {
+        return unavailables.sum();
+    }
+
+    /**
+     * Statements which failed, whatever the error.
+     *
+     * @return
+     *      number of statements
+     */
+    public long getFailures() {
+        return failures.sum();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public String toString() {
+        return String.format("cacheHits=%d, coalesced=%d, attempts=%d, applied=%d, rejected=%d, retries=%d, "
+                + "casWriteTimeouts=%d, casWriteUnknowns=%d, unavailables=%d, failures=%d",
+                getCacheHits(), getCoalesced(), getAttempts(), getApplied(), getRejected(), getRetries(),
+                getCasWriteTimeouts(), getCasWriteUnknowns(), getUnavailables(), getFailures());
+    }
+
+}
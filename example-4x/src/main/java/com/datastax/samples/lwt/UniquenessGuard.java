@@ -0,0 +1,235 @@
+package com.datastax.samples.lwt;
+
+import java.time.Duration;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.datastax.oss.driver.api.core.CqlSession;
+import com.datastax.oss.driver.api.core.cql.BoundStatement;
+
+/**
+ * Run 'INSERT ... IF NOT EXISTS' only when it can be applied.
+ *
+ * A lightweight transaction is a Paxos round, 4 round trips between the coordinator and
+ * the replicas, and concurrent rounds on the same partition preempt each other. During a
+ * registration spike many attempts use an email which exists already (a second click, a
+ * retry, a known user), all of them paying a Paxos round to learn it.
+ *
+ * Here, for one unique key (e.g. the email of 'users'):
+ * - a key known to exist, created or found by a previous attempt, is not sent again for
+ *   'cacheTtl' (unless {@link #forget(String)} is called when the row is deleted),
+ * - concurrent attempts on the same key in this process wait for the first one: if it
+ *   completes, the key exists and they are not applied. Only when it fails (outcome
+ *   unknown) is the next one sent.
+ *
+ * The database still decides: another process may create the key at any time. Outcomes
+ * are counted per statement in {@link CasMetrics}.
+ *
+ * <pre>
+ * UniquenessGuard emails = new UniquenessGuard(session);
+ * boolean created = emails.insertIfNotExists(email, stmtCreateUser.bind(email, firstname, lastname));
+ * </pre>
+ */
+public class UniquenessGuard {
+
+    private final CqlSession session;
+
+    /** Attempt in progress by key. */
+    private final Map<String, CompletableFuture<Boolean>> inFlight = new ConcurrentHashMap<>();
+
+    /** Expiration (nanoTime) of the keys known to exist, least recently used first. */
+    private final LinkedHashMap<String, Long> existingKeys = new LinkedHashMap<String, Long>(16, 0.75f, true) {
+        private static final long serialVersionUID = 1L;
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Long> eldest) {
+            return size() > maxCachedKeys;
+        }
+    };
+
+    /** Metrics by query string. */
+    private final Map<String, CasMetrics> metrics = new ConcurrentHashMap<>();
+
+    private int maxCachedKeys = 10_000;
+
+    private Duration cacheTtl = Duration.ofMinutes(10);
+
+    /**
+     * Guard for one unique key.
+     *
+     * @param session
+     *      current session
+     */
+    public UniquenessGuard(CqlSession session) {
+        this.session = session;
+    }
+
+    /**
+     * Number of keys known to exist kept in memory, defaults to 10000.
+     *
+     * @param maxCachedKeys
+     *      maximum number of keys, 0 disables the cache
+     * @return
+     *      current instance
+     */
+    public UniquenessGuard withMaxCachedKeys(int maxCachedKeys) {
+        if (maxCachedKeys < 0) {
+            throw new IllegalArgumentException("maxCachedKeys must not be negative");
+        }
+        this.maxCachedKeys = maxCachedKeys;
+        return this;
+    }
+
+    /**
+     * Time a key known to exist is answered from memory, defaults to 10 minutes.
+     *
+     * @param cacheTtl
+     *      time to live, zero disables the cache
+     * @return
+     *      current instance
+     */
+    public UniquenessGuard withCacheTtl(Duration cacheTtl) {
+        if (cacheTtl.isNegative()) {
+            throw new IllegalArgumentException("cacheTtl must not be negative");
+        }
+        this.cacheTtl = cacheTtl;
+        return this;
+    }
+
+    /**
+     * Execute a conditional insert of a key, unless the key is known to exist.
+     *
+     * @param key
+     *      unique key written by the statement
+     * @param insert
+     *      statement with 'IF NOT EXISTS'
+     * @return
+     *      if the row has been created
+     */
+    public boolean insertIfNotExists(String key, BoundStatement insert) {
+        try {
+            return insertIfNotExistsAsync(key, insert).toCompletableFuture().join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Execute a conditional insert of a key asynchronously, unless the key is known to exist.
+     *
+     * @param key
+     *      unique key written by the statement
+     * @param insert
+     *      statement with 'IF NOT EXISTS'
+     * @return
+     *      if the row has been created
+     */
+    public CompletionStage<Boolean> insertIfNotExistsAsync(String key, BoundStatement insert) {
+        CasMetrics statementMetrics = getMetrics(insert.getPreparedStatement().getQuery());
+        if (isKnown(key)) {
+            statementMetrics.recordCacheHit();
+            return CompletableFuture.completedFuture(false);
+        }
+        CompletableFuture<Boolean> attempt = new CompletableFuture<>();
+        CompletableFuture<Boolean> running = inFlight.putIfAbsent(key, attempt);
+        if (running != null) {
+            statementMetrics.recordCoalesced();
+            // Completed: the key exists now. Failed: nobody knows, try again
+            return running.handle((applied, error) -> error == null
+                        ? CompletableFuture.completedFuture(false)
+                        : insertIfNotExistsAsync(key, insert))
+                          .thenCompose(result -> result);
+        }
+        statementMetrics.recordAttempt();
+        session.executeAsync(insert).whenComplete((rs, error) -> {
+            if (error == null) {
+                statementMetrics.recordResult(rs.wasApplied(), rs.getExecutionInfo());
+                // Known before the attempt is removed: next calls do not start a Paxos round
+                remember(key);
+                inFlight.remove(key, attempt);
+                attempt.complete(rs.wasApplied());
+            } else {
+                statementMetrics.recordError(error);
+                inFlight.remove(key, attempt);
+                attempt.completeExceptionally(error);
+            }
+        });
+        return attempt;
+    }
+
+    /**
+     * The row of a key has been deleted: the next insert is sent.
+     *
+     * @param key
+     *      unique key
+     */
+    public void forget(String key) {
+        synchronized (existingKeys) {
+            existingKeys.remove(key);
+        }
+    }
+
+    private boolean isKnown(String key) {
+        synchronized (existingKeys) {
+            Long expiration = existingKeys.get(key);
+            if (expiration == null) {
+                return false;
+            }
+            if (expiration - System.nanoTime() > 0) {
+                return true;
+            }
+            existingKeys.remove(key);
+            return false;
+        }
+    }
+
+    private void remember(String key) {
+        if (maxCachedKeys > 0 && !cacheTtl.isZero()) {
+            synchronized (existingKeys) {
+                existingKeys.put(key, System.nanoTime() + cacheTtl.toNanos());
+            }
+        }
+    }
+
+    /**
+     * Metrics of a statement.
+     *
+     * @param query
+     *      query string of the prepared statement
+     * @return
+     *      metrics, created empty if needed
+     */
+    public CasMetrics getMetrics(String query) {
+        return metrics.computeIfAbsent(query, CasMetrics::new);
+    }
+
+    /**
+     * Metrics of all statements executed.
+     *
+     * @return
+     *      metrics by query string
+     */
+    public Map<String, CasMetrics> getMetrics() {
+        return Collections.unmodifiableMap(metrics);
+    }
+
+    /**
+     * Keys known to exist, expired ones included until they are read or evicted.
+     *
+     * @return
+     *      number of keys
+     */
+    public int getCachedKeys() {
+        synchronized (existingKeys) {
+            return existingKeys.size();
+        }
+    }
+
+}
@@ -1,12 +1,17 @@
 package com.datastax.samples.objectmapping;
 
+import java.util.List;
 import java.util.UUID;
+import java.util.concurrent.CompletionStage;
 
+import com.datastax.dse.driver.api.mapper.reactive.MappedReactiveResultSet;
+import com.datastax.oss.driver.api.core.MappedAsyncPagingIterable;
 import com.datastax.oss.driver.api.core.PagingIterable;
 import com.datastax.oss.driver.api.mapper.annotations.Dao;
 import com.datastax.oss.driver.api.mapper.annotations.Query;
 import com.datastax.oss.driver.api.mapper.annotations.QueryProvider;
 import com.datastax.samples.ExampleSchema;
+import com.datastax.samples.write.DenormalizedWriter;
 
 /**
  * Implementation of Services to work with Comments in Killrvideo. We work with 
@@ -23,13 +28,75 @@ public interface CommentDao extends ExampleSchema {
             + "WHERE " + COMMENT_BY_VIDEO_VIDEOID + " = :videoid ")
     PagingIterable<CommentByVideo> retrieveVideoComments(UUID videoid);
     
+    /** Same as retrieveUserComments, without blocking the calling thread. */
+    @Query("SELECT * FROM ${keyspaceId}.${tableId} "
+            + "WHERE " + COMMENT_BY_USER_USERID + " = :userid ")
+    CompletionStage<MappedAsyncPagingIterable<CommentByUser>> retrieveUserCommentsAsync(UUID userid);
+    
+    /** Same as retrieveVideoComments, without blocking the calling thread. */
+    @Query("SELECT * FROM ${keyspaceId}.${tableId} "
+            + "WHERE " + COMMENT_BY_VIDEO_VIDEOID + " = :videoid ")
+    CompletionStage<MappedAsyncPagingIterable<CommentByVideo>> retrieveVideoCommentsAsync(UUID videoid);
+    
+    /** Same as retrieveUserComments, rows published as they are received. */
+    @Query("SELECT * FROM ${keyspaceId}.${tableId} "
+            + "WHERE " + COMMENT_BY_USER_USERID + " = :userid ")
+    MappedReactiveResultSet<CommentByUser> retrieveUserCommentsReactive(UUID userid);
+    
+    /** Same as retrieveVideoComments, rows published as they are received. */
+    @Query("SELECT * FROM ${keyspaceId}.${tableId} "
+            + "WHERE " + COMMENT_BY_VIDEO_VIDEOID + " = :videoid ")
+    MappedReactiveResultSet<CommentByVideo> retrieveVideoCommentsReactive(UUID videoid);
+    
+    /** Same as retrieveVideoComments, concurrent calls for a video share one request (see CoalescingExecutor). */
+    @QueryProvider(
+            providerClass = CommentDaoQueryProvider.class,
+            entityHelpers = { CommentByUser.class, CommentByVideo.class})
+    CompletionStage<List<CommentByVideo>> retrieveVideoCommentsShared(UUID videoid);
+    
     @QueryProvider(
             providerClass = CommentDaoQueryProvider.class,
             entityHelpers = { CommentByUser.class, CommentByVideo.class})
     void upsert(Comment comment);
     
+    /** Same as upsert, LOGGED batch or parallel writes (see DenormalizedWriter). */
+    @QueryProvider(
+            providerClass = CommentDaoQueryProvider.class,
+            entityHelpers = { CommentByUser.class, CommentByVideo.class})
+    void upsert(Comment comment, DenormalizedWriter.Strategy strategy);
+    
     @QueryProvider(
             providerClass = CommentDaoQueryProvider.class,
             entityHelpers = { CommentByUser.class, CommentByVideo.class})
     void delete(Comment res);
+    
+    /** Same as delete, LOGGED batch or parallel writes (see DenormalizedWriter). */
+    @QueryProvider(
+            providerClass = CommentDaoQueryProvider.class,
+            entityHelpers = { CommentByUser.class, CommentByVideo.class})
+    void delete(Comment res, DenormalizedWriter.Strategy strategy);
+    
+    /** Same as upsert, without blocking the calling thread. */
+    @QueryProvider(
+            providerClass = CommentDaoQueryProvider.class,
+            entityHelpers = { CommentByUser.class, CommentByVideo.class})
+    CompletionStage<Void> upsertAsync(Comment comment);
+    
+    /** Same as upsertAsync, LOGGED batch or parallel writes (see DenormalizedWriter). */
+    @QueryProvider(
+            providerClass = CommentDaoQueryProvider.class,
+            entityHelpers = { CommentByUser.class, CommentByVideo.class})
+    CompletionStage<Void> upsertAsync(Comment comment, DenormalizedWriter.Strategy strategy);
+    
+    /** Same as delete, without blocking the calling thread. */
+    @QueryProvider(
+            providerClass = CommentDaoQueryProvider.class,
+            entityHelpers = { CommentByUser.class, CommentByVideo.class})
+    CompletionStage<Void> deleteAsync(Comment res);
+    
+    /** Same as deleteAsync, LOGGED batch or parallel writes (see DenormalizedWriter). */
+    @QueryProvider(
+            providerClass = CommentDaoQueryProvider.class,
+            entityHelpers = { CommentByUser.class, CommentByVideo.class})
+    CompletionStage<Void> deleteAsync(Comment res, DenormalizedWriter.Strategy strategy);
 }
@@ -1,27 +1,50 @@
 package com.datastax.samples.objectmapping;
 
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.CompletionStage;
+import java.util.stream.Collectors;
 
 import com.datastax.oss.driver.api.core.CqlSession;
-import com.datastax.oss.driver.api.core.PagingIterable;
-import com.datastax.oss.driver.api.core.cql.BatchStatement;
 import com.datastax.oss.driver.api.core.cql.BoundStatement;
 import com.datastax.oss.driver.api.core.cql.BoundStatementBuilder;
-import com.datastax.oss.driver.api.core.cql.DefaultBatchType;
 import com.datastax.oss.driver.api.core.cql.PreparedStatement;
+import com.datastax.oss.driver.api.core.cql.SimpleStatement;
 import com.datastax.oss.driver.api.mapper.MapperContext;
+import com.datastax.oss.driver.api.mapper.annotations.Query;
+import com.datastax.oss.driver.api.mapper.annotations.QueryProvider;
 import com.datastax.oss.driver.api.mapper.entity.EntityHelper;
 import com.datastax.oss.driver.api.mapper.entity.saving.NullSavingStrategy;
 import com.datastax.oss.driver.api.querybuilder.QueryBuilder;
+import com.datastax.samples.CoalescingExecutor;
 import com.datastax.samples.ExampleSchema;
+import com.datastax.samples.SessionManager;
+import com.datastax.samples.write.DenormalizedWriter;
+import com.datastax.samples.write.DenormalizedWriter.Strategy;
 
 /**
- * Query implementation for Comment Dse and Mapper.
+ * Query implementation for Comment Dse and Mapper: the {@link QueryProvider} methods of
+ * {@link CommentDao}, the {@link Query} ones are generated.
+ *
+ * Writes go through the {@link DenormalizedWriter} given to the mapper as custom state
+ * {@link #COMMENT_WRITER}: the generated DAO builds a provider per method, they all share
+ * the writer, its retries and its journal. The caller closes it. Without it, each provider
+ * uses a writer of its own, without journal.
+ *
+ * <pre>
+ * CommentDao dao = CommentDaoMapper.builder(session)
+ *      .withCustomState(CommentDaoQueryProvider.COMMENT_WRITER, new DenormalizedWriter(session).withJournal(journal))
+ *      .build().commentDao();
+ * </pre>
  *
  * @author DataStax Developer Advocates team.
  */
-@SuppressWarnings("deprecation")
-public class CommentDaoQueryProvider implements CommentDao, ExampleSchema {
+public class CommentDaoQueryProvider implements ExampleSchema {
+    
+    /** Custom state of the mapper holding the {@link DenormalizedWriter} of the comments. */
+    public static final String COMMENT_WRITER = "commentWriter";
 
     private final CqlSession cqlSession;
     
@@ -29,13 +52,16 @@ public class CommentDaoQueryProvider implements CommentDao, ExampleSchema {
     private final EntityHelper<CommentByVideo> helperVideo;
     
     private static PreparedStatement selectCommentByVideo;
-    private static PreparedStatement selectCommentByUser;
     
     private PreparedStatement psInsertCommentUser;
     private PreparedStatement psDeleteCommentUser;
     private PreparedStatement psInsertCommentVideo;
     private PreparedStatement psDeleteCommentVideo;
     
+    private final CoalescingExecutor sharedReads;
+    
+    private final DenormalizedWriter commentWriter;
+    
     public CommentDaoQueryProvider(MapperContext context,
             EntityHelper<CommentByUser> helperUser,
             EntityHelper<CommentByVideo> helperVideo) {
@@ -43,46 +69,83 @@ public class CommentDaoQueryProvider implements CommentDao, ExampleSchema {
         this.cqlSession                    = context.getSession();
         this.helperUser      = helperUser;
         this.helperVideo     = helperVideo;
-        psInsertCommentUser  = cqlSession.prepare(helperUser.insert().asCql());
-        psDeleteCommentUser  = cqlSession.prepare(helperUser.deleteByPrimaryKey().asCql());
-        psInsertCommentVideo = cqlSession.prepare(helperVideo.insert().asCql());
-        psDeleteCommentVideo = cqlSession.prepare(helperVideo.deleteByPrimaryKey().asCql());
-        
-        selectCommentByVideo = cqlSession.prepare(
-                QueryBuilder.selectFrom(COMMENT_BY_VIDEO_TABLENAME).all()
+        this.sharedReads     = new CoalescingExecutor(cqlSession);
+        Object writer = context.getCustomState().get(COMMENT_WRITER);
+        this.commentWriter   = writer instanceof DenormalizedWriter
+                ? (DenormalizedWriter) writer : new DenormalizedWriter(cqlSession);
+        SimpleStatement queryInsertCommentUser  = helperUser.insert().build();
+        SimpleStatement queryDeleteCommentUser  = helperUser.deleteByPrimaryKey().build();
+        SimpleStatement queryInsertCommentVideo = helperVideo.insert().build();
+        SimpleStatement queryDeleteCommentVideo = helperVideo.deleteByPrimaryKey().build();
+        SimpleStatement querySelectCommentByVideo = QueryBuilder.selectFrom(COMMENT_BY_VIDEO_TABLENAME).all()
                 .whereColumn(COMMENT_BY_VIDEO_VIDEOID).isEqualTo(QueryBuilder.bindMarker())
-                .build());
-        selectCommentByUser  = cqlSession.prepare(
-                QueryBuilder.selectFrom(COMMENT_BY_USER_TABLENAME).all()
-                .whereColumn(COMMENT_BY_USER_USERID).isEqualTo(QueryBuilder.bindMarker())
-                .build());
+                .build();
+        
+        // All statements are prepared in parallel: one round trip instead of 5
+        Map<SimpleStatement, PreparedStatement> prepared = SessionManager.getRegistry(cqlSession).prepareAll(
+                queryInsertCommentUser,    queryDeleteCommentUser,
+                queryInsertCommentVideo,   queryDeleteCommentVideo,
+                querySelectCommentByVideo);
+        psInsertCommentUser  = prepared.get(queryInsertCommentUser);
+        psDeleteCommentUser  = prepared.get(queryDeleteCommentUser);
+        psInsertCommentVideo = prepared.get(queryInsertCommentVideo);
+        psDeleteCommentVideo = prepared.get(queryDeleteCommentVideo);
+        selectCommentByVideo = prepared.get(querySelectCommentByVideo);
     }
     
-    /** {@inheritDoc} */
-   
-    @Override
-    public PagingIterable<CommentByUser> retrieveUserComments(UUID userid) {
-        return cqlSession.execute(selectCommentByUser.bind(userid)).map(helperUser::get);
-    }
-
-    /** {@inheritDoc} */
-    @Override
-    public PagingIterable<CommentByVideo> retrieveVideoComments(UUID videoid) {
-        return cqlSession.execute(selectCommentByVideo.bind(videoid)).map(helperVideo::get);
+    /** Implementation of {@link CommentDao#retrieveVideoCommentsShared(UUID)}. */
+    public CompletionStage<List<CommentByVideo>> retrieveVideoCommentsShared(UUID videoid) {
+        return sharedReads.executeAsync(selectCommentByVideo.bind(videoid))
+                          .thenApply(rows -> rows.stream().map(row -> helperVideo.get(row, false)).collect(Collectors.toList()));
     }
     
-    /** {@inheritDoc} */
-    @Override
+    /** Implementation of {@link CommentDao#upsert(Comment)}. */
     public void upsert(Comment comment) {
-        cqlSession.execute(BatchStatement.builder(DefaultBatchType.LOGGED)
-                .addStatement(bind(psInsertCommentUser,  new CommentByUser(comment),  helperUser))
-                .addStatement(bind(psInsertCommentVideo, new CommentByVideo(comment), helperVideo))
-                .build());
+        upsert(comment, Strategy.LOGGED_BATCH);
+    }
+    
+    /** Implementation of {@link CommentDao#upsert(Comment, Strategy)}. */
+    public void upsert(Comment comment, Strategy strategy) {
+        commentWriter.execute(strategy, upsertStatements(comment));
     }
     
-    /** {@inheritDoc} */
-    @Override
+    /** Implementation of {@link CommentDao#delete(Comment)}. */
     public void delete(Comment comment) {
+        delete(comment, Strategy.LOGGED_BATCH);
+    }
+    
+    /** Implementation of {@link CommentDao#delete(Comment, Strategy)}. */
+    public void delete(Comment comment, Strategy strategy) {
+        commentWriter.execute(strategy, deleteStatements(comment));
+    }
+    
+    /** Implementation of {@link CommentDao#upsertAsync(Comment)}. */
+    public CompletionStage<Void> upsertAsync(Comment comment) {
+        return upsertAsync(comment, Strategy.LOGGED_BATCH);
+    }
+    
+    /** Implementation of {@link CommentDao#upsertAsync(Comment, Strategy)}. */
+    public CompletionStage<Void> upsertAsync(Comment comment, Strategy strategy) {
+        return commentWriter.executeAsync(strategy, upsertStatements(comment));
+    }
+    
+    /** Implementation of {@link CommentDao#deleteAsync(Comment)}. */
+    public CompletionStage<Void> deleteAsync(Comment comment) {
+        return deleteAsync(comment, Strategy.LOGGED_BATCH);
+    }
+    
+    /** Implementation of {@link CommentDao#deleteAsync(Comment, Strategy)}. */
+    public CompletionStage<Void> deleteAsync(Comment comment, Strategy strategy) {
+        return commentWriter.executeAsync(strategy, deleteStatements(comment));
+    }
+    
+    private List<BoundStatement> upsertStatements(Comment comment) {
+        return Arrays.asList(
+                bind(psInsertCommentUser,  new CommentByUser(comment),  helperUser),
+                bind(psInsertCommentVideo, new CommentByVideo(comment), helperVideo));
+    }
+    
+    private List<BoundStatement> deleteStatements(Comment comment) {
         
         CommentByUser cbu = new CommentByUser();
         cbu.setCommentid(comment.getCommentid());
@@ -92,16 +155,14 @@ public class CommentDaoQueryProvider implements CommentDao, ExampleSchema {
         cbv.setCommentid(comment.getCommentid());
         cbv.setVideoid(comment.getVideoid());
         
-        cqlSession.execute(
-                BatchStatement.builder(DefaultBatchType.LOGGED)
-                    .addStatement(bind(psDeleteCommentUser,  cbu, helperUser))
-                    .addStatement(bind(psDeleteCommentVideo, cbv, helperVideo))
-                    .build());
+        return Arrays.asList(
+                bind(psDeleteCommentUser,  cbu, helperUser),
+                bind(psDeleteCommentVideo, cbv, helperVideo));
     }
     
     public static <T> BoundStatement bind(PreparedStatement preparedStatement, T entity, EntityHelper<T> entityHelper) {
         BoundStatementBuilder boundStatement = preparedStatement.boundStatementBuilder();
-        entityHelper.set(entity, boundStatement, NullSavingStrategy.DO_NOT_SET);
+        entityHelper.set(entity, boundStatement, NullSavingStrategy.DO_NOT_SET, false);
         return boundStatement.build();
     }
     
@@ -0,0 +1,297 @@
+package com.datastax.samples.paging;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.Objects;
+import java.util.TreeMap;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.codahale.metrics.Gauge;
+import com.datastax.oss.driver.api.core.CqlSession;
+import com.datastax.oss.driver.api.core.config.DefaultDriverOption;
+import com.datastax.oss.driver.api.core.cql.AsyncResultSet;
+import com.datastax.oss.driver.api.core.cql.BoundStatement;
+import com.datastax.oss.driver.api.core.cql.ColumnDefinitions;
+import com.datastax.oss.driver.api.core.cql.PreparedStatement;
+import com.datastax.oss.driver.api.core.cql.SimpleStatement;
+import com.datastax.oss.driver.api.core.cql.Statement;
+import com.datastax.oss.protocol.internal.util.Bytes;
+
+/**
+ * Tune the page size of each query from what its pages actually cost.
+ *
+ * A fixed page size (5000 in custom_application.conf, 10 in CRUD_02) is wrong for some
+ * tables: 5000 rows of 'files' with 1 MB blobs is a 5 GB page on the heap of both the
+ * coordinator and the client, 10 rows of 'users' is a round trip every few hundred bytes.
+ *
+ * Here the first page of a query is small (100 rows) and each page received updates, per
+ * query, the average size of a row (from the response size) and the page latency. The next
+ * page size is the number of rows fitting in 'targetPageBytes', reduced when full pages take
+ * longer than 'targetLatency' and growing at most twice per page when they are faster. The
+ * current size of each query is available with {@link #getPageSizes()} and, when driver
+ * metrics are enabled ('advanced.metrics'), published as a gauge of the session registry
+ * ('[session].adaptive-page-size.[keyspace].[table].[id]').
+ *
+ * <pre>
+ * AdaptivePageSizer pageSizer = new AdaptivePageSizer(session);
+ * AsyncResultSet page = pageSizer.executeAsync(statement).toCompletableFuture().join();
+ * while (page.hasMorePages()) {
+ *     page = pageSizer.fetchNextPage(statement, page).toCompletableFuture().join();
+ * }
+ * </pre>
+ */
+public class AdaptivePageSizer {
+
+    /** Logger for the class. */
+    private static Logger LOGGER = LoggerFactory.getLogger(AdaptivePageSizer.class);
+
+    /** Weight of the last page in the average row size. */
+    private static final double SMOOTHING = 0.3;
+
+    /** Maximum growth of the page size between two pages. */
+    private static final int MAX_GROWTH = 2;
+
+    /** First page of a query not seen yet, small until the row size is known. */
+    private static final int INITIAL_PAGE_SIZE = 100;
+
+    private final CqlSession session;
+
+    /** Page size and row size by query. */
+    private final Map<String, QueryState> states = new ConcurrentHashMap<>();
+
+    private long targetPageBytes = 1024 * 1024;
+
+    private long targetLatencyNanos = Duration.ofMillis(200).toNanos();
+
+    private int minPageSize = 10;
+
+    private int maxPageSize;
+
+    /**
+     * Sizer for a session, 'basic.request.page-size' is the maximum page size.
+     *
+     * @param session
+     *      current session
+     */
+    public AdaptivePageSizer(CqlSession session) {
+        this.session = Objects.requireNonNull(session);
+        this.maxPageSize = session.getContext().getConfig().getDefaultProfile().getInt(DefaultDriverOption.REQUEST_PAGE_SIZE);
+    }
+
+    /**
+     * Size of a page in bytes to aim at, defaults to 1 MiB.
+     *
+     * @param targetPageBytes
+     *      page budget
+     * @return
+     *      current instance
+     */
+    public AdaptivePageSizer withTargetPageBytes(long targetPageBytes) {
+        this.targetPageBytes = targetPageBytes;
+        return this;
+    }
+
+    /**
+     * Maximum latency of a page, defaults to 200 ms.
+     *
+     * @param targetLatency
+     *      page latency budget
+     * @return
+     *      current instance
+     */
+    public AdaptivePageSizer withTargetLatency(Duration targetLatency) {
+        this.targetLatencyNanos = targetLatency.toNanos();
+        return this;
+    }
+
+    /**
+     * Bounds of the page size, defaults to 10 and 'basic.request.page-size'.
+     *
+     * @param minPageSize
+     *      smallest page size
+     * @param maxPageSize
+     *      largest page size
+     * @return
+     *      current instance
+     */
+    public AdaptivePageSizer withPageSizeBounds(int minPageSize, int maxPageSize) {
+        if (minPageSize < 1 || maxPageSize < minPageSize) {
+            throw new IllegalArgumentException("Invalid bounds [" + minPageSize + "," + maxPageSize + "]");
+        }
+        this.minPageSize = minPageSize;
+        this.maxPageSize = maxPageSize;
+        return this;
+    }
+
+    /**
+     * Set the current page size of the query on the statement.
+     *
+     * @param statement
+     *      bound or simple statement, others are returned unchanged
+     * @return
+     *      statement with the page size
+     */
+    public Statement<?> apply(Statement<?> statement) {
+        QueryState state = state(statement);
+        return state == null ? statement : statement.setPageSize(state.pageSize);
+    }
+
+    /**
+     * Execute the first page with the current page size and record it.
+     *
+     * @param statement
+     *      query
+     * @return
+     *      first page
+     */
+    public CompletionStage<AsyncResultSet> executeAsync(Statement<?> statement) {
+        return execute(apply(statement));
+    }
+
+    /**
+     * Fetch the next page with the current page size (it may differ from the previous one)
+     * and record it.
+     *
+     * @param statement
+     *      query of the previous page
+     * @param page
+     *      previous page
+     * @return
+     *      next page
+     */
+    public CompletionStage<AsyncResultSet> fetchNextPage(Statement<?> statement, AsyncResultSet page) {
+        if (!page.hasMorePages()) {
+            throw new IllegalStateException("No more pages");
+        }
+        return execute(apply(statement).setPagingState(page.getExecutionInfo().getPagingState()));
+    }
+
+    /**
+     * Record a page obtained elsewhere.
+     *
+     * @param statement
+     *      query of the page, with the page size used
+     * @param page
+     *      page received, not consumed yet
+     * @param latencyNanos
+     *      time to get the page
+     */
+    public void record(Statement<?> statement, AsyncResultSet page, long latencyNanos) {
+        QueryState state = state(statement);
+        if (state != null) {
+            state.record(statement.getPageSize(), page.remaining(),
+                    page.getExecutionInfo().getResponseSizeInBytes(), latencyNanos);
+        }
+    }
+
+    /**
+     * Current page size of a query.
+     *
+     * @param statement
+     *      bound or simple statement
+     * @return
+     *      page size, 100 (within bounds) for a query not seen yet
+     */
+    public int getPageSize(Statement<?> statement) {
+        QueryState state = state(statement);
+        return state == null ? initialPageSize() : state.pageSize;
+    }
+
+    /**
+     * Current page size of all queries seen.
+     *
+     * @return
+     *      page size by query string
+     */
+    public Map<String, Integer> getPageSizes() {
+        Map<String, Integer> pageSizes = new TreeMap<>();
+        states.forEach((query, state) -> pageSizes.put(query, state.pageSize));
+        return pageSizes;
+    }
+
+    private int initialPageSize() {
+        return Math.max(minPageSize, Math.min(maxPageSize, INITIAL_PAGE_SIZE));
+    }
+
+    private CompletionStage<AsyncResultSet> execute(Statement<?> statement) {
+        long start = System.nanoTime();
+        return session.executeAsync(statement).thenApply(rs -> {
+            record(statement, rs, System.nanoTime() - start);
+            return rs;
+        });
+    }
+
+    private QueryState state(Statement<?> statement) {
+        if (statement instanceof BoundStatement) {
+            PreparedStatement prepared = ((BoundStatement) statement).getPreparedStatement();
+            return states.computeIfAbsent(prepared.getQuery(), q -> new QueryState(metricName(prepared)));
+        }
+        if (statement instanceof SimpleStatement) {
+            String query = ((SimpleStatement) statement).getQuery();
+            return states.computeIfAbsent(query, q -> new QueryState(null));
+        }
+        return null;
+    }
+
+    /**
+     * Readable and unique: table of the result and start of the prepared id.
+     */
+    private String metricName(PreparedStatement prepared) {
+        ColumnDefinitions columns = prepared.getResultSetDefinitions();
+        String table = columns.size() == 0 ? "unknown"
+                : columns.get(0).getKeyspace().asInternal() + "." + columns.get(0).getTable().asInternal();
+        String id = Bytes.toHexString(prepared.getId()).substring(2);
+        return session.getName() + ".adaptive-page-size." + table + "." + id.substring(0, Math.min(8, id.length()));
+    }
+
+    /**
+     * Statistics and page size of a query.
+     */
+    private class QueryState {
+
+        private volatile int pageSize = initialPageSize();
+
+        /** Average response bytes per row, 0 until the first page. */
+        private double bytesPerRow;
+
+        private QueryState(String metricName) {
+            if (metricName != null) {
+                session.getMetrics().ifPresent(metrics -> {
+                    try {
+                        metrics.getRegistry().register(metricName, (Gauge<Integer>) () -> pageSize);
+                    } catch (IllegalArgumentException e) {
+                        LOGGER.debug("Gauge {} already registered", metricName);
+                    }
+                });
+            }
+        }
+
+        private synchronized void record(int requested, int rows, int responseBytes, long latencyNanos) {
+            if (rows <= 0 || responseBytes <= 0) {
+                return;
+            }
+            double rowBytes = (double) responseBytes / rows;
+            bytesPerRow = bytesPerRow == 0 ? rowBytes : SMOOTHING * rowBytes + (1 - SMOOTHING) * bytesPerRow;
+            double limit = targetPageBytes / bytesPerRow;
+            if (requested > 0 && rows >= requested) {
+                // Full page: its latency tells how many rows fit in the latency budget
+                limit = Math.min(limit, (double) requested * targetLatencyNanos / Math.max(1, latencyNanos));
+                limit = Math.min(limit, (double) requested * MAX_GROWTH);
+            } else {
+                // Last page of a query: only the row size is meaningful
+                limit = Math.min(limit, pageSize);
+            }
+            int next = (int) Math.max(minPageSize, Math.min(maxPageSize, Math.round(limit)));
+            if (next != pageSize) {
+                LOGGER.debug("Page size {} -> {} ({} bytes/row, {} ms)", pageSize, next,
+                        Math.round(bytesPerRow), latencyNanos / 1_000_000);
+                pageSize = next;
+            }
+        }
+    }
+
+}
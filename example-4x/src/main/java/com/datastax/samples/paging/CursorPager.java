@@ -0,0 +1,245 @@
+package com.datastax.samples.paging;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.datastax.oss.driver.api.core.CqlSession;
+import com.datastax.oss.driver.api.core.cql.AsyncResultSet;
+import com.datastax.oss.driver.api.core.cql.Row;
+import com.datastax.oss.driver.api.core.cql.Statement;
+
+/**
+ * Serve pages of a query to stateless clients ("load more"), with signed cursors.
+ *
+ * The first call has no cursor, each page comes with the cursor of the next one. Cursors
+ * are resumed by any application instance holding the same secret (see {@link PageCursorCodec}).
+ *
+ * With the next page cache, the page after the one returned is fetched right away and kept
+ * in memory for a while: when the same instance receives the cursor, the page is served
+ * without a coordinator read. A page is served once from the cache; if another instance
+ * gets the cursor, or the entry expired, the page is read from the cluster as usual.
+ *
+ * <pre>
+ * CursorPager pager = new CursorPager(session, new PageCursorCodec(secret))
+ *    .withNextPageCache(1000, Duration.ofSeconds(30));
+ * Page&lt;UserDto&gt; page = pager.fetch(stmtListUsers.bind().setPageSize(20), cursor, UserDto::new);
+ * </pre>
+ */
+public class CursorPager {
+
+    /** Logger for the class. */
+    private static Logger LOGGER = LoggerFactory.getLogger(CursorPager.class);
+
+    private final CqlSession session;
+
+    private final PageCursorCodec codec;
+
+    /** Prefetched pages by cursor, null when disabled. */
+    private NextPageCache cache;
+
+    /** Page served from the cache. */
+    private final LongAdder cacheHits = new LongAdder();
+
+    /** Page read from the cluster with a cursor. */
+    private final LongAdder cacheMisses = new LongAdder();
+
+    /**
+     * Pager for a session.
+     *
+     * @param session
+     *      current session
+     * @param codec
+     *      cursor codec, same secret on all instances
+     */
+    public CursorPager(CqlSession session, PageCursorCodec codec) {
+        this.session = Objects.requireNonNull(session);
+        this.codec   = Objects.requireNonNull(codec);
+    }
+
+    /**
+     * Prefetch the next page of each page served and keep it in memory.
+     *
+     * @param maxEntries
+     *      maximum pages in memory, least recently stored evicted first
+     * @param ttl
+     *      time a prefetched page is kept
+     * @return
+     *      current instance
+     */
+    public CursorPager withNextPageCache(int maxEntries, Duration ttl) {
+        this.cache = new NextPageCache(maxEntries, ttl);
+        return this;
+    }
+
+    /**
+     * Read a page.
+     *
+     * @param statement
+     *      query, with the page size (same query and values for all pages)
+     * @param cursor
+     *      cursor of the page, null for the first page
+     * @param mapper
+     *      row mapper
+     * @param <T>
+     *      type of the items
+     * @return
+     *      page and next cursor
+     */
+    public <T> Page<T> fetch(Statement<?> statement, String cursor, Function<Row, T> mapper) {
+        try {
+            return fetchAsync(statement, cursor, mapper).toCompletableFuture().join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Read a page asynchronously.
+     *
+     * @param statement
+     *      query, with the page size (same query and values for all pages)
+     * @param cursor
+     *      cursor of the page, null for the first page
+     * @param mapper
+     *      row mapper
+     * @param <T>
+     *      type of the items
+     * @return
+     *      page and next cursor, failed with an IllegalArgumentException for an invalid cursor
+     */
+    public <T> CompletionStage<Page<T>> fetchAsync(Statement<?> statement, String cursor, Function<Row, T> mapper) {
+        if (cursor == null) {
+            return session.executeAsync(statement).thenApply(rs -> toPage(rs, mapper, false));
+        }
+        // Checked even for a cached page: the cursor must be valid for this statement
+        Statement<?> resumed;
+        try {
+            resumed = statement.setPagingState(codec.decode(cursor, statement, session), session);
+        } catch (IllegalArgumentException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+        CompletableFuture<AsyncResultSet> prefetched = cache == null ? null : cache.remove(cursor);
+        if (prefetched == null) {
+            return fetchFromCluster(resumed, mapper);
+        }
+        return prefetched.handle((rs, error) -> error == null ? rs : null).thenCompose(rs -> {
+            if (rs == null) {
+                // Prefetch failed, possibly after the cursor was returned: read the page again
+                return fetchFromCluster(resumed, mapper);
+            }
+            cacheHits.increment();
+            return CompletableFuture.completedFuture(toPage(rs, mapper, true));
+        });
+    }
+
+    private <T> CompletionStage<Page<T>> fetchFromCluster(Statement<?> resumed, Function<Row, T> mapper) {
+        cacheMisses.increment();
+        return session.executeAsync(resumed).thenApply(rs -> toPage(rs, mapper, false));
+    }
+
+    private <T> Page<T> toPage(AsyncResultSet rs, Function<Row, T> mapper, boolean fromCache) {
+        List<T> items = new ArrayList<>(rs.remaining());
+        for (Row row : rs.currentPage()) {
+            items.add(mapper.apply(row));
+        }
+        String nextCursor = rs.hasMorePages() ? codec.encode(rs.getExecutionInfo().getSafePagingState()) : null;
+        if (nextCursor != null && cache != null) {
+            cache.put(nextCursor, rs.fetchNextPage().toCompletableFuture());
+        }
+        return new Page<>(items, nextCursor, fromCache);
+    }
+
+    /**
+     * Pages served from the prefetch cache.
+     *
+     * @return
+     *      number of hits
+     */
+    public long getCacheHits() {
+        return cacheHits.sum();
+    }
+
+    /**
+     * Pages with a cursor read from the cluster (no cache, expired, failed prefetch or other instance).
+     *
+     * @return
+     *      number of misses
+     */
+    public long getCacheMisses() {
+        return cacheMisses.sum();
+    }
+
+    /**
+     * Bounded map of prefetched pages with expiration.
+     */
+    private static class NextPageCache {
+
+        private final Map<String, CompletableFuture<AsyncResultSet>> pages;
+
+        private final Map<String, Long> expirations = new LinkedHashMap<>();
+
+        private final long ttlNanos;
+
+        private NextPageCache(int maxEntries, Duration ttl) {
+            this.ttlNanos = ttl.toNanos();
+            this.pages = new LinkedHashMap<String, CompletableFuture<AsyncResultSet>>() {
+                private static final long serialVersionUID = 1L;
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, CompletableFuture<AsyncResultSet>> eldest) {
+                    if (size() > maxEntries) {
+                        expirations.remove(eldest.getKey());
+                        return true;
+                    }
+                    return false;
+                }
+            };
+        }
+
+        private synchronized void put(String cursor, CompletableFuture<AsyncResultSet> page) {
+            evictExpired();
+            // Removed first so that a cursor put again moves to the end of both maps
+            expirations.remove(cursor);
+            pages.remove(cursor);
+            expirations.put(cursor, System.nanoTime() + ttlNanos);
+            pages.put(cursor, page);
+        }
+
+        private synchronized CompletableFuture<AsyncResultSet> remove(String cursor) {
+            evictExpired();
+            expirations.remove(cursor);
+            return pages.remove(cursor);
+        }
+
+        /** Entries are in insertion order, expired ones come first. */
+        private void evictExpired() {
+            long now = System.nanoTime();
+            Iterator<Map.Entry<String, Long>> entries = expirations.entrySet().iterator();
+            while (entries.hasNext()) {
+                Map.Entry<String, Long> entry = entries.next();
+                if (entry.getValue() - now > 0) {
+                    break;
+                }
+                entries.remove();
+                pages.remove(entry.getKey());
+                LOGGER.debug("Prefetched page expired");
+            }
+        }
+    }
+
+}
@@ -0,0 +1,73 @@
+package com.datastax.samples.paging;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * One page of results and the cursor of the next one.
+ *
+ * @param <T>
+ *      type of the items
+ */
+public class Page<T> {
+
+    private final List<T> items;
+
+    private final String nextCursor;
+
+    private final boolean fromCache;
+
+    /**
+     * Page of results.
+     *
+     * @param items
+     *      items of the page
+     * @param nextCursor
+     *      cursor of the next page, null for the last page
+     * @param fromCache
+     *      if the page has been prefetched
+     */
+    public Page(List<T> items, String nextCursor, boolean fromCache) {
+        this.items      = Collections.unmodifiableList(items);
+        this.nextCursor = nextCursor;
+        this.fromCache  = fromCache;
+    }
+
+    /**
+     * Tell if there is a next page.
+     *
+     * @return
+     *      if a next cursor is available
+     */
+    public boolean hasNext() {
+        return nextCursor != null;
+    }
+
+    /**
+     * Getter accessor for attribute 'items'.
+     *
+     * @return current value of 'items'
+     */
+    public List<T> getItems() {
+        return items;
+    }
+
+    /**
+     * Getter accessor for attribute 'nextCursor'.
+     *
+     * @return current value of 'nextCursor', null for the last page
+     */
+    public String getNextCursor() {
+        return nextCursor;
+    }
+
+    /**
+     * Getter accessor for attribute 'fromCache'.
+     *
+     * @return current value of 'fromCache'
+     */
+    public boolean isFromCache() {
+        return fromCache;
+    }
+
+}
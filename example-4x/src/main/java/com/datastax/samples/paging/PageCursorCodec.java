@@ -0,0 +1,147 @@
+package com.datastax.samples.paging;
+
+import java.nio.ByteBuffer;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Objects;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+import com.datastax.oss.driver.api.core.cql.PagingState;
+import com.datastax.oss.driver.api.core.cql.Statement;
+import com.datastax.oss.driver.api.core.session.Session;
+
+/**
+ * Turn a paging state into an opaque cursor that can be handed to web clients, and back.
+ *
+ * The raw paging state (CRUD_02 prints it in hex) can be replayed against any query and
+ * modified by the client. A cursor is:
+ *
+ * <pre>
+ * base64url( version | issued at (seconds) | PagingState.toBytes() | HMAC-SHA256 truncated to 16 bytes )
+ * </pre>
+ *
+ * The {@link PagingState} of the driver already holds a fingerprint of the statement (query
+ * and bound values), checked with {@link PagingState#matches(Statement, Session)}: a cursor
+ * only resumes the query it has been issued for. The HMAC rejects forged or altered cursors;
+ * all application instances sharing the secret accept the cursors of the others.
+ */
+public class PageCursorCodec {
+
+    /** Format of the cursor, first byte. */
+    private static final byte VERSION = 1;
+
+    private static final String ALGORITHM = "HmacSHA256";
+
+    /** Truncated MAC, enough against forgery and keeps cursors short. */
+    private static final int MAC_LENGTH = 16;
+
+    private static final int HEADER_LENGTH = 1 + Long.BYTES;
+
+    private final SecretKeySpec key;
+
+    /** Cursors older than this are rejected, null to never expire. */
+    private Duration maxAge;
+
+    /**
+     * Codec with the secret shared by all application instances.
+     *
+     * @param secret
+     *      HMAC key, at least 32 bytes
+     */
+    public PageCursorCodec(byte[] secret) {
+        if (secret == null || secret.length < 32) {
+            throw new IllegalArgumentException("Secret must have at least 32 bytes");
+        }
+        this.key = new SecretKeySpec(secret.clone(), ALGORITHM);
+    }
+
+    /**
+     * Reject cursors issued more than 'maxAge' ago.
+     *
+     * @param maxAge
+     *      validity of a cursor
+     * @return
+     *      current instance
+     */
+    public PageCursorCodec withMaxAge(Duration maxAge) {
+        this.maxAge = maxAge;
+        return this;
+    }
+
+    /**
+     * Build the cursor of a paging state.
+     *
+     * @param pagingState
+     *      paging state from 'getExecutionInfo().getSafePagingState()'
+     * @return
+     *      cursor, null when the paging state is null (last page)
+     */
+    public String encode(PagingState pagingState) {
+        if (pagingState == null) {
+            return null;
+        }
+        byte[] state = pagingState.toBytes();
+        ByteBuffer buffer = ByteBuffer.allocate(HEADER_LENGTH + state.length + MAC_LENGTH);
+        buffer.put(VERSION).putLong(Instant.now().getEpochSecond()).put(state);
+        buffer.put(mac(buffer.array(), HEADER_LENGTH + state.length));
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(buffer.array());
+    }
+
+    /**
+     * Read a cursor and check it has been issued for the statement.
+     *
+     * @param cursor
+     *      cursor provided by the client
+     * @param statement
+     *      statement to resume, same query and values as the one of the cursor
+     * @param session
+     *      session executing the statement
+     * @return
+     *      paging state to set on the statement
+     * @throws IllegalArgumentException
+     *      malformed, altered, expired cursor or cursor of another statement
+     */
+    public PagingState decode(String cursor, Statement<?> statement, Session session) {
+        byte[] bytes;
+        try {
+            bytes = Base64.getUrlDecoder().decode(Objects.requireNonNull(cursor));
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Invalid cursor: not base64url");
+        }
+        if (bytes.length <= HEADER_LENGTH + MAC_LENGTH || bytes[0] != VERSION) {
+            throw new IllegalArgumentException("Invalid cursor: unknown format");
+        }
+        int length = bytes.length - MAC_LENGTH;
+        if (!MessageDigest.isEqual(mac(bytes, length), Arrays.copyOfRange(bytes, length, bytes.length))) {
+            throw new IllegalArgumentException("Invalid cursor: signature mismatch");
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(bytes, 1, length - 1);
+        Instant issuedAt = Instant.ofEpochSecond(buffer.getLong());
+        if (maxAge != null && issuedAt.plus(maxAge).isBefore(Instant.now())) {
+            throw new IllegalArgumentException("Invalid cursor: expired");
+        }
+        PagingState pagingState = PagingState.fromBytes(Arrays.copyOfRange(bytes, HEADER_LENGTH, length));
+        if (!pagingState.matches(statement, session)) {
+            throw new IllegalArgumentException("Invalid cursor: issued for another statement");
+        }
+        return pagingState;
+    }
+
+    private byte[] mac(byte[] content, int length) {
+        try {
+            Mac mac = Mac.getInstance(ALGORITHM);
+            mac.init(key);
+            mac.update(content, 0, length);
+            return Arrays.copyOf(mac.doFinal(), MAC_LENGTH);
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("Cannot compute " + ALGORITHM, e);
+        }
+    }
+
+}
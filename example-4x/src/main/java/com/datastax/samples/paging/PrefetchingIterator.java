@@ -0,0 +1,230 @@
+package com.datastax.samples.paging;
+
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+import com.datastax.oss.driver.api.core.AsyncPagingIterable;
+
+/**
+ * Iterate over all pages of an asynchronous result, fetching the next pages while the
+ * current one is consumed.
+ *
+ * Iterating a synchronous ResultSet (CRUD_02) only requests page N+1 once page N is
+ * exhausted: the caller waits a full round trip for each page. Here up to 'prefetchPages'
+ * pages are requested ahead (one after the other, the paging state of a page is needed to
+ * fetch the next one), as long as the pages buffered stay under 'maxBufferedBytes'
+ * (size of the responses).
+ *
+ * Works with anything paged asynchronously: AsyncResultSet (see CRUD_02) and the
+ * MappedAsyncPagingIterable of mapper DAOs.
+ *
+ * <pre>
+ * try (Stream&lt;Row&gt; rows = PrefetchingIterator.stream(session.executeAsync(statement))) {
+ *     rows.forEach(...);
+ * }
+ * </pre>
+ *
+ * @param <T>
+ *      type of the elements, Row or mapped entity
+ */
+public class PrefetchingIterator<T> implements Iterator<T> {
+
+    /** Pages requested ahead by default. */
+    public static final int DEFAULT_PREFETCH_PAGES = 2;
+
+    /** Memory cap by default, 16 MiB of responses. */
+    public static final long DEFAULT_MAX_BUFFERED_BYTES = 16 * 1024 * 1024;
+
+    private final int prefetchPages;
+
+    private final long maxBufferedBytes;
+
+    /** Pages requested and not consumed yet, in order. */
+    private final Deque<CompletableFuture<AsyncPagingIterable<T, ?>>> ahead = new ArrayDeque<>();
+
+    /** Last page received, the next one is fetched from it. */
+    private AsyncPagingIterable<T, ?> lastPage;
+
+    /** A page is being fetched. */
+    private boolean fetching;
+
+    /** No more pages to fetch (last page received or error). */
+    private boolean exhausted;
+
+    /** Size of the received pages not consumed yet. */
+    private long bufferedBytes;
+
+    /** Elements of the page being consumed. */
+    private Iterator<T> current = Collections.emptyIterator();
+
+    /**
+     * Iterator with default prefetch depth and memory cap.
+     *
+     * @param firstPage
+     *      first page, as returned by executeAsync() or an asynchronous DAO method
+     */
+    public PrefetchingIterator(CompletionStage<? extends AsyncPagingIterable<T, ?>> firstPage) {
+        this(firstPage, DEFAULT_PREFETCH_PAGES, DEFAULT_MAX_BUFFERED_BYTES);
+    }
+
+    /**
+     * Iterator with given prefetch depth and memory cap.
+     *
+     * @param firstPage
+     *      first page, as returned by executeAsync() or an asynchronous DAO method
+     * @param prefetchPages
+     *      pages requested ahead of the page consumed, at least 1
+     * @param maxBufferedBytes
+     *      no new page is requested when the pages received and not consumed reach this size
+     */
+    public PrefetchingIterator(CompletionStage<? extends AsyncPagingIterable<T, ?>> firstPage,
+            int prefetchPages, long maxBufferedBytes) {
+        if (prefetchPages < 1) {
+            throw new IllegalArgumentException("prefetchPages must be positive");
+        }
+        this.prefetchPages    = prefetchPages;
+        this.maxBufferedBytes = maxBufferedBytes;
+        synchronized (this) {
+            fetching = true;
+            ahead.add(track(firstPage));
+        }
+    }
+
+    /**
+     * Stream over all pages with default prefetch depth and memory cap.
+     *
+     * @param firstPage
+     *      first page
+     * @param <T>
+     *      type of the elements
+     * @return
+     *      sequential stream
+     */
+    public static <T> Stream<T> stream(CompletionStage<? extends AsyncPagingIterable<T, ?>> firstPage) {
+        return new PrefetchingIterator<T>(firstPage).stream();
+    }
+
+    /**
+     * Remaining elements as a sequential stream.
+     *
+     * @return
+     *      stream backed by this iterator
+     */
+    public Stream<T> stream() {
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(this,
+                Spliterator.ORDERED | Spliterator.NONNULL), false);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public boolean hasNext() {
+        while (!current.hasNext()) {
+            CompletableFuture<AsyncPagingIterable<T, ?>> next;
+            synchronized (this) {
+                if (ahead.isEmpty()) {
+                    fetchIfNeeded();
+                    if (ahead.isEmpty()) {
+                        return false;
+                    }
+                }
+                next = ahead.poll();
+            }
+            AsyncPagingIterable<T, ?> page;
+            try {
+                page = next.join();
+            } catch (CompletionException e) {
+                if (e.getCause() instanceof RuntimeException) {
+                    throw (RuntimeException) e.getCause();
+                }
+                throw e;
+            }
+            synchronized (this) {
+                bufferedBytes -= sizeOf(page);
+                fetchIfNeeded();
+            }
+            current = page.currentPage().iterator();
+        }
+        return true;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public T next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        return current.next();
+    }
+
+    /**
+     * Pages received and not consumed, plus the one in flight.
+     *
+     * @return
+     *      number of pages ahead of the current one
+     */
+    public synchronized int getPagesAhead() {
+        return ahead.size();
+    }
+
+    /**
+     * Getter accessor for attribute 'bufferedBytes'.
+     *
+     * @return current value of 'bufferedBytes'
+     */
+    public synchronized long getBufferedBytes() {
+        return bufferedBytes;
+    }
+
+    /**
+     * Request the page after the last one received, if allowed by depth and memory cap.
+     * Pages are fetched one at a time, each one from the previous.
+     */
+    private synchronized void fetchIfNeeded() {
+        if (fetching || exhausted || ahead.size() >= prefetchPages || bufferedBytes >= maxBufferedBytes) {
+            return;
+        }
+        if (!lastPage.hasMorePages()) {
+            exhausted = true;
+            return;
+        }
+        fetching = true;
+        ahead.add(track(lastPage.fetchNextPage()));
+    }
+
+    /**
+     * State is updated before the page future completes: a consumer joining it always sees
+     * the page as the last one received.
+     */
+    private CompletableFuture<AsyncPagingIterable<T, ?>> track(CompletionStage<? extends AsyncPagingIterable<T, ?>> stage) {
+        CompletableFuture<AsyncPagingIterable<T, ?>> page = stage.toCompletableFuture()
+                .<AsyncPagingIterable<T, ?>>handle((received, error) -> {
+                    synchronized (this) {
+                        fetching = false;
+                        if (error != null) {
+                            exhausted = true;
+                            throw error instanceof CompletionException ? (CompletionException) error : new CompletionException(error);
+                        }
+                        lastPage = received;
+                        bufferedBytes += sizeOf(received);
+                    }
+                    return received;
+                });
+        page.thenRun(this::fetchIfNeeded);
+        return page;
+    }
+
+    private static long sizeOf(AsyncPagingIterable<?, ?> page) {
+        return Math.max(0, page.getExecutionInfo().getResponseSizeInBytes());
+    }
+
+}
@@ -0,0 +1,107 @@
+package com.datastax.samples.scan;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Outcome of a {@link TableExporter} run: rows, bytes, files and throughput.
+ */
+public class ExportReport {
+
+    private final long rows;
+
+    private final long bytes;
+
+    private final List<Path> files;
+
+    private final Duration elapsed;
+
+    /**
+     * Report of a run.
+     *
+     * @param rows
+     *      rows written
+     * @param bytes
+     *      bytes serialized, before compression
+     * @param files
+     *      files written, in order
+     * @param elapsed
+     *      time of the whole run
+     */
+    public ExportReport(long rows, long bytes, List<Path> files, Duration elapsed) {
+        this.rows    = rows;
+        this.bytes   = bytes;
+        this.files   = Collections.unmodifiableList(files);
+        this.elapsed = elapsed;
+    }
+
+    /**
+     * Exported rows per second over the run.
+     *
+     * @return
+     *      throughput
+     */
+    public double getRowsPerSecond() {
+        long nanos = elapsed.toNanos();
+        return nanos == 0 ? 0 : rows * (double) TimeUnit.SECONDS.toNanos(1) / nanos;
+    }
+
+    /**
+     * Serialized megabytes (before compression) per second over the run.
+     *
+     * @return
+     *      throughput
+     */
+    public double getMegabytesPerSecond() {
+        long nanos = elapsed.toNanos();
+        return nanos == 0 ? 0 : bytes / (1024d * 1024d) * TimeUnit.SECONDS.toNanos(1) / nanos;
+    }
+
+    /**
+     * Getter accessor for attribute 'rows'.
+     *
+     * @return current value of 'rows'
+     */
+    public long getRows() {
+        return rows;
+    }
+
+    /**
+     * Getter accessor for attribute 'bytes'.
+     *
+     * @return current value of 'bytes'
+     */
+    public long getBytes() {
+        return bytes;
+    }
+
+    /**
+     * Getter accessor for attribute 'files'.
+     *
+     * @return current value of 'files'
+     */
+    public List<Path> getFiles() {
+        return files;
+    }
+
+    /**
+     * Getter accessor for attribute 'elapsed'.
+     *
+     * @return current value of 'elapsed'
+     */
+    public Duration getElapsed() {
+        return elapsed;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public String toString() {
+        return String.format("%d rows, %.1f MB in %d file(s), %d ms (%.0f rows/s, %.2f MB/s)",
+                rows, bytes / (1024d * 1024d), files.size(), elapsed.toMillis(),
+                getRowsPerSecond(), getMegabytesPerSecond());
+    }
+
+}
@@ -0,0 +1,419 @@
+package com.datastax.samples.scan;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.net.InetAddress;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.zip.GZIPOutputStream;
+
+import org.reactivestreams.Publisher;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.datastax.oss.driver.api.core.cql.ColumnDefinitions;
+import com.datastax.oss.driver.api.core.cql.Row;
+import com.datastax.oss.driver.api.core.data.TupleValue;
+import com.datastax.oss.driver.api.core.data.UdtValue;
+import com.datastax.oss.driver.api.core.type.codec.TypeCodec;
+import com.datastax.oss.protocol.internal.util.Bytes;
+
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+/**
+ * Write the rows of a query or of a whole table to CSV or NDJSON files.
+ *
+ * Rows come from any publisher: 'session.executeReactive(statement)' for a single query or
+ * {@link TableScanner#flux()} for a parallel scan by token ranges. They are written on a
+ * dedicated thread (never on driver threads) and at most 'bufferRows' rows are requested
+ * ahead of the writer: when the disk is slower than the cluster, pages are simply requested
+ * later. Memory stays the same whatever the size of the table.
+ *
+ * Files are named '[baseName]-00001.csv' ('.gz' appended with gzip) and a new file is
+ * started when the current one reaches 'maxFileBytes' (size before compression). Each CSV
+ * file starts with the header line so that files can be loaded independently.
+ *
+ * <pre>
+ * ExportReport report = new TableExporter(Paths.get("export"), "users", Format.NDJSON)
+ *    .withGzip(true)
+ *    .withMaxFileBytes(64 * 1024 * 1024)
+ *    .export(new TableScanner(session, "users").flux());
+ * </pre>
+ */
+public class TableExporter {
+
+    /** Logger for the class. */
+    private static Logger LOGGER = LoggerFactory.getLogger(TableExporter.class);
+
+    /** Buffer of the file streams. */
+    private static final int STREAM_BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * Output formats.
+     */
+    public enum Format {
+
+        /** Comma separated values (RFC 4180), with header. */
+        CSV("csv"),
+
+        /** One JSON object per line. */
+        NDJSON("ndjson");
+
+        private final String extension;
+
+        private Format(String extension) {
+            this.extension = extension;
+        }
+    }
+
+    private final Path directory;
+
+    private final String baseName;
+
+    private final Format format;
+
+    private boolean gzip;
+
+    /** 0 to write a single file. */
+    private long maxFileBytes;
+
+    private int bufferRows = 1000;
+
+    private char delimiter = ',';
+
+    /**
+     * Exporter writing in a directory.
+     *
+     * @param directory
+     *      target directory, created if needed
+     * @param baseName
+     *      start of the file names, usually the table name
+     * @param format
+     *      output format
+     */
+    public TableExporter(Path directory, String baseName, Format format) {
+        this.directory = Objects.requireNonNull(directory);
+        this.baseName  = Objects.requireNonNull(baseName);
+        this.format    = Objects.requireNonNull(format);
+    }
+
+    /**
+     * Compress files with gzip, defaults to false.
+     *
+     * @param gzip
+     *      compression flag
+     * @return
+     *      current instance
+     */
+    public TableExporter withGzip(boolean gzip) {
+        this.gzip = gzip;
+        return this;
+    }
+
+    /**
+     * Start a new file when the current one reaches this size (before compression).
+     *
+     * @param maxFileBytes
+     *      size of a file, 0 for a single file (default)
+     * @return
+     *      current instance
+     */
+    public TableExporter withMaxFileBytes(long maxFileBytes) {
+        if (maxFileBytes < 0) {
+            throw new IllegalArgumentException("maxFileBytes must not be negative");
+        }
+        this.maxFileBytes = maxFileBytes;
+        return this;
+    }
+
+    /**
+     * Rows requested ahead of the writer, defaults to 1000.
+     *
+     * @param bufferRows
+     *      buffer size in rows
+     * @return
+     *      current instance
+     */
+    public TableExporter withBufferRows(int bufferRows) {
+        if (bufferRows < 1) {
+            throw new IllegalArgumentException("bufferRows must be positive");
+        }
+        this.bufferRows = bufferRows;
+        return this;
+    }
+
+    /**
+     * CSV delimiter, defaults to ','.
+     *
+     * @param delimiter
+     *      column delimiter
+     * @return
+     *      current instance
+     */
+    public TableExporter withDelimiter(char delimiter) {
+        this.delimiter = delimiter;
+        return this;
+    }
+
+    /**
+     * Write all rows and wait for the end.
+     *
+     * @param rows
+     *      rows to export
+     * @return
+     *      report of the export
+     */
+    public ExportReport export(Publisher<? extends Row> rows) {
+        return exportReactive(rows).block();
+    }
+
+    /**
+     * Write all rows when subscribed, files are closed on error or cancellation.
+     *
+     * @param rows
+     *      rows to export
+     * @return
+     *      report of the export
+     */
+    public Mono<ExportReport> exportReactive(Publisher<? extends Row> rows) {
+        return Mono.defer(() -> {
+            Scheduler writerThread = Schedulers.newSingle("export-" + baseName);
+            Output output = new Output();
+            return Flux.from(rows)
+                       .publishOn(writerThread, bufferRows)
+                       .doOnNext(output::write)
+                       .then(Mono.fromCallable(output::finish))
+                       // On the writer thread, after a write in progress when cancelled
+                       .doFinally(signal -> writerThread.schedule(() -> {
+                           output.close();
+                           writerThread.dispose();
+                       }));
+        });
+    }
+
+    /**
+     * Files of one export, only used from the writer thread.
+     */
+    private class Output {
+
+        private final long startNanos = System.nanoTime();
+
+        private final List<Path> files = new ArrayList<>();
+
+        private ColumnDefinitions columns;
+
+        private OutputStream stream;
+
+        private long fileBytes;
+
+        private long rows;
+
+        private long bytes;
+
+        private void write(Row row) {
+            if (columns == null) {
+                columns = row.getColumnDefinitions();
+            }
+            try {
+                if (stream == null || (maxFileBytes > 0 && fileBytes >= maxFileBytes)) {
+                    rotate();
+                }
+                writeLine(format == Format.CSV ? csv(row) : json(row));
+                rows++;
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        private void rotate() throws IOException {
+            close();
+            Files.createDirectories(directory);
+            Path file = directory.resolve(String.format("%s-%05d.%s%s",
+                    baseName, files.size() + 1, format.extension, gzip ? ".gz" : ""));
+            OutputStream out = Files.newOutputStream(file);
+            stream = new BufferedOutputStream(gzip ? new GZIPOutputStream(out, STREAM_BUFFER_SIZE) : out, STREAM_BUFFER_SIZE);
+            files.add(file);
+            fileBytes = 0;
+            LOGGER.info("+ Writing {}", file);
+            if (format == Format.CSV) {
+                writeLine(csvHeader());
+            }
+        }
+
+        private void writeLine(StringBuilder line) throws IOException {
+            byte[] content = line.append('\n').toString().getBytes(StandardCharsets.UTF_8);
+            stream.write(content);
+            fileBytes += content.length;
+            bytes += content.length;
+        }
+
+        private ExportReport finish() throws IOException {
+            if (stream != null) {
+                stream.close();
+                stream = null;
+            }
+            ExportReport report = new ExportReport(rows, bytes, files, Duration.ofNanos(System.nanoTime() - startNanos));
+            LOGGER.info("[OK] Exported {}", report);
+            return report;
+        }
+
+        private void close() {
+            if (stream != null) {
+                try {
+                    stream.close();
+                } catch (IOException e) {
+                    LOGGER.warn("Cannot close export file: {}", e.getMessage());
+                }
+                stream = null;
+            }
+        }
+
+        private StringBuilder csvHeader() {
+            StringBuilder line = new StringBuilder();
+            for (int i = 0; i < columns.size(); i++) {
+                if (i > 0) {
+                    line.append(delimiter);
+                }
+                appendCsv(line, columns.get(i).getName().asInternal());
+            }
+            return line;
+        }
+
+        private StringBuilder csv(Row row) {
+            StringBuilder line = new StringBuilder();
+            for (int i = 0; i < columns.size(); i++) {
+                if (i > 0) {
+                    line.append(delimiter);
+                }
+                Object value = row.getObject(i);
+                if (value instanceof ByteBuffer) {
+                    line.append(Bytes.toHexString((ByteBuffer) value));
+                } else if (value instanceof Collection || value instanceof Map
+                        || value instanceof UdtValue || value instanceof TupleValue) {
+                    // CQL literal, as expected by cqlsh COPY FROM
+                    TypeCodec<Object> codec = row.codecRegistry().codecFor(row.getType(i));
+                    appendCsv(line, codec.format(value));
+                } else if (value != null) {
+                    appendCsv(line, value instanceof InetAddress ? ((InetAddress) value).getHostAddress() : value.toString());
+                }
+            }
+            return line;
+        }
+
+        private void appendCsv(StringBuilder line, String value) {
+            if (value.indexOf(delimiter) < 0 && value.indexOf('"') < 0
+                    && value.indexOf('\n') < 0 && value.indexOf('\r') < 0) {
+                line.append(value);
+                return;
+            }
+            line.append('"').append(value.replace("\"", "\"\"")).append('"');
+        }
+
+        private StringBuilder json(Row row) {
+            StringBuilder line = new StringBuilder("{");
+            for (int i = 0; i < columns.size(); i++) {
+                if (i > 0) {
+                    line.append(',');
+                }
+                appendJsonString(line, columns.get(i).getName().asInternal());
+                line.append(':');
+                appendJson(line, row.getObject(i));
+            }
+            return line.append('}');
+        }
+
+        /**
+         * Same representation as 'SELECT JSON': blobs in hex, dates and uuids as strings.
+         */
+        private void appendJson(StringBuilder line, Object value) {
+            if (value == null) {
+                line.append("null");
+            } else if (value instanceof Boolean || (value instanceof Number && isFinite((Number) value))) {
+                line.append(value);
+            } else if (value instanceof ByteBuffer) {
+                appendJsonString(line, Bytes.toHexString((ByteBuffer) value));
+            } else if (value instanceof InetAddress) {
+                appendJsonString(line, ((InetAddress) value).getHostAddress());
+            } else if (value instanceof Collection) {
+                line.append('[');
+                boolean first = true;
+                for (Object element : (Collection<?>) value) {
+                    line.append(first ? "" : ",");
+                    appendJson(line, element);
+                    first = false;
+                }
+                line.append(']');
+            } else if (value instanceof Map) {
+                line.append('{');
+                boolean first = true;
+                for (Map.Entry<?, ?> entry : ((Map<?, ?>) value).entrySet()) {
+                    line.append(first ? "" : ",");
+                    appendJsonString(line, String.valueOf(entry.getKey()));
+                    line.append(':');
+                    appendJson(line, entry.getValue());
+                    first = false;
+                }
+                line.append('}');
+            } else if (value instanceof UdtValue) {
+                UdtValue udt = (UdtValue) value;
+                line.append('{');
+                for (int i = 0; i < udt.size(); i++) {
+                    line.append(i > 0 ? "," : "");
+                    appendJsonString(line, udt.getType().getFieldNames().get(i).asInternal());
+                    line.append(':');
+                    appendJson(line, udt.getObject(i));
+                }
+                line.append('}');
+            } else if (value instanceof TupleValue) {
+                TupleValue tuple = (TupleValue) value;
+                line.append('[');
+                for (int i = 0; i < tuple.size(); i++) {
+                    line.append(i > 0 ? "," : "");
+                    appendJson(line, tuple.getObject(i));
+                }
+                line.append(']');
+            } else {
+                appendJsonString(line, value.toString());
+            }
+        }
+
+        private boolean isFinite(Number number) {
+            return !(number instanceof Double || number instanceof Float) || Double.isFinite(number.doubleValue());
+        }
+
+        private void appendJsonString(StringBuilder line, String value) {
+            line.append('"');
+            for (int i = 0; i < value.length(); i++) {
+                char c = value.charAt(i);
+                switch (c) {
+                    case '"':  line.append("\\\""); break;
+                    case '\\': line.append("\\\\"); break;
+                    case '\n': line.append("\\n");  break;
+                    case '\r': line.append("\\r");  break;
+                    case '\t': line.append("\\t");  break;
+                    default:
+                        if (c < 0x20) {
+                            line.append(String.format("\\u%04x", (int) c));
+                        } else {
+                            line.append(c);
+                        }
+                }
+            }
+            line.append('"');
+        }
+    }
+
+}
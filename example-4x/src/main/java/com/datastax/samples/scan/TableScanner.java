@@ -0,0 +1,427 @@
+package com.datastax.samples.scan;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.datastax.dse.driver.api.core.cql.reactive.ReactiveRow;
+import com.datastax.oss.driver.api.core.CqlIdentifier;
+import com.datastax.oss.driver.api.core.CqlSession;
+import com.datastax.oss.driver.api.core.cql.AsyncResultSet;
+import com.datastax.oss.driver.api.core.cql.BoundStatement;
+import com.datastax.oss.driver.api.core.cql.PreparedStatement;
+import com.datastax.oss.driver.api.core.cql.Row;
+import com.datastax.oss.driver.api.core.cql.SimpleStatement;
+import com.datastax.oss.driver.api.core.metadata.Node;
+import com.datastax.oss.driver.api.core.metadata.NodeState;
+import com.datastax.oss.driver.api.core.metadata.TokenMap;
+import com.datastax.oss.driver.api.core.metadata.schema.ColumnMetadata;
+import com.datastax.oss.driver.api.core.metadata.schema.TableMetadata;
+import com.datastax.oss.driver.api.core.metadata.token.TokenRange;
+import com.datastax.oss.driver.api.querybuilder.QueryBuilder;
+import com.datastax.oss.driver.api.querybuilder.select.Select;
+import com.datastax.oss.driver.api.querybuilder.select.SelectFrom;
+
+import reactor.core.publisher.Flux;
+
+/**
+ * Read a whole table by token ranges, several ranges at a time.
+ *
+ * 'SELECT * FROM users' is served by a single coordinator which queries the replicas range
+ * after range, one page at a time: the scan never goes faster than one node, whatever the
+ * size of the cluster. Here the ring is split into sub-ranges using the token map of the
+ * session, each one read with 'WHERE token(pk) > ? AND token(pk) <= ?' and routed to one of
+ * its replicas. 'parallelism' ranges are read at the same time, so the scan scales with the
+ * number of nodes and client cores.
+ *
+ * The number of sub-ranges is either given, computed from the estimated partition count
+ * (system.size_estimates) or defaults to 4 per parallel reader to balance uneven ranges.
+ *
+ * <pre>
+ * long count = new TableScanner(session, "users")
+ *    .withParallelism(16)
+ *    .scan(row -> process(row));
+ * </pre>
+ */
+public class TableScanner {
+
+    /** Logger for the class. */
+    private static Logger LOGGER = LoggerFactory.getLogger(TableScanner.class);
+
+    /** Estimated partitions of the local ranges of a node. */
+    private static final String SIZE_ESTIMATES = "SELECT partitions_count FROM system.size_estimates "
+            + "WHERE keyspace_name = ? AND table_name = ?";
+
+    /** Sub-ranges per parallel reader when nothing else is specified. */
+    private static final int DEFAULT_SPLITS_PER_READER = 4;
+
+    private final CqlSession session;
+
+    private final CqlIdentifier keyspace;
+
+    private final CqlIdentifier table;
+
+    private List<CqlIdentifier> partitionKey;
+
+    private List<CqlIdentifier> columns = new ArrayList<>();
+
+    private int parallelism = Math.max(4, Runtime.getRuntime().availableProcessors());
+
+    private int splits;
+
+    private long partitionsPerSplit;
+
+    private int pageSize;
+
+    /** Statements reading a range (start, end], (start, end of the ring] and the whole ring. */
+    private PreparedStatement stmtScanRange;
+    private PreparedStatement stmtScanTail;
+    private PreparedStatement stmtScanAll;
+
+    /**
+     * Scanner for a table of the session keyspace.
+     *
+     * @param session
+     *      session connected to a keyspace
+     * @param table
+     *      table name
+     */
+    public TableScanner(CqlSession session, String table) {
+        this(session, session.getKeyspace().orElseThrow(
+                () -> new IllegalArgumentException("Session has no keyspace")).asInternal(), table);
+    }
+
+    /**
+     * Scanner for a table.
+     *
+     * @param session
+     *      current session
+     * @param keyspace
+     *      keyspace name
+     * @param table
+     *      table name
+     */
+    public TableScanner(CqlSession session, String keyspace, String table) {
+        this.session  = Objects.requireNonNull(session);
+        this.keyspace = CqlIdentifier.fromCql(keyspace);
+        this.table    = CqlIdentifier.fromCql(table);
+    }
+
+    /**
+     * Partition key columns, read from the schema metadata if not provided.
+     *
+     * @param partitionKey
+     *      partition key columns in order
+     * @return
+     *      current instance
+     */
+    public TableScanner withPartitionKey(String... partitionKey) {
+        this.partitionKey = Arrays.stream(partitionKey).map(CqlIdentifier::fromCql).collect(Collectors.toList());
+        return this;
+    }
+
+    /**
+     * Columns to read, all by default.
+     *
+     * @param columns
+     *      column names
+     * @return
+     *      current instance
+     */
+    public TableScanner withColumns(String... columns) {
+        this.columns = Arrays.stream(columns).map(CqlIdentifier::fromCql).collect(Collectors.toList());
+        return this;
+    }
+
+    /**
+     * Ranges read at the same time, defaults to the number of cores (at least 4).
+     *
+     * @param parallelism
+     *      concurrent range queries
+     * @return
+     *      current instance
+     */
+    public TableScanner withParallelism(int parallelism) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("parallelism must be positive");
+        }
+        this.parallelism = parallelism;
+        return this;
+    }
+
+    /**
+     * Minimum number of sub-ranges, a token range of the ring is never merged with another.
+     *
+     * @param splits
+     *      number of sub-ranges
+     * @return
+     *      current instance
+     */
+    public TableScanner withSplits(int splits) {
+        this.splits = splits;
+        return this;
+    }
+
+    /**
+     * Size sub-ranges from the partition count estimated by each node (system.size_estimates).
+     *
+     * @param partitionsPerSplit
+     *      expected partitions per sub-range
+     * @return
+     *      current instance
+     */
+    public TableScanner withSizeEstimates(long partitionsPerSplit) {
+        this.partitionsPerSplit = partitionsPerSplit;
+        return this;
+    }
+
+    /**
+     * Page size of range queries, defaults to the configuration ('basic.request.page-size').
+     *
+     * @param pageSize
+     *      rows per page
+     * @return
+     *      current instance
+     */
+    public TableScanner withPageSize(int pageSize) {
+        this.pageSize = pageSize;
+        return this;
+    }
+
+    /**
+     * Split the ring: each token range of the token map is split evenly, wrapping ranges
+     * are unwrapped.
+     *
+     * @return
+     *      non wrapping sub-ranges covering the whole ring
+     */
+    public List<TokenRange> splits() {
+        TokenMap tokenMap = session.getMetadata().getTokenMap().orElseThrow(
+                () -> new IllegalStateException("Token metadata is not available, cannot split the ring"));
+        List<TokenRange> ring = new ArrayList<>(tokenMap.getTokenRanges());
+        int target = splits;
+        if (partitionsPerSplit > 0) {
+            target = (int) Math.max(target, Math.min(Integer.MAX_VALUE, estimatePartitions() / partitionsPerSplit));
+        }
+        if (target <= 0) {
+            target = parallelism * DEFAULT_SPLITS_PER_READER;
+        }
+        int perRange = (target + ring.size() - 1) / ring.size();
+        List<TokenRange> result = new ArrayList<>();
+        for (TokenRange range : ring) {
+            for (TokenRange split : perRange > 1 ? range.splitEvenly(perRange) : Arrays.asList(range)) {
+                result.addAll(split.unwrap());
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Read all rows, the consumer is invoked concurrently for rows of different ranges
+     * (from driver threads, it must not block).
+     *
+     * @param consumer
+     *      thread-safe row consumer
+     * @return
+     *      number of rows read
+     */
+    public long scan(Consumer<? super Row> consumer) {
+        try {
+            return scanAsync(consumer).toCompletableFuture().join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Read all rows asynchronously.
+     *
+     * @param consumer
+     *      thread-safe row consumer
+     * @return
+     *      number of rows read, failed with the first error (no new range is read)
+     */
+    public CompletionStage<Long> scanAsync(Consumer<? super Row> consumer) {
+        prepare();
+        List<TokenRange> ranges = splits();
+        return new Run(ranges, consumer).start();
+    }
+
+    /**
+     * Rows as a publisher, ranges are read 'parallelism' at a time with backpressure.
+     *
+     * @return
+     *      rows of all ranges, interleaved
+     */
+    public Flux<ReactiveRow> flux() {
+        return Flux.defer(() -> {
+            prepare();
+            return Flux.fromIterable(splits())
+                       .flatMap(range -> Flux.from(session.executeReactive(bind(range))), parallelism);
+        });
+    }
+
+    /**
+     * Rows as a stream, to be closed when not read until the end.
+     *
+     * @return
+     *      rows of all ranges, interleaved
+     */
+    public Stream<Row> stream() {
+        return flux().<Row>map(row -> row).toStream();
+    }
+
+    private synchronized void prepare() {
+        if (stmtScanRange != null) {
+            return;
+        }
+        if (partitionKey == null) {
+            partitionKey = session.getMetadata().getKeyspace(keyspace)
+                    .flatMap(ks -> ks.getTable(table))
+                    .map(TableMetadata::getPartitionKey)
+                    .orElseThrow(() -> new IllegalArgumentException("Table " + keyspace + "." + table + " not found"))
+                    .stream().map(ColumnMetadata::getName).collect(Collectors.toList());
+        }
+        CqlIdentifier[] pk = partitionKey.toArray(new CqlIdentifier[0]);
+        SelectFrom from = QueryBuilder.selectFrom(keyspace, table);
+        Select select = columns.isEmpty() ? from.all() : from.columnsIds(columns);
+        stmtScanAll   = session.prepare(select.build().setIdempotent(true));
+        select = select.whereToken(pk).isGreaterThan(QueryBuilder.bindMarker());
+        stmtScanTail  = session.prepare(select.build().setIdempotent(true));
+        stmtScanRange = session.prepare(select.whereToken(pk).isLessThanOrEqualTo(QueryBuilder.bindMarker())
+                                              .build().setIdempotent(true));
+    }
+
+    /**
+     * A sub-range ending before its start after unwrap() ends with the ring. A range starting
+     * where it ends is the whole ring (single token cluster, not split): no token bound.
+     */
+    private BoundStatement bind(TokenRange range) {
+        int order = range.getEnd().compareTo(range.getStart());
+        BoundStatement statement = order == 0
+                ? stmtScanAll.bind()
+                : order < 0
+                ? stmtScanTail.boundStatementBuilder().setToken(0, range.getStart()).build()
+                : stmtScanRange.boundStatementBuilder()
+                               .setToken(0, range.getStart())
+                               .setToken(1, range.getEnd())
+                               .setRoutingToken(range.getEnd())
+                               .build();
+        return pageSize > 0 ? statement.setPageSize(pageSize) : statement;
+    }
+
+    /**
+     * Sum of the estimates of all nodes, each one covers its local ranges.
+     */
+    private long estimatePartitions() {
+        long total = 0;
+        for (Node node : session.getMetadata().getNodes().values()) {
+            if (node.getState() != NodeState.UP) {
+                continue;
+            }
+            SimpleStatement query = SimpleStatement.newInstance(SIZE_ESTIMATES, keyspace.asInternal(), table.asInternal())
+                                                   .setNode(node);
+            for (Row row : session.execute(query)) {
+                total += row.getLong("partitions_count");
+            }
+        }
+        LOGGER.info("+ Table {}.{} has about {} partitions", keyspace, table, total);
+        return total;
+    }
+
+    /**
+     * State of one scan.
+     */
+    private class Run {
+
+        private final Iterator<TokenRange> ranges;
+
+        private final int rangeCount;
+
+        private final Consumer<? super Row> consumer;
+
+        private final CompletableFuture<Long> result = new CompletableFuture<>();
+
+        private final LongAdder rows = new LongAdder();
+
+        private final long startNanos = System.nanoTime();
+
+        private int inFlight;
+
+        private RuntimeException failure;
+
+        private Run(List<TokenRange> ranges, Consumer<? super Row> consumer) {
+            this.ranges     = ranges.iterator();
+            this.rangeCount = ranges.size();
+            this.consumer   = consumer;
+        }
+
+        private CompletionStage<Long> start() {
+            launch();
+            return result;
+        }
+
+        private void launch() {
+            boolean finished;
+            synchronized (this) {
+                while (failure == null && inFlight < parallelism && ranges.hasNext()) {
+                    inFlight++;
+                    session.executeAsync(bind(ranges.next()))
+                           .thenCompose(this::consume)
+                           .whenComplete((v, error) -> onComplete(error));
+                }
+                finished = inFlight == 0 && (failure != null || !ranges.hasNext());
+            }
+            if (finished && !result.isDone()) {
+                if (failure != null) {
+                    result.completeExceptionally(failure);
+                } else {
+                    long elapsed = System.nanoTime() - startNanos;
+                    LOGGER.info("[OK] {} rows scanned from {} token ranges in {} ms ({} rows/s)",
+                            rows.sum(), rangeCount, TimeUnit.NANOSECONDS.toMillis(elapsed),
+                            rows.sum() * TimeUnit.SECONDS.toNanos(1) / Math.max(1, elapsed));
+                    result.complete(rows.sum());
+                }
+            }
+        }
+
+        private CompletionStage<Void> consume(AsyncResultSet page) {
+            for (Row row : page.currentPage()) {
+                consumer.accept(row);
+                rows.increment();
+            }
+            return page.hasMorePages()
+                    ? page.fetchNextPage().thenCompose(this::consume)
+                    : CompletableFuture.completedFuture(null);
+        }
+
+        private void onComplete(Throwable error) {
+            synchronized (this) {
+                inFlight--;
+                Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+                if (cause != null && failure == null) {
+                    failure = cause instanceof RuntimeException ? (RuntimeException) cause
+                            : new IllegalStateException(cause.getMessage(), cause);
+                }
+            }
+            launch();
+        }
+    }
+
+}
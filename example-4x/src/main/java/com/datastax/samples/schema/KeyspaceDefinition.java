@@ -0,0 +1,113 @@
+package com.datastax.samples.schema;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import com.datastax.oss.driver.api.core.CqlIdentifier;
+import com.datastax.oss.driver.api.core.cql.SimpleStatement;
+import com.datastax.oss.driver.api.querybuilder.SchemaBuilder;
+
+/**
+ * Expected keyspace: replication options and durable writes.
+ *
+ * <pre>
+ * new KeyspaceDefinition("killrvideo").withSimpleStrategy(1);
+ * </pre>
+ */
+public class KeyspaceDefinition extends SchemaObject {
+
+    /** Replication options, values as stored in the metadata. */
+    private final Map<String, String> replication = new LinkedHashMap<>();
+
+    private boolean durableWrites = true;
+
+    /**
+     * Keyspace with SimpleStrategy and one replica until replication is set.
+     *
+     * @param name
+     *      keyspace name, CQL form
+     */
+    public KeyspaceDefinition(String name) {
+        super(ObjectType.KEYSPACE, CqlIdentifier.fromCql(name), CqlIdentifier.fromCql(name));
+        withSimpleStrategy(1);
+    }
+
+    /**
+     * Replicas in the whole cluster.
+     *
+     * @param replicationFactor
+     *      number of replicas
+     * @return
+     *      current instance
+     */
+    public KeyspaceDefinition withSimpleStrategy(int replicationFactor) {
+        if (replicationFactor < 1) {
+            throw new IllegalArgumentException("replicationFactor must be positive");
+        }
+        replication.clear();
+        replication.put("class", "SimpleStrategy");
+        replication.put("replication_factor", String.valueOf(replicationFactor));
+        return this;
+    }
+
+    /**
+     * Replicas per datacenter.
+     *
+     * @param replicationFactors
+     *      number of replicas by datacenter name
+     * @return
+     *      current instance
+     */
+    public KeyspaceDefinition withNetworkTopologyStrategy(Map<String, Integer> replicationFactors) {
+        if (replicationFactors.isEmpty()) {
+            throw new IllegalArgumentException("replicationFactors must not be empty");
+        }
+        replication.clear();
+        replication.put("class", "NetworkTopologyStrategy");
+        replicationFactors.forEach((dc, rf) -> replication.put(dc, String.valueOf(rf)));
+        return this;
+    }
+
+    /**
+     * Commit log for the writes of the keyspace, defaults to true.
+     *
+     * @param durableWrites
+     *      if writes go to the commit log
+     * @return
+     *      current instance
+     */
+    public KeyspaceDefinition withDurableWrites(boolean durableWrites) {
+        this.durableWrites = durableWrites;
+        return this;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public SimpleStatement createStatement() {
+        return SchemaBuilder.createKeyspace(getName())
+                .ifNotExists()
+                .withReplicationOptions(new LinkedHashMap<>(replication))
+                .withDurableWrites(durableWrites)
+                .build();
+    }
+
+    /**
+     * Getter accessor for attribute 'replication'.
+     *
+     * @return current value of 'replication'
+     */
+    public Map<String, String> getReplication() {
+        return Collections.unmodifiableMap(replication);
+    }
+
+    /**
+     * Getter accessor for attribute 'durableWrites'.
+     *
+     * @return current value of 'durableWrites'
+     */
+    public boolean isDurableWrites() {
+        return durableWrites;
+    }
+
+}
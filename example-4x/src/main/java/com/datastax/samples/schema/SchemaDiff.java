@@ -0,0 +1,175 @@
+package com.datastax.samples.schema;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import com.datastax.oss.driver.api.core.cql.SimpleStatement;
+
+/**
+ * Differences between the expected schema and the cluster metadata, computed by
+ * {@link SchemaReconciler}.
+ */
+public class SchemaDiff {
+
+    /**
+     * State of a schema object.
+     */
+    public enum Status {
+        /** Object exists as expected, nothing to do. */
+        UP_TO_DATE,
+        /** Columns or fields are missing, added with ALTER. */
+        INCOMPLETE,
+        /** Object does not exist, created. */
+        MISSING,
+        /** Object exists but differs in a way DDL cannot fix safely (key, type...), reported only. */
+        DRIFT
+    }
+
+    /**
+     * Diff of one schema object.
+     */
+    public static class Entry {
+
+        private final SchemaObject expected;
+
+        private final Status status;
+
+        private final List<String> differences;
+
+        private final List<SimpleStatement> statements;
+
+        /**
+         * Diff of an object.
+         *
+         * @param expected
+         *      definition of the object
+         * @param status
+         *      state of the object
+         * @param differences
+         *      human readable differences
+         * @param statements
+         *      DDL to send to reconcile the object
+         */
+        public Entry(SchemaObject expected, Status status, List<String> differences, List<SimpleStatement> statements) {
+            this.expected    = expected;
+            this.status      = status;
+            this.differences = Collections.unmodifiableList(differences);
+            this.statements  = Collections.unmodifiableList(statements);
+        }
+
+        /**
+         * Getter accessor for attribute 'expected'.
+         *
+         * @return current value of 'expected'
+         */
+        public SchemaObject getExpected() {
+            return expected;
+        }
+
+        /**
+         * Getter accessor for attribute 'status'.
+         *
+         * @return current value of 'status'
+         */
+        public Status getStatus() {
+            return status;
+        }
+
+        /**
+         * Getter accessor for attribute 'differences'.
+         *
+         * @return current value of 'differences'
+         */
+        public List<String> getDifferences() {
+            return differences;
+        }
+
+        /**
+         * Getter accessor for attribute 'statements'.
+         *
+         * @return current value of 'statements'
+         */
+        public List<SimpleStatement> getStatements() {
+            return statements;
+        }
+
+        /** {@inheritDoc} */
+        @Override
+        public String toString() {
+            String line = String.format("[%s] %s", status, expected.getObjectKey());
+            return differences.isEmpty() ? line : line + ": " + String.join(", ", differences);
+        }
+    }
+
+    private final List<Entry> entries;
+
+    /**
+     * Diff for a set of objects.
+     *
+     * @param entries
+     *      one entry per expected object
+     */
+    public SchemaDiff(List<Entry> entries) {
+        this.entries = Collections.unmodifiableList(new ArrayList<>(entries));
+    }
+
+    /**
+     * DDL needed to reconcile the schema, in declaration order.
+     *
+     * @return
+     *      statements, empty when the schema is up to date
+     */
+    public List<SimpleStatement> getStatements() {
+        return entries.stream().flatMap(e -> e.getStatements().stream()).collect(Collectors.toList());
+    }
+
+    /**
+     * Objects in a given state.
+     *
+     * @param status
+     *      expected status
+     * @return
+     *      matching entries
+     */
+    public List<Entry> getEntries(Status status) {
+        return entries.stream().filter(e -> e.getStatus() == status).collect(Collectors.toList());
+    }
+
+    /**
+     * Tell if no DDL is needed.
+     *
+     * @return
+     *      if all objects exist as expected (drifts excepted)
+     */
+    public boolean isUpToDate() {
+        return getStatements().isEmpty();
+    }
+
+    /**
+     * Getter accessor for attribute 'entries'.
+     *
+     * @return current value of 'entries'
+     */
+    public List<Entry> getEntries() {
+        return entries;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public String toString() {
+        StringBuilder report = new StringBuilder(String.format(
+                "%d objects: %d up to date, %d missing, %d incomplete, %d drift",
+                entries.size(),
+                getEntries(Status.UP_TO_DATE).size(),
+                getEntries(Status.MISSING).size(),
+                getEntries(Status.INCOMPLETE).size(),
+                getEntries(Status.DRIFT).size()));
+        entries.stream()
+               .filter(e -> e.getStatus() != Status.UP_TO_DATE || !e.getDifferences().isEmpty())
+               .forEach(e -> report.append("\n  ").append(e));
+        return report.toString();
+    }
+
+}
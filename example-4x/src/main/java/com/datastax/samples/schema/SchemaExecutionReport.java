@@ -0,0 +1,146 @@
+package com.datastax.samples.schema;
+
+import java.time.Duration;
+import java.util.Collections;
+import java.util.List;
+
+import com.datastax.oss.driver.api.core.cql.SimpleStatement;
+
+/**
+ * Outcome of a {@link SchemaExecutor} run: timing of each statement and of the schema
+ * agreement wait.
+ */
+public class SchemaExecutionReport {
+
+    /**
+     * Timing of one statement.
+     */
+    public static class StatementTiming {
+
+        private final SimpleStatement statement;
+
+        /** From the start of the run to the submission of the statement. */
+        private final Duration startOffset;
+
+        private final Duration duration;
+
+        /**
+         * Timing of a statement.
+         *
+         * @param statement
+         *      statement executed
+         * @param startOffset
+         *      time elapsed before the statement could be sent (previous stages)
+         * @param duration
+         *      execution time
+         */
+        public StatementTiming(SimpleStatement statement, Duration startOffset, Duration duration) {
+            this.statement   = statement;
+            this.startOffset = startOffset;
+            this.duration    = duration;
+        }
+
+        /**
+         * Getter accessor for attribute 'statement'.
+         *
+         * @return current value of 'statement'
+         */
+        public SimpleStatement getStatement() {
+            return statement;
+        }
+
+        /**
+         * Getter accessor for attribute 'startOffset'.
+         *
+         * @return current value of 'startOffset'
+         */
+        public Duration getStartOffset() {
+            return startOffset;
+        }
+
+        /**
+         * Getter accessor for attribute 'duration'.
+         *
+         * @return current value of 'duration'
+         */
+        public Duration getDuration() {
+            return duration;
+        }
+    }
+
+    private final List<StatementTiming> statements;
+
+    private final Duration agreementTime;
+
+    private final boolean schemaInAgreement;
+
+    private final Duration totalTime;
+
+    /**
+     * Report of a run.
+     *
+     * @param statements
+     *      statements in completion order
+     * @param agreementTime
+     *      time spent waiting for schema agreement
+     * @param schemaInAgreement
+     *      if all nodes reported the same schema version before the timeout
+     * @param totalTime
+     *      time of the whole run
+     */
+    public SchemaExecutionReport(List<StatementTiming> statements, Duration agreementTime,
+            boolean schemaInAgreement, Duration totalTime) {
+        this.statements        = Collections.unmodifiableList(statements);
+        this.agreementTime     = agreementTime;
+        this.schemaInAgreement = schemaInAgreement;
+        this.totalTime         = totalTime;
+    }
+
+    /**
+     * Sum of the statement execution times, what a sequential run would have cost
+     * (without the agreement wait after each statement).
+     *
+     * @return
+     *      cumulated execution time
+     */
+    public Duration getSequentialTime() {
+        return statements.stream().map(StatementTiming::getDuration).reduce(Duration.ZERO, Duration::plus);
+    }
+
+    /**
+     * Getter accessor for attribute 'statements'.
+     *
+     * @return current value of 'statements'
+     */
+    public List<StatementTiming> getStatements() {
+        return statements;
+    }
+
+    /**
+     * Getter accessor for attribute 'agreementTime'.
+     *
+     * @return current value of 'agreementTime'
+     */
+    public Duration getAgreementTime() {
+        return agreementTime;
+    }
+
+    /**
+     * Getter accessor for attribute 'schemaInAgreement'.
+     *
+     * @return current value of 'schemaInAgreement'
+     */
+    public boolean isSchemaInAgreement() {
+        return schemaInAgreement;
+    }
+
+    /**
+     * Getter accessor for attribute 'totalTime'.
+     *
+     * @return current value of 'totalTime'
+     */
+    public Duration getTotalTime() {
+        return totalTime;
+    }
+
+}
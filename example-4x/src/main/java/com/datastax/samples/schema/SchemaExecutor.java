@@ -0,0 +1,330 @@
+package com.datastax.samples.schema;
+
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.datastax.oss.driver.api.core.CqlSession;
+import com.datastax.oss.driver.api.core.config.DefaultDriverOption;
+import com.datastax.oss.driver.api.core.cql.Row;
+import com.datastax.oss.driver.api.core.cql.SimpleStatement;
+import com.datastax.oss.driver.api.core.metadata.Node;
+import com.datastax.oss.driver.api.core.metadata.NodeState;
+import com.datastax.oss.driver.api.querybuilder.BuildableQuery;
+import com.datastax.samples.schema.SchemaExecutionReport.StatementTiming;
+
+/**
+ * Execute a set of schema statements concurrently, stage after stage, and wait for schema
+ * agreement once at the end.
+ *
+ * Executed one after another, each DDL waits for schema agreement before the next one starts.
+ * Here the statements of a stage are sent together and the next stage starts when they are
+ * all applied (the 'video_format' type before the tables using it), all to the same
+ * coordinator so a dependency is always known where its dependents execute. Agreement is
+ * then checked once, by comparing the schema version of all nodes.
+ *
+ * The statements are sent as received: what depends on what is declared by the caller with
+ * {@link #then()}, the CQL text is never analyzed.
+ *
+ * The driver still waits for agreement after each DDL unless the session is created with
+ * 'advanced.control-connection.schema-agreement.timeout = 0' ({@link DefaultDriverOption#CONTROL_CONNECTION_AGREEMENT_TIMEOUT}):
+ * sessions used for schema bootstrap should disable it.
+ *
+ * <pre>
+ * new SchemaExecutor(session)
+ *    .addAll(ExampleUtils.dropTablesStatements())
+ *    .then()
+ *    .add(ExampleUtils.dropUdtVideoFormatStatement())
+ *    .execute();
+ * </pre>
+ */
+public class SchemaExecutor {
+
+    /** Logger for the class. */
+    private static Logger LOGGER = LoggerFactory.getLogger(SchemaExecutor.class);
+
+    /** Read the schema version of the node a statement is sent to. */
+    private static final SimpleStatement SCHEMA_VERSION =
+            SimpleStatement.newInstance("SELECT schema_version FROM system.local WHERE key='local'");
+
+    /** Same interval as the driver between two agreement checks. */
+    private static final long AGREEMENT_INTERVAL_MILLIS = 200;
+
+    private final CqlSession session;
+
+    /** Statements of each stage, the last one receives the statements added. */
+    private final List<List<SimpleStatement>> stages = new ArrayList<>();
+
+    private int maxConcurrency = 4;
+
+    private Duration agreementTimeout = Duration.ofSeconds(10);
+
+    /**
+     * Executor for a session.
+     *
+     * @param session
+     *      current session
+     */
+    public SchemaExecutor(CqlSession session) {
+        this.session = Objects.requireNonNull(session);
+        this.stages.add(new ArrayList<>());
+    }
+
+    /**
+     * Add a statement built with SchemaBuilder to the current stage.
+     *
+     * @param query
+     *      schema query
+     * @return
+     *      current instance
+     */
+    public SchemaExecutor add(BuildableQuery query) {
+        return add(query.build());
+    }
+
+    /**
+     * Add a statement to the current stage.
+     *
+     * @param statement
+     *      schema statement
+     * @return
+     *      current instance
+     */
+    public SchemaExecutor add(SimpleStatement statement) {
+        stages.get(stages.size() - 1).add(Objects.requireNonNull(statement));
+        return this;
+    }
+
+    /**
+     * Add statements to the current stage, they do not depend on each other.
+     *
+     * @param statements
+     *      schema statements
+     * @return
+     *      current instance
+     */
+    public SchemaExecutor addAll(Collection<SimpleStatement> statements) {
+        statements.forEach(this::add);
+        return this;
+    }
+
+    /**
+     * Start a new stage: statements added from now are sent once all the statements
+     * added before are applied.
+     *
+     * @return
+     *      current instance
+     */
+    public SchemaExecutor then() {
+        if (!stages.get(stages.size() - 1).isEmpty()) {
+            stages.add(new ArrayList<>());
+        }
+        return this;
+    }
+
+    /**
+     * Statements in flight at the same time, defaults to 4.
+     *
+     * @param maxConcurrency
+     *      maximum number of concurrent DDL
+     * @return
+     *      current instance
+     */
+    public SchemaExecutor withMaxConcurrency(int maxConcurrency) {
+        if (maxConcurrency < 1) {
+            throw new IllegalArgumentException("maxConcurrency must be positive");
+        }
+        this.maxConcurrency = maxConcurrency;
+        return this;
+    }
+
+    /**
+     * Maximum wait for schema agreement at the end, defaults to 10 seconds.
+     *
+     * @param agreementTimeout
+     *      timeout
+     * @return
+     *      current instance
+     */
+    public SchemaExecutor withAgreementTimeout(Duration agreementTimeout) {
+        this.agreementTimeout = agreementTimeout;
+        return this;
+    }
+
+    /**
+     * Execute all statements and wait for schema agreement.
+     *
+     * @return
+     *      timings
+     */
+    public SchemaExecutionReport execute() {
+        try {
+            return executeAsync().toCompletableFuture().join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Execute all statements and wait for schema agreement, asynchronously.
+     *
+     * @return
+     *      timings, failed with the first statement error (next stages are not executed)
+     */
+    public CompletionStage<SchemaExecutionReport> executeAsync() {
+        List<List<SimpleStatement>> run = stages.stream()
+                .filter(stage -> !stage.isEmpty())
+                .map(ArrayList::new)
+                .collect(Collectors.toList());
+        return new Run(run).start();
+    }
+
+    /**
+     * State of one execution.
+     */
+    private class Run {
+
+        private final List<List<SimpleStatement>> stages;
+
+        private final int total;
+
+        /** Statements of the current stage not sent yet. */
+        private final Deque<SimpleStatement> ready = new ArrayDeque<>();
+
+        private final List<StatementTiming> timings = new ArrayList<>();
+
+        private final CompletableFuture<SchemaExecutionReport> result = new CompletableFuture<>();
+
+        private final long startNanos = System.nanoTime();
+
+        /** All DDL go to this node, null to let the load balancing policy choose. */
+        private final Node coordinator;
+
+        private int stage;
+
+        private int inFlight;
+
+        private int completed;
+
+        private RuntimeException failure;
+
+        private Run(List<List<SimpleStatement>> stages) {
+            this.stages = stages;
+            this.total  = stages.stream().mapToInt(List::size).sum();
+            this.coordinator = session.getMetadata().getNodes().values().stream()
+                    .filter(node -> node.getState() == NodeState.UP)
+                    .findFirst().orElse(null);
+        }
+
+        private CompletionStage<SchemaExecutionReport> start() {
+            if (stages.isEmpty()) {
+                result.complete(new SchemaExecutionReport(timings, Duration.ZERO, true, Duration.ZERO));
+            } else {
+                synchronized (this) {
+                    ready.addAll(stages.get(0));
+                    launch();
+                }
+            }
+            return result;
+        }
+
+        private synchronized void launch() {
+            if (failure == null && inFlight == 0 && ready.isEmpty() && stage + 1 < stages.size()) {
+                // Current stage applied
+                ready.addAll(stages.get(++stage));
+            }
+            while (failure == null && inFlight < maxConcurrency && !ready.isEmpty()) {
+                SimpleStatement ddl = ready.poll();
+                SimpleStatement statement = coordinator == null ? ddl : ddl.setNode(coordinator);
+                long top = System.nanoTime();
+                inFlight++;
+                session.executeAsync(statement).whenComplete((rs, error) -> onComplete(ddl, top, error));
+            }
+        }
+
+        private void onComplete(SimpleStatement ddl, long top, Throwable error) {
+            long end = System.nanoTime();
+            boolean finished;
+            synchronized (this) {
+                inFlight--;
+                completed++;
+                if (error != null) {
+                    if (failure == null) {
+                        failure = new IllegalStateException("Cannot execute " + ddl.getQuery() + ": " + error.getMessage(), error);
+                    }
+                } else {
+                    timings.add(new StatementTiming(ddl, Duration.ofNanos(top - startNanos), Duration.ofNanos(end - top)));
+                    LOGGER.info("+ '{}' applied in {} ms (started at {} ms)", ddl.getQuery(),
+                            TimeUnit.NANOSECONDS.toMillis(end - top), TimeUnit.NANOSECONDS.toMillis(top - startNanos));
+                }
+                launch();
+                finished = inFlight == 0 && (failure != null || completed == total);
+            }
+            if (!finished) {
+                return;
+            }
+            if (failure != null) {
+                result.completeExceptionally(failure);
+                return;
+            }
+            long agreementStart = System.nanoTime();
+            awaitAgreement(agreementStart + agreementTimeout.toNanos()).whenComplete((agreed, agreementError) -> {
+                long now = System.nanoTime();
+                boolean inAgreement = agreementError == null && agreed;
+                SchemaExecutionReport report = new SchemaExecutionReport(timings,
+                        Duration.ofNanos(now - agreementStart), inAgreement, Duration.ofNanos(now - startNanos));
+                LOGGER.info("[OK] {} schema statements applied in {} ms ({} ms if sequential), schema agreement {} in {} ms",
+                        total, report.getTotalTime().toMillis(), report.getSequentialTime().toMillis(),
+                        inAgreement ? "reached" : "NOT reached", report.getAgreementTime().toMillis());
+                result.complete(report);
+            });
+        }
+
+        /**
+         * Compare the schema version of all nodes up, until they are the same or the deadline.
+         */
+        private CompletionStage<Boolean> awaitAgreement(long deadlineNanos) {
+            List<CompletableFuture<UUID>> versions = session.getMetadata().getNodes().values().stream()
+                    .filter(node -> node.getState() == NodeState.UP)
+                    .map(node -> session.executeAsync(SCHEMA_VERSION.setNode(node))
+                            .thenApply(rs -> {
+                                Row row = rs.one();
+                                return row == null ? null : row.getUuid("schema_version");
+                            })
+                            .exceptionally(error -> null)
+                            .toCompletableFuture())
+                    .collect(Collectors.toList());
+            return CompletableFuture.allOf(versions.toArray(new CompletableFuture<?>[0])).thenCompose(v -> {
+                Set<UUID> distinct = versions.stream().map(CompletableFuture::join).collect(Collectors.toCollection(HashSet::new));
+                if (distinct.size() == 1 && !distinct.contains(null)) {
+                    return CompletableFuture.completedFuture(true);
+                }
+                if (System.nanoTime() > deadlineNanos) {
+                    return CompletableFuture.completedFuture(false);
+                }
+                return CompletableFuture.supplyAsync(() -> deadlineNanos,
+                                CompletableFuture.delayedExecutor(AGREEMENT_INTERVAL_MILLIS, TimeUnit.MILLISECONDS))
+                        .thenCompose(this::awaitAgreement);
+            });
+        }
+    }
+
+}
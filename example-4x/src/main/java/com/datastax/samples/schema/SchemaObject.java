@@ -0,0 +1,124 @@
+package com.datastax.samples.schema;
+
+import java.util.Locale;
+import java.util.Objects;
+
+import com.datastax.oss.driver.api.core.CqlIdentifier;
+import com.datastax.oss.driver.api.core.cql.SimpleStatement;
+
+/**
+ * Expected schema object, described as data: {@link SchemaReconciler} compares it with the
+ * metadata and its CREATE statement is rendered from it with SchemaBuilder.
+ */
+public abstract class SchemaObject {
+
+    /** Kind of schema object, in creation order. */
+    public enum ObjectType { KEYSPACE, TYPE, TABLE }
+
+    private final ObjectType objectType;
+
+    /** Keyspace of the object, null for the session keyspace. */
+    private final CqlIdentifier keyspace;
+
+    /** Object name, the keyspace name for a keyspace. */
+    private final CqlIdentifier name;
+
+    /**
+     * Object of a keyspace.
+     *
+     * @param objectType
+     *      kind of object
+     * @param keyspace
+     *      keyspace, null for the session keyspace
+     * @param name
+     *      object name
+     */
+    protected SchemaObject(ObjectType objectType, CqlIdentifier keyspace, CqlIdentifier name) {
+        this.objectType = Objects.requireNonNull(objectType);
+        this.keyspace   = keyspace;
+        this.name       = Objects.requireNonNull(name);
+    }
+
+    /**
+     * CREATE ... IF NOT EXISTS statement of the object.
+     *
+     * @return
+     *      statement, unqualified when the keyspace is the session one
+     */
+    public abstract SimpleStatement createStatement();
+
+    /**
+     * Keyspace of the object, or a default one.
+     *
+     * @param sessionKeyspace
+     *      keyspace of the session, can be null
+     * @return
+     *      keyspace
+     * @throws IllegalArgumentException
+     *      when the object has no keyspace and no default is given
+     */
+    public CqlIdentifier resolveKeyspace(CqlIdentifier sessionKeyspace) {
+        CqlIdentifier resolved = keyspace != null ? keyspace : sessionKeyspace;
+        if (resolved == null) {
+            throw new IllegalArgumentException("No keyspace for " + getObjectKey());
+        }
+        return resolved;
+    }
+
+    /**
+     * Unique key of the schema object, e.g. 'table:videos'.
+     *
+     * @return
+     *      object key
+     */
+    public String getObjectKey() {
+        return objectType.name().toLowerCase(Locale.ROOT) + ":" + getQualifiedName();
+    }
+
+    /**
+     * Name as 'keyspace.name', 'name' in the session keyspace (or 'keyspace' for a keyspace).
+     *
+     * @return
+     *      qualified name
+     */
+    public String getQualifiedName() {
+        if (objectType == ObjectType.KEYSPACE || keyspace == null) {
+            return name.asInternal();
+        }
+        return keyspace.asInternal() + "." + name.asInternal();
+    }
+
+    /**
+     * Getter accessor for attribute 'objectType'.
+     *
+     * @return current value of 'objectType'
+     */
+    public ObjectType getObjectType() {
+        return objectType;
+    }
+
+    /**
+     * Getter accessor for attribute 'keyspace'.
+     *
+     * @return current value of 'keyspace', null for the session keyspace
+     */
+    public CqlIdentifier getKeyspace() {
+        return keyspace;
+    }
+
+    /**
+     * Getter accessor for attribute 'name'.
+     *
+     * @return current value of 'name'
+     */
+    public CqlIdentifier getName() {
+        return name;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public String toString() {
+        return getObjectKey();
+    }
+
+}
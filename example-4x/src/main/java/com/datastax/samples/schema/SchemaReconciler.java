@@ -0,0 +1,337 @@
+package com.datastax.samples.schema;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.datastax.oss.driver.api.core.CqlIdentifier;
+import com.datastax.oss.driver.api.core.CqlSession;
+import com.datastax.oss.driver.api.core.cql.SimpleStatement;
+import com.datastax.oss.driver.api.core.metadata.schema.ClusteringOrder;
+import com.datastax.oss.driver.api.core.metadata.schema.ColumnMetadata;
+import com.datastax.oss.driver.api.core.metadata.schema.KeyspaceMetadata;
+import com.datastax.oss.driver.api.core.metadata.schema.TableMetadata;
+import com.datastax.oss.driver.api.core.type.DataType;
+import com.datastax.oss.driver.api.core.type.ListType;
+import com.datastax.oss.driver.api.core.type.MapType;
+import com.datastax.oss.driver.api.core.type.SetType;
+import com.datastax.oss.driver.api.core.type.TupleType;
+import com.datastax.oss.driver.api.core.type.UserDefinedType;
+import com.datastax.oss.driver.api.querybuilder.SchemaBuilder;
+import com.datastax.samples.schema.SchemaObject.ObjectType;
+import com.datastax.samples.schema.SchemaDiff.Entry;
+import com.datastax.samples.schema.SchemaDiff.Status;
+
+/**
+ * Send only the DDL the cluster needs.
+ *
+ * The expected schema is given as data ({@link KeyspaceDefinition}, {@link TypeDefinition},
+ * {@link TableDefinition}, the ones of ExampleUtils). Each object is compared with the session
+ * metadata ({@link KeyspaceMetadata}, {@link TableMetadata}, {@link UserDefinedType}), no
+ * request is sent for this:
+ * - missing object: its CREATE statement, rendered from the definition, is executed
+ * - missing columns or fields: ALTER ... ADD
+ * - different key, clustering order, column type or replication: reported as drift, never changed
+ * - extra columns in the cluster: reported, never dropped
+ *
+ * When nothing differs, nothing is sent: no round trip, no schema agreement wait. Statements
+ * needed are executed with {@link SchemaExecutor}. Schema metadata must be enabled on the
+ * session (default), otherwise every object is seen as missing.
+ */
+public class SchemaReconciler {
+
+    /** Logger for the class. */
+    private static Logger LOGGER = LoggerFactory.getLogger(SchemaReconciler.class);
+
+    private final CqlSession session;
+
+    private final List<SchemaObject> expected = new ArrayList<>();
+
+    /**
+     * Reconciler for a session, objects without keyspace are in the session keyspace.
+     *
+     * @param session
+     *      current session
+     */
+    public SchemaReconciler(CqlSession session) {
+        this.session = Objects.requireNonNull(session);
+    }
+
+    /**
+     * Add an expected object.
+     *
+     * @param object
+     *      keyspace, type or table definition
+     * @return
+     *      current instance
+     */
+    public SchemaReconciler add(SchemaObject object) {
+        expected.add(Objects.requireNonNull(object));
+        return this;
+    }
+
+    /**
+     * Add expected objects, in declaration order.
+     *
+     * @param objects
+     *      keyspace, type or table definitions
+     * @return
+     *      current instance
+     */
+    public SchemaReconciler addAll(Collection<? extends SchemaObject> objects) {
+        objects.forEach(this::add);
+        return this;
+    }
+
+    /**
+     * Compare expected objects with the metadata, nothing is sent to the cluster.
+     *
+     * @return
+     *      differences and DDL needed
+     */
+    public SchemaDiff diff() {
+        return diff(expected);
+    }
+
+    /**
+     * Compare, log the diff report and execute the DDL needed.
+     *
+     * @return
+     *      differences found before reconciliation
+     */
+    public SchemaDiff reconcile() {
+        return reconcile(diff());
+    }
+
+    /**
+     * Compare and create some objects, not added to the expected ones: one reconciler can be
+     * used for every definition of a session.
+     *
+     * @param objects
+     *      keyspace, type or table definitions
+     * @return
+     *      differences found before reconciliation
+     */
+    public SchemaDiff reconcile(List<? extends SchemaObject> objects) {
+        return reconcile(diff(objects));
+    }
+
+    private SchemaDiff diff(List<? extends SchemaObject> objects) {
+        List<Entry> entries = new ArrayList<>();
+        for (SchemaObject object : objects) {
+            CqlIdentifier keyspaceName = object.resolveKeyspace(session.getKeyspace().orElse(null));
+            Optional<KeyspaceMetadata> keyspace = session.getMetadata().getKeyspace(keyspaceName);
+            switch (object.getObjectType()) {
+                case KEYSPACE:
+                    entries.add(keyspace.map(ks -> diffKeyspace((KeyspaceDefinition) object, ks))
+                            .orElseGet(() -> missing(object)));
+                break;
+                case TYPE:
+                    entries.add(keyspace.flatMap(ks -> ks.getUserDefinedType(object.getName()))
+                            .map(udt -> diffType((TypeDefinition) object, keyspaceName, udt))
+                            .orElseGet(() -> missing(object)));
+                break;
+                default:
+                    entries.add(keyspace.flatMap(ks -> ks.getTable(object.getName()))
+                            .map(table -> diffTable((TableDefinition) object, keyspaceName, table))
+                            .orElseGet(() -> missing(object)));
+                break;
+            }
+        }
+        return new SchemaDiff(entries);
+    }
+
+    private SchemaDiff reconcile(SchemaDiff diff) {
+        LOGGER.info("+ Schema diff, {}", diff);
+        if (diff.isUpToDate()) {
+            LOGGER.info("[OK] Schema is up to date, no DDL sent");
+        } else {
+            executor(diff).execute();
+        }
+        if (!diff.getEntries(Status.DRIFT).isEmpty()) {
+            LOGGER.warn("Schema drift needs a manual migration: {}", diff.getEntries(Status.DRIFT));
+        }
+        return diff;
+    }
+
+    /**
+     * Keyspaces first, then types one after another (a type can use the ones declared before),
+     * then tables.
+     */
+    private SchemaExecutor executor(SchemaDiff diff) {
+        SchemaExecutor executor = new SchemaExecutor(session);
+        for (ObjectType objectType : ObjectType.values()) {
+            for (Entry entry : diff.getEntries()) {
+                if (entry.getExpected().getObjectType() == objectType) {
+                    executor.addAll(entry.getStatements());
+                    if (objectType == ObjectType.TYPE) {
+                        executor.then();
+                    }
+                }
+            }
+            executor.then();
+        }
+        return executor;
+    }
+
+    private Entry diffKeyspace(KeyspaceDefinition definition, KeyspaceMetadata keyspace) {
+        List<String> differences = new ArrayList<>();
+        definition.getReplication().forEach((key, value) -> {
+            String actual = keyspace.getReplication().get(key);
+            // Metadata has the full class name
+            boolean same = "class".equals(key)
+                    ? actual != null && actual.endsWith(value)
+                    : value.equals(actual);
+            if (!same) {
+                differences.add(String.format("replication '%s' is %s, expected %s", key, actual, value));
+            }
+        });
+        if (keyspace.isDurableWrites() != definition.isDurableWrites()) {
+            differences.add(String.format("durable writes is %s, expected %s",
+                    keyspace.isDurableWrites(), definition.isDurableWrites()));
+        }
+        // Replication changes need a repair, never altered here
+        return new Entry(definition, differences.isEmpty() ? Status.UP_TO_DATE : Status.DRIFT, differences, new ArrayList<>());
+    }
+
+    private Entry diffType(TypeDefinition definition, CqlIdentifier keyspace, UserDefinedType udt) {
+        List<String> differences = new ArrayList<>();
+        List<SimpleStatement> statements = new ArrayList<>();
+        boolean drift = false;
+        Map<CqlIdentifier, DataType> actualFields = new LinkedHashMap<>();
+        for (int i = 0; i < udt.getFieldNames().size(); i++) {
+            actualFields.put(udt.getFieldNames().get(i), udt.getFieldTypes().get(i));
+        }
+        Map<CqlIdentifier, DataType> fields = definition.getFields();
+        for (Map.Entry<CqlIdentifier, DataType> field : fields.entrySet()) {
+            DataType actual = actualFields.get(field.getKey());
+            if (actual == null) {
+                differences.add(String.format("missing field '%s' %s", field.getKey().asInternal(), cql(field.getValue())));
+                statements.add(SchemaBuilder.alterType(keyspace, definition.getName())
+                        .addField(field.getKey(), field.getValue()).build());
+            } else if (!sameType(field.getValue(), actual)) {
+                differences.add(String.format("field '%s' is %s, expected %s",
+                        field.getKey().asInternal(), cql(actual), cql(field.getValue())));
+                drift = true;
+            }
+        }
+        actualFields.keySet().stream()
+                .filter(name -> !fields.containsKey(name))
+                .forEach(name -> differences.add(String.format("extra field '%s' kept", name.asInternal())));
+        return new Entry(definition, status(drift, statements), differences, statements);
+    }
+
+    private Entry diffTable(TableDefinition definition, CqlIdentifier keyspace, TableMetadata table) {
+        List<String> differences = new ArrayList<>();
+        List<SimpleStatement> statements = new ArrayList<>();
+        boolean drift = false;
+        // Primary key and clustering order cannot be altered
+        List<CqlIdentifier> partitionKey = new ArrayList<>(definition.getPartitionKey().keySet());
+        List<CqlIdentifier> actualPartitionKey = new ArrayList<>();
+        table.getPartitionKey().forEach(c -> actualPartitionKey.add(c.getName()));
+        if (!actualPartitionKey.equals(partitionKey)) {
+            differences.add(String.format("partition key is %s, expected %s", actualPartitionKey, partitionKey));
+            drift = true;
+        }
+        Map<CqlIdentifier, ClusteringOrder> clustering = definition.getClustering();
+        Map<CqlIdentifier, ClusteringOrder> actualClustering = new LinkedHashMap<>();
+        table.getClusteringColumns().forEach((c, o) -> actualClustering.put(c.getName(), o));
+        if (!new ArrayList<>(actualClustering.entrySet()).equals(new ArrayList<>(clustering.entrySet()))) {
+            differences.add(String.format("clustering is %s, expected %s", actualClustering, clustering));
+            drift = true;
+        }
+        Map<CqlIdentifier, DataType> columns = definition.getAllColumns();
+        for (Map.Entry<CqlIdentifier, DataType> column : columns.entrySet()) {
+            Optional<ColumnMetadata> actual = table.getColumn(column.getKey());
+            String name = column.getKey().asInternal();
+            boolean isStatic = definition.isStatic(column.getKey());
+            if (!actual.isPresent()) {
+                differences.add(String.format("missing column '%s' %s", name, cql(column.getValue())));
+                if (definition.getColumns().containsKey(column.getKey())) {
+                    statements.add(isStatic
+                            ? SchemaBuilder.alterTable(keyspace, definition.getName())
+                                .addStaticColumn(column.getKey(), column.getValue()).build()
+                            : SchemaBuilder.alterTable(keyspace, definition.getName())
+                                .addColumn(column.getKey(), column.getValue()).build());
+                }
+            } else if (!sameType(column.getValue(), actual.get().getType())) {
+                differences.add(String.format("column '%s' is %s, expected %s",
+                        name, cql(actual.get().getType()), cql(column.getValue())));
+                drift = true;
+            } else if (actual.get().isStatic() != isStatic) {
+                differences.add(String.format("column '%s' is %sstatic", name, actual.get().isStatic() ? "" : "not "));
+                drift = true;
+            }
+        }
+        table.getColumns().keySet().stream()
+                .filter(name -> !columns.containsKey(name))
+                .forEach(name -> differences.add(String.format("extra column '%s' kept", name.asInternal())));
+        return new Entry(definition, status(drift, statements), differences, statements);
+    }
+
+    /**
+     * Compare an expected type with the metadata, user defined types by name only.
+     */
+    private static boolean sameType(DataType expected, DataType actual) {
+        if (expected instanceof UserDefinedType && actual instanceof UserDefinedType) {
+            UserDefinedType udt = (UserDefinedType) expected;
+            return udt.getName().equals(((UserDefinedType) actual).getName())
+                    && udt.isFrozen() == ((UserDefinedType) actual).isFrozen();
+        }
+        if (expected instanceof ListType && actual instanceof ListType) {
+            ListType list = (ListType) expected;
+            return list.isFrozen() == ((ListType) actual).isFrozen()
+                    && sameType(list.getElementType(), ((ListType) actual).getElementType());
+        }
+        if (expected instanceof SetType && actual instanceof SetType) {
+            SetType set = (SetType) expected;
+            return set.isFrozen() == ((SetType) actual).isFrozen()
+                    && sameType(set.getElementType(), ((SetType) actual).getElementType());
+        }
+        if (expected instanceof MapType && actual instanceof MapType) {
+            MapType map = (MapType) expected;
+            return map.isFrozen() == ((MapType) actual).isFrozen()
+                    && sameType(map.getKeyType(), ((MapType) actual).getKeyType())
+                    && sameType(map.getValueType(), ((MapType) actual).getValueType());
+        }
+        if (expected instanceof TupleType && actual instanceof TupleType) {
+            List<DataType> components = ((TupleType) expected).getComponentTypes();
+            List<DataType> actualComponents = ((TupleType) actual).getComponentTypes();
+            if (components.size() != actualComponents.size()) {
+                return false;
+            }
+            for (int i = 0; i < components.size(); i++) {
+                if (!sameType(components.get(i), actualComponents.get(i))) {
+                    return false;
+                }
+            }
+            return true;
+        }
+        return expected.equals(actual);
+    }
+
+    private static String cql(DataType type) {
+        return type.asCql(true, true);
+    }
+
+    private static Status status(boolean drift, List<SimpleStatement> statements) {
+        if (drift) {
+            return Status.DRIFT;
+        }
+        return statements.isEmpty() ? Status.UP_TO_DATE : Status.INCOMPLETE;
+    }
+
+    private static Entry missing(SchemaObject object) {
+        List<SimpleStatement> statements = new ArrayList<>();
+        statements.add(object.createStatement());
+        return new Entry(object, Status.MISSING, new ArrayList<>(), statements);
+    }
+
+}
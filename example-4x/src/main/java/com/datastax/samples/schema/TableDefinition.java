@@ -0,0 +1,241 @@
+package com.datastax.samples.schema;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+import com.datastax.oss.driver.api.core.CqlIdentifier;
+import com.datastax.oss.driver.api.core.cql.SimpleStatement;
+import com.datastax.oss.driver.api.core.metadata.schema.ClusteringOrder;
+import com.datastax.oss.driver.api.core.type.DataType;
+import com.datastax.oss.driver.api.querybuilder.SchemaBuilder;
+import com.datastax.oss.driver.api.querybuilder.schema.CreateTable;
+import com.datastax.oss.driver.api.querybuilder.schema.CreateTableStart;
+import com.datastax.oss.driver.api.querybuilder.schema.CreateTableWithOptions;
+
+/**
+ * Expected table: partition key, clustering columns with their order, regular and static
+ * columns. Same methods as SchemaBuilder.createTable(), in any order.
+ *
+ * <pre>
+ * new TableDefinition("comments_by_video")
+ *     .withPartitionKey("videoid", DataTypes.UUID)
+ *     .withClusteringColumn("commentid", DataTypes.TIMEUUID)
+ *     .withColumn("comment", DataTypes.TEXT)
+ *     .withClusteringOrder("commentid", ClusteringOrder.DESC);
+ * </pre>
+ */
+public class TableDefinition extends SchemaObject {
+
+    private final Map<CqlIdentifier, DataType> partitionKey = new LinkedHashMap<>();
+
+    private final Map<CqlIdentifier, DataType> clusteringColumns = new LinkedHashMap<>();
+
+    /** Order of each clustering column, ascending when not set. */
+    private final Map<CqlIdentifier, ClusteringOrder> clusteringOrder = new LinkedHashMap<>();
+
+    /** Regular and static columns. */
+    private final Map<CqlIdentifier, DataType> columns = new LinkedHashMap<>();
+
+    private final Set<CqlIdentifier> staticColumns = new HashSet<>();
+
+    /**
+     * Table of the session keyspace.
+     *
+     * @param name
+     *      table name, CQL form
+     */
+    public TableDefinition(String name) {
+        this(null, name);
+    }
+
+    /**
+     * Table of a keyspace.
+     *
+     * @param keyspace
+     *      keyspace name, CQL form, null for the session keyspace
+     * @param name
+     *      table name, CQL form
+     */
+    public TableDefinition(String keyspace, String name) {
+        super(ObjectType.TABLE, keyspace == null ? null : CqlIdentifier.fromCql(keyspace), CqlIdentifier.fromCql(name));
+    }
+
+    /**
+     * Add a column to the partition key, in order.
+     *
+     * @param name
+     *      column name, CQL form
+     * @param type
+     *      column type
+     * @return
+     *      current instance
+     */
+    public TableDefinition withPartitionKey(String name, DataType type) {
+        partitionKey.put(CqlIdentifier.fromCql(name), type);
+        return this;
+    }
+
+    /**
+     * Add a clustering column, in order.
+     *
+     * @param name
+     *      column name, CQL form
+     * @param type
+     *      column type
+     * @return
+     *      current instance
+     */
+    public TableDefinition withClusteringColumn(String name, DataType type) {
+        clusteringColumns.put(CqlIdentifier.fromCql(name), type);
+        return this;
+    }
+
+    /**
+     * Order of a clustering column, ascending by default.
+     *
+     * @param name
+     *      clustering column name, CQL form
+     * @param order
+     *      order on disk
+     * @return
+     *      current instance
+     */
+    public TableDefinition withClusteringOrder(String name, ClusteringOrder order) {
+        clusteringOrder.put(CqlIdentifier.fromCql(name), order);
+        return this;
+    }
+
+    /**
+     * Add a regular column.
+     *
+     * @param name
+     *      column name, CQL form
+     * @param type
+     *      column type
+     * @return
+     *      current instance
+     */
+    public TableDefinition withColumn(String name, DataType type) {
+        columns.put(CqlIdentifier.fromCql(name), type);
+        staticColumns.remove(CqlIdentifier.fromCql(name));
+        return this;
+    }
+
+    /**
+     * Add a static column, one value per partition.
+     *
+     * @param name
+     *      column name, CQL form
+     * @param type
+     *      column type
+     * @return
+     *      current instance
+     */
+    public TableDefinition withStaticColumn(String name, DataType type) {
+        columns.put(CqlIdentifier.fromCql(name), type);
+        staticColumns.add(CqlIdentifier.fromCql(name));
+        return this;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public SimpleStatement createStatement() {
+        if (partitionKey.isEmpty()) {
+            throw new IllegalStateException("Table " + getQualifiedName() + " has no partition key");
+        }
+        if (!clusteringColumns.keySet().containsAll(clusteringOrder.keySet())) {
+            throw new IllegalStateException("Table " + getQualifiedName() + " has an order for a column not clustering");
+        }
+        CreateTableStart start = getKeyspace() == null
+                ? SchemaBuilder.createTable(getName())
+                : SchemaBuilder.createTable(getKeyspace(), getName());
+        start = start.ifNotExists();
+        CreateTable create = null;
+        for (Map.Entry<CqlIdentifier, DataType> column : partitionKey.entrySet()) {
+            create = create == null
+                    ? start.withPartitionKey(column.getKey(), column.getValue())
+                    : create.withPartitionKey(column.getKey(), column.getValue());
+        }
+        for (Map.Entry<CqlIdentifier, DataType> column : clusteringColumns.entrySet()) {
+            create = create.withClusteringColumn(column.getKey(), column.getValue());
+        }
+        for (Map.Entry<CqlIdentifier, DataType> column : columns.entrySet()) {
+            create = isStatic(column.getKey())
+                    ? create.withStaticColumn(column.getKey(), column.getValue())
+                    : create.withColumn(column.getKey(), column.getValue());
+        }
+        CreateTableWithOptions options = create;
+        for (Map.Entry<CqlIdentifier, ClusteringOrder> order : clusteringOrder.entrySet()) {
+            options = options.withClusteringOrder(order.getKey(), order.getValue());
+        }
+        return options.build();
+    }
+
+    /**
+     * Order of each clustering column, in clustering order.
+     *
+     * @return
+     *      clustering columns with their order
+     */
+    public Map<CqlIdentifier, ClusteringOrder> getClustering() {
+        Map<CqlIdentifier, ClusteringOrder> clustering = new LinkedHashMap<>();
+        clusteringColumns.keySet().forEach(c -> clustering.put(c, clusteringOrder.getOrDefault(c, ClusteringOrder.ASC)));
+        return clustering;
+    }
+
+    /**
+     * Tell if a column is static.
+     *
+     * @param name
+     *      column name
+     * @return
+     *      if the column is declared static
+     */
+    public boolean isStatic(CqlIdentifier name) {
+        return staticColumns.contains(name);
+    }
+
+    /**
+     * All columns: partition key, clustering, then regular and static.
+     *
+     * @return
+     *      types by column name
+     */
+    public Map<CqlIdentifier, DataType> getAllColumns() {
+        Map<CqlIdentifier, DataType> all = new LinkedHashMap<>(partitionKey);
+        all.putAll(clusteringColumns);
+        all.putAll(columns);
+        return all;
+    }
+
+    /**
+     * Getter accessor for attribute 'partitionKey'.
+     *
+     * @return current value of 'partitionKey'
+     */
+    public Map<CqlIdentifier, DataType> getPartitionKey() {
+        return Collections.unmodifiableMap(partitionKey);
+    }
+
+    /**
+     * Getter accessor for attribute 'clusteringColumns'.
+     *
+     * @return current value of 'clusteringColumns'
+     */
+    public Map<CqlIdentifier, DataType> getClusteringColumns() {
+        return Collections.unmodifiableMap(clusteringColumns);
+    }
+
+    /**
+     * Getter accessor for attribute 'columns'.
+     *
+     * @return current value of 'columns', regular and static
+     */
+    public Map<CqlIdentifier, DataType> getColumns() {
+        return Collections.unmodifiableMap(columns);
+    }
+
+}
@@ -0,0 +1,92 @@
+package com.datastax.samples.schema;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import com.datastax.oss.driver.api.core.CqlIdentifier;
+import com.datastax.oss.driver.api.core.cql.SimpleStatement;
+import com.datastax.oss.driver.api.core.type.DataType;
+import com.datastax.oss.driver.api.querybuilder.SchemaBuilder;
+import com.datastax.oss.driver.api.querybuilder.schema.CreateType;
+import com.datastax.oss.driver.api.querybuilder.schema.CreateTypeStart;
+
+/**
+ * Expected user defined type: its fields in declaration order.
+ *
+ * <pre>
+ * new TypeDefinition("video_format")
+ *     .withField("width", DataTypes.INT)
+ *     .withField("height", DataTypes.INT);
+ * </pre>
+ */
+public class TypeDefinition extends SchemaObject {
+
+    private final Map<CqlIdentifier, DataType> fields = new LinkedHashMap<>();
+
+    /**
+     * Type of the session keyspace.
+     *
+     * @param name
+     *      type name, CQL form
+     */
+    public TypeDefinition(String name) {
+        this(null, name);
+    }
+
+    /**
+     * Type of a keyspace.
+     *
+     * @param keyspace
+     *      keyspace name, CQL form, null for the session keyspace
+     * @param name
+     *      type name, CQL form
+     */
+    public TypeDefinition(String keyspace, String name) {
+        super(ObjectType.TYPE, keyspace == null ? null : CqlIdentifier.fromCql(keyspace), CqlIdentifier.fromCql(name));
+    }
+
+    /**
+     * Add a field.
+     *
+     * @param name
+     *      field name, CQL form
+     * @param type
+     *      field type, SchemaBuilder.udt() for another type
+     * @return
+     *      current instance
+     */
+    public TypeDefinition withField(String name, DataType type) {
+        fields.put(CqlIdentifier.fromCql(name), type);
+        return this;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public SimpleStatement createStatement() {
+        if (fields.isEmpty()) {
+            throw new IllegalStateException("Type " + getQualifiedName() + " has no field");
+        }
+        CreateTypeStart start = getKeyspace() == null
+                ? SchemaBuilder.createType(getName())
+                : SchemaBuilder.createType(getKeyspace(), getName());
+        start = start.ifNotExists();
+        CreateType create = null;
+        for (Map.Entry<CqlIdentifier, DataType> field : fields.entrySet()) {
+            create = create == null
+                    ? start.withField(field.getKey(), field.getValue())
+                    : create.withField(field.getKey(), field.getValue());
+        }
+        return create.build();
+    }
+
+    /**
+     * Getter accessor for attribute 'fields'.
+     *
+     * @return current value of 'fields'
+     */
+    public Map<CqlIdentifier, DataType> getFields() {
+        return Collections.unmodifiableMap(fields);
+    }
+
+}
@@ -0,0 +1,471 @@
+package com.datastax.samples.write;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.datastax.oss.driver.api.core.CqlSession;
+import com.datastax.oss.driver.api.core.DriverTimeoutException;
+import com.datastax.oss.driver.api.core.NoNodeAvailableException;
+import com.datastax.oss.driver.api.core.cql.BatchStatement;
+import com.datastax.oss.driver.api.core.cql.BatchableStatement;
+import com.datastax.oss.driver.api.core.cql.BoundStatement;
+import com.datastax.oss.driver.api.core.cql.DefaultBatchType;
+import com.datastax.oss.driver.api.core.servererrors.UnavailableException;
+import com.datastax.oss.driver.api.core.servererrors.WriteTimeoutException;
+
+/**
+ * Write the same entity to its denormalized tables (comments_by_user, comments_by_video).
+ *
+ * A LOGGED batch guarantees that all tables are eventually written, but each write is first
+ * stored in the batchlog of two other nodes and removed once applied: extra round trips and
+ * disk writes on every comment. With {@link Strategy#FAN_OUT} the statements are sent at
+ * the same time as individual idempotent writes, each to a replica of its partition: the
+ * write costs the slowest table. A statement failing with a timeout or unavailable error
+ * while another succeeded is retried locally with a growing delay, and once 'maxRetries' is
+ * reached (or the retry queue is full, or the writer closed) it is kept in a
+ * {@link FailureJournal} to be replayed. Other errors (e.g. an invalid query) would fail the
+ * same way on each retry, the statement is journaled at once.
+ *
+ * All statements of a write share one client timestamp, kept by the retries and the journal:
+ * a retry can never overwrite a more recent update. Readers may see one table before the
+ * other, and a process crash loses the retries in memory (not the journal). The journal
+ * file is written by a thread of the writer, never by the driver I/O threads.
+ *
+ * <pre>
+ * DenormalizedWriter writer = new DenormalizedWriter(session).withStrategy(Strategy.FAN_OUT);
+ * writer.execute(insertCommentByUser.bind(...), insertCommentByVideo.bind(...));
+ * </pre>
+ */
+public class DenormalizedWriter implements AutoCloseable {
+
+    /** Logger for the class. */
+    private static Logger LOGGER = LoggerFactory.getLogger(DenormalizedWriter.class);
+
+    /**
+     * How the statements of a write are sent.
+     */
+    public enum Strategy {
+        /** One LOGGED batch: all or nothing eventually, through the batchlog. */
+        LOGGED_BATCH,
+        /** Parallel idempotent writes, failed ones retried then journaled. */
+        FAN_OUT
+    }
+
+    private final CqlSession session;
+
+    private Strategy strategy = Strategy.LOGGED_BATCH;
+
+    private int maxRetries = 5;
+
+    private Duration retryDelay = Duration.ofMillis(100);
+
+    private int maxPendingRetries = 10_000;
+
+    private FailureJournal journal;
+
+    private ScheduledExecutorService retrier;
+
+    /** Journal file writes, kept off the driver I/O threads completing the statements. */
+    private final ExecutorService journalWriter = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "denormalized-writer-journal");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /** Statements waiting for a retry. */
+    private final Set<BoundStatement> pendingRetries = ConcurrentHashMap.newKeySet();
+
+    /** Last timestamp given, in microseconds. */
+    private final AtomicLong lastTimestamp = new AtomicLong();
+
+    private final LongAdder writes = new LongAdder();
+
+    private final LongAdder failures = new LongAdder();
+
+    private final LongAdder retries = new LongAdder();
+
+    private final LongAdder repaired = new LongAdder();
+
+    private final LongAdder journaled = new LongAdder();
+
+    /**
+     * Writer for a session.
+     *
+     * @param session
+     *      current session
+     */
+    public DenormalizedWriter(CqlSession session) {
+        this.session = Objects.requireNonNull(session);
+    }
+
+    /**
+     * Strategy of {@link #execute(BoundStatement...)}, defaults to {@link Strategy#LOGGED_BATCH}.
+     *
+     * @param strategy
+     *      write strategy
+     * @return
+     *      current instance
+     */
+    public DenormalizedWriter withStrategy(Strategy strategy) {
+        this.strategy = Objects.requireNonNull(strategy);
+        return this;
+    }
+
+    /**
+     * Local retries of a failed statement before it is journaled, defaults to 5.
+     *
+     * @param maxRetries
+     *      number of retries, 0 to journal at once
+     * @return
+     *      current instance
+     */
+    public DenormalizedWriter withMaxRetries(int maxRetries) {
+        if (maxRetries < 0) {
+            throw new IllegalArgumentException("maxRetries must not be negative");
+        }
+        this.maxRetries = maxRetries;
+        return this;
+    }
+
+    /**
+     * Delay before the first retry, doubled for each next one, defaults to 100 milliseconds.
+     *
+     * @param retryDelay
+     *      initial delay
+     * @return
+     *      current instance
+     */
+    public DenormalizedWriter withRetryDelay(Duration retryDelay) {
+        if (retryDelay.isNegative() || retryDelay.isZero()) {
+            throw new IllegalArgumentException("retryDelay must be positive");
+        }
+        this.retryDelay = retryDelay;
+        return this;
+    }
+
+    /**
+     * Statements waiting for a retry, others are journaled at once, defaults to 10000.
+     *
+     * @param maxPendingRetries
+     *      size of the retry queue
+     * @return
+     *      current instance
+     */
+    public DenormalizedWriter withMaxPendingRetries(int maxPendingRetries) {
+        if (maxPendingRetries < 0) {
+            throw new IllegalArgumentException("maxPendingRetries must not be negative");
+        }
+        this.maxPendingRetries = maxPendingRetries;
+        return this;
+    }
+
+    /**
+     * Journal of the statements given up, without it they are only logged.
+     *
+     * @param journal
+     *      failure journal
+     * @return
+     *      current instance
+     */
+    public DenormalizedWriter withJournal(FailureJournal journal) {
+        this.journal = Objects.requireNonNull(journal);
+        return this;
+    }
+
+    /**
+     * Write the statements with the strategy of the writer.
+     *
+     * @param statements
+     *      writes of the same entity
+     */
+    public void execute(BoundStatement... statements) {
+        execute(strategy, List.of(statements));
+    }
+
+    /**
+     * Write the statements.
+     *
+     * @param strategy
+     *      write strategy
+     * @param statements
+     *      writes of the same entity
+     */
+    public void execute(Strategy strategy, List<BoundStatement> statements) {
+        try {
+            executeAsync(strategy, statements).toCompletableFuture().join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Write the statements asynchronously, with the strategy of the writer.
+     *
+     * @param statements
+     *      writes of the same entity
+     * @return
+     *      completed when written, see {@link #executeAsync(Strategy, List)}
+     */
+    public CompletionStage<Void> executeAsync(List<BoundStatement> statements) {
+        return executeAsync(strategy, statements);
+    }
+
+    /**
+     * Write the statements asynchronously.
+     *
+     * With {@link Strategy#FAN_OUT} the stage fails only when no statement was written (the
+     * caller can retry the whole write), it completes once at least one table is written and
+     * the other statements are retried in the background.
+     *
+     * @param strategy
+     *      write strategy
+     * @param statements
+     *      writes of the same entity
+     * @return
+     *      completed when written
+     */
+    public CompletionStage<Void> executeAsync(Strategy strategy, List<BoundStatement> statements) {
+        writes.increment();
+        long timestamp = nextTimestamp();
+        if (strategy == Strategy.LOGGED_BATCH) {
+            return session.executeAsync(BatchStatement
+                        .newInstance(DefaultBatchType.LOGGED, statements.toArray(new BatchableStatement<?>[0]))
+                        .setQueryTimestamp(timestamp))
+                    .whenComplete((rs, error) -> {
+                        if (error != null) {
+                            failures.increment();
+                        }
+                    })
+                    .thenApply(rs -> null);
+        }
+        List<BoundStatement> timestamped = new ArrayList<>(statements.size());
+        List<CompletableFuture<Throwable>> results = new ArrayList<>(statements.size());
+        for (BoundStatement statement : statements) {
+            BoundStatement write = statement.setQueryTimestamp(timestamp).setIdempotent(true);
+            timestamped.add(write);
+            results.add(session.executeAsync(write)
+                    .handle((rs, error) -> error)
+                    .toCompletableFuture());
+        }
+        return CompletableFuture.allOf(results.toArray(new CompletableFuture<?>[0])).thenApply(v -> {
+            Throwable lastError = null;
+            List<BoundStatement> failed = new ArrayList<>();
+            List<Throwable> errors = new ArrayList<>();
+            for (int i = 0; i < results.size(); i++) {
+                Throwable error = results.get(i).join();
+                if (error != null) {
+                    lastError = error;
+                    failed.add(timestamped.get(i));
+                    errors.add(error);
+                }
+            }
+            if (!failed.isEmpty() && failed.size() == timestamped.size()) {
+                // Nothing written, same outcome as a failed batch
+                failures.increment();
+                throw lastError instanceof CompletionException
+                        ? (CompletionException) lastError : new CompletionException(lastError);
+            }
+            for (int i = 0; i < failed.size(); i++) {
+                if (isRetryable(errors.get(i))) {
+                    retry(failed.get(i), 1);
+                } else {
+                    giveUp(failed.get(i));
+                }
+            }
+            return null;
+        });
+    }
+
+    /**
+     * Timestamps strictly increasing, in microseconds like the driver generators.
+     */
+    private long nextTimestamp() {
+        long now = TimeUnit.MILLISECONDS.toMicros(System.currentTimeMillis());
+        return lastTimestamp.updateAndGet(last -> Math.max(now, last + 1));
+    }
+
+    private synchronized void retry(BoundStatement statement, int attempt) {
+        if (attempt > maxRetries || pendingRetries.size() >= maxPendingRetries || !pendingRetries.add(statement)) {
+            giveUp(statement);
+            return;
+        }
+        if (retrier == null) {
+            retrier = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread thread = new Thread(r, "denormalized-writer-retry");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        if (retrier.isShutdown()) {
+            pendingRetries.remove(statement);
+            giveUp(statement);
+            return;
+        }
+        long delay = retryDelay.toNanos() << Math.min(attempt - 1, 20);
+        retrier.schedule(() -> {
+            retries.increment();
+            session.executeAsync(statement).whenComplete((rs, error) -> {
+                pendingRetries.remove(statement);
+                if (error == null) {
+                    repaired.increment();
+                } else if (isRetryable(error)) {
+                    retry(statement, attempt + 1);
+                } else {
+                    giveUp(statement);
+                }
+            });
+        }, delay, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Timeouts and unavailable replicas may pass on a retry, the write may even be applied.
+     */
+    private static boolean isRetryable(Throwable error) {
+        Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+        return cause instanceof WriteTimeoutException
+            || cause instanceof UnavailableException
+            || cause instanceof DriverTimeoutException
+            || cause instanceof NoNodeAvailableException;
+    }
+
+    private void giveUp(BoundStatement statement) {
+        journaled.increment();
+        if (journal == null) {
+            LOGGER.error("Write lost: {} (timestamp {})", statement.getPreparedStatement().getQuery(),
+                    statement.getQueryTimestamp());
+            return;
+        }
+        try {
+            journalWriter.execute(() -> record(statement));
+        } catch (RejectedExecutionException e) {
+            // Retry completed after close, the journal thread is stopped
+            record(statement);
+        }
+    }
+
+    private void record(BoundStatement statement) {
+        try {
+            journal.record(statement);
+        } catch (RuntimeException e) {
+            LOGGER.error("Write lost: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Stop the retries, statements waiting for one are journaled, and wait for the journal.
+     */
+    @Override
+    public void close() {
+        ScheduledExecutorService executor;
+        synchronized (this) {
+            executor = retrier;
+            if (executor != null) {
+                executor.shutdownNow();
+            }
+        }
+        // A retry in flight may still succeed: replaying it with its timestamp changes nothing
+        new ArrayList<>(pendingRetries).forEach(statement -> {
+            if (pendingRetries.remove(statement)) {
+                giveUp(statement);
+            }
+        });
+        journalWriter.shutdown();
+        try {
+            journalWriter.awaitTermination(1, TimeUnit.MINUTES);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        LOGGER.info("[OK] Denormalized writes: {} writes, {} failed, {} retries, {} repaired, {} journaled",
+                getWrites(), getFailures(), getRetries(), getRepaired(), getJournaled());
+    }
+
+    /**
+     * Getter accessor for attribute 'strategy'.
+     *
+     * @return current value of 'strategy'
+     */
+    public Strategy getStrategy() {
+        return strategy;
+    }
+
+    /**
+     * Calls to execute().
+     *
+     * @return
+     *      number of writes
+     */
+    public long getWrites() {
+        return writes.sum();
+    }
+
+    /**
+     * Writes reported failed to the caller, nothing written.
+     *
+     * @return
+     *      number of writes
+     */
+    public long getFailures() {
+        return failures.sum();
+    }
+
+    /**
+     * Statements sent again by the retry queue.
+     *
+     * @return
+     *      number of retries
+     */
+    public long getRetries() {
+        return retries.sum();
+    }
+
+    /**
+     * Statements written by a retry.
+     *
+     * @return
+     *      number of statements
+     */
+    public long getRepaired() {
+        return repaired.sum();
+    }
+
+    /**
+     * Statements given up, journaled (or logged without journal).
+     *
+     * @return
+     *      number of statements
+     */
+    public long getJournaled() {
+        return journaled.sum();
+    }
+
+    /**
+     * Statements waiting for a retry.
+     *
+     * @return
+     *      size of the retry queue
+     */
+    public int getPendingRetries() {
+        return pendingRetries.size();
+    }
+
+}
@@ -0,0 +1,163 @@
+package com.datastax.samples.write;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.datastax.oss.driver.api.core.CqlSession;
+import com.datastax.oss.driver.api.core.cql.BoundStatement;
+import com.datastax.oss.driver.api.core.cql.BoundStatementBuilder;
+import com.datastax.oss.driver.api.core.cql.PreparedStatement;
+import com.datastax.oss.driver.api.core.data.ByteUtils;
+
+/**
+ * Writes given up by {@link DenormalizedWriter}, kept in a file to be replayed later.
+ *
+ * One line per statement: write timestamp, query, then each serialized value in hex
+ * ('null' for a null value, 'unset' for an unset one), separated by tabulations. Values are
+ * stored as sent, without codecs, and replayed with their original timestamp: a replay
+ * cannot overwrite a more recent write of the same cells, and replaying twice is harmless.
+ *
+ * <pre>
+ * FailureJournal journal = new FailureJournal(Paths.get("comments.journal"));
+ * int repaired = journal.replay(session);
+ * </pre>
+ */
+public class FailureJournal {
+
+    /** Logger for the class. */
+    private static Logger LOGGER = LoggerFactory.getLogger(FailureJournal.class);
+
+    private static final String NULL  = "null";
+
+    private static final String UNSET = "unset";
+
+    private final Path file;
+
+    private final LongAdder recorded = new LongAdder();
+
+    /**
+     * Journal appending to a file, created if needed.
+     *
+     * @param file
+     *      journal file
+     */
+    public FailureJournal(Path file) {
+        this.file = Objects.requireNonNull(file);
+    }
+
+    /**
+     * Keep a statement which could not be written.
+     *
+     * @param statement
+     *      statement with its write timestamp set
+     */
+    public synchronized void record(BoundStatement statement) {
+        StringBuilder line = new StringBuilder()
+                .append(statement.getQueryTimestamp()).append('\t')
+                .append(statement.getPreparedStatement().getQuery().replaceAll("\\s+", " "));
+        for (int i = 0; i < statement.size(); i++) {
+            line.append('\t');
+            if (!statement.isSet(i)) {
+                line.append(UNSET);
+            } else {
+                ByteBuffer value = statement.getBytesUnsafe(i);
+                line.append(value == null ? NULL : ByteUtils.toHexString(value));
+            }
+        }
+        line.append('\n');
+        try {
+            Files.write(file, line.toString().getBytes(StandardCharsets.UTF_8),
+                    StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+            recorded.increment();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot write journal " + file, e);
+        }
+    }
+
+    /**
+     * Execute the statements of the journal, those failing again stay in it.
+     *
+     * @param session
+     *      session connected to the keyspace of the statements
+     * @return
+     *      number of statements written
+     */
+    public synchronized int replay(CqlSession session) {
+        if (!Files.exists(file)) {
+            return 0;
+        }
+        List<String> failed = new ArrayList<>();
+        Map<String, PreparedStatement> statements = new HashMap<>();
+        int replayed = 0;
+        try {
+            for (String line : Files.readAllLines(file, StandardCharsets.UTF_8)) {
+                if (line.isEmpty()) {
+                    continue;
+                }
+                try {
+                    String[] fields = line.split("\t", -1);
+                    PreparedStatement ps = statements.computeIfAbsent(fields[1], session::prepare);
+                    BoundStatementBuilder builder = ps.boundStatementBuilder();
+                    for (int i = 2; i < fields.length; i++) {
+                        if (NULL.equals(fields[i])) {
+                            builder.setBytesUnsafe(i - 2, null);
+                        } else if (!UNSET.equals(fields[i])) {
+                            builder.setBytesUnsafe(i - 2, ByteUtils.fromHexString(fields[i]));
+                        }
+                    }
+                    session.execute(builder
+                            .setQueryTimestamp(Long.parseLong(fields[0]))
+                            .setIdempotence(true)
+                            .build());
+                    replayed++;
+                } catch (RuntimeException e) {
+                    LOGGER.warn("Journal entry not replayed: {}", e.getMessage());
+                    failed.add(line);
+                }
+            }
+            if (failed.isEmpty()) {
+                Files.delete(file);
+            } else {
+                Files.write(file, failed, StandardCharsets.UTF_8);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot replay journal " + file, e);
+        }
+        LOGGER.info("+ Journal {} replayed: {} written, {} kept", file, replayed, failed.size());
+        return replayed;
+    }
+
+    /**
+     * Getter accessor for attribute 'file'.
+     *
+     * @return current value of 'file'
+     */
+    public Path getFile() {
+        return file;
+    }
+
+    /**
+     * Statements written to the journal.
+     *
+     * @return
+     *      number of statements
+     */
+    public long getRecorded() {
+        return recorded.sum();
+    }
+
+}